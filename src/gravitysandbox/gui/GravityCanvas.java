@@ -9,8 +9,9 @@ import com.jogamp.opengl.math.VectorUtil;
 import com.jogamp.opengl.util.gl2.GLUT;
 import gravitysandbox.physics.Body;
 import gravitysandbox.physics.BodyContainer;
-import gravitysandbox.physics.OcTree;
 import gravitysandbox.physics.Physics;
+import gravitysandbox.physics.Simulation;
+import gravitysandbox.physics.Snapshot;
 import gravitysandbox.util.Vector3D;
 
 import java.awt.*;
@@ -18,13 +19,12 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.image.BufferedImage;
-import java.math.BigDecimal;
 
 import static java.lang.Math.pow;
 import static java.math.RoundingMode.HALF_UP;
 
 /**
- * @version 0.6
+ * @version 0.8
  * @since 0.1
  */
 public class GravityCanvas extends GLCanvas implements GLEventListener {
@@ -33,7 +33,8 @@ public class GravityCanvas extends GLCanvas implements GLEventListener {
     private GLU glu;
     private GLUT glut;
     private BodyContainer bodyContainer;
-    private BigDecimal simSpeed;
+    private Simulation simulation;
+    private long lastDrawnStep;
     private double bodySize;
     private float mouseSpeed;
     private Point savedMouseLocation;
@@ -41,11 +42,10 @@ public class GravityCanvas extends GLCanvas implements GLEventListener {
     private float lookAtPosition[] = {0, 0, 0};
     private float upVector[] = {0, 1, 0};
     private int mouseButton;
-    private boolean animationRunning;
-    //private OcTree ocTree;
 
-    GravityCanvas() {
+    GravityCanvas(Simulation simulation) {
         super();
+        this.simulation = simulation;
     }
 
     @Override
@@ -64,24 +64,26 @@ public class GravityCanvas extends GLCanvas implements GLEventListener {
         gl.glClearColor(0, 0, 0, 1);
 
         int lightCount = 0;
+        Snapshot snapshot = simulation.getSnapshot();
+        if (snapshot.getStep() != lastDrawnStep) {
+            simulation.updateBodies();
+            lastDrawnStep = snapshot.getStep();
+        }
 
-        for (Body body : bodyContainer) {
+        for (int index = 0; index < Math.min(snapshot.size(), bodyContainer.size()); index++) {
+            Body body = bodyContainer.get(index);
 
             gl.glColor3f(1, 1, 1);
 
             gl.glPushMatrix();
 
-            gl.glTranslated(
-                    body.getPosition().getX().divide(Physics.AU, 50, HALF_UP).doubleValue(),
-                    body.getPosition().getY().divide(Physics.AU, 50, HALF_UP).doubleValue(),
-                    body.getPosition().getZ().divide(Physics.AU, 50, HALF_UP).doubleValue()
-            );
+            gl.glTranslated(snapshot.getX(index), snapshot.getY(index), snapshot.getZ(index));
 
             if (body.isStar() && lightCount < GL2.GL_MAX_LIGHTS) {
                 float light_pos[] = {
-                        body.getPosition().getX().divide(Physics.AU, 50, HALF_UP).floatValue(),
-                        body.getPosition().getY().divide(Physics.AU, 50, HALF_UP).floatValue(),
-                        body.getPosition().getZ().divide(Physics.AU, 50, HALF_UP).floatValue(),
+                        (float) snapshot.getX(index),
+                        (float) snapshot.getY(index),
+                        (float) snapshot.getZ(index),
                         1};
                 float light_color[] = {1, 1, 1, 1};
                 float material_emmision[] = {1, 1, 1, 1};
@@ -123,9 +125,6 @@ public class GravityCanvas extends GLCanvas implements GLEventListener {
             gl.glEnd();
         }
 
-        if (animationRunning)
-            animate();
-
         gl.glFlush();
     }
 
@@ -138,12 +137,9 @@ public class GravityCanvas extends GLCanvas implements GLEventListener {
         gl.glEnable(GL2.GL_LIGHTING);
         gl.glEnable(GL2.GL_NORMALIZE);
         bodyContainer = BodyContainer.getInstance();
-        simSpeed = new BigDecimal("86400");
         bodySize = 0.002;
         savedMouseLocation = new Point();
         mouseSpeed = 0.01f;
-        animationRunning = false;
-        //ocTree = new OcTree();
 
         addMouseListener(new MouseAdapter() {
             @Override
@@ -298,57 +294,6 @@ public class GravityCanvas extends GLCanvas implements GLEventListener {
         gl.glMatrixMode(GL2.GL_MODELVIEW);
     }
 
-    private void animate() {
-        Vector3D gravForce;
-        Vector3D frontLowerLeft = new Vector3D();
-        Vector3D backUpperRight = new Vector3D();
-        OcTree ocTree = new OcTree();
-
-        for (Body body : bodyContainer) {
-            if (body.getPosition().getX().compareTo(frontLowerLeft.getX())<0) {
-                frontLowerLeft.setX(body.getPosition().getX());
-            }
-            if (body.getPosition().getX().compareTo(backUpperRight.getX())>0) {
-                backUpperRight.setX(body.getPosition().getX());
-            }
-            if (body.getPosition().getY().compareTo(frontLowerLeft.getY())<0) {
-                frontLowerLeft.setY(body.getPosition().getY());
-            }
-            if (body.getPosition().getY().compareTo(backUpperRight.getY())>0) {
-                backUpperRight.setY(body.getPosition().getY());
-            }
-            if (body.getPosition().getZ().compareTo(frontLowerLeft.getZ())<0) {
-                frontLowerLeft.setZ(body.getPosition().getZ());
-            }
-            if (body.getPosition().getZ().compareTo(backUpperRight.getZ())>0) {
-                backUpperRight.setZ(body.getPosition().getZ());
-            }
-        }
-
-        ocTree.buildTree(frontLowerLeft, backUpperRight);
-        ocTree.calculateMassDistribution();
-
-        for (Body body : bodyContainer) {
-            gravForce = ocTree.calculateGravitationalForce(body);
-            body.setAcceleration(body.getAcceleration().add(gravForce.scale(BigDecimal.ONE.divide(body.getMass(), -gravForce.getBDScale() * body.getMass().scale(), HALF_UP))));
-        }
-
-
-
-        for (Body body : bodyContainer) {
-            body.setVelocity(
-                    body.getVelocity().add(body.getAcceleration().scale(simSpeed))
-            );
-            body.setPosition(
-                    body.getPosition().add(
-                            body.getVelocity()
-                                    .scale(simSpeed)
-                    )
-            );
-            body.setAcceleration(new Vector3D());
-        }
-    }
-
     void resetView() {
         cameraPosition[0] = cameraPosition[1] = 0;
         cameraPosition[2] = 10;
@@ -400,8 +345,4 @@ public class GravityCanvas extends GLCanvas implements GLEventListener {
 
         return resultVector;
     }
-
-    void setAnimationRunning(boolean animationRunning) {
-        this.animationRunning = animationRunning;
-    }
 }
\ No newline at end of file
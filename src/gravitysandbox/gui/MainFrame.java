@@ -2,6 +2,8 @@ package gravitysandbox.gui;
 
 import com.jogamp.opengl.util.FPSAnimator;
 import gravitysandbox.physics.Body;
+import gravitysandbox.physics.BodyContainer;
+import gravitysandbox.physics.Simulation;
 
 import javax.swing.*;
 import java.awt.*;
@@ -11,7 +13,7 @@ import java.awt.event.WindowEvent;
 /**
  * The main window for the simulation.
  *
- * @version 1.1
+ * @version 1.2
  * @since 0.1
  */
 public class MainFrame extends JFrame {
@@ -21,6 +23,11 @@ public class MainFrame extends JFrame {
      */
     private boolean simualtionRunnig;
 
+    /**
+     * The {@link Simulation} advancing the bodies on its own thread.
+     */
+    private Simulation simulation;
+
     /**
      * The {@link GravityCanvas} in which the simulation will be rendered.
      */
@@ -52,7 +59,11 @@ public class MainFrame extends JFrame {
 
         setLayout(new BorderLayout());
 
-        gravityCanvas = new GravityCanvas();
+        simulation = new Simulation(BodyContainer.getInstance());
+        // Keep the pace of one simulated day per displayed frame.
+        simulation.setStepRate(30);
+
+        gravityCanvas = new GravityCanvas(simulation);
         gravityCanvas.addGLEventListener(gravityCanvas);
         add(gravityCanvas, BorderLayout.CENTER);
 
@@ -82,7 +93,10 @@ public class MainFrame extends JFrame {
      * Stops the simulation if running. Otherwise it will be.
      */
     void toogleSimulation() {
-        gravityCanvas.setAnimationRunning(!simualtionRunnig);
+        if (simualtionRunnig)
+            simulation.stop();
+        else
+            simulation.start();
 
         toolPanel.updateStartButton();
         menuBar.updateMenuItems();
@@ -94,6 +108,7 @@ public class MainFrame extends JFrame {
      * Update the MainFrame controls.
      */
     public void update() {
+        simulation.publishSnapshot();
         gravityCanvas.repaint();
         toolPanel.updateComboBox();
     }
@@ -118,6 +133,7 @@ public class MainFrame extends JFrame {
      * Closes this MainFrame.
      */
     void close() {
+        simulation.stop();
         animator.stop();
         dispose();
     }
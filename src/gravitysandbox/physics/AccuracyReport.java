@@ -0,0 +1,125 @@
+package gravitysandbox.physics;
+
+/**
+ * The error of accelerations calculated by an approximating method compared to reference accelerations.
+ * <p>
+ * The relative error of a body is the length of the difference of both accelerations divided by the length of the
+ * reference acceleration. Bodies without a reference acceleration are skipped.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class AccuracyReport {
+
+    /**
+     * The number of compared bodies.
+     */
+    private final int bodies;
+
+    /**
+     * The root mean square of the relative errors.
+     */
+    private final double rmsRelativeError;
+
+    /**
+     * The largest relative error.
+     */
+    private final double maxRelativeError;
+
+    /**
+     * The index of the body with the largest relative error or -1 if no body was compared.
+     */
+    private final int worstBody;
+
+    /**
+     * Creates a new report.
+     *
+     * @param bodies           The number of compared bodies.
+     * @param rmsRelativeError The root mean square of the relative errors.
+     * @param maxRelativeError The largest relative error.
+     * @param worstBody        The index of the body with the largest relative error.
+     */
+    private AccuracyReport(int bodies, double rmsRelativeError, double maxRelativeError, int worstBody) {
+        this.bodies = bodies;
+        this.rmsRelativeError = rmsRelativeError;
+        this.maxRelativeError = maxRelativeError;
+        this.worstBody = worstBody;
+    }
+
+    /**
+     * Compares the accelerations of a store to reference accelerations.
+     *
+     * @param referenceX The x coordinates of the reference accelerations, one per body of the store.
+     * @param referenceY The y coordinates of the reference accelerations.
+     * @param referenceZ The z coordinates of the reference accelerations.
+     * @param store      The {@link BodyStore} holding the approximated accelerations.
+     * @return The report.
+     */
+    public static AccuracyReport compare(double[] referenceX, double[] referenceY, double[] referenceZ,
+                                         BodyStore store) {
+        int bodies = 0, worstBody = -1;
+        double sum = 0, max = 0;
+        for (int i = 0; i < store.size(); i++) {
+            double reference = Math.sqrt(referenceX[i] * referenceX[i] + referenceY[i] * referenceY[i]
+                    + referenceZ[i] * referenceZ[i]);
+            if (reference == 0)
+                continue;
+            double dx = store.ax[i] - referenceX[i], dy = store.ay[i] - referenceY[i], dz = store.az[i] - referenceZ[i];
+            double error = Math.sqrt(dx * dx + dy * dy + dz * dz) / reference;
+            sum += error * error;
+            if (error >= max) {
+                max = error;
+                worstBody = i;
+            }
+            bodies++;
+        }
+        return new AccuracyReport(bodies, bodies > 0 ? Math.sqrt(sum / bodies) : 0, max, worstBody);
+    }
+
+    /**
+     * Getter for bodies.
+     *
+     * @return The number of compared bodies.
+     */
+    public int getBodies() {
+        return bodies;
+    }
+
+    /**
+     * Getter for rmsRelativeError.
+     *
+     * @return The root mean square of the relative errors.
+     */
+    public double getRmsRelativeError() {
+        return rmsRelativeError;
+    }
+
+    /**
+     * Getter for maxRelativeError.
+     *
+     * @return The largest relative error.
+     */
+    public double getMaxRelativeError() {
+        return maxRelativeError;
+    }
+
+    /**
+     * Getter for worstBody.
+     *
+     * @return The index of the body with the largest relative error or -1 if no body was compared.
+     */
+    public int getWorstBody() {
+        return worstBody;
+    }
+
+    /**
+     * Returns a {@link String} representation of the report.
+     *
+     * @return The report as a {@link String}.
+     */
+    @Override
+    public String toString() {
+        return String.format("%d bodies, rms relative error %.3e, max relative error %.3e (body %d)",
+                bodies, rmsRelativeError, maxRelativeError, worstBody);
+    }
+}
@@ -0,0 +1,345 @@
+package gravitysandbox.physics;
+
+/**
+ * A {@link ForceSolver} choosing between a {@link BarnesHutTree} and {@link DirectSummation} for every step.
+ * <p>
+ * The costs of direct summation grow with N^2, those of the tree with N * log(N). The solver measures the time of
+ * every calculation and keeps a cost coefficient per method, so the crossover point between both follows the actual
+ * machine and scene. The cheaper method is used, and the other one is measured again from time to time if its
+ * predicted costs are close.
+ * <p>
+ * The solver may also be restricted to a {@link FastMultipoleSolver} on the same tree, which is chosen explicitly for
+ * its accuracy, or to a {@link ParticleMeshSolver}, which is chosen explicitly for its speed on large smooth
+ * distributions. Both are therefore never measured.
+ *
+ * @version 1.4
+ * @since 1.1
+ */
+public class AdaptiveSolver implements ForceSolver {
+
+    /**
+     * The methods the solver may be restricted to.
+     */
+    public enum Mode {
+
+        /**
+         * Chooses the cheaper method for every step.
+         */
+        AUTOMATIC,
+
+        /**
+         * Always uses the tree.
+         */
+        TREE,
+
+        /**
+         * Always uses direct summation.
+         */
+        DIRECT,
+
+        /**
+         * Always uses the fast multipole method.
+         */
+        MULTIPOLE,
+
+        /**
+         * Always uses the particle-mesh method.
+         */
+        PARTICLE_MESH
+    }
+
+    /**
+     * The number of bodies below which direct summation is used as long as no costs have been measured.
+     */
+    public static final int DEFAULT_CROSSOVER = 1000;
+
+    /**
+     * The weight of a new measurement within the cost coefficients.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * The number of steps after which the method not in use is measured again.
+     */
+    private static final int PROBE_INTERVAL = 256;
+
+    /**
+     * The factor by which the predicted costs of the method not in use may exceed those of the current method to be
+     * measured again.
+     */
+    private static final double PROBE_LIMIT = 2;
+
+    /**
+     * The tree.
+     */
+    private final BarnesHutTree tree;
+
+    /**
+     * The direct summation.
+     */
+    private final DirectSummation directSummation;
+
+    /**
+     * The fast multipole method.
+     */
+    private final FastMultipoleSolver multipoleSolver;
+
+    /**
+     * The particle-mesh method.
+     */
+    private final ParticleMeshSolver particleMeshSolver;
+
+    /**
+     * The methods the solver is restricted to.
+     */
+    private volatile Mode mode;
+
+    /**
+     * The measured nanoseconds per N * log2(N) of the tree or zero if not measured yet.
+     */
+    private double treeCoefficient;
+
+    /**
+     * The measured nanoseconds per pair of direct summation or zero if not measured yet.
+     */
+    private double directCoefficient;
+
+    /**
+     * The number of steps since the method not in use was measured.
+     */
+    private int stepsSinceProbe;
+
+    /**
+     * A flag showing whether the last step used direct summation.
+     */
+    private boolean lastDirect;
+
+    /**
+     * Creates a new solver choosing automatically between the given tree and direct summation.
+     *
+     * @param tree The {@link BarnesHutTree} to be used for large numbers of bodies.
+     */
+    public AdaptiveSolver(BarnesHutTree tree) {
+        this.tree = tree;
+        directSummation = new DirectSummation();
+        multipoleSolver = new FastMultipoleSolver(tree);
+        particleMeshSolver = new ParticleMeshSolver(tree);
+        mode = Mode.AUTOMATIC;
+    }
+
+    @Override
+    public void accumulateAccelerations(BodyStore store, ParallelLoop parallelLoop) {
+        if (mode == Mode.MULTIPOLE) {
+            multipoleSolver.accumulateAccelerations(store, parallelLoop);
+            return;
+        }
+        if (mode == Mode.PARTICLE_MESH) {
+            particleMeshSolver.accumulateAccelerations(store, parallelLoop);
+            return;
+        }
+        int n = store.size();
+        boolean direct = chooseDirect(n);
+
+        long start = System.nanoTime();
+        if (direct)
+            directSummation.accumulateAccelerations(store, parallelLoop);
+        else
+            tree.accumulateAccelerations(store, parallelLoop);
+        long duration = System.nanoTime() - start;
+
+        if (n > 1) {
+            if (direct)
+                directCoefficient = smooth(directCoefficient, duration / directWork(n));
+            else
+                treeCoefficient = smooth(treeCoefficient, duration / treeWork(n));
+        }
+        if (direct != lastDirect)
+            stepsSinceProbe = 0;
+        else
+            stepsSinceProbe++;
+        lastDirect = direct;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The method is chosen like for all bodies, without measuring the time, as the costs of a subset do not fit the
+     * cost coefficients.
+     */
+    @Override
+    public void accumulateAccelerations(BodyStore store, int[] bodies, int count, ParallelLoop parallelLoop) {
+        if (count == store.size()) {
+            accumulateAccelerations(store, parallelLoop);
+            return;
+        }
+        if (mode == Mode.MULTIPOLE)
+            multipoleSolver.accumulateAccelerations(store, bodies, count, parallelLoop);
+        else if (mode == Mode.PARTICLE_MESH)
+            particleMeshSolver.accumulateAccelerations(store, bodies, count, parallelLoop);
+        else if (preferDirect(store.size()))
+            directSummation.accumulateAccelerations(store, bodies, count, parallelLoop);
+        else
+            tree.accumulateAccelerations(store, bodies, count, parallelLoop);
+    }
+
+    /**
+     * Returns the number of bodies above which the tree is expected to be faster than direct summation.
+     *
+     * @return The measured crossover or {@link #DEFAULT_CROSSOVER} if the costs of both methods are not known yet.
+     */
+    public int getCrossover() {
+        if (treeCoefficient == 0 || directCoefficient == 0)
+            return DEFAULT_CROSSOVER;
+        int n = 2;
+        while (n < Integer.MAX_VALUE / 2 && directCoefficient * directWork(n) < treeCoefficient * treeWork(n)) {
+            n *= 2;
+        }
+        int low = n / 2, high = n;
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (directCoefficient * directWork(middle) < treeCoefficient * treeWork(middle))
+                low = middle;
+            else
+                high = middle;
+        }
+        return high;
+    }
+
+    /**
+     * Returns whether the last step used direct summation.
+     *
+     * @return true if the last step used direct summation. false if it used the tree.
+     */
+    public boolean isLastDirect() {
+        return lastDirect;
+    }
+
+    /**
+     * Getter for multipoleSolver.
+     *
+     * @return The {@link FastMultipoleSolver} used in {@link Mode#MULTIPOLE}.
+     */
+    public FastMultipoleSolver getMultipoleSolver() {
+        return multipoleSolver;
+    }
+
+    /**
+     * Getter for particleMeshSolver.
+     *
+     * @return The {@link ParticleMeshSolver} used in {@link Mode#PARTICLE_MESH}.
+     */
+    public ParticleMeshSolver getParticleMeshSolver() {
+        return particleMeshSolver;
+    }
+
+    /**
+     * Getter for mode.
+     *
+     * @return The methods the solver is restricted to.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Setter for mode.
+     *
+     * @param mode The methods the solver shall be restricted to.
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    @Override
+    public double getSoftening() {
+        return directSummation.getSoftening();
+    }
+
+    /**
+     * Sets the Plummer softening length of all methods, so switching between them does not change the force law.
+     *
+     * @param softening The softening length in AU, zero for Newton's law.
+     * @throws IllegalArgumentException If softening is negative or not finite.
+     */
+    @Override
+    public void setSoftening(double softening) {
+        directSummation.setSoftening(softening);
+        tree.setSoftening(softening);
+        multipoleSolver.setSoftening(softening);
+        particleMeshSolver.setSoftening(softening);
+    }
+
+    /**
+     * Decides which method to use for the given number of bodies.
+     *
+     * @param n The number of bodies.
+     * @return true to use direct summation. false to use the tree.
+     */
+    private boolean chooseDirect(int n) {
+        if (mode != Mode.AUTOMATIC)
+            return mode == Mode.DIRECT;
+        if (treeCoefficient == 0 || directCoefficient == 0) {
+            // Measure the unknown method if it may be competitive.
+            if (treeCoefficient == 0 && directCoefficient == 0)
+                return n <= DEFAULT_CROSSOVER;
+            if (treeCoefficient == 0)
+                return false;
+            return n <= 2 * DEFAULT_CROSSOVER;
+        }
+
+        double directCosts = directCoefficient * directWork(n);
+        double treeCosts = treeCoefficient * treeWork(n);
+        boolean direct = directCosts < treeCosts;
+        if (stepsSinceProbe >= PROBE_INTERVAL) {
+            double ratio = direct ? treeCosts / directCosts : directCosts / treeCosts;
+            if (ratio < PROBE_LIMIT)
+                return !lastDirect;
+        }
+        return direct;
+    }
+
+    /**
+     * Decides which method is expected to be cheaper for the given number of bodies without measuring the other one.
+     *
+     * @param n The number of bodies.
+     * @return true if direct summation is preferred. false if the tree is preferred.
+     */
+    private boolean preferDirect(int n) {
+        if (mode != Mode.AUTOMATIC)
+            return mode == Mode.DIRECT;
+        if (treeCoefficient == 0 || directCoefficient == 0)
+            return n <= DEFAULT_CROSSOVER;
+        return directCoefficient * directWork(n) < treeCoefficient * treeWork(n);
+    }
+
+    /**
+     * Returns the amount of work of direct summation.
+     *
+     * @param n The number of bodies.
+     * @return The number of pairs.
+     */
+    private static double directWork(int n) {
+        return n * (n - 1.0) / 2;
+    }
+
+    /**
+     * Returns the amount of work of the tree.
+     *
+     * @param n The number of bodies.
+     * @return N * log2(N).
+     */
+    private static double treeWork(int n) {
+        return n * Math.max(1, Math.log(n) / Math.log(2));
+    }
+
+    /**
+     * Adds a measurement to a cost coefficient.
+     *
+     * @param coefficient The current coefficient or zero if not measured yet.
+     * @param measurement The new measurement.
+     * @return The new coefficient.
+     */
+    private static double smooth(double coefficient, double measurement) {
+        return coefficient == 0 ? measurement : coefficient + SMOOTHING * (measurement - coefficient);
+    }
+}
@@ -0,0 +1,2269 @@
+package gravitysandbox.physics;
+
+import gravitysandbox.util.RadixSort;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The double precision OcTree used by the Barnes-Hut-Algorithm.
+ * <p>
+ * The tree is built as a linear octree: every body gets a 63 bit Morton key (Z-order key) by interleaving the bits of
+ * its quantized coordinates, the bodies are sorted by these keys and the nodes are laid out by one pass over the sorted
+ * keys. The bodies of every node form a contiguous range of the sorted order, so bodies which are close in space are
+ * also close in memory. The sorted positions and masses are copied into the tree.
+ * <p>
+ * In contrast to {@link OcTree} the nodes are not objects but indices into primitive arrays, which are kept and
+ * reused by every following build. They only grow when the number of bodies or nodes exceeds their capacity. The loop
+ * bodies handed to the {@link ParallelLoop} are created once as well, so building, refitting and walking the tree do
+ * not create any objects in steady state.
+ * <p>
+ * Once built, the tree is only read by the walks, so the accelerations of different bodies may be calculated by
+ * several threads at the same time.
+ * <p>
+ * Instead of walking the tree once per body, the walks may be done once per group of neighbouring bodies. Such a
+ * group walk collects an {@link InteractionList} of the nodes which are far enough away from the whole group and of
+ * the bodies close to it, which is then evaluated for every body of the group. The approximated nodes of a group may
+ * be evaluated in single precision, while the bodies close to the group are always summed up in double precision.
+ * <p>
+ * Between two steps the bodies of a group move by a tiny fraction of the distances to the nodes it approximates, so
+ * the group walk may reuse the interaction list of every group for several steps. Such a list is collected with an
+ * opening angle reduced by a margin and only keeps the indices of its nodes and leaves, whose moments are refreshed
+ * by every refit. Every node accumulates the displacement of its center of mass. A list is collected again once the
+ * displacement of the group's bodies and of an approximated node since the collection may have used up the margin,
+ * so every approximated node still fulfils the opening criterion. Rebuilding the tree invalidates all lists.
+ * <p>
+ * Between two steps most bodies stay within their cell, so {@link #updateTree(BodyStore, ParallelLoop)} keeps the
+ * structure of the tree and only refits it: positions, masses and centers of mass are recalculated in place and every
+ * node gets a loose extent that contains all of its bodies, even those which left the cell. A full rebuild only
+ * happens when too many bodies moved beyond the loose bounds of their leaf.
+ * <p>
+ * Every walk records the number of interactions of every body. With more than one thread the next walk splits the
+ * bodies, or the groups, into contiguous cost zones of the sorted order with equal predicted work instead of chunks of
+ * equal size, as bodies in dense regions interact with far more nodes than those at the edge. There are several
+ * zones per thread, so the work stealing of the pool evens out the zones whose costs changed since the last walk.
+ * <p>
+ * The accelerations may also be calculated for a subset of the bodies only, which walks the tree once per body of the
+ * subset.
+ * <p>
+ * Besides the accelerations, the tree finds the pairs of bodies closer than the sum of their encounter radii, so
+ * integrators can treat close encounters separately.
+ * <p>
+ * Test particles of the store are not inserted, so the tree of M sources is built in O(M log M). After the walks of
+ * the sources every test particle walks the tree on its own, which adds O(T log M) and needs no synchronization.
+ * <p>
+ * The arrays describing the bodies and nodes are package-private, so the {@link FastMultipoleSolver} and the
+ * {@link ParticleMeshSolver} can reuse the decomposition without copying it. They must only be read.
+ *
+ * @version 1.17
+ * @since 1.1
+ */
+public class BarnesHutTree implements ForceSolver {
+
+    /**
+     * The default Theta used by the Barnes-Hut-Algorithm
+     */
+    public static final double DEFAULT_THETA = 1;
+
+    /**
+     * The number of bits per coordinate within a Morton key, which is also the maximum depth of the tree.
+     */
+    private static final int MAX_LEVEL = 21;
+
+    /**
+     * The default maximum number of bodies in a leaf above the maximum depth.
+     */
+    public static final int DEFAULT_LEAF_CAPACITY = 8;
+
+    /**
+     * The level at which the tree is split into subtrees which are built concurrently.
+     */
+    private static final int SPLIT_LEVEL = 2;
+
+    /**
+     * The maximum number of subtrees, i.e. the number of nodes at the split level.
+     */
+    private static final int MAX_SUBTREES = 1 << (3 * SPLIT_LEVEL);
+
+    /**
+     * The marker for nodes which do not belong to a subtree.
+     */
+    private static final int TOP = -1;
+
+    /**
+     * The shift extracting the index of the subtree from a Morton key.
+     */
+    private static final int SUBTREE_SHIFT = 3 * (MAX_LEVEL - SPLIT_LEVEL);
+
+    /**
+     * The default factor by which a leaf may grow before its bodies count as crossed.
+     */
+    public static final double DEFAULT_LOOSENESS = 1.5;
+
+    /**
+     * The default fraction of crossed bodies above which the tree is rebuilt.
+     */
+    public static final double DEFAULT_REBUILD_THRESHOLD = 0.05;
+
+    /**
+     * The loop used by builds on the calling thread.
+     */
+    private static final ParallelLoop SERIAL_LOOP = new ParallelLoop(1);
+
+    /**
+     * The default maximum number of bodies in a group sharing one interaction list.
+     */
+    public static final int DEFAULT_GROUP_SIZE = 32;
+
+    /**
+     * The default fraction by which the opening radius is enlarged when collecting a reused interaction list.
+     */
+    public static final double DEFAULT_REUSE_MARGIN = 0.1;
+
+    /**
+     * The number of cost zones per thread.
+     */
+    private static final int ZONES_PER_THREAD = 4;
+
+    /**
+     * The number of nodes reserved by a new tree.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The {@link BodyStore} the tree was built from.
+     */
+    private BodyStore store;
+
+    /**
+     * The modification count of store when the tree was built.
+     */
+    private int storeModificationCount;
+
+    /**
+     * The maximum number of bodies in a leaf above the maximum depth.
+     */
+    private int leafCapacity;
+
+    /**
+     * A flag showing whether the next update has to rebuild the tree because its settings changed.
+     */
+    private boolean rebuildRequired;
+
+    /**
+     * The opening angle: a node is approximated if its diagonal divided by its distance is less than theta.
+     */
+    private double theta;
+
+    /**
+     * The Plummer softening length in AU.
+     */
+    private double softening;
+
+    /**
+     * The squared softening length, added to the squared distance of every pair.
+     */
+    private double softening2;
+
+    /**
+     * A flag showing whether the nodes carry quadrupole moments in addition to their mass and center of mass.
+     */
+    private boolean quadrupole;
+
+    /**
+     * A flag showing whether the accelerations are calculated by one walk per group instead of one walk per body.
+     */
+    private boolean groupWalk;
+
+    /**
+     * A flag showing whether the group walk evaluates the approximated nodes in single precision.
+     */
+    private boolean mixedPrecision;
+
+    /**
+     * The maximum number of bodies in a group sharing one interaction list.
+     */
+    private int groupSize;
+
+    /**
+     * The number of groups.
+     */
+    private int groupCount;
+
+    /**
+     * The nodes forming the groups: the largest nodes holding at most groupSize bodies and all larger leaves.
+     */
+    private int[] groups;
+
+    /**
+     * A flag showing whether groups matches the current structure of the tree.
+     */
+    private boolean groupsValid;
+
+    /**
+     * A flag showing whether the group walk reuses the interaction lists of the groups across steps.
+     */
+    private boolean reuseLists;
+
+    /**
+     * The fraction by which the opening radius is enlarged when collecting a reused interaction list.
+     */
+    private double reuseMargin;
+
+    /**
+     * The reused interaction lists of the groups or null if not collected yet.
+     */
+    private CachedList[] cachedLists;
+
+    /**
+     * The generation of the reused interaction lists. Lists of an older generation are invalid.
+     */
+    private int listGeneration;
+
+    /**
+     * The number of interaction lists collected by the last walk instead of being reused.
+     */
+    private final AtomicInteger collectedLists = new AtomicInteger();
+
+    /**
+     * The coordinates of every body in sorted order when the reused list of its group was collected, three
+     * consecutive entries (x, y and z) per body.
+     */
+    private double[] listReference;
+
+    /**
+     * A flag showing whether the walks are split into cost zones of equal predicted work.
+     */
+    private boolean costZones;
+
+    /**
+     * The number of interactions of every body of the store during its last walk, zero if it was not walked yet.
+     */
+    private int[] interactions;
+
+    /**
+     * The prefix sums of the predicted work of the bodies or groups in sorted order, one more entry than units.
+     */
+    private long[] predictedWork;
+
+    /**
+     * The number of cost zones of the current walk.
+     */
+    private int zoneCount;
+
+    /**
+     * The first body or group of every cost zone followed by the end of the last zone.
+     */
+    private int[] zoneStart;
+
+    /**
+     * The loop body walking the tree for the bodies or groups of one cost zone.
+     */
+    private final ParallelLoop.Item zoneTask = this::walkZone;
+
+    /**
+     * A flag showing whether the tree is refitted instead of rebuilt where possible.
+     */
+    private boolean incremental;
+
+    /**
+     * The factor by which the half edge length of a leaf may be exceeded before a body counts as crossed.
+     */
+    private double looseness;
+
+    /**
+     * The fraction of crossed bodies above which the tree is rebuilt.
+     */
+    private double rebuildThreshold;
+
+    /**
+     * The number of crossed bodies per subtree, the last entry holding those above the split level.
+     */
+    private int[] crossedBodies;
+
+    /**
+     * The number of bodies in the tree.
+     */
+    int size;
+
+    /**
+     * The Morton keys of the bodies in sorted order.
+     */
+    private long[] keys;
+
+    /**
+     * The indices of the bodies within the store in sorted order.
+     */
+    int[] order;
+
+    /**
+     * The buffer used for sorting the keys.
+     */
+    private long[] keyBuffer;
+
+    /**
+     * The buffer used for sorting the indices.
+     */
+    private int[] orderBuffer;
+
+    /**
+     * The buffers used for counting the radix sort buckets, one per subtree.
+     */
+    private int[][] radixCounts;
+
+    /**
+     * The {@link ParallelLoop} used by the last build.
+     */
+    private ParallelLoop parallelLoop;
+
+    /**
+     * The loop body calculating the bounding boxes of the blocks.
+     */
+    private final ParallelLoop.Item blockBoundsTask = this::calculateBlockBounds;
+
+    /**
+     * The loop body calculating the Morton keys.
+     */
+    private final ParallelLoop.Range keyTask = this::calculateKeys;
+
+    /**
+     * The loop body counting the bodies of the blocks per subtree.
+     */
+    private final ParallelLoop.Item countBlockTask = this::countBlock;
+
+    /**
+     * The loop body moving the bodies of the blocks to their subtrees.
+     */
+    private final ParallelLoop.Item scatterBlockTask = this::scatterBlock;
+
+    /**
+     * The loop body sorting the subtrees.
+     */
+    private final ParallelLoop.Item sortSubtreeTask = this::sortSubtree;
+
+    /**
+     * The loop body copying the positions and masses from the store.
+     */
+    private final ParallelLoop.Range copyBodiesTask = this::copyBodies;
+
+    /**
+     * The loop body counting the nodes of the subtrees.
+     */
+    private final ParallelLoop.Item countSubtreeTask = this::countSubtree;
+
+    /**
+     * The loop body creating the nodes of the subtrees.
+     */
+    private final ParallelLoop.Item buildSubtreeTask = this::buildSubtree;
+
+    /**
+     * The loop body calculating the mass distribution of the subtrees.
+     */
+    private final ParallelLoop.Item massSubtreeTask = this::calculateSubtreeMassDistribution;
+
+    /**
+     * The accumulators used by the walks, one per thread.
+     */
+    private final ThreadLocal<ForceAccumulator> accumulators = ThreadLocal.withInitial(ForceAccumulator::new);
+
+    /**
+     * The interaction lists used by the group walks, one per thread.
+     */
+    private final ThreadLocal<InteractionList> interactionLists = ThreadLocal.withInitial(InteractionList::new);
+
+    /**
+     * The loop body walking the tree once per body.
+     */
+    private final ParallelLoop.Range bodyWalkTask = this::accumulateAccelerations;
+
+    /**
+     * The loop body walking the tree once per group.
+     */
+    private final ParallelLoop.Range groupWalkTask = this::accumulateGroupAccelerations;
+
+    /**
+     * The indices of the bodies of the store inserted into the tree, i.e. all bodies except the test particles.
+     */
+    private int[] sources;
+
+    /**
+     * The indices of the test particles of the store.
+     */
+    int[] testParticles;
+
+    /**
+     * The number of test particles of the store.
+     */
+    int testParticleCount;
+
+    /**
+     * The loop body walking the tree once per test particle.
+     */
+    private final ParallelLoop.Range testParticleTask = this::accumulateTestParticleAccelerations;
+
+    /**
+     * The position of every source of the store within the sorted order and -1 for every test particle, valid during
+     * the walks for a subset.
+     */
+    private int[] rank;
+
+    /**
+     * The indices of the bodies of the current walk for a subset.
+     */
+    private int[] subset;
+
+    /**
+     * The loop body walking the tree once per body of a subset.
+     */
+    private final ParallelLoop.Range subsetWalkTask = this::accumulateSubsetAccelerations;
+
+    /**
+     * The x coordinate of the lower corner of the bounding cube used for the Morton keys.
+     */
+    private double originX;
+
+    /**
+     * The y coordinate of the lower corner of the bounding cube used for the Morton keys.
+     */
+    private double originY;
+
+    /**
+     * The z coordinate of the lower corner of the bounding cube used for the Morton keys.
+     */
+    private double originZ;
+
+    /**
+     * The factor converting distances to the lower corner into quantized coordinates.
+     */
+    private double keyScale;
+
+    /**
+     * The number of blocks the bodies are split into for the bounding box and the bucket counts.
+     */
+    private int blockCount;
+
+    /**
+     * The bounding boxes of the blocks, six consecutive entries (minimum and maximum of x, y and z) per block.
+     */
+    private double[] blockBounds;
+
+    /**
+     * The number of bodies per block and subtree, MAX_SUBTREES consecutive entries per block.
+     */
+    private int[] blockCounts;
+
+    /**
+     * The position of the first body of every subtree within the sorted order.
+     */
+    private int[] bucketStart;
+
+    /**
+     * The number of nodes above the split level. These nodes have the lowest indices.
+     */
+    private int topCount;
+
+    /**
+     * The number of subtrees built concurrently.
+     */
+    private int subtreeCount;
+
+    /**
+     * The root nodes of the subtrees.
+     */
+    private int[] subtreeRoot;
+
+    /**
+     * The index of the first node of every subtree below its root.
+     */
+    private int[] subtreeStart;
+
+    /**
+     * The index of the next node to be created in every subtree.
+     */
+    private int[] subtreeNext;
+
+    /**
+     * The x coordinates of the bodies in sorted order.
+     */
+    double[] bodyX;
+
+    /**
+     * The y coordinates of the bodies in sorted order.
+     */
+    double[] bodyY;
+
+    /**
+     * The z coordinates of the bodies in sorted order.
+     */
+    double[] bodyZ;
+
+    /**
+     * The masses of the bodies in sorted order.
+     */
+    double[] bodyMass;
+
+    /**
+     * The number of used nodes. The root node has the index 0.
+     */
+    int nodeCount;
+
+    /**
+     * The position of the first body of a node within the sorted order.
+     */
+    int[] firstBody;
+
+    /**
+     * The number of bodies within a node and all its sub nodes.
+     */
+    int[] numberOfBodies;
+
+    /**
+     * The index of the first sub node. The sub nodes of a node are stored consecutively.
+     */
+    int[] firstChild;
+
+    /**
+     * The number of sub nodes. Zero for leaves.
+     */
+    int[] childCount;
+
+    /**
+     * The x coordinates of the center points.
+     */
+    double[] centerX;
+
+    /**
+     * The y coordinates of the center points.
+     */
+    double[] centerY;
+
+    /**
+     * The z coordinates of the center points.
+     */
+    double[] centerZ;
+
+    /**
+     * Half of the edge length of the nodes.
+     */
+    private double[] halfSize;
+
+    /**
+     * Half of the edge length of the loose cubes around the center points which contain all bodies of the nodes.
+     */
+    double[] extent;
+
+    /**
+     * The accumulated displacement of the center of mass of every node, summed up by the refits while interaction
+     * lists are reused.
+     */
+    private double[] drift;
+
+    /**
+     * The squared distance from the center of mass beyond which a node is approximated. It is calculated with the
+     * mass distribution from the diagonal of the loose node divided by theta, so the walks neither take a square
+     * root nor divide to decide whether a node is opened.
+     */
+    private double[] openingRadius2;
+
+    /**
+     * The sum of masses from all bodies inside a node and all its sub nodes.
+     */
+    private double[] mass;
+
+    /**
+     * The x coordinates of the centers of mass.
+     */
+    double[] centerOfMassX;
+
+    /**
+     * The y coordinates of the centers of mass.
+     */
+    double[] centerOfMassY;
+
+    /**
+     * The z coordinates of the centers of mass.
+     */
+    double[] centerOfMassZ;
+
+    /**
+     * The xx components of the traceless quadrupole tensors around the centers of mass.
+     */
+    private double[] quadXX;
+
+    /**
+     * The xy components of the traceless quadrupole tensors around the centers of mass.
+     */
+    private double[] quadXY;
+
+    /**
+     * The xz components of the traceless quadrupole tensors around the centers of mass.
+     */
+    private double[] quadXZ;
+
+    /**
+     * The yy components of the traceless quadrupole tensors around the centers of mass.
+     */
+    private double[] quadYY;
+
+    /**
+     * The yz components of the traceless quadrupole tensors around the centers of mass.
+     */
+    private double[] quadYZ;
+
+    /**
+     * The zz components of the traceless quadrupole tensors around the centers of mass.
+     */
+    private double[] quadZZ;
+
+    /**
+     * Creates a new empty tree.
+     */
+    public BarnesHutTree() {
+        keys = new long[0];
+        order = new int[0];
+        rank = new int[0];
+        sources = new int[0];
+        testParticles = new int[0];
+        interactions = new int[0];
+        predictedWork = new long[0];
+        zoneStart = new int[0];
+        costZones = true;
+        reuseMargin = DEFAULT_REUSE_MARGIN;
+        cachedLists = new CachedList[0];
+        listReference = new double[0];
+        keyBuffer = new long[0];
+        orderBuffer = new int[0];
+        radixCounts = new int[MAX_SUBTREES][256];
+        blockBounds = new double[0];
+        blockCounts = new int[0];
+        bucketStart = new int[MAX_SUBTREES + 1];
+        subtreeRoot = new int[MAX_SUBTREES];
+        crossedBodies = new int[MAX_SUBTREES + 1];
+        leafCapacity = DEFAULT_LEAF_CAPACITY;
+        theta = DEFAULT_THETA;
+        groupSize = DEFAULT_GROUP_SIZE;
+        groups = new int[INITIAL_CAPACITY];
+        incremental = true;
+        looseness = DEFAULT_LOOSENESS;
+        rebuildThreshold = DEFAULT_REBUILD_THRESHOLD;
+        subtreeStart = new int[MAX_SUBTREES];
+        subtreeNext = new int[MAX_SUBTREES];
+        bodyX = new double[0];
+        bodyY = new double[0];
+        bodyZ = new double[0];
+        bodyMass = new double[0];
+
+        firstBody = new int[INITIAL_CAPACITY];
+        numberOfBodies = new int[INITIAL_CAPACITY];
+        firstChild = new int[INITIAL_CAPACITY];
+        childCount = new int[INITIAL_CAPACITY];
+        centerX = new double[INITIAL_CAPACITY];
+        centerY = new double[INITIAL_CAPACITY];
+        centerZ = new double[INITIAL_CAPACITY];
+        halfSize = new double[INITIAL_CAPACITY];
+        extent = new double[INITIAL_CAPACITY];
+        openingRadius2 = new double[INITIAL_CAPACITY];
+        drift = new double[INITIAL_CAPACITY];
+        mass = new double[INITIAL_CAPACITY];
+        centerOfMassX = new double[INITIAL_CAPACITY];
+        centerOfMassY = new double[INITIAL_CAPACITY];
+        centerOfMassZ = new double[INITIAL_CAPACITY];
+        quadXX = new double[INITIAL_CAPACITY];
+        quadXY = new double[INITIAL_CAPACITY];
+        quadXZ = new double[INITIAL_CAPACITY];
+        quadYY = new double[INITIAL_CAPACITY];
+        quadYZ = new double[INITIAL_CAPACITY];
+        quadZZ = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Generates the tree for all bodies of the given store within their bounding cube on the calling thread.
+     *
+     * @param store The {@link BodyStore} containing the bodies.
+     */
+    public void buildTree(BodyStore store) {
+        buildTree(store, SERIAL_LOOP);
+    }
+
+    /**
+     * Generates the tree for all bodies of the given store within their bounding cube.
+     * <p>
+     * Every phase of the build runs in parallel: the bounding box is a reduction over blocks of bodies, the bodies are
+     * distributed to the subtrees below the split level by their key prefix, every subtree is sorted and laid out on its
+     * own and the nodes above the split level are created in between. The node ranges of the subtrees are reserved
+     * by counting their nodes first.
+     *
+     * @param store        The {@link BodyStore} containing the bodies.
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    public void buildTree(BodyStore store, ParallelLoop parallelLoop) {
+        this.store = store;
+        this.parallelLoop = parallelLoop;
+        storeModificationCount = store.getModificationCount();
+        rebuildRequired = false;
+        groupsValid = false;
+        nodeCount = 0;
+        topCount = 0;
+        subtreeCount = 0;
+        collectSources(store);
+        if (size == 0)
+            return;
+        if (keys.length < size)
+            growBodies(Math.max(size, 2 * keys.length));
+
+        blockCount = Math.max(1, Math.min(4 * parallelLoop.getParallelism(),
+                size / parallelLoop.getChunkSize()));
+        if (blockBounds.length < 6 * blockCount) {
+            blockBounds = new double[6 * blockCount];
+            blockCounts = new int[MAX_SUBTREES * blockCount];
+        }
+
+        parallelLoop.forEach(blockCount, blockBoundsTask);
+        double minX = blockBounds[0], minY = blockBounds[1], minZ = blockBounds[2];
+        double maxX = blockBounds[3], maxY = blockBounds[4], maxZ = blockBounds[5];
+        for (int block = 1; block < blockCount; block++) {
+            minX = Math.min(minX, blockBounds[6 * block]);
+            minY = Math.min(minY, blockBounds[6 * block + 1]);
+            minZ = Math.min(minZ, blockBounds[6 * block + 2]);
+            maxX = Math.max(maxX, blockBounds[6 * block + 3]);
+            maxY = Math.max(maxY, blockBounds[6 * block + 4]);
+            maxZ = Math.max(maxZ, blockBounds[6 * block + 5]);
+        }
+        double half = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) / 2;
+        double x = (minX + maxX) / 2, y = (minY + maxY) / 2, z = (minZ + maxZ) / 2;
+
+        // Quantize every coordinate to MAX_LEVEL bits relative to the bounding cube.
+        originX = x - half;
+        originY = y - half;
+        originZ = z - half;
+        keyScale = half > 0 ? (1 << MAX_LEVEL) / (2 * half) : 0;
+        parallelLoop.forRange(0, size, keyTask);
+
+        distributeToSubtrees();
+        parallelLoop.forEach(MAX_SUBTREES, sortSubtreeTask);
+        parallelLoop.forRange(0, size, copyBodiesTask);
+
+        createNode(allocateNode(TOP), x, y, z, half, 0, size);
+        split(0, 0, TOP);
+        topCount = nodeCount;
+
+        parallelLoop.forEach(subtreeCount, countSubtreeTask);
+        for (int subtree = 0; subtree < subtreeCount; subtree++) {
+            subtreeStart[subtree] = nodeCount;
+            nodeCount += subtreeNext[subtree];
+            subtreeNext[subtree] = subtreeStart[subtree];
+        }
+        if (nodeCount > numberOfBodies.length)
+            growNodes(Math.max(nodeCount, 2 * numberOfBodies.length));
+        parallelLoop.forEach(subtreeCount, buildSubtreeTask);
+    }
+
+    /**
+     * Splits the bodies of the store into the sources inserted into the tree and the test particles.
+     *
+     * @param store The {@link BodyStore} containing the bodies.
+     */
+    private void collectSources(BodyStore store) {
+        int total = store.size();
+        if (sources.length < total) {
+            sources = new int[Math.max(total, 2 * sources.length)];
+            testParticles = new int[sources.length];
+            interactions = Arrays.copyOf(interactions, sources.length);
+        }
+        size = 0;
+        testParticleCount = 0;
+        for (int i = 0; i < total; i++) {
+            if (store.testParticle[i])
+                testParticles[testParticleCount++] = i;
+            else
+                sources[size++] = i;
+        }
+    }
+
+    /**
+     * Brings the tree up to date with the current positions and calculates its mass distribution.
+     * <p>
+     * If the tree is incremental and the bodies of the store were neither added nor removed since the last build, the
+     * tree is refitted. It is rebuilt if this is not possible or if too many bodies crossed the loose bounds of their
+     * leaf.
+     *
+     * @param store        The {@link BodyStore} containing the bodies.
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    public void updateTree(BodyStore store, ParallelLoop parallelLoop) {
+        if (incremental && !rebuildRequired && nodeCount > 0 && store == this.store
+                && store.getModificationCount() == storeModificationCount) {
+            this.parallelLoop = parallelLoop;
+            refitTree();
+            if (getCrossedBodies() <= rebuildThreshold * size)
+                return;
+        }
+        buildTree(store, parallelLoop);
+        calculateMassDistribution();
+    }
+
+    /**
+     * Copies the current positions and masses into the tree and recalculates the mass distribution and the loose
+     * extents without changing the structure of the tree.
+     */
+    public void refitTree() {
+        parallelLoop.forRange(0, size, copyBodiesTask);
+        calculateMassDistribution();
+    }
+
+    /**
+     * Calculates the mass distribution and the loose extents in the tree.
+     * <p>
+     * Sub nodes are always created after their parent, so iterating the nodes backwards visits every sub node before
+     * its parent. The subtrees are handled concurrently before the nodes above the split level.
+     */
+    public void calculateMassDistribution() {
+        parallelLoop.forEach(subtreeCount, massSubtreeTask);
+        crossedBodies[MAX_SUBTREES] = calculateMassDistribution(0, topCount);
+    }
+
+    /**
+     * Calculates the mass distribution and the loose extents of one subtree.
+     *
+     * @param subtree The index of the subtree.
+     */
+    private void calculateSubtreeMassDistribution(int subtree) {
+        crossedBodies[subtree] = calculateMassDistribution(subtreeStart[subtree], subtreeNext[subtree]);
+    }
+
+    /**
+     * Calculates the mass distribution and the loose extents of the nodes within the given range of indices.
+     *
+     * @param from The index of the first node, inclusive.
+     * @param to   The index of the last node, exclusive.
+     * @return The number of bodies lying outside the loose bounds of their leaf.
+     */
+    private int calculateMassDistribution(int from, int to) {
+        int crossed = 0;
+        for (int node = to - 1; node >= from; node--) {
+            double m = 0, x = 0, y = 0, z = 0;
+            double e = halfSize[node];
+            if (childCount[node] == 0) {
+                double bound = looseness * halfSize[node];
+                for (int k = firstBody[node]; k < firstBody[node] + numberOfBodies[node]; k++) {
+                    m += bodyMass[k];
+                    x += bodyX[k] * bodyMass[k];
+                    y += bodyY[k] * bodyMass[k];
+                    z += bodyZ[k] * bodyMass[k];
+
+                    double distance = Math.max(Math.abs(bodyX[k] - centerX[node]),
+                            Math.max(Math.abs(bodyY[k] - centerY[node]), Math.abs(bodyZ[k] - centerZ[node])));
+                    e = Math.max(e, distance);
+                    if (distance > bound)
+                        crossed++;
+                }
+            } else {
+                for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+                    m += mass[child];
+                    x += centerOfMassX[child] * mass[child];
+                    y += centerOfMassY[child] * mass[child];
+                    z += centerOfMassZ[child] * mass[child];
+
+                    double distance = Math.max(Math.abs(centerX[child] - centerX[node]), Math.max(
+                            Math.abs(centerY[child] - centerY[node]), Math.abs(centerZ[child] - centerZ[node])));
+                    e = Math.max(e, distance + extent[child]);
+                }
+            }
+            mass[node] = m;
+            extent[node] = e;
+            double openingRadius = 2 * Math.sqrt(3) * e / theta;
+            openingRadius2[node] = openingRadius * openingRadius;
+            double previousX = centerOfMassX[node], previousY = centerOfMassY[node], previousZ = centerOfMassZ[node];
+            if (m != 0) {
+                centerOfMassX[node] = x / m;
+                centerOfMassY[node] = y / m;
+                centerOfMassZ[node] = z / m;
+            } else {
+                centerOfMassX[node] = centerX[node];
+                centerOfMassY[node] = centerY[node];
+                centerOfMassZ[node] = centerZ[node];
+            }
+            // Right after a build the previous center belongs to another node, which only overestimates the drift.
+            if (reuseLists) {
+                double dx = centerOfMassX[node] - previousX;
+                double dy = centerOfMassY[node] - previousY;
+                double dz = centerOfMassZ[node] - previousZ;
+                drift[node] += Math.sqrt(dx * dx + dy * dy + dz * dz);
+            }
+            if (quadrupole)
+                calculateQuadrupole(node);
+        }
+        return crossed;
+    }
+
+    /**
+     * Calculates the traceless quadrupole tensor of the given node around its center of mass.
+     * <p>
+     * The tensor is the sum of m * (3 * r * r^T - |r|^2 * I) over the bodies of a leaf. The tensors of the sub nodes
+     * are shifted to the center of mass of the node by the parallel axis theorem, treating every sub node like a body
+     * at its center of mass and adding its own tensor.
+     *
+     * @param node The index of the node.
+     */
+    private void calculateQuadrupole(int node) {
+        double xx = 0, xy = 0, xz = 0, yy = 0, yz = 0, zz = 0;
+        if (childCount[node] == 0) {
+            for (int k = firstBody[node]; k < firstBody[node] + numberOfBodies[node]; k++) {
+                double rx = bodyX[k] - centerOfMassX[node];
+                double ry = bodyY[k] - centerOfMassY[node];
+                double rz = bodyZ[k] - centerOfMassZ[node];
+                double r2 = rx * rx + ry * ry + rz * rz;
+                double m = bodyMass[k];
+                xx += m * (3 * rx * rx - r2);
+                xy += m * 3 * rx * ry;
+                xz += m * 3 * rx * rz;
+                yy += m * (3 * ry * ry - r2);
+                yz += m * 3 * ry * rz;
+                zz += m * (3 * rz * rz - r2);
+            }
+        } else {
+            for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+                double rx = centerOfMassX[child] - centerOfMassX[node];
+                double ry = centerOfMassY[child] - centerOfMassY[node];
+                double rz = centerOfMassZ[child] - centerOfMassZ[node];
+                double r2 = rx * rx + ry * ry + rz * rz;
+                double m = mass[child];
+                xx += quadXX[child] + m * (3 * rx * rx - r2);
+                xy += quadXY[child] + m * 3 * rx * ry;
+                xz += quadXZ[child] + m * 3 * rx * rz;
+                yy += quadYY[child] + m * (3 * ry * ry - r2);
+                yz += quadYZ[child] + m * 3 * ry * rz;
+                zz += quadZZ[child] + m * (3 * rz * rz - r2);
+            }
+        }
+        quadXX[node] = xx;
+        quadXY[node] = xy;
+        quadXZ[node] = xz;
+        quadYY[node] = yy;
+        quadYZ[node] = yz;
+        quadZZ[node] = zz;
+    }
+
+    /**
+     * Returns the number of bodies which were outside the loose bounds of their leaf at the last refit.
+     *
+     * @return The number of crossed bodies.
+     */
+    public int getCrossedBodies() {
+        int crossed = crossedBodies[MAX_SUBTREES];
+        for (int subtree = 0; subtree < subtreeCount; subtree++) {
+            crossed += crossedBodies[subtree];
+        }
+        return crossed;
+    }
+
+    /**
+     * Getter for leafCapacity.
+     *
+     * @return The maximum number of bodies in a leaf above the maximum depth.
+     */
+    public int getLeafCapacity() {
+        return leafCapacity;
+    }
+
+    /**
+     * Setter for leafCapacity. The tree is rebuilt by the next update.
+     * <p>
+     * The bodies of a leaf are summed up directly, so larger leaves trade a shallower tree with fewer nodes for more
+     * direct interactions.
+     *
+     * @param leafCapacity The new maximum number of bodies in a leaf above the maximum depth.
+     * @throws IllegalArgumentException if leafCapacity is less than 1.
+     */
+    public void setLeafCapacity(int leafCapacity) {
+        if (leafCapacity < 1)
+            throw new IllegalArgumentException("The leaf capacity has to be at least 1.");
+        this.leafCapacity = leafCapacity;
+        rebuildRequired = true;
+    }
+
+    /**
+     * Getter for theta.
+     *
+     * @return The opening angle.
+     */
+    public double getTheta() {
+        return theta;
+    }
+
+    /**
+     * Setter for theta. Takes effect with the next calculation of the mass distribution.
+     * <p>
+     * Larger values approximate more nodes and make the walks faster but less accurate. With quadrupole moments the
+     * same accuracy is reached with a larger opening angle.
+     *
+     * @param theta The new opening angle.
+     * @throws IllegalArgumentException if theta is not positive.
+     */
+    public void setTheta(double theta) {
+        if (!(theta > 0))
+            throw new IllegalArgumentException("Theta has to be positive.");
+        this.theta = theta;
+    }
+
+    /**
+     * Getter for quadrupole.
+     *
+     * @return true if the nodes carry quadrupole moments. false if only their mass and center of mass are used.
+     */
+    public boolean isQuadrupole() {
+        return quadrupole;
+    }
+
+    /**
+     * Setter for quadrupole. Takes effect with the next calculation of the mass distribution.
+     *
+     * @param quadrupole true to use quadrupole moments. false to use only the mass and center of mass of the nodes.
+     */
+    public void setQuadrupole(boolean quadrupole) {
+        this.quadrupole = quadrupole;
+    }
+
+    /**
+     * Getter for groupWalk.
+     *
+     * @return true if the tree is walked once per group. false if it is walked once per body.
+     */
+    public boolean isGroupWalk() {
+        return groupWalk;
+    }
+
+    /**
+     * Setter for groupWalk.
+     *
+     * @param groupWalk true to walk the tree once per group. false to walk it once per body.
+     */
+    public void setGroupWalk(boolean groupWalk) {
+        this.groupWalk = groupWalk;
+    }
+
+    /**
+     * Getter for reuseLists.
+     *
+     * @return true if the group walk reuses the interaction lists across steps. false if it collects them every step.
+     */
+    public boolean isReuseLists() {
+        return reuseLists;
+    }
+
+    /**
+     * Setter for reuseLists. Only the group walk reuses its interaction lists.
+     *
+     * @param reuseLists true to reuse the interaction lists across steps. false to collect them every step.
+     */
+    public void setReuseLists(boolean reuseLists) {
+        this.reuseLists = reuseLists;
+        listGeneration++;
+    }
+
+    /**
+     * Getter for reuseMargin.
+     *
+     * @return The fraction by which the opening radius is enlarged when collecting a reused interaction list.
+     */
+    public double getReuseMargin() {
+        return reuseMargin;
+    }
+
+    /**
+     * Setter for reuseMargin.
+     * <p>
+     * A larger margin lets the lists live longer, but approximates fewer nodes. With a margin of zero a list is
+     * collected again as soon as anything moved towards the limit of the opening criterion.
+     *
+     * @param reuseMargin The new fraction by which the opening radius is enlarged.
+     * @throws IllegalArgumentException if reuseMargin is negative or not finite.
+     */
+    public void setReuseMargin(double reuseMargin) {
+        if (!(reuseMargin >= 0) || Double.isInfinite(reuseMargin))
+            throw new IllegalArgumentException("The reuse margin has to be finite and not negative.");
+        this.reuseMargin = reuseMargin;
+        listGeneration++;
+    }
+
+    /**
+     * Returns the number of interaction lists the last group walk collected instead of reusing them.
+     *
+     * @return The number of collected lists, which is the number of groups without reuse.
+     */
+    public int getCollectedLists() {
+        return reuseLists && groupWalk ? collectedLists.get() : groupCount;
+    }
+
+    /**
+     * Getter for costZones.
+     *
+     * @return true if the walks are split into cost zones of equal predicted work. false for chunks of equal size.
+     */
+    public boolean isCostZones() {
+        return costZones;
+    }
+
+    /**
+     * Setter for costZones.
+     *
+     * @param costZones true to split the walks into cost zones of equal predicted work. false for chunks of equal
+     *                  size.
+     */
+    public void setCostZones(boolean costZones) {
+        this.costZones = costZones;
+    }
+
+    /**
+     * Returns the number of interactions of the given body during its last walk, which predicts the costs of its
+     * next walk.
+     *
+     * @param index The index of the body within the store.
+     * @return The number of nodes and bodies whose acceleration was added or zero if the body was not walked yet.
+     */
+    public int getInteractions(int index) {
+        return index < interactions.length ? interactions[index] : 0;
+    }
+
+    /**
+     * Getter for mixedPrecision.
+     *
+     * @return true if the group walk evaluates the approximated nodes in single precision. false if everything is
+     * evaluated in double precision.
+     */
+    public boolean isMixedPrecision() {
+        return mixedPrecision;
+    }
+
+    /**
+     * Setter for mixedPrecision. Only used by the group walk.
+     * <p>
+     * The monopole terms of the approximated nodes are calculated in single precision and summed up in double
+     * precision. Quadrupole terms and directly summed bodies stay in double precision.
+     *
+     * @param mixedPrecision true to evaluate the approximated nodes in single precision. false to evaluate everything
+     *                       in double precision.
+     */
+    public void setMixedPrecision(boolean mixedPrecision) {
+        this.mixedPrecision = mixedPrecision;
+    }
+
+    /**
+     * Getter for groupSize.
+     *
+     * @return The maximum number of bodies in a group sharing one interaction list.
+     */
+    public int getGroupSize() {
+        return groupSize;
+    }
+
+    /**
+     * Setter for groupSize.
+     * <p>
+     * Larger groups share more of the walk, but the interaction lists get longer, as they have to be valid for a
+     * larger volume.
+     *
+     * @param groupSize The new maximum number of bodies in a group sharing one interaction list.
+     * @throws IllegalArgumentException if groupSize is less than 1.
+     */
+    public void setGroupSize(int groupSize) {
+        if (groupSize < 1)
+            throw new IllegalArgumentException("The group size has to be at least 1.");
+        this.groupSize = groupSize;
+        groupsValid = false;
+    }
+
+    /**
+     * Getter for incremental.
+     *
+     * @return true if the tree is refitted where possible. false if it is rebuilt every time.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Setter for incremental.
+     *
+     * @param incremental true to refit the tree where possible. false to rebuild it every time.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Getter for looseness.
+     *
+     * @return The factor by which the half edge length of a leaf may be exceeded before a body counts as crossed.
+     */
+    public double getLooseness() {
+        return looseness;
+    }
+
+    /**
+     * Setter for looseness.
+     *
+     * @param looseness The new factor by which the half edge length of a leaf may be exceeded before a body counts as
+     *                  crossed.
+     * @throws IllegalArgumentException if looseness is less than 1.
+     */
+    public void setLooseness(double looseness) {
+        if (!(looseness >= 1))
+            throw new IllegalArgumentException("The looseness has to be at least 1.");
+        this.looseness = looseness;
+    }
+
+    /**
+     * Getter for rebuildThreshold.
+     *
+     * @return The fraction of crossed bodies above which the tree is rebuilt.
+     */
+    public double getRebuildThreshold() {
+        return rebuildThreshold;
+    }
+
+    /**
+     * Setter for rebuildThreshold.
+     *
+     * @param rebuildThreshold The new fraction of crossed bodies above which the tree is rebuilt.
+     * @throws IllegalArgumentException if rebuildThreshold is negative.
+     */
+    public void setRebuildThreshold(double rebuildThreshold) {
+        if (!(rebuildThreshold >= 0))
+            throw new IllegalArgumentException("The rebuild threshold must not be negative.");
+        this.rebuildThreshold = rebuildThreshold;
+    }
+
+    @Override
+    public double getSoftening() {
+        return softening;
+    }
+
+    @Override
+    public void setSoftening(double softening) {
+        if (!(softening >= 0) || Double.isInfinite(softening))
+            throw new IllegalArgumentException("The softening length has to be finite and not negative.");
+        this.softening = softening;
+        softening2 = softening * softening;
+    }
+
+    /**
+     * Reports every pair of bodies whose distance is less than the sum of their encounter radii, each pair once.
+     * <p>
+     * The tree has to be up to date with the store. It is walked once per body, skipping the nodes whose loose cube is
+     * farther away than the radius of the body plus the largest radius, and the nodes containing only bodies before
+     * the body in the sorted order, whose pairs were already tested. Test particles are not part of the tree, so they
+     * never form a pair.
+     *
+     * @param radius   The encounter radius of every body of the store in AU, indexed like the store.
+     * @param consumer The {@link PairConsumer} receiving the indices of both bodies within the store.
+     */
+    public void forEachClosePair(double[] radius, PairConsumer consumer) {
+        if (nodeCount == 0)
+            return;
+        double maxRadius = 0;
+        for (int k = 0; k < size; k++) {
+            maxRadius = Math.max(maxRadius, radius[order[k]]);
+        }
+        for (int k = 0; k < size - 1; k++) {
+            collectClosePairs(0, k, radius[order[k]] + maxRadius, radius, consumer);
+        }
+    }
+
+    /**
+     * Reports the pairs of the body at the given position of the sorted order with the bodies after it below the given
+     * node.
+     *
+     * @param node     The index of the node.
+     * @param target   The position of the body within the sorted order.
+     * @param reach    The radius of the body plus the largest radius.
+     * @param radius   The encounter radius of every body of the store.
+     * @param consumer The {@link PairConsumer} receiving the pairs.
+     */
+    private void collectClosePairs(int node, int target, double reach, double[] radius, PairConsumer consumer) {
+        int first = firstBody[node];
+        int last = first + numberOfBodies[node];
+        if (last <= target + 1)
+            return;
+        double x = bodyX[target], y = bodyY[target], z = bodyZ[target];
+        double dx = Math.max(0, Math.abs(centerX[node] - x) - extent[node]);
+        double dy = Math.max(0, Math.abs(centerY[node] - y) - extent[node]);
+        double dz = Math.max(0, Math.abs(centerZ[node] - z) - extent[node]);
+        if (dx * dx + dy * dy + dz * dz > reach * reach)
+            return;
+
+        if (childCount[node] == 0) {
+            int i = order[target];
+            for (int k = Math.max(first, target + 1); k < last; k++) {
+                int j = order[k];
+                double rx = bodyX[k] - x, ry = bodyY[k] - y, rz = bodyZ[k] - z;
+                double limit = radius[i] + radius[j];
+                if (rx * rx + ry * ry + rz * rz < limit * limit)
+                    consumer.accept(i, j);
+            }
+        } else {
+            for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+                collectClosePairs(child, target, reach, radius, consumer);
+            }
+        }
+    }
+
+    /**
+     * Receives the pairs of bodies found by {@link #forEachClosePair(double[], PairConsumer)}.
+     *
+     * @version 1.0
+     * @since 1.1
+     */
+    public interface PairConsumer {
+
+        /**
+         * Receives one close pair.
+         *
+         * @param first  The index of the first body within the store.
+         * @param second The index of the second body within the store.
+         */
+        void accept(int first, int second);
+    }
+
+    /**
+     * Brings the tree up to date with the given store and adds the gravitational acceleration of all other bodies to
+     * the acceleration of every body.
+     *
+     * @param store        The {@link BodyStore} containing the bodies.
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    @Override
+    public void accumulateAccelerations(BodyStore store, ParallelLoop parallelLoop) {
+        updateTree(store, parallelLoop);
+        accumulateAccelerations(parallelLoop);
+    }
+
+    /**
+     * Brings the tree up to date with the given store and adds the gravitational acceleration of all other bodies to
+     * the acceleration of the given bodies.
+     * <p>
+     * The tree always contains all sources. It is walked once per given body, as groups would mostly consist of bodies
+     * whose accelerations are not needed.
+     *
+     * @param store        The {@link BodyStore} containing the bodies.
+     * @param bodies       The indices of the bodies whose accelerations are calculated, each at most once.
+     * @param count        The number of used entries of bodies.
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    @Override
+    public void accumulateAccelerations(BodyStore store, int[] bodies, int count, ParallelLoop parallelLoop) {
+        if (count == store.size()) {
+            accumulateAccelerations(store, parallelLoop);
+            return;
+        }
+        updateTree(store, parallelLoop);
+        if (nodeCount == 0)
+            return;
+        if (rank.length < store.size())
+            rank = new int[Math.max(store.size(), 2 * rank.length)];
+        for (int k = 0; k < size; k++) {
+            rank[order[k]] = k;
+        }
+        for (int t = 0; t < testParticleCount; t++) {
+            rank[testParticles[t]] = -1;
+        }
+        subset = bodies;
+        parallelLoop.forRange(0, count, subsetWalkTask);
+        subset = null;
+    }
+
+    /**
+     * Adds the gravitational acceleration of all other bodies to the acceleration of every body of the store.
+     */
+    public void accumulateAccelerations() {
+        accumulateAccelerations(SERIAL_LOOP);
+    }
+
+    /**
+     * Adds the gravitational acceleration of all other bodies to the acceleration of every body of the store, split
+     * over the threads of the given loop by bodies or, in group walk mode, by groups.
+     * <p>
+     * With cost zones and more than one thread the bodies or groups are split by the interactions recorded by the
+     * last walk, otherwise into chunks of equal size.
+     *
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    public void accumulateAccelerations(ParallelLoop parallelLoop) {
+        if (groupWalk && !groupsValid) {
+            groupCount = 0;
+            if (nodeCount > 0)
+                collectGroups(0);
+            groupsValid = true;
+            listGeneration++;
+        }
+        if (groupWalk && reuseLists) {
+            if (cachedLists.length < groups.length)
+                cachedLists = Arrays.copyOf(cachedLists, groups.length);
+            if (listReference.length < 3 * size)
+                listReference = new double[3 * Math.max(size, bodyX.length)];
+            collectedLists.set(0);
+        }
+        int units = groupWalk ? groupCount : size;
+        if (costZones && parallelLoop.getParallelism() > 1 && units > 1) {
+            partitionZones(units, parallelLoop.getParallelism());
+            parallelLoop.forEach(zoneCount, zoneTask);
+        } else if (groupWalk) {
+            parallelLoop.forRange(0, groupCount, groupWalkTask);
+        } else {
+            parallelLoop.forRange(0, size, bodyWalkTask);
+        }
+        accumulateTestParticleAccelerations(parallelLoop);
+    }
+
+    /**
+     * Splits the bodies or groups into contiguous cost zones of equal predicted work.
+     * <p>
+     * The predicted work of a body is the number of interactions recorded by its last walk, but at least 1 for bodies
+     * which were not walked yet. The predicted work of a group is the sum over its bodies.
+     *
+     * @param units       The number of bodies or groups.
+     * @param parallelism The number of threads.
+     */
+    private void partitionZones(int units, int parallelism) {
+        if (predictedWork.length < units + 1)
+            predictedWork = new long[Math.max(units + 1, 2 * predictedWork.length)];
+        predictedWork[0] = 0;
+        for (int u = 0; u < units; u++) {
+            int from = groupWalk ? firstBody[groups[u]] : u;
+            int to = groupWalk ? from + numberOfBodies[groups[u]] : u + 1;
+            long work = 0;
+            for (int k = from; k < to; k++) {
+                work += Math.max(1, interactions[order[k]]);
+            }
+            predictedWork[u + 1] = predictedWork[u] + work;
+        }
+
+        zoneCount = Math.min(units, ZONES_PER_THREAD * parallelism);
+        if (zoneStart.length < zoneCount + 1)
+            zoneStart = new int[zoneCount + 1];
+        long total = predictedWork[units];
+        int u = 0;
+        for (int zone = 0; zone < zoneCount; zone++) {
+            long target = total * zone / zoneCount;
+            while (predictedWork[u] < target) {
+                u++;
+            }
+            zoneStart[zone] = u;
+        }
+        zoneStart[zoneCount] = units;
+    }
+
+    /**
+     * Walks the tree for the bodies or, in group walk mode, the groups of the given cost zone.
+     *
+     * @param zone The index of the cost zone.
+     */
+    private void walkZone(int zone) {
+        int from = zoneStart[zone], to = zoneStart[zone + 1];
+        if (from == to)
+            return;
+        if (groupWalk)
+            accumulateGroupAccelerations(from, to);
+        else
+            accumulateAccelerations(from, to);
+    }
+
+    /**
+     * Adds the gravitational acceleration of all other bodies to the acceleration of the bodies of the given range of
+     * groups, walking the tree once per group.
+     *
+     * @param from The index of the first group, inclusive.
+     * @param to   The index of the last group, exclusive.
+     */
+    public void accumulateGroupAccelerations(int from, int to) {
+        ForceAccumulator accumulator = accumulators.get();
+        InteractionList list = interactionLists.get();
+        for (int g = from; g < to; g++) {
+            int group = groups[g];
+            list.clear();
+            list.softening2 = softening2;
+            if (reuseLists)
+                gatherInteractions(g, list);
+            else
+                collectInteractions(0, group, list);
+            if (mixedPrecision)
+                list.prepareSingle(centerX[group], centerY[group], centerZ[group]);
+
+            for (int k = firstBody[group]; k < firstBody[group] + numberOfBodies[group]; k++) {
+                accumulator.reset();
+                if (mixedPrecision) {
+                    list.evaluateNodesSingle(accumulator,
+                            bodyX[k] - centerX[group], bodyY[k] - centerY[group], bodyZ[k] - centerZ[group]);
+                    list.evaluateBodies(accumulator, bodyX[k], bodyY[k], bodyZ[k]);
+                } else {
+                    list.evaluate(accumulator, bodyX[k], bodyY[k], bodyZ[k]);
+                }
+                if (quadrupole)
+                    list.evaluateQuadrupoles(accumulator, bodyX[k], bodyY[k], bodyZ[k]);
+                int i = order[k];
+                interactions[i] = accumulator.interactions;
+                store.ax[i] += accumulator.ax;
+                store.ay[i] += accumulator.ay;
+                store.az[i] += accumulator.az;
+            }
+        }
+    }
+
+    /**
+     * Appends the groups below the given node to groups.
+     *
+     * @param node The index of the node.
+     */
+    private void collectGroups(int node) {
+        if (numberOfBodies[node] <= groupSize || childCount[node] == 0) {
+            if (groupCount == groups.length)
+                groups = Arrays.copyOf(groups, 2 * groups.length);
+            groups[groupCount++] = node;
+        } else {
+            for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+                collectGroups(child);
+            }
+        }
+    }
+
+    /**
+     * Collects the interaction partners of a group below the given node.
+     * <p>
+     * A node is approximated if it does not share bodies with the group and the distance between its center of mass
+     * and the nearest point of the loose cube of the group is beyond its opening radius, so the decision holds for
+     * every body of the group. Leaves which can not be approximated contribute their bodies.
+     *
+     * @param node  The index of the node.
+     * @param group The index of the node forming the group.
+     * @param list  The {@link InteractionList} receiving the partners.
+     */
+    private void collectInteractions(int node, int group, InteractionList list) {
+        int first = firstBody[node];
+        int last = first + numberOfBodies[node];
+        int groupFirst = firstBody[group];
+        int groupLast = groupFirst + numberOfBodies[group];
+
+        if (last <= groupFirst || groupLast <= first) {
+            double dx = Math.max(0, Math.abs(centerOfMassX[node] - centerX[group]) - extent[group]);
+            double dy = Math.max(0, Math.abs(centerOfMassY[node] - centerY[group]) - extent[group]);
+            double dz = Math.max(0, Math.abs(centerOfMassZ[node] - centerZ[group]) - extent[group]);
+            if (dx * dx + dy * dy + dz * dz > openingRadius2[node]) {
+                list.addNode(node, centerOfMassX[node], centerOfMassY[node], centerOfMassZ[node], mass[node]);
+                if (quadrupole)
+                    list.setQuadrupole(quadXX[node], quadXY[node], quadXZ[node], quadYY[node], quadYZ[node],
+                            quadZZ[node]);
+                return;
+            }
+        }
+
+        if (childCount[node] == 0) {
+            for (int k = first; k < last; k++) {
+                list.addBody(k, bodyX[k], bodyY[k], bodyZ[k], bodyMass[k]);
+            }
+        } else {
+            for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+                collectInteractions(child, group, list);
+            }
+        }
+    }
+
+    /**
+     * Fills the given list with the current moments of the nodes and the current bodies of the leaves of the reused
+     * interaction list of a group, collecting the reused list first if it is invalid.
+     *
+     * @param g    The index of the group within groups.
+     * @param list The {@link InteractionList} receiving the partners.
+     */
+    private void gatherInteractions(int g, InteractionList list) {
+        int group = groups[g];
+        CachedList cached = cachedLists[g];
+        if (cached == null) {
+            cached = new CachedList();
+            cachedLists[g] = cached;
+        }
+        if (cached.generation != listGeneration || !isValid(group, cached)) {
+            cached.clear();
+            collectCachedInteractions(0, group, cached);
+            cached.generation = listGeneration;
+            for (int k = firstBody[group]; k < firstBody[group] + numberOfBodies[group]; k++) {
+                listReference[3 * k] = bodyX[k];
+                listReference[3 * k + 1] = bodyY[k];
+                listReference[3 * k + 2] = bodyZ[k];
+            }
+            collectedLists.incrementAndGet();
+        }
+
+        for (int i = 0; i < cached.nodeCount; i++) {
+            int node = cached.node[i];
+            list.addNode(node, centerOfMassX[node], centerOfMassY[node], centerOfMassZ[node], mass[node]);
+            if (quadrupole)
+                list.setQuadrupole(quadXX[node], quadXY[node], quadXZ[node], quadYY[node], quadYZ[node],
+                        quadZZ[node]);
+        }
+        for (int i = 0; i < cached.leafCount; i++) {
+            int leaf = cached.leaf[i];
+            for (int k = firstBody[leaf]; k < firstBody[leaf] + numberOfBodies[leaf]; k++) {
+                list.addBody(k, bodyX[k], bodyY[k], bodyZ[k], bodyMass[k]);
+            }
+        }
+    }
+
+    /**
+     * Checks whether every node approximated by the reused list of a group still fulfils the opening criterion for
+     * every body of the group.
+     * <p>
+     * The distance between a node and a body of the group shrank by at most the displacement of the body since the
+     * collection plus the drift of the node since the collection, so it is enough to compare both and the current
+     * opening radius with the distance to the loose cube of the group at the collection.
+     *
+     * @param group  The index of the node forming the group.
+     * @param cached The reused list of the group.
+     * @return true if the list may be reused. false if it has to be collected again.
+     */
+    private boolean isValid(int group, CachedList cached) {
+        double displacement2 = 0;
+        for (int k = firstBody[group]; k < firstBody[group] + numberOfBodies[group]; k++) {
+            double dx = bodyX[k] - listReference[3 * k];
+            double dy = bodyY[k] - listReference[3 * k + 1];
+            double dz = bodyZ[k] - listReference[3 * k + 2];
+            displacement2 = Math.max(displacement2, dx * dx + dy * dy + dz * dz);
+        }
+        double displacement = Math.sqrt(displacement2);
+        for (int i = 0; i < cached.nodeCount; i++) {
+            int node = cached.node[i];
+            if (drift[node] + Math.sqrt(openingRadius2[node]) > cached.limit[i] - displacement)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Collects the reused interaction list of a group below the given node like
+     * {@link #collectInteractions(int, int, InteractionList)}, but with the opening radius enlarged by the reuse
+     * margin, so the list stays valid while the bodies move.
+     * <p>
+     * Every approximated node is stored with its distance to the loose cube of the group plus its current drift, the
+     * limit checked by {@link #isValid(int, CachedList)}.
+     *
+     * @param node   The index of the node.
+     * @param group  The index of the node forming the group.
+     * @param cached The reused list receiving the nodes and leaves.
+     */
+    private void collectCachedInteractions(int node, int group, CachedList cached) {
+        int first = firstBody[node];
+        int last = first + numberOfBodies[node];
+        int groupFirst = firstBody[group];
+        int groupLast = groupFirst + numberOfBodies[group];
+
+        if (last <= groupFirst || groupLast <= first) {
+            double dx = Math.max(0, Math.abs(centerOfMassX[node] - centerX[group]) - extent[group]);
+            double dy = Math.max(0, Math.abs(centerOfMassY[node] - centerY[group]) - extent[group]);
+            double dz = Math.max(0, Math.abs(centerOfMassZ[node] - centerZ[group]) - extent[group]);
+            double distance2 = dx * dx + dy * dy + dz * dz;
+            if (distance2 > (1 + reuseMargin) * (1 + reuseMargin) * openingRadius2[node]) {
+                cached.addNode(node, Math.sqrt(distance2) + drift[node]);
+                return;
+            }
+        }
+
+        if (childCount[node] == 0) {
+            cached.addLeaf(node);
+        } else {
+            for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+                collectCachedInteractions(child, group, cached);
+            }
+        }
+    }
+
+    /**
+     * Adds the gravitational acceleration of all other bodies to the acceleration of the bodies within the given range
+     * of the sorted order.
+     * <p>
+     * Walking the bodies in sorted order lets consecutive walks visit mostly the same nodes.
+     *
+     * @param from The position of the first body within the sorted order, inclusive.
+     * @param to   The position of the last body within the sorted order, exclusive.
+     */
+    public void accumulateAccelerations(int from, int to) {
+        if (nodeCount == 0)
+            return;
+        ForceAccumulator accumulator = accumulators.get();
+        for (int k = from; k < to; k++) {
+            accumulator.reset();
+            accumulateAcceleration(0, k, bodyX[k], bodyY[k], bodyZ[k], accumulator);
+            int i = order[k];
+            interactions[i] = accumulator.interactions;
+            store.ax[i] += accumulator.ax;
+            store.ay[i] += accumulator.ay;
+            store.az[i] += accumulator.az;
+        }
+    }
+
+    /**
+     * Adds the gravitational acceleration of all other bodies to the acceleration of the bodies within the given range
+     * of the current subset.
+     *
+     * @param from The position of the first body within the subset, inclusive.
+     * @param to   The position of the last body within the subset, exclusive.
+     */
+    private void accumulateSubsetAccelerations(int from, int to) {
+        ForceAccumulator accumulator = accumulators.get();
+        for (int position = from; position < to; position++) {
+            int i = subset[position];
+            int k = rank[i];
+            accumulator.reset();
+            if (k < 0)
+                accumulateAcceleration(0, -1, store.x[i], store.y[i], store.z[i], accumulator);
+            else
+                accumulateAcceleration(0, k, bodyX[k], bodyY[k], bodyZ[k], accumulator);
+            interactions[i] = accumulator.interactions;
+            store.ax[i] += accumulator.ax;
+            store.ay[i] += accumulator.ay;
+            store.az[i] += accumulator.az;
+        }
+    }
+
+    /**
+     * Adds the gravitational acceleration of all sources to the acceleration of every test particle of the store. The
+     * tree has to be up to date with the store.
+     *
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    void accumulateTestParticleAccelerations(ParallelLoop parallelLoop) {
+        if (testParticleCount > 0)
+            parallelLoop.forRange(0, testParticleCount, testParticleTask);
+    }
+
+    /**
+     * Adds the gravitational acceleration of all sources to the acceleration of the test particles within the given
+     * range, walking the tree once per test particle.
+     * <p>
+     * A test particle is not part of the sorted order, so no node contains it and every node may be approximated.
+     *
+     * @param from The position of the first test particle, inclusive.
+     * @param to   The position of the last test particle, exclusive.
+     */
+    private void accumulateTestParticleAccelerations(int from, int to) {
+        if (nodeCount == 0)
+            return;
+        ForceAccumulator accumulator = accumulators.get();
+        for (int t = from; t < to; t++) {
+            int i = testParticles[t];
+            accumulator.reset();
+            accumulateAcceleration(0, -1, store.x[i], store.y[i], store.z[i], accumulator);
+            interactions[i] = accumulator.interactions;
+            store.ax[i] += accumulator.ax;
+            store.ay[i] += accumulator.ay;
+            store.az[i] += accumulator.az;
+        }
+    }
+
+    /**
+     * Returns the number of bodies in the tree, i.e. the sources of the store.
+     *
+     * @return The number of bodies.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds the gravitational acceleration acting from the given node on the target body.
+     *
+     * @param node        The index of the node.
+     * @param target      The position of the targeted body within the sorted order or -1 for a test particle.
+     * @param x           The x coordinate of the targeted body.
+     * @param y           The y coordinate of the targeted body.
+     * @param z           The z coordinate of the targeted body.
+     * @param accumulator The {@link ForceAccumulator} of the targeted body.
+     */
+    private void accumulateAcceleration(int node, int target, double x, double y, double z,
+                                        ForceAccumulator accumulator) {
+        int first = firstBody[node];
+        int last = first + numberOfBodies[node];
+        boolean containsTarget = target >= first && target < last;
+        // Leaves with a single body and the leaf of the target itself are always summed up directly.
+        if (childCount[node] == 0 && (last - first == 1 || containsTarget)) {
+            accumulateLeaf(node, target, x, y, z, accumulator);
+            return;
+        }
+
+        double dx = centerOfMassX[node] - x;
+        double dy = centerOfMassY[node] - y;
+        double dz = centerOfMassZ[node] - z;
+
+        // A node containing the target is always opened, as it would attract the target to itself.
+        if (!containsTarget && dx * dx + dy * dy + dz * dz > openingRadius2[node]) {
+            Physics.accumulatePointMass(accumulator, dx, dy, dz, mass[node], softening2);
+            if (quadrupole)
+                Physics.accumulateQuadrupole(accumulator, dx, dy, dz, quadXX[node], quadXY[node], quadXZ[node],
+                        quadYY[node], quadYZ[node], quadZZ[node]);
+        } else if (childCount[node] == 0) {
+            accumulateLeaf(node, target, x, y, z, accumulator);
+        } else {
+            for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+                accumulateAcceleration(child, target, x, y, z, accumulator);
+            }
+        }
+    }
+
+    /**
+     * Adds the gravitational acceleration of every body of the given leaf except the target itself by direct
+     * summation.
+     *
+     * @param node        The index of the leaf.
+     * @param target      The position of the targeted body within the sorted order.
+     * @param x           The x coordinate of the targeted body.
+     * @param y           The y coordinate of the targeted body.
+     * @param z           The z coordinate of the targeted body.
+     * @param accumulator The {@link ForceAccumulator} of the targeted body.
+     */
+    private void accumulateLeaf(int node, int target, double x, double y, double z, ForceAccumulator accumulator) {
+        for (int k = firstBody[node]; k < firstBody[node] + numberOfBodies[node]; k++) {
+            if (k != target)
+                Physics.accumulatePointMass(accumulator, bodyX[k] - x, bodyY[k] - y, bodyZ[k] - z, bodyMass[k],
+                        softening2);
+        }
+    }
+
+    /**
+     * Copies the positions and masses of the bodies within the given range of the sorted order from the store.
+     *
+     * @param from The first position within the sorted order, inclusive.
+     * @param to   The last position within the sorted order, exclusive.
+     */
+    private void copyBodies(int from, int to) {
+        for (int k = from; k < to; k++) {
+            int i = order[k];
+            bodyX[k] = store.x[i];
+            bodyY[k] = store.y[i];
+            bodyZ[k] = store.z[i];
+            bodyMass[k] = store.mass[i];
+        }
+    }
+
+    /**
+     * Calculates the Morton keys of the bodies within the given range of indices and resets their order.
+     * <p>
+     * Every coordinate is quantized to MAX_LEVEL bits relative to the bounding cube.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void calculateKeys(int from, int to) {
+        for (int k = from; k < to; k++) {
+            int i = sources[k];
+            keys[k] = mortonKey(
+                    quantize((store.x[i] - originX) * keyScale),
+                    quantize((store.y[i] - originY) * keyScale),
+                    quantize((store.z[i] - originZ) * keyScale));
+            order[k] = i;
+        }
+    }
+
+    /**
+     * Calculates the bounding box of one block of bodies.
+     *
+     * @param block The index of the block.
+     */
+    private void calculateBlockBounds(int block) {
+        int from = (int) ((long) block * size / blockCount), to = (int) ((long) (block + 1) * size / blockCount);
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int k = from; k < to; k++) {
+            int i = sources[k];
+            minX = Math.min(minX, store.x[i]);
+            minY = Math.min(minY, store.y[i]);
+            minZ = Math.min(minZ, store.z[i]);
+            maxX = Math.max(maxX, store.x[i]);
+            maxY = Math.max(maxY, store.y[i]);
+            maxZ = Math.max(maxZ, store.z[i]);
+        }
+        blockBounds[6 * block] = minX;
+        blockBounds[6 * block + 1] = minY;
+        blockBounds[6 * block + 2] = minZ;
+        blockBounds[6 * block + 3] = maxX;
+        blockBounds[6 * block + 4] = maxY;
+        blockBounds[6 * block + 5] = maxZ;
+    }
+
+    /**
+     * Moves the keys and indices of the bodies into contiguous ranges by the subtree they belong to.
+     * <p>
+     * Every block counts its bodies per subtree, the counts give the offset of every block within every subtree and
+     * the blocks move their bodies concurrently. Afterwards bucketStart holds the first position of every subtree.
+     */
+    private void distributeToSubtrees() {
+        Arrays.fill(blockCounts, 0, MAX_SUBTREES * blockCount, 0);
+        parallelLoop.forEach(blockCount, countBlockTask);
+
+        int sum = 0;
+        for (int subtree = 0; subtree < MAX_SUBTREES; subtree++) {
+            bucketStart[subtree] = sum;
+            for (int block = 0; block < blockCount; block++) {
+                int count = blockCounts[MAX_SUBTREES * block + subtree];
+                blockCounts[MAX_SUBTREES * block + subtree] = sum;
+                sum += count;
+            }
+        }
+
+        parallelLoop.forEach(blockCount, scatterBlockTask);
+
+        long[] tmpKeys = keys;
+        keys = keyBuffer;
+        keyBuffer = tmpKeys;
+        int[] tmpOrder = order;
+        order = orderBuffer;
+        orderBuffer = tmpOrder;
+        bucketStart[MAX_SUBTREES] = size;
+    }
+
+    /**
+     * Counts the bodies of one block per subtree.
+     *
+     * @param block The index of the block.
+     */
+    private void countBlock(int block) {
+        int from = (int) ((long) block * size / blockCount), to = (int) ((long) (block + 1) * size / blockCount);
+        for (int i = from; i < to; i++) {
+            blockCounts[MAX_SUBTREES * block + (int) (keys[i] >>> SUBTREE_SHIFT)]++;
+        }
+    }
+
+    /**
+     * Moves the keys and indices of one block of bodies to the positions given by the block counts.
+     *
+     * @param block The index of the block.
+     */
+    private void scatterBlock(int block) {
+        int from = (int) ((long) block * size / blockCount), to = (int) ((long) (block + 1) * size / blockCount);
+        for (int i = from; i < to; i++) {
+            int position = blockCounts[MAX_SUBTREES * block + (int) (keys[i] >>> SUBTREE_SHIFT)]++;
+            keyBuffer[position] = keys[i];
+            orderBuffer[position] = order[i];
+        }
+    }
+
+    /**
+     * Counts the nodes below the root of one subtree.
+     *
+     * @param subtree The index of the subtree.
+     */
+    private void countSubtree(int subtree) {
+        subtreeNext[subtree] = countNodes(firstBody[subtreeRoot[subtree]], numberOfBodies[subtreeRoot[subtree]],
+                SPLIT_LEVEL);
+    }
+
+    /**
+     * Creates the nodes below the root of one subtree within its reserved range.
+     *
+     * @param subtree The index of the subtree.
+     */
+    private void buildSubtree(int subtree) {
+        split(subtreeRoot[subtree], SPLIT_LEVEL, subtree);
+    }
+
+    /**
+     * Sorts the bodies of one subtree by their keys.
+     *
+     * @param subtree The index of the subtree.
+     */
+    private void sortSubtree(int subtree) {
+        RadixSort.sort(keys, order, bucketStart[subtree], bucketStart[subtree + 1], keyBuffer, orderBuffer,
+                radixCounts[subtree]);
+    }
+
+    /**
+     * Creates the sub nodes of the given node until no node holds more than the leaf capacity.
+     * <p>
+     * The bodies of one sub node share the next three bits of their Morton keys, so the range of every sub node can be
+     * found by a binary search within the sorted range of the node. Nodes above the split level stop at the split
+     * level and are remembered as roots of subtrees, which are completed later on.
+     *
+     * @param node    The index of the node.
+     * @param level   The depth of the node. The root node has the level 0.
+     * @param subtree The subtree the node belongs to or TOP.
+     */
+    private void split(int node, int level, int subtree) {
+        if (numberOfBodies[node] <= leafCapacity || level == MAX_LEVEL)
+            return;
+        if (subtree == TOP && level == SPLIT_LEVEL) {
+            subtreeRoot[subtreeCount++] = node;
+            return;
+        }
+
+        int shift = 3 * (MAX_LEVEL - 1 - level);
+        int end = firstBody[node] + numberOfBodies[node];
+        double quarter = halfSize[node] / 2;
+
+        int first = -1, last = -1;
+        int start = firstBody[node];
+        while (start < end) {
+            int oct = (int) (keys[start] >>> shift) & 7;
+            int stop = findOctantEnd(start, end, shift, oct);
+            last = allocateNode(subtree);
+            if (first < 0)
+                first = last;
+            createNode(last,
+                    centerX[node] + ((oct & 1) != 0 ? quarter : -quarter),
+                    centerY[node] + ((oct & 2) != 0 ? quarter : -quarter),
+                    centerZ[node] + ((oct & 4) != 0 ? quarter : -quarter),
+                    quarter, start, stop - start);
+            start = stop;
+        }
+        firstChild[node] = first;
+        childCount[node] = last + 1 - first;
+
+        for (int child = first; child <= last; child++) {
+            split(child, level + 1, subtree);
+        }
+    }
+
+    /**
+     * Counts the nodes {@link #split(int, int, int)} will create below a node without creating them.
+     *
+     * @param first The position of the first body of the node.
+     * @param count The number of bodies of the node.
+     * @param level The depth of the node.
+     * @return The number of nodes below the node.
+     */
+    private int countNodes(int first, int count, int level) {
+        if (count <= leafCapacity || level == MAX_LEVEL)
+            return 0;
+
+        int shift = 3 * (MAX_LEVEL - 1 - level);
+        int end = first + count;
+        int nodes = 0;
+        int start = first;
+        while (start < end) {
+            int stop = findOctantEnd(start, end, shift, (int) (keys[start] >>> shift) & 7);
+            nodes += 1 + countNodes(start, stop - start, level + 1);
+            start = stop;
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the index for a new node of the given subtree.
+     * <p>
+     * Nodes above the split level are appended and may grow the arrays, the nodes of a subtree use the range reserved
+     * for it.
+     *
+     * @param subtree The subtree the node belongs to or TOP.
+     * @return The index of the new node.
+     */
+    private int allocateNode(int subtree) {
+        if (subtree != TOP)
+            return subtreeNext[subtree]++;
+        if (nodeCount == numberOfBodies.length)
+            growNodes(nodeCount * 2);
+        return nodeCount++;
+    }
+
+    /**
+     * Finds the end of the range of bodies lying in the given octant.
+     *
+     * @param start The position of the first body lying in the octant.
+     * @param end   The end of the range of the parent node.
+     * @param shift The position of the octant bits within the keys.
+     * @param oct   The octant.
+     * @return The position of the first body not lying in the octant.
+     */
+    private int findOctantEnd(int start, int end, int shift, int oct) {
+        int low = start + 1, high = end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (((int) (keys[middle] >>> shift) & 7) == oct)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Initializes a node as a leaf with the given boundary and bodies.
+     *
+     * @param node  The index of the node.
+     * @param x     The x coordinate of the center point.
+     * @param y     The y coordinate of the center point.
+     * @param z     The z coordinate of the center point.
+     * @param half  Half of the edge length.
+     * @param first The position of the first body within the sorted order.
+     * @param count The number of bodies.
+     */
+    private void createNode(int node, double x, double y, double z, double half, int first, int count) {
+        firstBody[node] = first;
+        numberOfBodies[node] = count;
+        firstChild[node] = 0;
+        childCount[node] = 0;
+        centerX[node] = x;
+        centerY[node] = y;
+        centerZ[node] = z;
+        halfSize[node] = half;
+    }
+
+    /**
+     * Increases the number of nodes the arrays can hold.
+     *
+     * @param capacity The new number of nodes.
+     */
+    private void growNodes(int capacity) {
+        firstBody = Arrays.copyOf(firstBody, capacity);
+        numberOfBodies = Arrays.copyOf(numberOfBodies, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        childCount = Arrays.copyOf(childCount, capacity);
+        centerX = Arrays.copyOf(centerX, capacity);
+        centerY = Arrays.copyOf(centerY, capacity);
+        centerZ = Arrays.copyOf(centerZ, capacity);
+        halfSize = Arrays.copyOf(halfSize, capacity);
+        extent = Arrays.copyOf(extent, capacity);
+        openingRadius2 = Arrays.copyOf(openingRadius2, capacity);
+        drift = Arrays.copyOf(drift, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        centerOfMassX = Arrays.copyOf(centerOfMassX, capacity);
+        centerOfMassY = Arrays.copyOf(centerOfMassY, capacity);
+        centerOfMassZ = Arrays.copyOf(centerOfMassZ, capacity);
+        quadXX = Arrays.copyOf(quadXX, capacity);
+        quadXY = Arrays.copyOf(quadXY, capacity);
+        quadXZ = Arrays.copyOf(quadXZ, capacity);
+        quadYY = Arrays.copyOf(quadYY, capacity);
+        quadYZ = Arrays.copyOf(quadYZ, capacity);
+        quadZZ = Arrays.copyOf(quadZZ, capacity);
+    }
+
+    /**
+     * Increases the number of bodies the arrays can hold.
+     *
+     * @param capacity The new number of bodies.
+     */
+    private void growBodies(int capacity) {
+        keys = new long[capacity];
+        order = new int[capacity];
+        rank = new int[capacity];
+        keyBuffer = new long[capacity];
+        orderBuffer = new int[capacity];
+        bodyX = new double[capacity];
+        bodyY = new double[capacity];
+        bodyZ = new double[capacity];
+        bodyMass = new double[capacity];
+    }
+
+    /**
+     * Converts a coordinate relative to the bounding cube into an integer with MAX_LEVEL bits.
+     *
+     * @param coordinate The scaled coordinate.
+     * @return The quantized coordinate.
+     */
+    private static long quantize(double coordinate) {
+        return Math.max(0, Math.min((1L << MAX_LEVEL) - 1, (long) coordinate));
+    }
+
+    /**
+     * Interleaves the bits of the quantized coordinates to a Morton key.
+     * <p>
+     * Every group of three bits holds the octant of one level with the x bit as the lowest bit.
+     *
+     * @param x The quantized x coordinate.
+     * @param y The quantized y coordinate.
+     * @param z The quantized z coordinate.
+     * @return The Morton key.
+     */
+    private static long mortonKey(long x, long y, long z) {
+        return spreadBits(x) | spreadBits(y) << 1 | spreadBits(z) << 2;
+    }
+
+    /**
+     * Inserts two zero bits after each of the lower 21 bits.
+     *
+     * @param value The value.
+     * @return The spread value.
+     */
+    private static long spreadBits(long value) {
+        value &= 0x1fffffL;
+        value = (value | value << 32) & 0x1f00000000ffffL;
+        value = (value | value << 16) & 0x1f0000ff0000ffL;
+        value = (value | value << 8) & 0x100f00f00f00f00fL;
+        value = (value | value << 4) & 0x10c30c30c30c30c3L;
+        value = (value | value << 2) & 0x1249249249249249L;
+        return value;
+    }
+
+    /**
+     * The reused interaction list of a group: the indices of the approximated nodes with the limits of their distance
+     * and the indices of the leaves whose bodies are summed up directly.
+     */
+    private static class CachedList {
+
+        /**
+         * The number of entries a new list has room for.
+         */
+        private static final int INITIAL_CAPACITY = 16;
+
+        /**
+         * The generation of the tree and settings the list was collected for.
+         */
+        int generation = -1;
+
+        /**
+         * The number of approximated nodes.
+         */
+        int nodeCount;
+
+        /**
+         * The indices of the approximated nodes.
+         */
+        int[] node = new int[INITIAL_CAPACITY];
+
+        /**
+         * The distances of the nodes to the loose cube of the group at the collection plus their drift at the
+         * collection.
+         */
+        double[] limit = new double[INITIAL_CAPACITY];
+
+        /**
+         * The number of leaves.
+         */
+        int leafCount;
+
+        /**
+         * The indices of the leaves.
+         */
+        int[] leaf = new int[INITIAL_CAPACITY];
+
+        /**
+         * Removes all nodes and leaves.
+         */
+        void clear() {
+            nodeCount = 0;
+            leafCount = 0;
+        }
+
+        /**
+         * Appends an approximated node.
+         *
+         * @param index The index of the node.
+         * @param limit The distance to the loose cube of the group plus the drift of the node.
+         */
+        void addNode(int index, double limit) {
+            if (nodeCount == node.length) {
+                node = Arrays.copyOf(node, 2 * node.length);
+                this.limit = Arrays.copyOf(this.limit, node.length);
+            }
+            node[nodeCount] = index;
+            this.limit[nodeCount] = limit;
+            nodeCount++;
+        }
+
+        /**
+         * Appends a leaf whose bodies are summed up directly.
+         *
+         * @param index The index of the leaf.
+         */
+        void addLeaf(int index) {
+            if (leafCount == leaf.length)
+                leaf = Arrays.copyOf(leaf, 2 * leaf.length);
+            leaf[leafCount++] = index;
+        }
+    }
+}
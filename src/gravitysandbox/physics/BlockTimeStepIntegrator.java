@@ -0,0 +1,443 @@
+package gravitysandbox.physics;
+
+import java.util.Arrays;
+
+/**
+ * A kick-drift-kick leapfrog with individual time steps for every body, chosen from the hierarchy of block time steps
+ * dt / 2^level.
+ * <p>
+ * Every body gets the largest block step not exceeding accuracy * |a| / |da/dt|, where the jerk da/dt is estimated from
+ * the change of the acceleration over the last step of the body. A body may move to a smaller step at the end of any of
+ * its steps, but to the next larger one only at times which are a multiple of that larger step, so all bodies stay
+ * synchronized with the hierarchy and are synchronized at the end of the time step of the simulation.
+ * <p>
+ * Between two sub steps all bodies drift, so inactive bodies act on the active ones with predicted positions, but only
+ * the bodies at the end of their step are kicked and have their accelerations calculated by
+ * {@link ForceSolver#accumulateAccelerations(BodyStore, int[], int, ParallelLoop)}. In hierarchical systems like a
+ * planetary system most bodies take large steps, so only a small fraction of the accelerations is calculated per sub
+ * step.
+ * <p>
+ * When the bodies change or the time step of the simulation changes, the jerks are estimated once by calculating the
+ * accelerations at positions drifted by the smallest block step.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class BlockTimeStepIntegrator implements Integrator {
+
+    /**
+     * The default factor of the time scale |a| / |da/dt| used as step of a body.
+     */
+    public static final double DEFAULT_ACCURACY = 0.02;
+
+    /**
+     * The default number of levels below the time step of the simulation.
+     */
+    public static final int DEFAULT_MAX_LEVEL = 16;
+
+    /**
+     * The largest allowed number of levels, so the sub steps can be counted in a long.
+     */
+    private static final int LEVEL_LIMIT = 40;
+
+    /**
+     * The factor of the time scale |a| / |da/dt| used as step of a body.
+     */
+    private volatile double accuracy;
+
+    /**
+     * The number of levels below the time step of the simulation.
+     */
+    private volatile int maxLevel;
+
+    /**
+     * The level of every body, its step being the time step of the simulation divided by 2^level.
+     */
+    private int[] level;
+
+    /**
+     * The number of bodies on every level.
+     */
+    private final int[] levelCounts;
+
+    /**
+     * Half the step of every level in days.
+     */
+    private final double[] halfSteps;
+
+    /**
+     * The x coordinates of the accelerations at the beginning of the current step of every body.
+     */
+    private double[] oldAx;
+
+    /**
+     * The y coordinates of the accelerations at the beginning of the current step of every body.
+     */
+    private double[] oldAy;
+
+    /**
+     * The z coordinates of the accelerations at the beginning of the current step of every body.
+     */
+    private double[] oldAz;
+
+    /**
+     * The x coordinates of the positions saved while estimating the jerks.
+     */
+    private double[] savedX;
+
+    /**
+     * The y coordinates of the positions saved while estimating the jerks.
+     */
+    private double[] savedY;
+
+    /**
+     * The z coordinates of the positions saved while estimating the jerks.
+     */
+    private double[] savedZ;
+
+    /**
+     * The indices of the active bodies.
+     */
+    private int[] active;
+
+    /**
+     * The number of active bodies.
+     */
+    private int activeCount;
+
+    /**
+     * The {@link BodyStore} the levels belong to.
+     */
+    private BodyStore store;
+
+    /**
+     * The modification count of the store when the levels were assigned.
+     */
+    private int storeModificationCount;
+
+    /**
+     * The time step of the simulation the levels belong to.
+     */
+    private double levelTimeStep;
+
+    /**
+     * The number of levels the levels were assigned with.
+     */
+    private int assignedLevels;
+
+    /**
+     * The time of the current drift in days.
+     */
+    private double driftTime;
+
+    /**
+     * The number of force calculations of the last step.
+     */
+    private int forceCalculations;
+
+    /**
+     * The number of accelerations of single bodies calculated by the last step.
+     */
+    private long bodyCalculations;
+
+    /**
+     * The loop body moving a range of bodies.
+     */
+    private final ParallelLoop.Range driftTask = (from, to) -> store.drift(from, to, driftTime);
+
+    /**
+     * The loop body kicking a range of the active bodies by half their step.
+     */
+    private final ParallelLoop.Range kickTask = this::kick;
+
+    /**
+     * The loop body saving and clearing the accelerations of a range of the active bodies.
+     */
+    private final ParallelLoop.Range saveTask = this::saveAccelerations;
+
+    /**
+     * Creates a new integrator with the default accuracy and number of levels.
+     */
+    public BlockTimeStepIntegrator() {
+        accuracy = DEFAULT_ACCURACY;
+        maxLevel = DEFAULT_MAX_LEVEL;
+        level = new int[0];
+        levelCounts = new int[LEVEL_LIMIT + 1];
+        halfSteps = new double[LEVEL_LIMIT + 1];
+        oldAx = new double[0];
+        oldAy = new double[0];
+        oldAz = new double[0];
+        savedX = new double[0];
+        savedY = new double[0];
+        savedZ = new double[0];
+        active = new int[0];
+    }
+
+    @Override
+    public void step(BodyStore store, ForceSolver solver, ParallelLoop parallelLoop, double dt) {
+        int n = store.size();
+        int levels = maxLevel;
+        forceCalculations = 0;
+        bodyCalculations = 0;
+        if (n == 0)
+            return;
+        for (int l = 0; l <= levels; l++) {
+            halfSteps[l] = Math.scalb(dt, -l - 1);
+        }
+        if (store != this.store || store.getModificationCount() != storeModificationCount || dt != levelTimeStep
+                || levels != assignedLevels || level.length < n || !store.isAccelerationsCurrent())
+            assignLevels(store, solver, parallelLoop, dt, levels);
+
+        long total = 1L << levels;
+        long t = 0;
+        activeCount = n;
+        for (int i = 0; i < n; i++) {
+            active[i] = i;
+        }
+        parallelLoop.forRange(0, activeCount, kickTask);
+
+        while (t < total) {
+            int finest = levels;
+            while (finest > 0 && levelCounts[finest] == 0) {
+                finest--;
+            }
+            long stride = 1L << (levels - finest);
+            long next = (t / stride + 1) * stride;
+            driftTime = (next - t) * Math.scalb(dt, -levels);
+            parallelLoop.forRange(0, n, driftTask);
+            t = next;
+
+            activeCount = 0;
+            for (int i = 0; i < n; i++) {
+                if ((t & ((1L << (levels - level[i])) - 1)) == 0)
+                    active[activeCount++] = i;
+            }
+            parallelLoop.forRange(0, activeCount, saveTask);
+            solver.accumulateAccelerations(store, active, activeCount, parallelLoop);
+            forceCalculations++;
+            bodyCalculations += activeCount;
+
+            parallelLoop.forRange(0, activeCount, kickTask);
+            for (int k = 0; k < activeCount; k++) {
+                updateLevel(active[k], t, levels);
+            }
+            if (t < total)
+                parallelLoop.forRange(0, activeCount, kickTask);
+        }
+        store.markAccelerationsCurrent();
+    }
+
+    /**
+     * Calculates the accelerations at the current positions if necessary, estimates the jerk of every body and assigns
+     * the levels.
+     *
+     * @param store        The {@link BodyStore} containing the bodies.
+     * @param solver       The {@link ForceSolver} calculating the accelerations.
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     * @param dt           The time step of the simulation in days.
+     * @param levels       The number of levels.
+     */
+    private void assignLevels(BodyStore store, ForceSolver solver, ParallelLoop parallelLoop, double dt, int levels) {
+        this.store = store;
+        storeModificationCount = store.getModificationCount();
+        levelTimeStep = dt;
+        assignedLevels = levels;
+        int n = store.size();
+        if (level.length < n) {
+            int capacity = Math.max(n, 2 * level.length);
+            level = new int[capacity];
+            oldAx = new double[capacity];
+            oldAy = new double[capacity];
+            oldAz = new double[capacity];
+            savedX = new double[capacity];
+            savedY = new double[capacity];
+            savedZ = new double[capacity];
+            active = new int[capacity];
+        }
+
+        Integrator.updateAccelerations(store, solver, parallelLoop);
+        System.arraycopy(store.x, 0, savedX, 0, n);
+        System.arraycopy(store.y, 0, savedY, 0, n);
+        System.arraycopy(store.z, 0, savedZ, 0, n);
+        System.arraycopy(store.ax, 0, oldAx, 0, n);
+        System.arraycopy(store.ay, 0, oldAy, 0, n);
+        System.arraycopy(store.az, 0, oldAz, 0, n);
+
+        // The accelerations after the smallest step give the jerks.
+        double probe = Math.scalb(dt, -levels);
+        driftTime = probe;
+        parallelLoop.forRange(0, n, driftTask);
+        store.clearAccelerations();
+        solver.accumulateAccelerations(store, parallelLoop);
+
+        Arrays.fill(levelCounts, 0);
+        for (int i = 0; i < n; i++) {
+            level[i] = levelFor(i, probe, dt, levels);
+            levelCounts[level[i]]++;
+        }
+
+        System.arraycopy(savedX, 0, store.x, 0, n);
+        System.arraycopy(savedY, 0, store.y, 0, n);
+        System.arraycopy(savedZ, 0, store.z, 0, n);
+        System.arraycopy(oldAx, 0, store.ax, 0, n);
+        System.arraycopy(oldAy, 0, store.ay, 0, n);
+        System.arraycopy(oldAz, 0, store.az, 0, n);
+        store.markAccelerationsCurrent();
+    }
+
+    /**
+     * Changes the level of an active body after its step, according to the change of its acceleration during the step.
+     *
+     * @param i      The index of the body.
+     * @param t      The current time in units of the smallest step.
+     * @param levels The number of levels.
+     */
+    private void updateLevel(int i, long t, int levels) {
+        int current = level[i];
+        int wanted = levelFor(i, 2 * halfSteps[current], levelTimeStep, levels);
+        int updated = current;
+        if (wanted > current)
+            updated = wanted;
+        else if (wanted < current && (t & ((1L << (levels - current + 1)) - 1)) == 0)
+            updated = current - 1;
+        if (updated != current) {
+            levelCounts[current]--;
+            levelCounts[updated]++;
+            level[i] = updated;
+        }
+    }
+
+    /**
+     * Returns the level whose step fits the time scale of a body, comparing its current acceleration with the one
+     * saved in oldAx, oldAy and oldAz.
+     *
+     * @param i        The index of the body.
+     * @param interval The time between both accelerations in days.
+     * @param dt       The time step of the simulation in days.
+     * @param levels   The number of levels.
+     * @return The level.
+     */
+    private int levelFor(int i, double interval, double dt, int levels) {
+        double ax = store.ax[i], ay = store.ay[i], az = store.az[i];
+        double dx = ax - oldAx[i], dy = ay - oldAy[i], dz = az - oldAz[i];
+        double jerk = Math.sqrt(dx * dx + dy * dy + dz * dz) / interval;
+        double wanted = accuracy * Math.sqrt(ax * ax + ay * ay + az * az) / jerk;
+        int l = 0;
+        double step = dt;
+        // Also ends for a body without jerk, whose wanted step is infinite or NaN.
+        while (l < levels && step > wanted) {
+            step *= 0.5;
+            l++;
+        }
+        return l;
+    }
+
+    /**
+     * Kicks the active bodies within the given range by half their step.
+     *
+     * @param from The position of the first body within the active bodies, inclusive.
+     * @param to   The position of the last body within the active bodies, exclusive.
+     */
+    private void kick(int from, int to) {
+        double[] vx = store.vx, vy = store.vy, vz = store.vz;
+        for (int k = from; k < to; k++) {
+            int i = active[k];
+            double halfStep = halfSteps[level[i]];
+            vx[i] += store.ax[i] * halfStep;
+            vy[i] += store.ay[i] * halfStep;
+            vz[i] += store.az[i] * halfStep;
+            store.vxLo[i] = store.vyLo[i] = store.vzLo[i] = 0;
+        }
+    }
+
+    /**
+     * Saves the accelerations of the active bodies within the given range for the estimation of their jerk and sets
+     * them to zero.
+     *
+     * @param from The position of the first body within the active bodies, inclusive.
+     * @param to   The position of the last body within the active bodies, exclusive.
+     */
+    private void saveAccelerations(int from, int to) {
+        for (int k = from; k < to; k++) {
+            int i = active[k];
+            oldAx[i] = store.ax[i];
+            oldAy[i] = store.ay[i];
+            oldAz[i] = store.az[i];
+            store.ax[i] = store.ay[i] = store.az[i] = 0;
+            store.axLo[i] = store.ayLo[i] = store.azLo[i] = 0;
+        }
+    }
+
+    /**
+     * Returns the number of force calculations of the last step, each for the active bodies of a sub step only.
+     *
+     * @return The number of sub steps of the last step.
+     */
+    @Override
+    public int getForceCalculations() {
+        return forceCalculations;
+    }
+
+    /**
+     * Returns the number of accelerations of single bodies calculated by the last step, which is the number of bodies
+     * for a single step of the leapfrog.
+     *
+     * @return The number of calculated accelerations.
+     */
+    public long getBodyCalculations() {
+        return bodyCalculations;
+    }
+
+    /**
+     * Returns the number of bodies on a level.
+     *
+     * @param level The level, whose step is the time step of the simulation divided by 2^level.
+     * @return The number of bodies on the level or zero if the level does not exist.
+     */
+    public int getBodiesOnLevel(int level) {
+        return level >= 0 && level <= LEVEL_LIMIT ? levelCounts[level] : 0;
+    }
+
+    /**
+     * Getter for accuracy.
+     *
+     * @return The factor of the time scale |a| / |da/dt| used as step of a body.
+     */
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * Setter for accuracy. Takes effect with the next change of the step of a body.
+     *
+     * @param accuracy The new factor of the time scale |a| / |da/dt| used as step of a body.
+     * @throws IllegalArgumentException if accuracy is not positive.
+     */
+    public void setAccuracy(double accuracy) {
+        if (!(accuracy > 0))
+            throw new IllegalArgumentException("The accuracy must be positive.");
+        this.accuracy = accuracy;
+    }
+
+    /**
+     * Getter for maxLevel.
+     *
+     * @return The number of levels below the time step of the simulation.
+     */
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * Setter for maxLevel. The levels are assigned anew with the next step.
+     *
+     * @param maxLevel The new number of levels below the time step of the simulation, so the smallest step is the time
+     *                 step divided by 2^maxLevel.
+     * @throws IllegalArgumentException if maxLevel is negative or larger than 40.
+     */
+    public void setMaxLevel(int maxLevel) {
+        if (maxLevel < 0 || maxLevel > LEVEL_LIMIT)
+            throw new IllegalArgumentException("The number of levels must be between 0 and " + LEVEL_LIMIT + ".");
+        this.maxLevel = maxLevel;
+    }
+}
@@ -1,5 +1,7 @@
 package gravitysandbox.physics;
 
+import gravitysandbox.util.DoubleDouble;
+import gravitysandbox.util.FixedPoint;
 import gravitysandbox.util.Vector3D;
 
 import java.math.BigDecimal;
@@ -8,9 +10,15 @@ import java.util.Observable;
 
 /**
  * The representation of a physical body with its name, position, velocity and mass.
+ * <p>
+ * The numerical values are kept in a slot of a {@link BodyStore}, so the body acts as a view on the columns used by the
+ * step loop. The full precision values given to the setters are returned unchanged until the step loop moves the body.
+ * <p>
+ * A test particle keeps its mass, but the simulation treats it as massless: it feels the gravity of the other bodies
+ * without attracting them, e.g. the particles of rings and debris or spacecraft.
  *
  * @author Christoph Bruckner
- * @version 1.3
+ * @version 1.6
  * @since 0.1
  */
 public class Body extends Observable {
@@ -21,20 +29,47 @@ public class Body extends Observable {
     private String name;
 
     /**
-     * The current position of the body.
+     * The {@link BodyStore} holding the values of the body.
+     * <p>
+     * As long as the body is not part of the {@link BodyContainer} it owns a store with a single slot.
+     */
+    private BodyStore store;
+
+    /**
+     * The index of the body within store.
+     */
+    private int index;
+
+    /**
+     * The last known position of the body with full precision.
      */
     private Vector3D position;
 
     /**
-     * The current velocity of the body.
+     * The generation of store for which position is valid.
+     */
+    private long positionGeneration;
+
+    /**
+     * The last known velocity of the body with full precision.
      */
     private Vector3D velocity;
 
     /**
-     * The current acceleration of the body
+     * The generation of store for which velocity is valid.
+     */
+    private long velocityGeneration;
+
+    /**
+     * The last known acceleration of the body with full precision.
      */
     private Vector3D acceleration;
 
+    /**
+     * The generation of store for which acceleration is valid.
+     */
+    private long accelerationGeneration;
+
     /**
      * A list of previous locations.
      */
@@ -50,6 +85,11 @@ public class Body extends Observable {
      */
     private boolean isStar;
 
+    /**
+     * Determines if the body is a test particle, which does not attract the other bodies.
+     */
+    private boolean testParticle;
+
     /**
      * Creates a new Body object based on given starting position, velocity and mass.
      * @param name The starting name.
@@ -58,11 +98,30 @@ public class Body extends Observable {
      * @param mass The starting mass.
      */
     public Body(String name, Vector3D position, Vector3D velocity, BigDecimal mass, boolean isStar) {
+        this(name, position, velocity, mass, isStar, false);
+    }
+
+    /**
+     * Creates a new Body object based on given starting position, velocity and mass, which may be a test particle.
+     * @param name The starting name.
+     * @param position The starting position.
+     * @param velocity The starting velocity.
+     * @param mass The starting mass.
+     * @param isStar Determines if the body emits light.
+     * @param testParticle Determines if the body is a test particle.
+     */
+    public Body(String name, Vector3D position, Vector3D velocity, BigDecimal mass, boolean isStar,
+                boolean testParticle) {
+        store = new BodyStore(1);
+        store.insert(0);
+        index = 0;
         previousLocations = new LinkedList<>();
-        acceleration = new Vector3D();
+        writeAcceleration(new Vector3D());
         setName(name);
-        this.position=position;
+        writePosition(position);
         setVelocity(velocity);
+        this.testParticle = testParticle;
+        store.setTestParticle(index, testParticle);
         setMass(mass);
         setStar(isStar);
     }
@@ -72,6 +131,19 @@ public class Body extends Observable {
      * @return The current position of the body.
      */
     public Vector3D getPosition() {
+        if (positionGeneration != store.getGeneration()) {
+            if (store.isFixedPointCurrent())
+                position = new Vector3D(
+                        FixedPoint.toBigDecimal(store.xWhole[index], store.xFraction[index]),
+                        FixedPoint.toBigDecimal(store.yWhole[index], store.yFraction[index]),
+                        FixedPoint.toBigDecimal(store.zWhole[index], store.zFraction[index]));
+            else
+                position = new Vector3D(
+                        Physics.toMetres(store.x[index], store.xLo[index]),
+                        Physics.toMetres(store.y[index], store.yLo[index]),
+                        Physics.toMetres(store.z[index], store.zLo[index]));
+            positionGeneration = store.getGeneration();
+        }
         return position;
     }
 
@@ -81,8 +153,8 @@ public class Body extends Observable {
      * @param position The new value for the position of the body.
      */
     public void setPosition(Vector3D position) {
-        addPreviousLocation(this.position);
-        this.position = position;
+        addPreviousLocation(getPosition());
+        writePosition(position);
         setChanged();
         notifyObservers();
     }
@@ -92,6 +164,13 @@ public class Body extends Observable {
      * @return The current velocity of the body.
      */
     public Vector3D getVelocity() {
+        if (velocityGeneration != store.getGeneration()) {
+            velocity = new Vector3D(
+                    Physics.toMetresPerSecond(store.vx[index], store.vxLo[index]),
+                    Physics.toMetresPerSecond(store.vy[index], store.vyLo[index]),
+                    Physics.toMetresPerSecond(store.vz[index], store.vzLo[index]));
+            velocityGeneration = store.getGeneration();
+        }
         return velocity;
     }
 
@@ -100,7 +179,11 @@ public class Body extends Observable {
      * @param velocity The new value for the velocity of the body.
      */
     public void setVelocity(Vector3D velocity) {
-        this.velocity = velocity;
+        if (velocity != null)
+            writeVelocity(velocity);
+        else
+            this.velocity = null;
+        velocityGeneration = store.getGeneration();
         setChanged();
         notifyObservers();
     }
@@ -110,6 +193,13 @@ public class Body extends Observable {
      * @return The current acceleration of the body.
      */
     public Vector3D getAcceleration() {
+        if (accelerationGeneration != store.getGeneration()) {
+            acceleration = new Vector3D(
+                    Physics.toMetresPerSecondSquared(store.ax[index], store.axLo[index]),
+                    Physics.toMetresPerSecondSquared(store.ay[index], store.ayLo[index]),
+                    Physics.toMetresPerSecondSquared(store.az[index], store.azLo[index]));
+            accelerationGeneration = store.getGeneration();
+        }
         return acceleration;
     }
 
@@ -118,7 +208,7 @@ public class Body extends Observable {
      * @param acceleration The new value for the acceleration of the body.
      */
     public void setAcceleration(Vector3D acceleration) {
-        this.acceleration = acceleration;
+        writeAcceleration(acceleration);
     }
 
     /**
@@ -135,6 +225,7 @@ public class Body extends Observable {
      */
     public void setMass(BigDecimal mass) {
         this.mass = mass;
+        writeMass();
         setChanged();
         notifyObservers();
     }
@@ -175,6 +266,149 @@ public class Body extends Observable {
         notifyObservers();
     }
 
+    /**
+     * Getter for testParticle.
+     * @return true if the body is a test particle, which does not attract the other bodies.
+     */
+    public boolean isTestParticle() {
+        return testParticle;
+    }
+
+    /**
+     * Setter for testParticle.
+     * @param testParticle true if the body shall feel the gravity of the other bodies without attracting them.
+     */
+    public void setTestParticle(boolean testParticle) {
+        this.testParticle = testParticle;
+        store.setTestParticle(index, testParticle);
+        writeMass();
+        setChanged();
+        notifyObservers();
+    }
+
+    /**
+     * Stores the mass of the body, or zero for a test particle.
+     */
+    private void writeMass() {
+        if (testParticle) {
+            store.mass[index] = 0;
+            store.massLo[index] = 0;
+        } else {
+            write(store.mass, store.massLo, Physics.toExtendedMass(mass));
+        }
+        store.invalidateAccelerations();
+    }
+
+    /**
+     * Stores the given position without recording the previous one.
+     * @param position The new position.
+     */
+    private void writePosition(Vector3D position) {
+        this.position = position;
+        write(store.x, store.xLo, Physics.toExtendedLength(position.getX()));
+        write(store.y, store.yLo, Physics.toExtendedLength(position.getY()));
+        write(store.z, store.zLo, Physics.toExtendedLength(position.getZ()));
+        FixedPoint.set(store.xWhole, store.xFraction, index, position.getX());
+        FixedPoint.set(store.yWhole, store.yFraction, index, position.getY());
+        FixedPoint.set(store.zWhole, store.zFraction, index, position.getZ());
+        store.invalidateAccelerations();
+        positionGeneration = store.getGeneration();
+    }
+
+    /**
+     * Stores the given velocity.
+     * @param velocity The new velocity.
+     */
+    private void writeVelocity(Vector3D velocity) {
+        this.velocity = velocity;
+        write(store.vx, store.vxLo, Physics.toExtendedVelocity(velocity.getX()));
+        write(store.vy, store.vyLo, Physics.toExtendedVelocity(velocity.getY()));
+        write(store.vz, store.vzLo, Physics.toExtendedVelocity(velocity.getZ()));
+        velocityGeneration = store.getGeneration();
+    }
+
+    /**
+     * Stores the given acceleration.
+     * @param acceleration The new acceleration.
+     */
+    private void writeAcceleration(Vector3D acceleration) {
+        this.acceleration = acceleration;
+        write(store.ax, store.axLo, Physics.toExtendedAcceleration(acceleration.getX()));
+        write(store.ay, store.ayLo, Physics.toExtendedAcceleration(acceleration.getY()));
+        write(store.az, store.azLo, Physics.toExtendedAcceleration(acceleration.getZ()));
+        store.invalidateAccelerations();
+        accelerationGeneration = store.getGeneration();
+    }
+
+    /**
+     * Stores a {@link DoubleDouble} value in the slot of the body within a pair of columns of the store.
+     * @param hi The column of the high parts.
+     * @param lo The column of the low parts.
+     * @param value The value.
+     */
+    private void write(double[] hi, double[] lo, DoubleDouble value) {
+        hi[index] = value.getHi();
+        lo[index] = value.getLo();
+    }
+
+    /**
+     * Stores the state calculated by a step of the simulation without recording the previous position or notifying
+     * the observers. The given vectors are kept with their full precision until the store changes its generation.
+     * @param position The new position.
+     * @param velocity The new velocity.
+     * @param acceleration The new acceleration.
+     */
+    void writeState(Vector3D position, Vector3D velocity, Vector3D acceleration) {
+        writePosition(position);
+        writeVelocity(velocity);
+        writeAcceleration(acceleration);
+    }
+
+    /**
+     * Moves the values of the body into a slot of another {@link BodyStore}.
+     * <p>
+     * The full precision values are kept as long as the step loop does not change the slot.
+     * @param target The new store.
+     * @param targetIndex The index of the slot within target.
+     */
+    void attach(BodyStore target, int targetIndex) {
+        getPosition();
+        getVelocity();
+        getAcceleration();
+
+        store.copyTo(index, target, targetIndex);
+        store = target;
+        index = targetIndex;
+
+        positionGeneration = velocityGeneration = accelerationGeneration = store.getGeneration();
+    }
+
+    /**
+     * Moves the values of the body out of a shared {@link BodyStore} into a store owned by the body.
+     */
+    void detach() {
+        BodyStore ownStore = new BodyStore(1);
+        ownStore.insert(0);
+        attach(ownStore, 0);
+    }
+
+    /**
+     * Changes the index of the body after slots in front of it were added or removed.
+     * @param index The new index.
+     */
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Records the current position and notifies all observers after the step loop moved the body.
+     */
+    void moved() {
+        addPreviousLocation(getPosition());
+        setChanged();
+        notifyObservers();
+    }
+
     /**
      * Adds a location represented by a {@link Vector3D} to the list of previous locations.
      * @param location the new location.
@@ -5,7 +5,10 @@ import java.util.Iterator;
 
 /**
  * Container class for {@link Body} objects using the singleton pattern.
- * @version 1.2
+ * <p>
+ * The values of all contained bodies are kept in one shared {@link BodyStore}, with the slot index being equal to the
+ * index of the body in this container.
+ * @version 1.3
  * @since 0.1
  */
 public class BodyContainer implements Iterable<Body> {
@@ -15,6 +18,11 @@ public class BodyContainer implements Iterable<Body> {
      */
     private ArrayList<Body> bodies;
 
+    /**
+     * The {@link BodyStore} holding the values of all bodies. Structural changes are synchronized on the store.
+     */
+    private BodyStore store;
+
     /**
      * The instance property for the singleton pattern.
      */
@@ -33,6 +41,15 @@ public class BodyContainer implements Iterable<Body> {
      */
     private BodyContainer() {
         bodies = new ArrayList<>();
+        store = new BodyStore();
+    }
+
+    /**
+     * Returns the {@link BodyStore} holding the values of all bodies.
+     * @return The store.
+     */
+    public BodyStore getStore() {
+        return store;
     }
 
     /**
@@ -50,7 +67,12 @@ public class BodyContainer implements Iterable<Body> {
      * @param index The index at which the object will be added.
      */
     public void add(Body body, int index) {
-        bodies.add(index, body);
+        synchronized (store) {
+            bodies.add(index, body);
+            store.insert(index);
+            body.attach(store, index);
+            updateIndices(index + 1);
+        }
     }
 
     /**
@@ -58,7 +80,7 @@ public class BodyContainer implements Iterable<Body> {
      * @param body The {@link Body} object to be added.
      */
     public void add(Body body) {
-        bodies.add(bodies.size(), body);
+        add(body, bodies.size());
     }
 
     /**
@@ -81,14 +103,24 @@ public class BodyContainer implements Iterable<Body> {
     /**
      * Deletes every element in this container.
      */
-    public void clear() {bodies.clear();}
+    public void clear() {
+        synchronized (store) {
+            bodies.forEach(Body::detach);
+            bodies.clear();
+            store.clear();
+        }
+    }
 
     /**
      * Removes the element at the given index.
      * @param index The index.
      */
     public void remove(int index){
-        bodies.remove(index);
+        synchronized (store) {
+            bodies.remove(index).detach();
+            store.remove(index);
+            updateIndices(index);
+        }
     }
 
     /**
@@ -96,7 +128,26 @@ public class BodyContainer implements Iterable<Body> {
      * @param body The element to be removed.
      */
     public void remove(Body body) {
-        bodies.remove(body);
+        int index = bodies.indexOf(body);
+        if (index >= 0)
+            remove(index);
+    }
+
+    /**
+     * Records the new positions and notifies the observers of every {@link Body} after the step loop moved them.
+     */
+    public void updateBodies() {
+        bodies.forEach(Body::moved);
+    }
+
+    /**
+     * Updates the store indices of all bodies starting at the given index.
+     * @param from The first index to be updated.
+     */
+    private void updateIndices(int from) {
+        for (int i = from; i < bodies.size(); i++) {
+            bodies.get(i).setIndex(i);
+        }
     }
 
 }
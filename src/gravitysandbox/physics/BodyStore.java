@@ -0,0 +1,791 @@
+package gravitysandbox.physics;
+
+import gravitysandbox.util.DoubleDouble;
+import gravitysandbox.util.FixedPoint;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for the state of the bodies used by the double precision engine.
+ * <p>
+ * Every quantity is kept in its own contiguous {@code double[]} column, so the step loop can run over primitive arrays
+ * without creating any objects. All values are given in the internal units of {@link Physics}, i.e. astronomical units,
+ * days and solar masses.
+ * <p>
+ * Positions, velocities, accelerations and masses have a second column with the low parts of {@link DoubleDouble}
+ * values. The double precision step loop ignores them and sets the low parts of the values it changes to zero, while
+ * the double-double step loop uses both columns.
+ * <p>
+ * The positions are also kept as {@link FixedPoint} numbers of metres. As long as only the fixed-point step loop moves
+ * the bodies, these are the exact positions and the double columns are rounded from them. Every other step loop marks
+ * them as outdated, and they are converted from the double columns before the next fixed-point step.
+ * <p>
+ * The accelerations are marked as current once an {@link Integrator} calculated them for the current positions and
+ * masses, so integrators ending a step with a force calculation can start the next step with these accelerations.
+ * Moving, adding, removing or changing bodies marks them as outdated.
+ * <p>
+ * Test particles feel the gravity of the other bodies but do not act on them. Their slots hold a mass of zero, so
+ * every step loop may treat them like any other body, while solvers may skip them as sources altogether.
+ *
+ * @version 1.5
+ * @since 1.1
+ */
+public class BodyStore {
+
+    /**
+     * The number of slots reserved by a new store.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The temporary sum and product of every thread used by the double-double step loop, so the ranges of the step
+     * loop do not create any objects.
+     */
+    private static final ThreadLocal<DoubleDouble[]> EXTENDED_TEMPORARIES =
+            ThreadLocal.withInitial(() -> new DoubleDouble[]{new DoubleDouble(), new DoubleDouble()});
+
+    /**
+     * The x coordinates of the positions.
+     */
+    double[] x;
+
+    /**
+     * The y coordinates of the positions.
+     */
+    double[] y;
+
+    /**
+     * The z coordinates of the positions.
+     */
+    double[] z;
+
+    /**
+     * The x coordinates of the velocities.
+     */
+    double[] vx;
+
+    /**
+     * The y coordinates of the velocities.
+     */
+    double[] vy;
+
+    /**
+     * The z coordinates of the velocities.
+     */
+    double[] vz;
+
+    /**
+     * The x coordinates of the accelerations.
+     */
+    double[] ax;
+
+    /**
+     * The y coordinates of the accelerations.
+     */
+    double[] ay;
+
+    /**
+     * The z coordinates of the accelerations.
+     */
+    double[] az;
+
+    /**
+     * The masses.
+     */
+    double[] mass;
+
+    /**
+     * The low parts of the x coordinates of the positions.
+     */
+    double[] xLo;
+
+    /**
+     * The low parts of the y coordinates of the positions.
+     */
+    double[] yLo;
+
+    /**
+     * The low parts of the z coordinates of the positions.
+     */
+    double[] zLo;
+
+    /**
+     * The low parts of the x coordinates of the velocities.
+     */
+    double[] vxLo;
+
+    /**
+     * The low parts of the y coordinates of the velocities.
+     */
+    double[] vyLo;
+
+    /**
+     * The low parts of the z coordinates of the velocities.
+     */
+    double[] vzLo;
+
+    /**
+     * The low parts of the x coordinates of the accelerations.
+     */
+    double[] axLo;
+
+    /**
+     * The low parts of the y coordinates of the accelerations.
+     */
+    double[] ayLo;
+
+    /**
+     * The low parts of the z coordinates of the accelerations.
+     */
+    double[] azLo;
+
+    /**
+     * The low parts of the masses.
+     */
+    double[] massLo;
+
+    /**
+     * The whole metres of the x coordinates of the positions.
+     */
+    long[] xWhole;
+
+    /**
+     * The fractions of metres of the x coordinates of the positions in units of 2^-64.
+     */
+    long[] xFraction;
+
+    /**
+     * The whole metres of the y coordinates of the positions.
+     */
+    long[] yWhole;
+
+    /**
+     * The fractions of metres of the y coordinates of the positions in units of 2^-64.
+     */
+    long[] yFraction;
+
+    /**
+     * The whole metres of the z coordinates of the positions.
+     */
+    long[] zWhole;
+
+    /**
+     * The fractions of metres of the z coordinates of the positions in units of 2^-64.
+     */
+    long[] zFraction;
+
+    /**
+     * The flags marking the test particles.
+     */
+    boolean[] testParticle;
+
+    /**
+     * The number of test particles.
+     */
+    private int testParticleCount;
+
+    /**
+     * A flag showing whether the fixed-point columns hold the current positions.
+     */
+    private volatile boolean fixedPointCurrent = true;
+
+    /**
+     * A flag showing whether the accelerations belong to the current positions and masses.
+     */
+    private volatile boolean accelerationsCurrent;
+
+    /**
+     * The number of used slots.
+     */
+    private int size;
+
+    /**
+     * Counter which is increased every time the step loop changed the values of the store.
+     */
+    private long generation;
+
+    /**
+     * Counter which is increased every time slots are added or removed.
+     */
+    private int modificationCount;
+
+    /**
+     * Creates a new empty store with the default capacity.
+     */
+    public BodyStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new empty store with the given capacity.
+     *
+     * @param capacity The number of slots to reserve.
+     */
+    public BodyStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        vz = new double[capacity];
+        ax = new double[capacity];
+        ay = new double[capacity];
+        az = new double[capacity];
+        mass = new double[capacity];
+        xLo = new double[capacity];
+        yLo = new double[capacity];
+        zLo = new double[capacity];
+        vxLo = new double[capacity];
+        vyLo = new double[capacity];
+        vzLo = new double[capacity];
+        axLo = new double[capacity];
+        ayLo = new double[capacity];
+        azLo = new double[capacity];
+        massLo = new double[capacity];
+        xWhole = new long[capacity];
+        xFraction = new long[capacity];
+        yWhole = new long[capacity];
+        yFraction = new long[capacity];
+        zWhole = new long[capacity];
+        zFraction = new long[capacity];
+        testParticle = new boolean[capacity];
+    }
+
+    /**
+     * Returns the current number of used slots.
+     *
+     * @return The number of slots.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the generation of the store, which changes every time the step loop advanced the bodies.
+     *
+     * @return The current generation.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Marks the values of the store as changed by the step loop.
+     */
+    public void advanceGeneration() {
+        generation++;
+    }
+
+    /**
+     * Returns the number of times slots were added or removed, so structures indexing the slots can detect changes.
+     *
+     * @return The current modification count.
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Returns the number of test particles.
+     *
+     * @return The number of slots marked as test particles.
+     */
+    public int getTestParticleCount() {
+        return testParticleCount;
+    }
+
+    /**
+     * Returns whether a slot is a test particle, which feels the gravity of the other bodies without acting on them.
+     *
+     * @param index The index of the slot.
+     * @return true if the slot is a test particle. false otherwise.
+     */
+    public boolean isTestParticle(int index) {
+        return testParticle[index];
+    }
+
+    /**
+     * Marks a slot as test particle or as source of gravity.
+     * <p>
+     * The mass of the slot is not changed, the caller writes zero for a test particle. Changing the flag counts as
+     * modification, since structures like the {@link BarnesHutTree} only contain the sources.
+     *
+     * @param index        The index of the slot.
+     * @param testParticle true for a test particle. false for a source of gravity.
+     */
+    void setTestParticle(int index, boolean testParticle) {
+        if (this.testParticle[index] == testParticle)
+            return;
+        this.testParticle[index] = testParticle;
+        testParticleCount += testParticle ? 1 : -1;
+        modificationCount++;
+        accelerationsCurrent = false;
+    }
+
+    /**
+     * Inserts a new zeroed slot at the given index and moves all following slots one position up.
+     *
+     * @param index The index of the new slot.
+     */
+    void insert(int index) {
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        if (size == x.length)
+            grow(size * 2);
+
+        int moved = size - index;
+        shift(x, index, moved);
+        shift(y, index, moved);
+        shift(z, index, moved);
+        shift(vx, index, moved);
+        shift(vy, index, moved);
+        shift(vz, index, moved);
+        shift(ax, index, moved);
+        shift(ay, index, moved);
+        shift(az, index, moved);
+        shift(mass, index, moved);
+        shift(xLo, index, moved);
+        shift(yLo, index, moved);
+        shift(zLo, index, moved);
+        shift(vxLo, index, moved);
+        shift(vyLo, index, moved);
+        shift(vzLo, index, moved);
+        shift(axLo, index, moved);
+        shift(ayLo, index, moved);
+        shift(azLo, index, moved);
+        shift(massLo, index, moved);
+        shift(xWhole, index, moved);
+        shift(xFraction, index, moved);
+        shift(yWhole, index, moved);
+        shift(yFraction, index, moved);
+        shift(zWhole, index, moved);
+        shift(zFraction, index, moved);
+        System.arraycopy(testParticle, index, testParticle, index + 1, moved);
+        testParticle[index] = false;
+        size++;
+        modificationCount++;
+        accelerationsCurrent = false;
+    }
+
+    /**
+     * Removes the slot at the given index and moves all following slots one position down.
+     *
+     * @param index The index of the slot.
+     */
+    void remove(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        int moved = size - index - 1;
+        System.arraycopy(x, index + 1, x, index, moved);
+        System.arraycopy(y, index + 1, y, index, moved);
+        System.arraycopy(z, index + 1, z, index, moved);
+        System.arraycopy(vx, index + 1, vx, index, moved);
+        System.arraycopy(vy, index + 1, vy, index, moved);
+        System.arraycopy(vz, index + 1, vz, index, moved);
+        System.arraycopy(ax, index + 1, ax, index, moved);
+        System.arraycopy(ay, index + 1, ay, index, moved);
+        System.arraycopy(az, index + 1, az, index, moved);
+        System.arraycopy(mass, index + 1, mass, index, moved);
+        System.arraycopy(xLo, index + 1, xLo, index, moved);
+        System.arraycopy(yLo, index + 1, yLo, index, moved);
+        System.arraycopy(zLo, index + 1, zLo, index, moved);
+        System.arraycopy(vxLo, index + 1, vxLo, index, moved);
+        System.arraycopy(vyLo, index + 1, vyLo, index, moved);
+        System.arraycopy(vzLo, index + 1, vzLo, index, moved);
+        System.arraycopy(axLo, index + 1, axLo, index, moved);
+        System.arraycopy(ayLo, index + 1, ayLo, index, moved);
+        System.arraycopy(azLo, index + 1, azLo, index, moved);
+        System.arraycopy(massLo, index + 1, massLo, index, moved);
+        System.arraycopy(xWhole, index + 1, xWhole, index, moved);
+        System.arraycopy(xFraction, index + 1, xFraction, index, moved);
+        System.arraycopy(yWhole, index + 1, yWhole, index, moved);
+        System.arraycopy(yFraction, index + 1, yFraction, index, moved);
+        System.arraycopy(zWhole, index + 1, zWhole, index, moved);
+        System.arraycopy(zFraction, index + 1, zFraction, index, moved);
+        if (testParticle[index])
+            testParticleCount--;
+        System.arraycopy(testParticle, index + 1, testParticle, index, moved);
+        size--;
+        modificationCount++;
+        accelerationsCurrent = false;
+    }
+
+    /**
+     * Removes every slot.
+     */
+    void clear() {
+        Arrays.fill(testParticle, 0, size, false);
+        testParticleCount = 0;
+        size = 0;
+        modificationCount++;
+        accelerationsCurrent = false;
+    }
+
+    /**
+     * Copies all values of a slot into a slot of another store.
+     *
+     * @param index       The index of the source slot.
+     * @param target      The target store.
+     * @param targetIndex The index of the target slot.
+     */
+    void copyTo(int index, BodyStore target, int targetIndex) {
+        target.x[targetIndex] = x[index];
+        target.y[targetIndex] = y[index];
+        target.z[targetIndex] = z[index];
+        target.vx[targetIndex] = vx[index];
+        target.vy[targetIndex] = vy[index];
+        target.vz[targetIndex] = vz[index];
+        target.ax[targetIndex] = ax[index];
+        target.ay[targetIndex] = ay[index];
+        target.az[targetIndex] = az[index];
+        target.mass[targetIndex] = mass[index];
+        target.xLo[targetIndex] = xLo[index];
+        target.yLo[targetIndex] = yLo[index];
+        target.zLo[targetIndex] = zLo[index];
+        target.vxLo[targetIndex] = vxLo[index];
+        target.vyLo[targetIndex] = vyLo[index];
+        target.vzLo[targetIndex] = vzLo[index];
+        target.axLo[targetIndex] = axLo[index];
+        target.ayLo[targetIndex] = ayLo[index];
+        target.azLo[targetIndex] = azLo[index];
+        target.massLo[targetIndex] = massLo[index];
+        target.xWhole[targetIndex] = xWhole[index];
+        target.xFraction[targetIndex] = xFraction[index];
+        target.yWhole[targetIndex] = yWhole[index];
+        target.yFraction[targetIndex] = yFraction[index];
+        target.zWhole[targetIndex] = zWhole[index];
+        target.zFraction[targetIndex] = zFraction[index];
+        target.setTestParticle(targetIndex, testParticle[index]);
+    }
+
+    /**
+     * Sets the acceleration of every body to zero.
+     */
+    public void clearAccelerations() {
+        clearAccelerations(0, size);
+    }
+
+    /**
+     * Sets the acceleration of the bodies within the given range to zero.
+     *
+     * @param from The first index, inclusive.
+     * @param to   The last index, exclusive.
+     */
+    public void clearAccelerations(int from, int to) {
+        accelerationsCurrent = false;
+        Arrays.fill(ax, from, to, 0);
+        Arrays.fill(ay, from, to, 0);
+        Arrays.fill(az, from, to, 0);
+        Arrays.fill(axLo, from, to, 0);
+        Arrays.fill(ayLo, from, to, 0);
+        Arrays.fill(azLo, from, to, 0);
+    }
+
+    /**
+     * Changes the velocity of every body by its current acceleration over the given time.
+     *
+     * @param dt The time in days.
+     */
+    public void kick(double dt) {
+        kick(0, size, dt);
+    }
+
+    /**
+     * Changes the velocity of the bodies within the given range by their current acceleration over the given time.
+     *
+     * @param from The first index, inclusive.
+     * @param to   The last index, exclusive.
+     * @param dt   The time in days.
+     */
+    public void kick(int from, int to, double dt) {
+        for (int i = from; i < to; i++) {
+            vx[i] += ax[i] * dt;
+            vy[i] += ay[i] * dt;
+            vz[i] += az[i] * dt;
+            vxLo[i] = vyLo[i] = vzLo[i] = 0;
+        }
+    }
+
+    /**
+     * Changes the velocity of the bodies within the given range by their current acceleration over the given time in
+     * double-double precision.
+     *
+     * @param from The first index, inclusive.
+     * @param to   The last index, exclusive.
+     * @param dt   The time in days.
+     */
+    public void kickExtended(int from, int to, double dt) {
+        DoubleDouble[] temporaries = EXTENDED_TEMPORARIES.get();
+        DoubleDouble sum = temporaries[0], product = temporaries[1];
+        for (int i = from; i < to; i++) {
+            product.set(ax[i], axLo[i]).multiply(dt, 0);
+            sum.set(vx[i], vxLo[i]).add(product);
+            vx[i] = sum.getHi();
+            vxLo[i] = sum.getLo();
+            product.set(ay[i], ayLo[i]).multiply(dt, 0);
+            sum.set(vy[i], vyLo[i]).add(product);
+            vy[i] = sum.getHi();
+            vyLo[i] = sum.getLo();
+            product.set(az[i], azLo[i]).multiply(dt, 0);
+            sum.set(vz[i], vzLo[i]).add(product);
+            vz[i] = sum.getHi();
+            vzLo[i] = sum.getLo();
+        }
+    }
+
+    /**
+     * Moves every body along its current velocity over the given time.
+     *
+     * @param dt The time in days.
+     */
+    public void drift(double dt) {
+        drift(0, size, dt);
+    }
+
+    /**
+     * Moves the bodies within the given range along their current velocity over the given time.
+     *
+     * @param from The first index, inclusive.
+     * @param to   The last index, exclusive.
+     * @param dt   The time in days.
+     */
+    public void drift(int from, int to, double dt) {
+        fixedPointCurrent = false;
+        accelerationsCurrent = false;
+        for (int i = from; i < to; i++) {
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+            z[i] += vz[i] * dt;
+            xLo[i] = yLo[i] = zLo[i] = 0;
+        }
+    }
+
+    /**
+     * Moves the bodies within the given range along the parabola given by their current velocity and acceleration over
+     * the given time, i.e. by v * dt + a * dt^2 / 2.
+     *
+     * @param from The first index, inclusive.
+     * @param to   The last index, exclusive.
+     * @param dt   The time in days.
+     */
+    public void driftAccelerated(int from, int to, double dt) {
+        fixedPointCurrent = false;
+        accelerationsCurrent = false;
+        double halfDt = 0.5 * dt;
+        for (int i = from; i < to; i++) {
+            x[i] += (vx[i] + ax[i] * halfDt) * dt;
+            y[i] += (vy[i] + ay[i] * halfDt) * dt;
+            z[i] += (vz[i] + az[i] * halfDt) * dt;
+            xLo[i] = yLo[i] = zLo[i] = 0;
+        }
+    }
+
+    /**
+     * Moves the bodies within the given range along their current velocity over the given time in double-double
+     * precision.
+     *
+     * @param from The first index, inclusive.
+     * @param to   The last index, exclusive.
+     * @param dt   The time in days.
+     */
+    public void driftExtended(int from, int to, double dt) {
+        fixedPointCurrent = false;
+        accelerationsCurrent = false;
+        DoubleDouble[] temporaries = EXTENDED_TEMPORARIES.get();
+        DoubleDouble sum = temporaries[0], product = temporaries[1];
+        for (int i = from; i < to; i++) {
+            product.set(vx[i], vxLo[i]).multiply(dt, 0);
+            sum.set(x[i], xLo[i]).add(product);
+            x[i] = sum.getHi();
+            xLo[i] = sum.getLo();
+            product.set(vy[i], vyLo[i]).multiply(dt, 0);
+            sum.set(y[i], yLo[i]).add(product);
+            y[i] = sum.getHi();
+            yLo[i] = sum.getLo();
+            product.set(vz[i], vzLo[i]).multiply(dt, 0);
+            sum.set(z[i], zLo[i]).add(product);
+            z[i] = sum.getHi();
+            zLo[i] = sum.getLo();
+        }
+    }
+
+    /**
+     * Moves the bodies within the given range along their current velocity over the given time, adding the
+     * displacement to the fixed-point positions.
+     * <p>
+     * Only the displacement is rounded, so the error of a position does not depend on its distance from the origin.
+     * The double columns are set to the rounded positions.
+     *
+     * @param from The first index, inclusive.
+     * @param to   The last index, exclusive.
+     * @param dt   The time in days.
+     */
+    public void driftFixedPoint(int from, int to, double dt) {
+        accelerationsCurrent = false;
+        double scale = dt * Physics.AU_IN_METRES;
+        for (int i = from; i < to; i++) {
+            FixedPoint.add(xWhole, xFraction, i, vx[i] * scale);
+            FixedPoint.add(yWhole, yFraction, i, vy[i] * scale);
+            FixedPoint.add(zWhole, zFraction, i, vz[i] * scale);
+            x[i] = FixedPoint.toDouble(xWhole[i], xFraction[i]) / Physics.AU_IN_METRES;
+            y[i] = FixedPoint.toDouble(yWhole[i], yFraction[i]) / Physics.AU_IN_METRES;
+            z[i] = FixedPoint.toDouble(zWhole[i], zFraction[i]) / Physics.AU_IN_METRES;
+            xLo[i] = yLo[i] = zLo[i] = 0;
+        }
+    }
+
+    /**
+     * Returns whether the fixed-point columns hold the current positions.
+     *
+     * @return true if the positions were only changed by the fixed-point step loop or by the bodies since the last
+     * conversion. false otherwise.
+     */
+    public boolean isFixedPointCurrent() {
+        return fixedPointCurrent;
+    }
+
+    /**
+     * Converts the positions of the double columns, including their low parts, into the fixed-point columns.
+     */
+    public void updateFixedPoint() {
+        for (int i = 0; i < size; i++) {
+            FixedPoint.set(xWhole, xFraction, i, Physics.toMetres(x[i], xLo[i]));
+            FixedPoint.set(yWhole, yFraction, i, Physics.toMetres(y[i], yLo[i]));
+            FixedPoint.set(zWhole, zFraction, i, Physics.toMetres(z[i], zLo[i]));
+        }
+        fixedPointCurrent = true;
+    }
+
+    /**
+     * Returns whether the accelerations belong to the current positions and masses.
+     *
+     * @return true if the accelerations were calculated by an {@link Integrator} after the last change of the bodies.
+     * false otherwise.
+     */
+    public boolean isAccelerationsCurrent() {
+        return accelerationsCurrent;
+    }
+
+    /**
+     * Marks the accelerations as calculated for the current positions and masses.
+     */
+    void markAccelerationsCurrent() {
+        accelerationsCurrent = true;
+    }
+
+    /**
+     * Marks the fixed-point positions and the accelerations as outdated after the positions were written directly.
+     */
+    void markPositionsChanged() {
+        fixedPointCurrent = false;
+        accelerationsCurrent = false;
+    }
+
+    /**
+     * Marks the accelerations as outdated, e.g. because a body was changed.
+     */
+    void invalidateAccelerations() {
+        accelerationsCurrent = false;
+    }
+
+    /**
+     * Getter for the x coordinate of a position.
+     *
+     * @param index The index of the body.
+     * @return The x coordinate in astronomical units.
+     */
+    public double getX(int index) {
+        return x[index];
+    }
+
+    /**
+     * Getter for the y coordinate of a position.
+     *
+     * @param index The index of the body.
+     * @return The y coordinate in astronomical units.
+     */
+    public double getY(int index) {
+        return y[index];
+    }
+
+    /**
+     * Getter for the z coordinate of a position.
+     *
+     * @param index The index of the body.
+     * @return The z coordinate in astronomical units.
+     */
+    public double getZ(int index) {
+        return z[index];
+    }
+
+    /**
+     * Getter for a mass.
+     *
+     * @param index The index of the body.
+     * @return The mass in solar masses.
+     */
+    public double getMass(int index) {
+        return mass[index];
+    }
+
+    /**
+     * Increases the capacity of every column.
+     *
+     * @param capacity The new capacity.
+     */
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        vz = Arrays.copyOf(vz, capacity);
+        ax = Arrays.copyOf(ax, capacity);
+        ay = Arrays.copyOf(ay, capacity);
+        az = Arrays.copyOf(az, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        xLo = Arrays.copyOf(xLo, capacity);
+        yLo = Arrays.copyOf(yLo, capacity);
+        zLo = Arrays.copyOf(zLo, capacity);
+        vxLo = Arrays.copyOf(vxLo, capacity);
+        vyLo = Arrays.copyOf(vyLo, capacity);
+        vzLo = Arrays.copyOf(vzLo, capacity);
+        axLo = Arrays.copyOf(axLo, capacity);
+        ayLo = Arrays.copyOf(ayLo, capacity);
+        azLo = Arrays.copyOf(azLo, capacity);
+        massLo = Arrays.copyOf(massLo, capacity);
+        xWhole = Arrays.copyOf(xWhole, capacity);
+        xFraction = Arrays.copyOf(xFraction, capacity);
+        yWhole = Arrays.copyOf(yWhole, capacity);
+        yFraction = Arrays.copyOf(yFraction, capacity);
+        zWhole = Arrays.copyOf(zWhole, capacity);
+        zFraction = Arrays.copyOf(zFraction, capacity);
+        testParticle = Arrays.copyOf(testParticle, capacity);
+    }
+
+    /**
+     * Moves the given number of values starting at index one position up and zeroes the value at index.
+     *
+     * @param column The column.
+     * @param index  The first index to be moved.
+     * @param moved  The number of values to be moved.
+     */
+    private static void shift(double[] column, int index, int moved) {
+        System.arraycopy(column, index, column, index + 1, moved);
+        column[index] = 0;
+    }
+
+    /**
+     * Moves the given number of values starting at index one position up and zeroes the value at index.
+     *
+     * @param column The column.
+     * @param index  The first index to be moved.
+     * @param moved  The number of values to be moved.
+     */
+    private static void shift(long[] column, int index, int moved) {
+        System.arraycopy(column, index, column, index + 1, moved);
+        column[index] = 0;
+    }
+}
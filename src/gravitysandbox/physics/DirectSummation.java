@@ -0,0 +1,361 @@
+package gravitysandbox.physics;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ForceSolver} summing up the gravitational acceleration of every pair of bodies directly.
+ * <p>
+ * The result is exact up to rounding and for small numbers of bodies faster than building and walking a tree. Every
+ * pair is calculated once and the acceleration is applied to both bodies according to Newton's third law. The bodies
+ * are split into tiles whose coordinates fit into the first level cache, and pairs of tiles are handled together.
+ * The inner loops run over consecutive indices without branches, so the JIT compiler is able to use packed
+ * instructions for them.
+ * <p>
+ * With more than one thread the rows of tiles are distributed over blocks, each block adds to its own buffers and the
+ * buffers are summed up afterwards, as the third law writes to the bodies of other rows.
+ * <p>
+ * If the store contains test particles, the M sources are gathered into contiguous arrays and every body sums up the
+ * sources only, which costs N * M pairs instead of N^2 / 2.
+ *
+ * @version 1.3
+ * @since 1.1
+ */
+public class DirectSummation implements ForceSolver {
+
+    /**
+     * The number of bodies per tile.
+     */
+    private static final int TILE_SIZE = 256;
+
+    /**
+     * The {@link BodyStore} of the current calculation.
+     */
+    private BodyStore store;
+
+    /**
+     * The number of bodies of the current calculation.
+     */
+    private int size;
+
+    /**
+     * The number of tiles of the current calculation.
+     */
+    private int tileCount;
+
+    /**
+     * The number of blocks the rows of tiles are distributed over.
+     */
+    private int blockCount;
+
+    /**
+     * The x coordinates of the accelerations accumulated by every block.
+     */
+    private double[][] bufferX;
+
+    /**
+     * The y coordinates of the accelerations accumulated by every block.
+     */
+    private double[][] bufferY;
+
+    /**
+     * The z coordinates of the accelerations accumulated by every block.
+     */
+    private double[][] bufferZ;
+
+    /**
+     * The loop body calculating the rows of tiles of one block.
+     */
+    private final ParallelLoop.Item blockTask = this::calculateBlock;
+
+    /**
+     * The loop body adding the buffers of all blocks to the store.
+     */
+    private final ParallelLoop.Range reduceTask = this::reduceBuffers;
+
+    /**
+     * The indices of the bodies of the current calculation of a subset.
+     */
+    private int[] subset;
+
+    /**
+     * The loop body calculating the accelerations of a range of the subset.
+     */
+    private final ParallelLoop.Range subsetTask = this::calculateSubset;
+
+    /**
+     * The loop body calculating the accelerations of a range of all bodies from the gathered sources.
+     */
+    private final ParallelLoop.Range sourceTask = this::calculateFromSources;
+
+    /**
+     * The x coordinates of the gathered sources.
+     */
+    private double[] sourceX;
+
+    /**
+     * The y coordinates of the gathered sources.
+     */
+    private double[] sourceY;
+
+    /**
+     * The z coordinates of the gathered sources.
+     */
+    private double[] sourceZ;
+
+    /**
+     * The masses of the gathered sources.
+     */
+    private double[] sourceMass;
+
+    /**
+     * The number of gathered sources.
+     */
+    private int sourceCount;
+
+    /**
+     * The Plummer softening length in AU.
+     */
+    private double softening;
+
+    /**
+     * The squared softening length, added to the squared distance of every pair.
+     */
+    private double softening2;
+
+    /**
+     * Creates a new solver.
+     */
+    public DirectSummation() {
+        bufferX = new double[0][];
+        bufferY = new double[0][];
+        bufferZ = new double[0][];
+        sourceX = new double[0];
+        sourceY = new double[0];
+        sourceZ = new double[0];
+        sourceMass = new double[0];
+    }
+
+    @Override
+    public void accumulateAccelerations(BodyStore store, ParallelLoop parallelLoop) {
+        this.store = store;
+        size = store.size();
+        if (store.getTestParticleCount() > 0) {
+            gatherSources();
+            parallelLoop.forRange(0, size, sourceTask);
+            return;
+        }
+        tileCount = (size + TILE_SIZE - 1) / TILE_SIZE;
+        blockCount = Math.min(tileCount, parallelLoop.getParallelism() == 1 ? 1 : 4 * parallelLoop.getParallelism());
+
+        if (blockCount <= 1) {
+            for (int row = 0; row < tileCount; row++) {
+                calculateRow(row, store.ax, store.ay, store.az);
+            }
+            return;
+        }
+
+        if (bufferX.length < blockCount || bufferX[0].length < size) {
+            int capacity = Math.max(size, bufferX.length > 0 ? bufferX[0].length : 0);
+            bufferX = new double[blockCount][capacity];
+            bufferY = new double[blockCount][capacity];
+            bufferZ = new double[blockCount][capacity];
+        }
+        parallelLoop.forEach(blockCount, blockTask);
+        parallelLoop.forRange(0, size, reduceTask);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every body of the subset sums up all its partners itself, as the third law would change the accelerations of
+     * bodies outside the subset.
+     */
+    @Override
+    public void accumulateAccelerations(BodyStore store, int[] bodies, int count, ParallelLoop parallelLoop) {
+        if (count == store.size()) {
+            accumulateAccelerations(store, parallelLoop);
+            return;
+        }
+        this.store = store;
+        size = store.size();
+        gatherSources();
+        subset = bodies;
+        parallelLoop.forRange(0, count, subsetTask);
+        subset = null;
+    }
+
+    /**
+     * Adds the acceleration caused by all other bodies to the bodies within the given range of the subset.
+     *
+     * @param from The position of the first body within the subset, inclusive.
+     * @param to   The position of the last body within the subset, exclusive.
+     */
+    private void calculateSubset(int from, int to) {
+        for (int k = from; k < to; k++) {
+            calculateFromSources(subset[k]);
+        }
+    }
+
+    /**
+     * Adds the acceleration caused by all sources to the bodies within the given range of indices.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void calculateFromSources(int from, int to) {
+        for (int i = from; i < to; i++) {
+            calculateFromSources(i);
+        }
+    }
+
+    /**
+     * Adds the acceleration caused by all gathered sources to one body.
+     * <p>
+     * Sources at the position of the body, including the body itself, are skipped.
+     *
+     * @param i The index of the body.
+     */
+    private void calculateFromSources(int i) {
+        double[] x = sourceX, y = sourceY, z = sourceZ, mass = sourceMass;
+        double xi = store.x[i], yi = store.y[i], zi = store.z[i], softening2 = this.softening2;
+        double sx = 0, sy = 0, sz = 0;
+        for (int j = 0; j < sourceCount; j++) {
+            double dx = x[j] - xi, dy = y[j] - yi, dz = z[j] - zi;
+            double r2 = dx * dx + dy * dy + dz * dz;
+            double e2 = r2 + softening2;
+            double s = r2 > 0 ? Physics.G_INTERNAL * mass[j] / (e2 * Math.sqrt(e2)) : 0;
+            sx += dx * s;
+            sy += dy * s;
+            sz += dz * s;
+        }
+        store.ax[i] += sx;
+        store.ay[i] += sy;
+        store.az[i] += sz;
+    }
+
+    /**
+     * Copies the positions and masses of all bodies of the store except the test particles into contiguous arrays.
+     */
+    private void gatherSources() {
+        if (sourceX.length < size) {
+            int capacity = Math.max(size, 2 * sourceX.length);
+            sourceX = new double[capacity];
+            sourceY = new double[capacity];
+            sourceZ = new double[capacity];
+            sourceMass = new double[capacity];
+        }
+        sourceCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (store.testParticle[i])
+                continue;
+            sourceX[sourceCount] = store.x[i];
+            sourceY[sourceCount] = store.y[i];
+            sourceZ[sourceCount] = store.z[i];
+            sourceMass[sourceCount] = store.mass[i];
+            sourceCount++;
+        }
+    }
+
+    /**
+     * Calculates the rows of tiles belonging to one block into the buffers of the block.
+     * <p>
+     * Row r has tileCount - r tiles, so the rows are dealt out back and forth to balance the blocks.
+     *
+     * @param block The index of the block.
+     */
+    private void calculateBlock(int block) {
+        Arrays.fill(bufferX[block], 0, size, 0);
+        Arrays.fill(bufferY[block], 0, size, 0);
+        Arrays.fill(bufferZ[block], 0, size, 0);
+        for (int row = 0; row < tileCount; row++) {
+            int round = row / blockCount, position = row % blockCount;
+            int owner = round % 2 == 0 ? position : blockCount - 1 - position;
+            if (owner == block)
+                calculateRow(row, bufferX[block], bufferY[block], bufferZ[block]);
+        }
+    }
+
+    /**
+     * Adds the buffers of all blocks to the accelerations of the bodies within the given range of indices.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void reduceBuffers(int from, int to) {
+        for (int block = 0; block < blockCount; block++) {
+            double[] x = bufferX[block], y = bufferY[block], z = bufferZ[block];
+            for (int i = from; i < to; i++) {
+                store.ax[i] += x[i];
+                store.ay[i] += y[i];
+                store.az[i] += z[i];
+            }
+        }
+    }
+
+    /**
+     * Calculates all pairs of one tile with itself and with every following tile.
+     *
+     * @param row The index of the tile.
+     * @param ax  The array receiving the x coordinates of the accelerations.
+     * @param ay  The array receiving the y coordinates of the accelerations.
+     * @param az  The array receiving the z coordinates of the accelerations.
+     */
+    private void calculateRow(int row, double[] ax, double[] ay, double[] az) {
+        int from = row * TILE_SIZE, to = Math.min(from + TILE_SIZE, size);
+        for (int column = row; column < tileCount; column++) {
+            int columnFrom = column * TILE_SIZE, columnTo = Math.min(columnFrom + TILE_SIZE, size);
+            for (int i = from; i < to; i++) {
+                calculatePairs(i, column == row ? i + 1 : columnFrom, columnTo, ax, ay, az);
+            }
+        }
+    }
+
+    /**
+     * Calculates the pairs of one body with a range of following bodies and applies the acceleration to both bodies
+     * of every pair.
+     * <p>
+     * Pairs of bodies sharing a position are skipped.
+     *
+     * @param i    The index of the body.
+     * @param from The index of the first partner, inclusive.
+     * @param to   The index of the last partner, exclusive.
+     * @param ax   The array receiving the x coordinates of the accelerations.
+     * @param ay   The array receiving the y coordinates of the accelerations.
+     * @param az   The array receiving the z coordinates of the accelerations.
+     */
+    private void calculatePairs(int i, int from, int to, double[] ax, double[] ay, double[] az) {
+        double[] x = store.x, y = store.y, z = store.z, mass = store.mass;
+        double xi = x[i], yi = y[i], zi = z[i], mi = mass[i], softening2 = this.softening2;
+        double sx = 0, sy = 0, sz = 0;
+        for (int j = from; j < to; j++) {
+            double dx = x[j] - xi, dy = y[j] - yi, dz = z[j] - zi;
+            double r2 = dx * dx + dy * dy + dz * dz;
+            double e2 = r2 + softening2;
+            double s = r2 > 0 ? Physics.G_INTERNAL / (e2 * Math.sqrt(e2)) : 0;
+            double sj = s * mass[j];
+            sx += dx * sj;
+            sy += dy * sj;
+            sz += dz * sj;
+            double si = s * mi;
+            ax[j] -= dx * si;
+            ay[j] -= dy * si;
+            az[j] -= dz * si;
+        }
+        ax[i] += sx;
+        ay[i] += sy;
+        az[i] += sz;
+    }
+
+    @Override
+    public double getSoftening() {
+        return softening;
+    }
+
+    @Override
+    public void setSoftening(double softening) {
+        if (!(softening >= 0) || Double.isInfinite(softening))
+            throw new IllegalArgumentException("The softening length has to be finite and not negative.");
+        this.softening = softening;
+        softening2 = softening * softening;
+    }
+}
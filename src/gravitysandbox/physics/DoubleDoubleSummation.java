@@ -0,0 +1,260 @@
+package gravitysandbox.physics;
+
+import gravitysandbox.util.DoubleDouble;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ForceSolver} summing up the gravitational acceleration of every pair of bodies directly in double-double
+ * precision.
+ * <p>
+ * Positions, masses and the resulting accelerations use both the high and the low columns of the {@link BodyStore}, so
+ * together with {@link BodyStore#kickExtended(int, int, double)} and {@link BodyStore#driftExtended(int, int, double)}
+ * the step loop keeps about 106 bits instead of 53. This is meant for long integrations of planetary systems with few
+ * bodies, where the rounding errors of double precision accumulate, at a small multiple of the costs of
+ * {@link DirectSummation}.
+ * <p>
+ * Every body sums up all its partners itself instead of using Newton's third law, so the bodies can be split over
+ * threads without private buffers.
+ *
+ * @version 1.4
+ * @since 1.1
+ */
+public class DoubleDoubleSummation implements ForceSolver {
+
+    /**
+     * The {@link BodyStore} of the current calculation.
+     */
+    private BodyStore store;
+
+    /**
+     * The number of bodies of the current calculation.
+     */
+    private int size;
+
+    /**
+     * The high parts of G times the mass of every body.
+     */
+    private double[] gm;
+
+    /**
+     * The low parts of G times the mass of every body.
+     */
+    private double[] gmLo;
+
+    /**
+     * G in double-double precision.
+     */
+    private final DoubleDouble g = new DoubleDouble(Physics.G_INTERNAL, 0).add(Physics.G_INTERNAL_LO, 0);
+
+    /**
+     * The product of G and a mass calculated by {@link #prepare(BodyStore)}.
+     */
+    private final DoubleDouble product = new DoubleDouble();
+
+    /**
+     * The temporary values of every thread.
+     */
+    private final ThreadLocal<Kernel> kernels = ThreadLocal.withInitial(Kernel::new);
+
+    /**
+     * The loop body calculating the accelerations of a range of bodies.
+     */
+    private final ParallelLoop.Range accelerationTask = this::accumulateAccelerations;
+
+    /**
+     * The indices of the bodies of the current calculation of a subset.
+     */
+    private int[] subset;
+
+    /**
+     * The loop body calculating the accelerations of a range of the subset.
+     */
+    private final ParallelLoop.Range subsetTask = this::accumulateSubset;
+
+    /**
+     * The Plummer softening length in AU.
+     */
+    private double softening;
+
+    /**
+     * The squared softening length, added to the squared distance of every pair.
+     */
+    private double softening2;
+
+    /**
+     * Creates a new solver.
+     */
+    public DoubleDoubleSummation() {
+        gm = new double[0];
+        gmLo = new double[0];
+    }
+
+    @Override
+    public void accumulateAccelerations(BodyStore store, ParallelLoop parallelLoop) {
+        prepare(store);
+        parallelLoop.forRange(0, size, accelerationTask);
+    }
+
+    @Override
+    public void accumulateAccelerations(BodyStore store, int[] bodies, int count, ParallelLoop parallelLoop) {
+        prepare(store);
+        subset = bodies;
+        parallelLoop.forRange(0, count, subsetTask);
+        subset = null;
+    }
+
+    /**
+     * Calculates G times the mass of every body of the store in double-double precision.
+     *
+     * @param store The {@link BodyStore} of the calculation.
+     */
+    private void prepare(BodyStore store) {
+        this.store = store;
+        size = store.size();
+        if (gm.length < size) {
+            gm = Arrays.copyOf(gm, size);
+            gmLo = Arrays.copyOf(gmLo, size);
+        }
+
+        for (int i = 0; i < size; i++) {
+            product.set(g).multiply(store.mass[i], store.massLo[i]);
+            gm[i] = product.getHi();
+            gmLo[i] = product.getLo();
+        }
+    }
+
+    /**
+     * Adds the acceleration caused by all other bodies to every body within the given range of indices.
+     * <p>
+     * Pairs of bodies sharing a position are skipped.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void accumulateAccelerations(int from, int to) {
+        Kernel k = kernels.get();
+        for (int i = from; i < to; i++) {
+            accumulateAcceleration(k, i);
+        }
+    }
+
+    /**
+     * Adds the acceleration caused by all other bodies to every body within the given range of the subset.
+     *
+     * @param from The position of the first body within the subset, inclusive.
+     * @param to   The position of the last body within the subset, exclusive.
+     */
+    private void accumulateSubset(int from, int to) {
+        Kernel k = kernels.get();
+        for (int position = from; position < to; position++) {
+            accumulateAcceleration(k, subset[position]);
+        }
+    }
+
+    /**
+     * Adds the acceleration caused by all other bodies to one body.
+     * <p>
+     * Pairs of bodies sharing a position and test particles as partners are skipped.
+     *
+     * @param k The temporary values of the calling thread.
+     * @param i The index of the body.
+     */
+    private void accumulateAcceleration(Kernel k, int i) {
+        double[] x = store.x, y = store.y, z = store.z, xLo = store.xLo, yLo = store.yLo, zLo = store.zLo;
+        k.ax.set(store.ax[i], store.axLo[i]);
+        k.ay.set(store.ay[i], store.ayLo[i]);
+        k.az.set(store.az[i], store.azLo[i]);
+        for (int j = 0; j < size; j++) {
+            if (j == i || store.testParticle[j])
+                continue;
+            k.dx.set(x[j], xLo[j]).subtract(x[i], xLo[i]);
+            k.dy.set(y[j], yLo[j]).subtract(y[i], yLo[i]);
+            k.dz.set(z[j], zLo[j]).subtract(z[i], zLo[i]);
+            k.r2.set(k.dx).multiply(k.dx);
+            k.r2.add(k.t.set(k.dy).multiply(k.dy));
+            k.r2.add(k.t.set(k.dz).multiply(k.dz));
+            if (k.r2.getHi() == 0)
+                continue;
+            k.r2.add(softening2, 0);
+
+            // G * m / r^3
+            k.t.set(k.r2).sqrt().multiply(k.r2);
+            k.s.set(gm[j], gmLo[j]).divide(k.t);
+
+            k.ax.add(k.dx.multiply(k.s));
+            k.ay.add(k.dy.multiply(k.s));
+            k.az.add(k.dz.multiply(k.s));
+        }
+        store.ax[i] = k.ax.getHi();
+        store.axLo[i] = k.ax.getLo();
+        store.ay[i] = k.ay.getHi();
+        store.ayLo[i] = k.ay.getLo();
+        store.az[i] = k.az.getHi();
+        store.azLo[i] = k.az.getLo();
+    }
+
+    @Override
+    public double getSoftening() {
+        return softening;
+    }
+
+    @Override
+    public void setSoftening(double softening) {
+        if (!(softening >= 0) || Double.isInfinite(softening))
+            throw new IllegalArgumentException("The softening length has to be finite and not negative.");
+        this.softening = softening;
+        softening2 = softening * softening;
+    }
+
+    /**
+     * The temporary values of one thread, so the inner loop does not create any objects.
+     */
+    private static class Kernel {
+
+        /**
+         * The x coordinate of the distance vector.
+         */
+        final DoubleDouble dx = new DoubleDouble();
+
+        /**
+         * The y coordinate of the distance vector.
+         */
+        final DoubleDouble dy = new DoubleDouble();
+
+        /**
+         * The z coordinate of the distance vector.
+         */
+        final DoubleDouble dz = new DoubleDouble();
+
+        /**
+         * The squared distance.
+         */
+        final DoubleDouble r2 = new DoubleDouble();
+
+        /**
+         * A temporary value.
+         */
+        final DoubleDouble t = new DoubleDouble();
+
+        /**
+         * The factor of the distance vector.
+         */
+        final DoubleDouble s = new DoubleDouble();
+
+        /**
+         * The x coordinate of the accumulated acceleration.
+         */
+        final DoubleDouble ax = new DoubleDouble();
+
+        /**
+         * The y coordinate of the accumulated acceleration.
+         */
+        final DoubleDouble ay = new DoubleDouble();
+
+        /**
+         * The z coordinate of the accumulated acceleration.
+         */
+        final DoubleDouble az = new DoubleDouble();
+    }
+}
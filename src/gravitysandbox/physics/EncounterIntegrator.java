@@ -0,0 +1,684 @@
+package gravitysandbox.physics;
+
+/**
+ * A kick-drift-kick leapfrog which sub-cycles close encounters with an adaptive Runge-Kutta-Fehlberg method.
+ * <p>
+ * Every body gets an encounter radius within which the free-fall time towards it is shorter than a given number of
+ * steps: r = (G * m * (steps * dt)^2)^(1/3). Two bodies closer than the sum of their radii form a close pair, found by
+ * walking an own {@link BarnesHutTree}. Close pairs sharing a body are joined into groups. The forces within a group
+ * are removed from the kicks, and instead of moving along a straight line during the drift the bodies of a group are
+ * integrated under their mutual gravity by the embedded Runge-Kutta-Fehlberg method of order 4(5) with as many sub
+ * steps as their error estimate demands. All other bodies and pairs keep the large step, and the forces of all bodies
+ * outside of a group still act on it through the kicks.
+ * <p>
+ * The groups are found at the beginning of the step and kept for both kicks, so the forces removed from the kicks are
+ * exactly those integrated during the drift. Splitting the forces this way is still second order accurate, but not
+ * symplectic while a pair is sub-cycled.
+ * <p>
+ * The sub steps use the softening length of the {@link ForceSolver}, so both parts see the same force law.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class EncounterIntegrator implements Integrator {
+
+    /**
+     * The default number of steps below which the free-fall time of a pair makes it a close pair.
+     */
+    public static final double DEFAULT_ENCOUNTER_STEPS = 10;
+
+    /**
+     * The default relative error allowed per sub step.
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+
+    /**
+     * The fraction of the time step below which a sub step is accepted regardless of its error, so an unsoftened
+     * collision can not stall the simulation.
+     */
+    private static final double MIN_SUBSTEP = 1e-12;
+
+    /**
+     * The coefficients of the stages of the Runge-Kutta-Fehlberg method, one row per stage.
+     */
+    private static final double[][] A = {
+            {},
+            {1.0 / 4},
+            {3.0 / 32, 9.0 / 32},
+            {1932.0 / 2197, -7200.0 / 2197, 7296.0 / 2197},
+            {439.0 / 216, -8, 3680.0 / 513, -845.0 / 4104},
+            {-8.0 / 27, 2, -3544.0 / 2565, 1859.0 / 4104, -11.0 / 40}
+    };
+
+    /**
+     * The weights of the fifth order solution, which is used to advance.
+     */
+    private static final double[] B = {16.0 / 135, 0, 6656.0 / 12825, 28561.0 / 56430, -9.0 / 50, 2.0 / 55};
+
+    /**
+     * The weights of the fifth minus those of the fourth order solution, giving the error estimate.
+     */
+    private static final double[] E = {1.0 / 360, 0, -128.0 / 4275, -2197.0 / 75240, 1.0 / 50, 2.0 / 55};
+
+    /**
+     * The tree used to find the close pairs.
+     */
+    private final BarnesHutTree tree;
+
+    /**
+     * The number of steps below which the free-fall time of a pair makes it a close pair.
+     */
+    private double encounterSteps;
+
+    /**
+     * The relative error allowed per sub step.
+     */
+    private double tolerance;
+
+    /**
+     * The encounter radius of every body.
+     */
+    private double[] radius;
+
+    /**
+     * The parent of every body within the union-find forest joining the close pairs into groups.
+     */
+    private int[] parent;
+
+    /**
+     * The group of every body or -1 if it does not belong to a group.
+     */
+    private int[] groupOf;
+
+    /**
+     * The bodies of all groups, sorted by group.
+     */
+    private int[] members;
+
+    /**
+     * The position of the first member of every group within members, followed by the total number of members.
+     */
+    private int[] groupStart;
+
+    /**
+     * The number of groups of the current step.
+     */
+    private int groupCount;
+
+    /**
+     * The number of close pairs of the last step.
+     */
+    private int pairCount;
+
+    /**
+     * The number of sub steps of the last step.
+     */
+    private int substeps;
+
+    /**
+     * The x coordinates of the accelerations within the groups.
+     */
+    private double[] groupAx;
+
+    /**
+     * The y coordinates of the accelerations within the groups.
+     */
+    private double[] groupAy;
+
+    /**
+     * The z coordinates of the accelerations within the groups.
+     */
+    private double[] groupAz;
+
+    /**
+     * The state of the current group: position and velocity relative to its center of mass, six values per member.
+     */
+    private double[] state;
+
+    /**
+     * The state of the current group at the stages.
+     */
+    private double[] stageState;
+
+    /**
+     * The derivatives of the state at the six stages.
+     */
+    private final double[][] stages = new double[6][];
+
+    /**
+     * The position and velocity of the center of mass of the current group.
+     */
+    private final double[] centerOfMass = new double[6];
+
+    /**
+     * The positions and velocities of the members of all groups at the end of the step, six values per member in the
+     * order of members.
+     */
+    private double[] groupResult;
+
+    /**
+     * G times the masses of the members of the current group.
+     */
+    private double[] gm;
+
+    /**
+     * The {@link BodyStore} of the current step.
+     */
+    private BodyStore store;
+
+    /**
+     * The squared softening length of the current step.
+     */
+    private double softening2;
+
+    /**
+     * The time step of the current step in days.
+     */
+    private double stepTimeStep;
+
+    /**
+     * The receiver of the close pairs found by the tree.
+     */
+    private final BarnesHutTree.PairConsumer pairTask = this::join;
+
+    /**
+     * The loop body changing the velocities of a range of bodies by the forces outside of their group.
+     */
+    private final ParallelLoop.Range kickTask = this::kick;
+
+    /**
+     * The loop body moving a range of bodies along a straight line.
+     */
+    private final ParallelLoop.Range driftTask = this::drift;
+
+    /**
+     * Creates a new integrator with the default encounter steps and tolerance.
+     */
+    public EncounterIntegrator() {
+        tree = new BarnesHutTree();
+        encounterSteps = DEFAULT_ENCOUNTER_STEPS;
+        tolerance = DEFAULT_TOLERANCE;
+        radius = new double[0];
+        parent = new int[0];
+        groupOf = new int[0];
+        members = new int[0];
+        groupStart = new int[1];
+        groupAx = new double[0];
+        groupAy = new double[0];
+        groupAz = new double[0];
+        groupResult = new double[0];
+        state = new double[0];
+        stageState = new double[0];
+        gm = new double[0];
+        for (int s = 0; s < stages.length; s++) {
+            stages[s] = new double[0];
+        }
+    }
+
+    @Override
+    public void step(BodyStore store, ForceSolver solver, ParallelLoop parallelLoop, double dt) {
+        int n = store.size();
+        this.store = store;
+        stepTimeStep = dt;
+        softening2 = solver.getSoftening() * solver.getSoftening();
+        pairCount = 0;
+        substeps = 0;
+        groupCount = 0;
+        if (n == 0)
+            return;
+        ensureCapacity(n);
+
+        Integrator.updateAccelerations(store, solver, parallelLoop);
+        findGroups(parallelLoop, n);
+        calculateGroupAccelerations();
+        parallelLoop.forRange(0, n, kickTask);
+        for (int g = 0; g < groupCount; g++) {
+            integrateGroup(g);
+        }
+        parallelLoop.forRange(0, n, driftTask);
+        writeGroups();
+        Integrator.updateAccelerations(store, solver, parallelLoop);
+        calculateGroupAccelerations();
+        parallelLoop.forRange(0, n, kickTask);
+    }
+
+    @Override
+    public int getForceCalculations() {
+        return 1;
+    }
+
+    /**
+     * Grows the arrays per body to the given number of bodies.
+     *
+     * @param n The number of bodies.
+     */
+    private void ensureCapacity(int n) {
+        if (radius.length >= n)
+            return;
+        int capacity = Math.max(n, 2 * radius.length);
+        radius = new double[capacity];
+        parent = new int[capacity];
+        groupOf = new int[capacity];
+        members = new int[capacity];
+        groupStart = new int[capacity + 1];
+        groupAx = new double[capacity];
+        groupAy = new double[capacity];
+        groupAz = new double[capacity];
+        groupResult = new double[6 * capacity];
+    }
+
+    /**
+     * Finds the close pairs and joins them into groups.
+     *
+     * @param parallelLoop The {@link ParallelLoop} used to update the tree.
+     * @param n            The number of bodies.
+     */
+    private void findGroups(ParallelLoop parallelLoop, int n) {
+        double time = encounterSteps * stepTimeStep;
+        for (int i = 0; i < n; i++) {
+            radius[i] = Math.cbrt(Physics.G_INTERNAL * store.mass[i] * time * time);
+            parent[i] = i;
+            groupOf[i] = -1;
+        }
+        tree.updateTree(store, parallelLoop);
+        tree.forEachClosePair(radius, pairTask);
+        if (pairCount == 0)
+            return;
+
+        // Every root of a union-find tree with more than one body starts a group.
+        for (int i = 0; i < n; i++) {
+            if (parent[i] != i)
+                groupOf[find(i)] = -2;
+        }
+        for (int i = 0; i < n; i++) {
+            if (groupOf[i] == -2)
+                groupOf[i] = groupCount++;
+        }
+        for (int g = 0; g <= groupCount; g++) {
+            groupStart[g] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            if (parent[i] != i)
+                groupOf[i] = groupOf[find(i)];
+            if (groupOf[i] >= 0)
+                groupStart[groupOf[i] + 1]++;
+        }
+        for (int g = 0; g < groupCount; g++) {
+            groupStart[g + 1] += groupStart[g];
+        }
+        // Filling moves every start to the start of the next group, so they are shifted back afterwards.
+        for (int i = 0; i < n; i++) {
+            if (groupOf[i] >= 0)
+                members[groupStart[groupOf[i]]++] = i;
+        }
+        for (int g = groupCount; g > 0; g--) {
+            groupStart[g] = groupStart[g - 1];
+        }
+        groupStart[0] = 0;
+    }
+
+    /**
+     * Joins the groups of the two bodies of a close pair.
+     *
+     * @param first  The index of the first body.
+     * @param second The index of the second body.
+     */
+    private void join(int first, int second) {
+        pairCount++;
+        int a = find(first), b = find(second);
+        if (a != b)
+            parent[Math.max(a, b)] = Math.min(a, b);
+    }
+
+    /**
+     * Returns the root of the union-find tree of a body and shortens the path to it.
+     *
+     * @param i The index of the body.
+     * @return The index of the root.
+     */
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Calculates the accelerations every member of a group gets from the other members.
+     */
+    private void calculateGroupAccelerations() {
+        double[] x = store.x, y = store.y, z = store.z, mass = store.mass;
+        for (int g = 0; g < groupCount; g++) {
+            for (int k = groupStart[g]; k < groupStart[g + 1]; k++) {
+                int i = members[k];
+                double ax = 0, ay = 0, az = 0;
+                for (int l = groupStart[g]; l < groupStart[g + 1]; l++) {
+                    int j = members[l];
+                    double dx = x[j] - x[i], dy = y[j] - y[i], dz = z[j] - z[i];
+                    double r2 = dx * dx + dy * dy + dz * dz;
+                    if (r2 == 0)
+                        continue;
+                    r2 += softening2;
+                    double s = Physics.G_INTERNAL * mass[j] / (r2 * Math.sqrt(r2));
+                    ax += dx * s;
+                    ay += dy * s;
+                    az += dz * s;
+                }
+                groupAx[i] = ax;
+                groupAy[i] = ay;
+                groupAz[i] = az;
+            }
+        }
+    }
+
+    /**
+     * Changes the velocities of the bodies within the given range of indices by half a step of their acceleration
+     * without the part caused by their group.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void kick(int from, int to) {
+        double halfDt = 0.5 * stepTimeStep;
+        double[] vx = store.vx, vy = store.vy, vz = store.vz;
+        for (int i = from; i < to; i++) {
+            double ax = store.ax[i], ay = store.ay[i], az = store.az[i];
+            if (groupOf[i] >= 0) {
+                ax -= groupAx[i];
+                ay -= groupAy[i];
+                az -= groupAz[i];
+            }
+            vx[i] += ax * halfDt;
+            vy[i] += ay * halfDt;
+            vz[i] += az * halfDt;
+            store.vxLo[i] = store.vyLo[i] = store.vzLo[i] = 0;
+        }
+    }
+
+    /**
+     * Moves the bodies within the given range of indices along a straight line. The members of the groups are
+     * overwritten afterwards.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void drift(int from, int to) {
+        store.drift(from, to, stepTimeStep);
+    }
+
+    /**
+     * Integrates a group under the mutual gravity of its members over the time step, in sub steps of the
+     * Runge-Kutta-Fehlberg method.
+     * <p>
+     * The members move relative to their center of mass, which moves uniformly. The results are kept in the state,
+     * relative to the center of mass at the end of the step, until {@link #writeGroups()}.
+     *
+     * @param g The index of the group.
+     */
+    private void integrateGroup(int g) {
+        int start = groupStart[g], count = groupStart[g + 1] - start;
+        int length = 6 * count;
+        if (state.length < length) {
+            state = new double[length];
+            stageState = new double[length];
+            gm = new double[count];
+            for (int s = 0; s < stages.length; s++) {
+                stages[s] = new double[length];
+            }
+        }
+        double[] y = groupState(start, count);
+
+        // Position and velocity scales of the error, from the size and the circular velocity of the group.
+        double totalGm = 0, size = 0, speed = 0;
+        for (int k = 0; k < count; k++) {
+            totalGm += gm[k];
+            size = Math.max(size, Math.sqrt(y[6 * k] * y[6 * k] + y[6 * k + 1] * y[6 * k + 1]
+                    + y[6 * k + 2] * y[6 * k + 2]));
+            speed = Math.max(speed, Math.sqrt(y[6 * k + 3] * y[6 * k + 3] + y[6 * k + 4] * y[6 * k + 4]
+                    + y[6 * k + 5] * y[6 * k + 5]));
+        }
+        size = Math.max(size, Math.sqrt(softening2));
+        if (size == 0 || totalGm == 0) {
+            // Members at the same position or without mass do not act on each other.
+            advanceCenterOfMass(start, count);
+            return;
+        }
+        speed = Math.max(speed, Math.sqrt(totalGm / size));
+        double positionScale = tolerance * size, velocityScale = tolerance * speed;
+
+        double remaining = stepTimeStep;
+        double h = Math.min(remaining, 0.01 * size / speed);
+        double minimum = MIN_SUBSTEP * stepTimeStep;
+        while (remaining > 0) {
+            h = Math.min(h, remaining);
+            double error = rungeKuttaFehlberg(count, h, positionScale, velocityScale);
+            if (error <= 1 || h <= minimum) {
+                for (int i = 0; i < length; i++) {
+                    double change = 0;
+                    for (int s = 0; s < stages.length; s++) {
+                        change += B[s] * stages[s][i];
+                    }
+                    y[i] += h * change;
+                }
+                remaining -= h;
+                substeps++;
+            }
+            double factor = error == 0 ? 5 : 0.9 * Math.pow(error, -0.2);
+            h = Math.max(minimum, h * Math.min(5, Math.max(0.2, factor)));
+        }
+        advanceCenterOfMass(start, count);
+    }
+
+    /**
+     * Fills the state with the positions and velocities of the members of a group relative to their center of mass
+     * and gm with their masses.
+     *
+     * @param start The position of the first member within members.
+     * @param count The number of members.
+     * @return The state.
+     */
+    private double[] groupState(int start, int count) {
+        double mass = 0, comX = 0, comY = 0, comZ = 0, comVx = 0, comVy = 0, comVz = 0;
+        for (int k = 0; k < count; k++) {
+            int i = members[start + k];
+            double m = store.mass[i];
+            mass += m;
+            comX += m * store.x[i];
+            comY += m * store.y[i];
+            comZ += m * store.z[i];
+            comVx += m * store.vx[i];
+            comVy += m * store.vy[i];
+            comVz += m * store.vz[i];
+        }
+        if (mass == 0)
+            mass = 1;
+        centerOfMass[0] = comX / mass;
+        centerOfMass[1] = comY / mass;
+        centerOfMass[2] = comZ / mass;
+        centerOfMass[3] = comVx / mass;
+        centerOfMass[4] = comVy / mass;
+        centerOfMass[5] = comVz / mass;
+        double[] y = state;
+        for (int k = 0; k < count; k++) {
+            int i = members[start + k];
+            gm[k] = Physics.G_INTERNAL * store.mass[i];
+            y[6 * k] = store.x[i] - centerOfMass[0];
+            y[6 * k + 1] = store.y[i] - centerOfMass[1];
+            y[6 * k + 2] = store.z[i] - centerOfMass[2];
+            y[6 * k + 3] = store.vx[i] - centerOfMass[3];
+            y[6 * k + 4] = store.vy[i] - centerOfMass[4];
+            y[6 * k + 5] = store.vz[i] - centerOfMass[5];
+        }
+        return y;
+    }
+
+    /**
+     * Calculates the six stages of one sub step of the Runge-Kutta-Fehlberg method and its error.
+     *
+     * @param count         The number of members.
+     * @param h             The length of the sub step.
+     * @param positionScale The allowed error of a position.
+     * @param velocityScale The allowed error of a velocity.
+     * @return The largest error relative to the allowed one.
+     */
+    private double rungeKuttaFehlberg(int count, double h, double positionScale, double velocityScale) {
+        int length = 6 * count;
+        calculateDerivative(state, stages[0], count);
+        for (int s = 1; s < stages.length; s++) {
+            for (int i = 0; i < length; i++) {
+                double change = 0;
+                for (int t = 0; t < s; t++) {
+                    change += A[s][t] * stages[t][i];
+                }
+                stageState[i] = state[i] + h * change;
+            }
+            calculateDerivative(stageState, stages[s], count);
+        }
+
+        double error = 0;
+        for (int i = 0; i < length; i++) {
+            double estimate = 0;
+            for (int s = 0; s < stages.length; s++) {
+                estimate += E[s] * stages[s][i];
+            }
+            double scale = i % 6 < 3 ? positionScale : velocityScale;
+            error = Math.max(error, Math.abs(h * estimate) / scale);
+        }
+        return error;
+    }
+
+    /**
+     * Calculates the derivative of a group state: the velocities and the accelerations by the other members.
+     *
+     * @param y          The state.
+     * @param derivative The array receiving the derivative.
+     * @param count      The number of members.
+     */
+    private void calculateDerivative(double[] y, double[] derivative, int count) {
+        for (int k = 0; k < count; k++) {
+            double ax = 0, ay = 0, az = 0;
+            for (int l = 0; l < count; l++) {
+                double dx = y[6 * l] - y[6 * k], dy = y[6 * l + 1] - y[6 * k + 1], dz = y[6 * l + 2] - y[6 * k + 2];
+                double r2 = dx * dx + dy * dy + dz * dz;
+                if (r2 == 0)
+                    continue;
+                r2 += softening2;
+                double s = gm[l] / (r2 * Math.sqrt(r2));
+                ax += dx * s;
+                ay += dy * s;
+                az += dz * s;
+            }
+            derivative[6 * k] = y[6 * k + 3];
+            derivative[6 * k + 1] = y[6 * k + 4];
+            derivative[6 * k + 2] = y[6 * k + 5];
+            derivative[6 * k + 3] = ax;
+            derivative[6 * k + 4] = ay;
+            derivative[6 * k + 5] = az;
+        }
+    }
+
+    /**
+     * Stores the integrated state of a group as the new absolute positions and velocities of its members in
+     * groupResult, i.e. adds the center of mass moved uniformly to the end of the step.
+     *
+     * @param start The position of the first member within members.
+     * @param count The number of members.
+     */
+    private void advanceCenterOfMass(int start, int count) {
+        double comX = centerOfMass[0] + centerOfMass[3] * stepTimeStep;
+        double comY = centerOfMass[1] + centerOfMass[4] * stepTimeStep;
+        double comZ = centerOfMass[2] + centerOfMass[5] * stepTimeStep;
+        for (int k = 0; k < count; k++) {
+            int o = 6 * (start + k);
+            groupResult[o] = state[6 * k] + comX;
+            groupResult[o + 1] = state[6 * k + 1] + comY;
+            groupResult[o + 2] = state[6 * k + 2] + comZ;
+            groupResult[o + 3] = state[6 * k + 3] + centerOfMass[3];
+            groupResult[o + 4] = state[6 * k + 4] + centerOfMass[4];
+            groupResult[o + 5] = state[6 * k + 5] + centerOfMass[5];
+        }
+    }
+
+    /**
+     * Replaces the positions and velocities of the members of all groups, which moved along a straight line during the
+     * drift, by the results of their sub steps.
+     */
+    private void writeGroups() {
+        if (groupCount == 0)
+            return;
+        for (int k = 0; k < groupStart[groupCount]; k++) {
+            int i = members[k];
+            int o = 6 * k;
+            store.x[i] = groupResult[o];
+            store.y[i] = groupResult[o + 1];
+            store.z[i] = groupResult[o + 2];
+            store.vx[i] = groupResult[o + 3];
+            store.vy[i] = groupResult[o + 4];
+            store.vz[i] = groupResult[o + 5];
+        }
+        store.markPositionsChanged();
+    }
+
+    /**
+     * Getter for encounterSteps.
+     *
+     * @return The number of steps below which the free-fall time of a pair makes it a close pair.
+     */
+    public double getEncounterSteps() {
+        return encounterSteps;
+    }
+
+    /**
+     * Setter for encounterSteps.
+     * <p>
+     * More steps make the encounter radii larger, so more pairs are sub-cycled.
+     *
+     * @param encounterSteps The new number of steps below which the free-fall time of a pair makes it a close pair.
+     * @throws IllegalArgumentException if encounterSteps is not positive.
+     */
+    public void setEncounterSteps(double encounterSteps) {
+        if (!(encounterSteps > 0))
+            throw new IllegalArgumentException("The encounter steps have to be positive.");
+        this.encounterSteps = encounterSteps;
+    }
+
+    /**
+     * Getter for tolerance.
+     *
+     * @return The relative error allowed per sub step.
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Setter for tolerance.
+     *
+     * @param tolerance The new relative error allowed per sub step.
+     * @throws IllegalArgumentException if tolerance is not positive.
+     */
+    public void setTolerance(double tolerance) {
+        if (!(tolerance > 0))
+            throw new IllegalArgumentException("The tolerance has to be positive.");
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Returns the number of close pairs found in the last step.
+     *
+     * @return The number of close pairs.
+     */
+    public int getEncounterPairs() {
+        return pairCount;
+    }
+
+    /**
+     * Returns the number of sub steps of all groups in the last step.
+     *
+     * @return The number of accepted sub steps.
+     */
+    public int getSubsteps() {
+        return substeps;
+    }
+}
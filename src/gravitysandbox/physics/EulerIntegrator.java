@@ -0,0 +1,21 @@
+package gravitysandbox.physics;
+
+/**
+ * The semi-implicit Euler method: a full kick with the accelerations of the current positions followed by a full drift
+ * with the new velocities.
+ * <p>
+ * It is first order accurate and needs one force calculation per step. It is symplectic, so orbits do not spiral
+ * outwards as with the explicit Euler method, but the error of the energy oscillates with the size of the time step.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class EulerIntegrator extends SplittingIntegrator {
+
+    /**
+     * Creates a new Euler integrator.
+     */
+    public EulerIntegrator() {
+        super(new double[]{1}, new double[]{1});
+    }
+}
@@ -0,0 +1,962 @@
+package gravitysandbox.physics;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ForceSolver} using the fast multipole method on the decomposition of a {@link BarnesHutTree}.
+ * <p>
+ * Every node gets a multipole expansion of its bodies around its center of mass, calculated from the bodies of the
+ * leaves and shifted up to the parents. A dual tree traversal then compares pairs of nodes: if the spheres around the
+ * centers of mass containing all bodies of both nodes are small enough compared to their distance, the multipole
+ * expansion of each node is translated into a local expansion of the other one, otherwise the larger node is split.
+ * Pairs of leaves which are too close are summed up directly. The local expansions are shifted down to the leaves and
+ * evaluated at every body. As each pair of nodes is handled once and for both nodes, the costs grow with N instead of
+ * N * log(N) for a given accuracy.
+ * <p>
+ * The expansions are Cartesian Taylor series of 1 / r up to the configurable order p. The error of an interaction is
+ * about theta^(p + 1), so a higher order allows a larger theta and fewer interactions, but every interaction costs
+ * about p^6 / 36 operations. Pairs of nodes with fewer pairs of bodies than a translation has terms are summed up
+ * directly even if they are far enough apart, which is both cheaper and exact. The multipole expansions are divided
+ * and the local expansions multiplied by the factorials of their exponents, so none of the translations needs
+ * binomial coefficients. The dipole terms of the multipole expansions vanish around the center of mass and are
+ * skipped.
+ * <p>
+ * The traversal runs on the calling thread, since both nodes of an interaction are written. The expansions of the
+ * leaves and the evaluation at the bodies are split over the threads of the {@link ParallelLoop}. Test particles
+ * are not part of the tree, so every test particle walks the nodes with the same criterion and evaluates the
+ * multipole expansions of the nodes far enough away directly at its position. Subsets of bodies are calculated by the
+ * Barnes-Hut walks of the tree, which need no expansions of the targets.
+ *
+ * @version 1.1
+ * @since 1.1
+ */
+public class FastMultipoleSolver implements ForceSolver {
+
+    /**
+     * The default order of the expansions.
+     */
+    public static final int DEFAULT_ORDER = 4;
+
+    /**
+     * The highest supported order of the expansions.
+     */
+    public static final int MAX_ORDER = 12;
+
+    /**
+     * The default ratio of the sum of the radii of two nodes to their distance below which their interaction is
+     * approximated.
+     */
+    public static final double DEFAULT_THETA = 0.5;
+
+    /**
+     * The number of pairs of bodies summed up directly per term of a translation, for which both take about the same
+     * time.
+     */
+    private static final double DIRECT_FACTOR = 1;
+
+    /**
+     * The number of coefficients of an expansion of the highest order.
+     */
+    private static final int MAX_COEFFICIENTS = coefficients(MAX_ORDER);
+
+    /**
+     * The exponents of x of every coefficient. The coefficients are ordered by their degree, so the coefficients of an
+     * expansion of order p are the first ones.
+     */
+    private static final int[] EXPONENT_X = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The exponents of y of every coefficient.
+     */
+    private static final int[] EXPONENT_Y = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The exponents of z of every coefficient.
+     */
+    private static final int[] EXPONENT_Z = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The index of the coefficient with the exponent of x lowered by one, or 0 if the exponent is 0.
+     */
+    private static final int[] LOWER_X = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The index of the coefficient with the exponent of y lowered by one, or 0 if the exponent is 0.
+     */
+    private static final int[] LOWER_Y = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The index of the coefficient with the exponent of z lowered by one, or 0 if the exponent is 0.
+     */
+    private static final int[] LOWER_Z = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The index of the coefficient with the exponent of x lowered by two, or 0 if the exponent is less than 2.
+     */
+    private static final int[] LOWER_XX = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The index of the coefficient with the exponent of y lowered by two, or 0 if the exponent is less than 2.
+     */
+    private static final int[] LOWER_YY = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The index of the coefficient with the exponent of z lowered by two, or 0 if the exponent is less than 2.
+     */
+    private static final int[] LOWER_ZZ = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The index of the coefficient with the exponent of x raised by one, or -1 for the highest degree.
+     */
+    private static final int[] UPPER_X = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The index of the coefficient with the exponent of y raised by one, or -1 for the highest degree.
+     */
+    private static final int[] UPPER_Y = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The index of the coefficient with the exponent of z raised by one, or -1 for the highest degree.
+     */
+    private static final int[] UPPER_Z = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The index of the monomial a monomial is calculated from by one multiplication.
+     */
+    private static final int[] MONOMIAL_PARENT = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The coordinate the parent monomial is multiplied with: 0 for x, 1 for y and 2 for z.
+     */
+    private static final int[] MONOMIAL_AXIS = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The reciprocal of the exponent of the coordinate the parent monomial is multiplied with.
+     */
+    private static final double[] MONOMIAL_SCALE = new double[MAX_COEFFICIENTS];
+
+    /**
+     * The higher coefficients of the pairs used to shift an expansion, ordered by their degree.
+     */
+    private static final int[] SHIFT_HIGH;
+
+    /**
+     * The lower coefficients of the pairs used to shift an expansion. Every exponent is at most that of the higher
+     * coefficient.
+     */
+    private static final int[] SHIFT_LOW;
+
+    /**
+     * The monomials of the shift vector belonging to the difference of both coefficients of a pair.
+     */
+    private static final int[] SHIFT_DIFFERENCE;
+
+    /**
+     * The number of shift pairs used by every order.
+     */
+    private static final int[] SHIFT_COUNT = new int[MAX_ORDER + 1];
+
+    /**
+     * The position of the first translation term of every coefficient of the local expansions. The terms of a
+     * coefficient are ordered by the degree of their source, so the terms used by an order are the first ones.
+     */
+    private static final int[] TRANSLATION_START = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The coefficients of the multipole expansions contributing to a term of the translation.
+     */
+    private static final int[] TRANSLATION_SOURCE;
+
+    /**
+     * The derivatives of 1 / r belonging to the sum of the target and the source of a term.
+     */
+    private static final int[] TRANSLATION_KERNEL;
+
+    static {
+        int[] index = new int[(MAX_ORDER + 1) * (MAX_ORDER + 1) * (MAX_ORDER + 1)];
+        int[] degree = new int[MAX_COEFFICIENTS];
+        int c = 0;
+        for (int n = 0; n <= MAX_ORDER; n++) {
+            for (int x = n; x >= 0; x--) {
+                for (int y = n - x; y >= 0; y--) {
+                    EXPONENT_X[c] = x;
+                    EXPONENT_Y[c] = y;
+                    EXPONENT_Z[c] = n - x - y;
+                    degree[c] = n;
+                    index[(x * (MAX_ORDER + 1) + y) * (MAX_ORDER + 1) + n - x - y] = c;
+                    c++;
+                }
+            }
+        }
+
+        for (c = 0; c < MAX_COEFFICIENTS; c++) {
+            int x = EXPONENT_X[c], y = EXPONENT_Y[c], z = EXPONENT_Z[c];
+            LOWER_X[c] = x >= 1 ? index[((x - 1) * (MAX_ORDER + 1) + y) * (MAX_ORDER + 1) + z] : 0;
+            LOWER_Y[c] = y >= 1 ? index[(x * (MAX_ORDER + 1) + y - 1) * (MAX_ORDER + 1) + z] : 0;
+            LOWER_Z[c] = z >= 1 ? index[(x * (MAX_ORDER + 1) + y) * (MAX_ORDER + 1) + z - 1] : 0;
+            LOWER_XX[c] = x >= 2 ? index[((x - 2) * (MAX_ORDER + 1) + y) * (MAX_ORDER + 1) + z] : 0;
+            LOWER_YY[c] = y >= 2 ? index[(x * (MAX_ORDER + 1) + y - 2) * (MAX_ORDER + 1) + z] : 0;
+            LOWER_ZZ[c] = z >= 2 ? index[(x * (MAX_ORDER + 1) + y) * (MAX_ORDER + 1) + z - 2] : 0;
+            boolean top = degree[c] == MAX_ORDER;
+            UPPER_X[c] = top ? -1 : index[((x + 1) * (MAX_ORDER + 1) + y) * (MAX_ORDER + 1) + z];
+            UPPER_Y[c] = top ? -1 : index[(x * (MAX_ORDER + 1) + y + 1) * (MAX_ORDER + 1) + z];
+            UPPER_Z[c] = top ? -1 : index[(x * (MAX_ORDER + 1) + y) * (MAX_ORDER + 1) + z + 1];
+            if (c > 0) {
+                MONOMIAL_AXIS[c] = x >= 1 ? 0 : y >= 1 ? 1 : 2;
+                MONOMIAL_PARENT[c] = x >= 1 ? LOWER_X[c] : y >= 1 ? LOWER_Y[c] : LOWER_Z[c];
+                MONOMIAL_SCALE[c] = 1.0 / (x >= 1 ? x : y >= 1 ? y : z);
+            }
+        }
+
+        int shifts = 0;
+        for (int high = 0; high < MAX_COEFFICIENTS; high++) {
+            shifts += (EXPONENT_X[high] + 1) * (EXPONENT_Y[high] + 1) * (EXPONENT_Z[high] + 1);
+        }
+        SHIFT_HIGH = new int[shifts];
+        SHIFT_LOW = new int[shifts];
+        SHIFT_DIFFERENCE = new int[shifts];
+        int s = 0;
+        for (int high = 0; high < MAX_COEFFICIENTS; high++) {
+            int x = EXPONENT_X[high], y = EXPONENT_Y[high], z = EXPONENT_Z[high];
+            for (int low = 0; low < MAX_COEFFICIENTS; low++) {
+                int lx = EXPONENT_X[low], ly = EXPONENT_Y[low], lz = EXPONENT_Z[low];
+                if (lx > x || ly > y || lz > z)
+                    continue;
+                SHIFT_HIGH[s] = high;
+                SHIFT_LOW[s] = low;
+                SHIFT_DIFFERENCE[s] = index[((x - lx) * (MAX_ORDER + 1) + y - ly) * (MAX_ORDER + 1) + z - lz];
+                s++;
+            }
+            SHIFT_COUNT[degree[high]] = s;
+        }
+
+        int translations = 0;
+        for (int target = 0; target < MAX_COEFFICIENTS; target++) {
+            for (int source = 0; source < MAX_COEFFICIENTS; source++) {
+                if (degree[source] != 1 && degree[target] + degree[source] <= MAX_ORDER)
+                    translations++;
+            }
+        }
+        TRANSLATION_SOURCE = new int[translations];
+        TRANSLATION_KERNEL = new int[translations];
+        int t = 0;
+        for (int target = 0; target < MAX_COEFFICIENTS; target++) {
+            TRANSLATION_START[target] = t;
+            for (int source = 0; source < MAX_COEFFICIENTS; source++) {
+                if (degree[source] == 1 || degree[target] + degree[source] > MAX_ORDER)
+                    continue;
+                int x = EXPONENT_X[target] + EXPONENT_X[source];
+                int y = EXPONENT_Y[target] + EXPONENT_Y[source];
+                int z = EXPONENT_Z[target] + EXPONENT_Z[source];
+                TRANSLATION_SOURCE[t] = source;
+                TRANSLATION_KERNEL[t] = index[(x * (MAX_ORDER + 1) + y) * (MAX_ORDER + 1) + z];
+                t++;
+            }
+        }
+    }
+
+    /**
+     * The tree providing the decomposition into nodes.
+     */
+    private final BarnesHutTree tree;
+
+    /**
+     * The order of the expansions.
+     */
+    private int order;
+
+    /**
+     * The number of coefficients of every expansion.
+     */
+    private int coefficientCount;
+
+    /**
+     * The position after the last translation term of every coefficient of the local expansions used by the order.
+     */
+    private final int[] translationEnd = new int[MAX_COEFFICIENTS];
+
+    /**
+     * The number of pairs of bodies up to which two nodes are summed up directly instead of translating their
+     * expansions.
+     */
+    private int directLimit;
+
+    /**
+     * The number of bodies up to which a node is summed up directly for a test particle instead of evaluating its
+     * multipole expansion.
+     */
+    private int particleDirectLimit;
+
+    /**
+     * The ratio of the sum of the radii of two nodes to their distance below which their interaction is approximated.
+     */
+    private double theta;
+
+    /**
+     * The Plummer softening length in AU.
+     */
+    private double softening;
+
+    /**
+     * The squared softening length, added to the squared distance of every pair of bodies.
+     */
+    private double softening2;
+
+    /**
+     * The multipole expansions of all nodes around their centers of mass, coefficientCount values per node.
+     */
+    private double[] multipole;
+
+    /**
+     * The local expansions of all nodes around their centers of mass, coefficientCount values per node.
+     */
+    private double[] local;
+
+    /**
+     * A flag per node showing whether its local expansion or that of one of its parents received a translation.
+     */
+    private boolean[] hasLocal;
+
+    /**
+     * The radius of the sphere around the center of mass containing all bodies of a node.
+     */
+    private double[] radius;
+
+    /**
+     * The indices of the leaves of the tree.
+     */
+    private int[] leaves;
+
+    /**
+     * The number of leaves of the tree.
+     */
+    private int leafCount;
+
+    /**
+     * The x coordinates of the accelerations summed up directly, in the sorted order of the tree.
+     */
+    private double[] accelerationX;
+
+    /**
+     * The y coordinates of the accelerations summed up directly, in the sorted order of the tree.
+     */
+    private double[] accelerationY;
+
+    /**
+     * The z coordinates of the accelerations summed up directly, in the sorted order of the tree.
+     */
+    private double[] accelerationZ;
+
+    /**
+     * The derivatives of 1 / r at the distance of the current pair of nodes.
+     */
+    private final double[] kernel = new double[MAX_COEFFICIENTS];
+
+    /**
+     * The derivatives of 1 / r at the negated distance of the current pair of nodes.
+     */
+    private final double[] reversedKernel = new double[MAX_COEFFICIENTS];
+
+    /**
+     * The monomials of the shift vector of the current shift, used on the calling thread only.
+     */
+    private final double[] shiftMonomials = new double[MAX_COEFFICIENTS];
+
+    /**
+     * The monomials of the bodies, one array per thread.
+     */
+    private final ThreadLocal<double[]> monomials = ThreadLocal.withInitial(() -> new double[MAX_COEFFICIENTS]);
+
+    /**
+     * The derivatives of 1 / r at the distance of a test particle to the current node, one array per thread.
+     */
+    private final ThreadLocal<double[]> particleKernels = ThreadLocal.withInitial(() -> new double[MAX_COEFFICIENTS]);
+
+    /**
+     * The {@link BodyStore} of the current calculation.
+     */
+    private BodyStore store;
+
+    /**
+     * The loop body calculating the multipole expansions of a range of leaves.
+     */
+    private final ParallelLoop.Range leafExpansionTask = this::expandLeaves;
+
+    /**
+     * The loop body evaluating the local expansions at the bodies of a range of leaves.
+     */
+    private final ParallelLoop.Range evaluationTask = this::evaluateLeaves;
+
+    /**
+     * The loop body walking the nodes for a range of test particles.
+     */
+    private final ParallelLoop.Range testParticleTask = this::evaluateTestParticles;
+
+    /**
+     * Creates a new solver with its own tree.
+     */
+    public FastMultipoleSolver() {
+        this(new BarnesHutTree());
+    }
+
+    /**
+     * Creates a new solver using the decomposition of the given tree.
+     * <p>
+     * The tree may be shared with other solvers, as every calculation brings it up to date with the store first.
+     *
+     * @param tree The {@link BarnesHutTree} providing the nodes.
+     */
+    public FastMultipoleSolver(BarnesHutTree tree) {
+        this.tree = tree;
+        theta = DEFAULT_THETA;
+        multipole = new double[0];
+        local = new double[0];
+        hasLocal = new boolean[0];
+        radius = new double[0];
+        leaves = new int[0];
+        accelerationX = new double[0];
+        accelerationY = new double[0];
+        accelerationZ = new double[0];
+        setOrder(DEFAULT_ORDER);
+    }
+
+    /**
+     * Brings the tree up to date with the given store and adds the gravitational acceleration of all other bodies to
+     * the acceleration of every body.
+     *
+     * @param store        The {@link BodyStore} containing the bodies.
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    @Override
+    public void accumulateAccelerations(BodyStore store, ParallelLoop parallelLoop) {
+        this.store = store;
+        tree.updateTree(store, parallelLoop);
+        if (tree.nodeCount == 0)
+            return;
+        prepare();
+
+        parallelLoop.forRange(0, leafCount, leafExpansionTask);
+        expandNodes();
+        interact(0);
+        shiftLocals();
+        parallelLoop.forRange(0, leafCount, evaluationTask);
+
+        if (tree.testParticleCount > 0)
+            parallelLoop.forRange(0, tree.testParticleCount, testParticleTask);
+        this.store = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The accelerations of a subset are calculated by the Barnes-Hut walks of the tree, as the expansions of all nodes
+     * would be needed for a few bodies.
+     */
+    @Override
+    public void accumulateAccelerations(BodyStore store, int[] bodies, int count, ParallelLoop parallelLoop) {
+        if (count == store.size()) {
+            accumulateAccelerations(store, parallelLoop);
+            return;
+        }
+        tree.accumulateAccelerations(store, bodies, count, parallelLoop);
+    }
+
+    /**
+     * Grows the arrays to the size of the tree, clears the accelerations and the local expansions and collects the
+     * leaves.
+     */
+    private void prepare() {
+        int nodes = tree.nodeCount, size = tree.size;
+        if (radius.length < nodes) {
+            int capacity = Math.max(nodes, 2 * radius.length);
+            radius = new double[capacity];
+            hasLocal = new boolean[capacity];
+            leaves = new int[capacity];
+        }
+        if (multipole.length < nodes * coefficientCount) {
+            int capacity = Math.max(nodes, radius.length) * coefficientCount;
+            multipole = new double[capacity];
+            local = new double[capacity];
+        }
+        if (accelerationX.length < size) {
+            int capacity = Math.max(size, 2 * accelerationX.length);
+            accelerationX = new double[capacity];
+            accelerationY = new double[capacity];
+            accelerationZ = new double[capacity];
+        }
+        Arrays.fill(accelerationX, 0, size, 0);
+        Arrays.fill(accelerationY, 0, size, 0);
+        Arrays.fill(accelerationZ, 0, size, 0);
+        Arrays.fill(local, 0, nodes * coefficientCount, 0);
+        Arrays.fill(hasLocal, 0, nodes, false);
+
+        leafCount = 0;
+        for (int node = 0; node < nodes; node++) {
+            if (tree.childCount[node] == 0)
+                leaves[leafCount++] = node;
+        }
+    }
+
+    /**
+     * Calculates the multipole expansions and radii of the leaves within the given range.
+     *
+     * @param from The position of the first leaf, inclusive.
+     * @param to   The position of the last leaf, exclusive.
+     */
+    private void expandLeaves(int from, int to) {
+        double[] powers = monomials.get();
+        for (int l = from; l < to; l++) {
+            int node = leaves[l];
+            int base = node * coefficientCount;
+            Arrays.fill(multipole, base, base + coefficientCount, 0);
+            double cx = tree.centerOfMassX[node], cy = tree.centerOfMassY[node], cz = tree.centerOfMassZ[node];
+            double r2 = 0;
+            for (int k = tree.firstBody[node]; k < tree.firstBody[node] + tree.numberOfBodies[node]; k++) {
+                double dx = tree.bodyX[k] - cx, dy = tree.bodyY[k] - cy, dz = tree.bodyZ[k] - cz;
+                r2 = Math.max(r2, dx * dx + dy * dy + dz * dz);
+                monomials(-dx, -dy, -dz, coefficientCount, powers);
+                double m = tree.bodyMass[k];
+                for (int c = 0; c < coefficientCount; c++) {
+                    multipole[base + c] += m * powers[c];
+                }
+            }
+            radius[node] = Math.sqrt(r2);
+        }
+    }
+
+    /**
+     * Shifts the multipole expansions of the sub nodes to their parents, visiting every sub node before its parent.
+     */
+    private void expandNodes() {
+        int shifts = SHIFT_COUNT[order];
+        for (int node = tree.nodeCount - 1; node >= 0; node--) {
+            if (tree.childCount[node] == 0)
+                continue;
+            int base = node * coefficientCount;
+            Arrays.fill(multipole, base, base + coefficientCount, 0);
+            double cx = tree.centerOfMassX[node], cy = tree.centerOfMassY[node], cz = tree.centerOfMassZ[node];
+            double r = 0;
+            for (int child = tree.firstChild[node]; child < tree.firstChild[node] + tree.childCount[node]; child++) {
+                double dx = tree.centerOfMassX[child] - cx;
+                double dy = tree.centerOfMassY[child] - cy;
+                double dz = tree.centerOfMassZ[child] - cz;
+                r = Math.max(r, Math.sqrt(dx * dx + dy * dy + dz * dz) + radius[child]);
+                // The bodies of the sub node are at -d + v relative to the parent, so (-v_parent)^n expands in -d.
+                monomials(-dx, -dy, -dz, coefficientCount, shiftMonomials);
+                int childBase = child * coefficientCount;
+                for (int s = 0; s < shifts; s++) {
+                    multipole[base + SHIFT_HIGH[s]] += shiftMonomials[SHIFT_DIFFERENCE[s]]
+                            * multipole[childBase + SHIFT_LOW[s]];
+                }
+            }
+            radius[node] = r;
+        }
+    }
+
+    /**
+     * Handles all pairs of bodies within the given node.
+     *
+     * @param node The index of the node.
+     */
+    private void interact(int node) {
+        int first = tree.firstChild[node], count = tree.childCount[node];
+        if (count == 0) {
+            int from = tree.firstBody[node], to = from + tree.numberOfBodies[node];
+            for (int k = from; k < to - 1; k++) {
+                sumDirectly(k, k + 1, to);
+            }
+            return;
+        }
+        for (int child = first; child < first + count; child++) {
+            interact(child);
+            for (int other = child + 1; other < first + count; other++) {
+                interact(child, other);
+            }
+        }
+    }
+
+    /**
+     * Handles all pairs of bodies of two distinct nodes, translating the expansions if the nodes are far enough apart
+     * and have enough bodies, summing up small nodes and close leaves directly and splitting the larger node
+     * otherwise.
+     *
+     * @param a The index of the first node.
+     * @param b The index of the second node.
+     */
+    private void interact(int a, int b) {
+        double dx = tree.centerOfMassX[a] - tree.centerOfMassX[b];
+        double dy = tree.centerOfMassY[a] - tree.centerOfMassY[b];
+        double dz = tree.centerOfMassZ[a] - tree.centerOfMassZ[b];
+        double r2 = dx * dx + dy * dy + dz * dz;
+        double reach = radius[a] + radius[b];
+        int pairs = tree.numberOfBodies[a] * tree.numberOfBodies[b];
+        if (pairs > directLimit && reach * reach < theta * theta * r2) {
+            translate(a, b, dx, dy, dz, r2);
+            return;
+        }
+
+        boolean leafA = tree.childCount[a] == 0, leafB = tree.childCount[b] == 0;
+        if (leafA && leafB || pairs <= directLimit) {
+            int fromB = tree.firstBody[b], toB = fromB + tree.numberOfBodies[b];
+            for (int k = tree.firstBody[a]; k < tree.firstBody[a] + tree.numberOfBodies[a]; k++) {
+                sumDirectly(k, fromB, toB);
+            }
+        } else if (leafB || !leafA && radius[a] >= radius[b]) {
+            for (int child = tree.firstChild[a]; child < tree.firstChild[a] + tree.childCount[a]; child++) {
+                interact(child, b);
+            }
+        } else {
+            for (int child = tree.firstChild[b]; child < tree.firstChild[b] + tree.childCount[b]; child++) {
+                interact(a, child);
+            }
+        }
+    }
+
+    /**
+     * Translates the multipole expansion of each of two nodes into the local expansion of the other one.
+     *
+     * @param a  The index of the first node.
+     * @param b  The index of the second node.
+     * @param dx The x coordinate of the distance from the center of mass of b to that of a.
+     * @param dy The y coordinate of the distance from the center of mass of b to that of a.
+     * @param dz The z coordinate of the distance from the center of mass of b to that of a.
+     * @param r2 The squared distance.
+     */
+    private void translate(int a, int b, double dx, double dy, double dz, double r2) {
+        derivatives(dx, dy, dz, r2);
+        int baseA = a * coefficientCount, baseB = b * coefficientCount;
+        double[] local = this.local, multipole = this.multipole, kernel = this.kernel, reversed = reversedKernel;
+        int[] sources = TRANSLATION_SOURCE, kernels = TRANSLATION_KERNEL;
+        for (int target = 0; target < coefficientCount; target++) {
+            double sumA = 0, sumB = 0;
+            for (int t = TRANSLATION_START[target]; t < translationEnd[target]; t++) {
+                int source = sources[t], k = kernels[t];
+                sumA += kernel[k] * multipole[baseB + source];
+                sumB += reversed[k] * multipole[baseA + source];
+            }
+            local[baseA + target] += sumA;
+            local[baseB + target] += sumB;
+        }
+        hasLocal[a] = true;
+        hasLocal[b] = true;
+    }
+
+    /**
+     * Calculates the derivatives D_k = d^k (1 / r) at the given distance for both signs of the distance.
+     * <p>
+     * They follow from the recurrence |k| r^2 D_k = -(2 |k| - 1) sum_i k_i r_i D_(k - e_i) - (|k| - 1) sum_i
+     * k_i (k_i - 1) D_(k - 2 e_i), whose terms vanish where an exponent is too small.
+     *
+     * @param dx The x coordinate of the distance.
+     * @param dy The y coordinate of the distance.
+     * @param dz The z coordinate of the distance.
+     * @param r2 The squared distance.
+     */
+    private void derivatives(double dx, double dy, double dz, double r2) {
+        derivatives(dx, dy, dz, r2, coefficientCount, kernel);
+        for (int c = 0; c < coefficientCount; c++) {
+            int n = EXPONENT_X[c] + EXPONENT_Y[c] + EXPONENT_Z[c];
+            reversedKernel[c] = (n & 1) == 0 ? kernel[c] : -kernel[c];
+        }
+    }
+
+    /**
+     * Calculates the derivatives D_k = d^k (1 / r) at the given distance by the recurrence of
+     * {@link #derivatives(double, double, double, double)}.
+     *
+     * @param dx    The x coordinate of the distance.
+     * @param dy    The y coordinate of the distance.
+     * @param dz    The z coordinate of the distance.
+     * @param r2    The squared distance.
+     * @param count The number of derivatives to calculate.
+     * @param d     The array receiving the derivatives.
+     */
+    private static void derivatives(double dx, double dy, double dz, double r2, int count, double[] d) {
+        double inverse2 = 1 / r2;
+        d[0] = Math.sqrt(inverse2);
+        for (int c = 1; c < count; c++) {
+            int x = EXPONENT_X[c], y = EXPONENT_Y[c], z = EXPONENT_Z[c], n = x + y + z;
+            double first = x * dx * d[LOWER_X[c]] + y * dy * d[LOWER_Y[c]] + z * dz * d[LOWER_Z[c]];
+            double second = x * (x - 1) * d[LOWER_XX[c]] + y * (y - 1) * d[LOWER_YY[c]] + z * (z - 1) * d[LOWER_ZZ[c]];
+            d[c] = -((2 * n - 1) * first + (n - 1) * second) * inverse2 / n;
+        }
+    }
+
+    /**
+     * Sums up the pairs of one body with a range of bodies directly and applies the acceleration to both bodies of
+     * every pair.
+     *
+     * @param i    The position of the body within the sorted order.
+     * @param from The position of the first partner, inclusive.
+     * @param to   The position of the last partner, exclusive.
+     */
+    private void sumDirectly(int i, int from, int to) {
+        double[] x = tree.bodyX, y = tree.bodyY, z = tree.bodyZ, mass = tree.bodyMass;
+        double xi = x[i], yi = y[i], zi = z[i], mi = mass[i];
+        double sx = 0, sy = 0, sz = 0;
+        for (int j = from; j < to; j++) {
+            double dx = x[j] - xi, dy = y[j] - yi, dz = z[j] - zi;
+            double r2 = dx * dx + dy * dy + dz * dz;
+            double e2 = r2 + softening2;
+            double s = r2 > 0 ? Physics.G_INTERNAL / (e2 * Math.sqrt(e2)) : 0;
+            double sj = s * mass[j];
+            sx += dx * sj;
+            sy += dy * sj;
+            sz += dz * sj;
+            double si = s * mi;
+            accelerationX[j] -= dx * si;
+            accelerationY[j] -= dy * si;
+            accelerationZ[j] -= dz * si;
+        }
+        accelerationX[i] += sx;
+        accelerationY[i] += sy;
+        accelerationZ[i] += sz;
+    }
+
+    /**
+     * Shifts the local expansions of the nodes to their sub nodes, visiting every parent before its sub nodes.
+     */
+    private void shiftLocals() {
+        int shifts = SHIFT_COUNT[order];
+        for (int node = 0; node < tree.nodeCount; node++) {
+            if (!hasLocal[node] || tree.childCount[node] == 0)
+                continue;
+            int base = node * coefficientCount;
+            double cx = tree.centerOfMassX[node], cy = tree.centerOfMassY[node], cz = tree.centerOfMassZ[node];
+            for (int child = tree.firstChild[node]; child < tree.firstChild[node] + tree.childCount[node]; child++) {
+                monomials(tree.centerOfMassX[child] - cx, tree.centerOfMassY[child] - cy,
+                        tree.centerOfMassZ[child] - cz, coefficientCount, shiftMonomials);
+                int childBase = child * coefficientCount;
+                for (int s = 0; s < shifts; s++) {
+                    local[childBase + SHIFT_LOW[s]] += shiftMonomials[SHIFT_DIFFERENCE[s]]
+                            * local[base + SHIFT_HIGH[s]];
+                }
+                hasLocal[child] = true;
+            }
+        }
+    }
+
+    /**
+     * Evaluates the gradients of the local expansions at the bodies of the leaves within the given range and adds
+     * them and the accelerations summed up directly to the store.
+     *
+     * @param from The position of the first leaf, inclusive.
+     * @param to   The position of the last leaf, exclusive.
+     */
+    private void evaluateLeaves(int from, int to) {
+        double[] powers = monomials.get();
+        // The gradient of a local expansion of order p is a polynomial of order p - 1.
+        int terms = coefficients(order - 1);
+        for (int l = from; l < to; l++) {
+            int node = leaves[l];
+            int base = node * coefficientCount;
+            boolean expanded = hasLocal[node];
+            double cx = tree.centerOfMassX[node], cy = tree.centerOfMassY[node], cz = tree.centerOfMassZ[node];
+            for (int k = tree.firstBody[node]; k < tree.firstBody[node] + tree.numberOfBodies[node]; k++) {
+                double ax = accelerationX[k], ay = accelerationY[k], az = accelerationZ[k];
+                if (expanded) {
+                    monomials(tree.bodyX[k] - cx, tree.bodyY[k] - cy, tree.bodyZ[k] - cz, terms, powers);
+                    double gx = 0, gy = 0, gz = 0;
+                    for (int c = 0; c < terms; c++) {
+                        gx += local[base + UPPER_X[c]] * powers[c];
+                        gy += local[base + UPPER_Y[c]] * powers[c];
+                        gz += local[base + UPPER_Z[c]] * powers[c];
+                    }
+                    ax += Physics.G_INTERNAL * gx;
+                    ay += Physics.G_INTERNAL * gy;
+                    az += Physics.G_INTERNAL * gz;
+                }
+                int i = tree.order[k];
+                store.ax[i] += ax;
+                store.ay[i] += ay;
+                store.az[i] += az;
+            }
+        }
+    }
+
+    /**
+     * Adds the gravitational acceleration of all sources to the acceleration of the test particles within the given
+     * range, walking the nodes once per test particle.
+     *
+     * @param from The position of the first test particle, inclusive.
+     * @param to   The position of the last test particle, exclusive.
+     */
+    private void evaluateTestParticles(int from, int to) {
+        double[] d = particleKernels.get();
+        for (int t = from; t < to; t++) {
+            int i = tree.testParticles[t];
+            evaluateTestParticle(0, i, store.x[i], store.y[i], store.z[i], d);
+        }
+    }
+
+    /**
+     * Adds the gravitational acceleration of the bodies of a node to the acceleration of a test particle.
+     * <p>
+     * A node far enough away is approximated by the gradient of its multipole expansion at the test particle, which
+     * uses the derivatives up to the order of the expansions like a translation. A small node or a close leaf is summed
+     * up directly and a close node is split.
+     *
+     * @param node The index of the node.
+     * @param i    The index of the test particle within the store.
+     * @param x    The x coordinate of the test particle.
+     * @param y    The y coordinate of the test particle.
+     * @param z    The z coordinate of the test particle.
+     * @param d    The array receiving the derivatives of 1 / r.
+     */
+    private void evaluateTestParticle(int node, int i, double x, double y, double z, double[] d) {
+        double dx = x - tree.centerOfMassX[node];
+        double dy = y - tree.centerOfMassY[node];
+        double dz = z - tree.centerOfMassZ[node];
+        double r2 = dx * dx + dy * dy + dz * dz;
+        int count = tree.numberOfBodies[node];
+        if (count > particleDirectLimit && radius[node] * radius[node] < theta * theta * r2) {
+            // The gradient of all coefficients up to order p needs the derivatives up to order p + 1.
+            int terms = order < MAX_ORDER ? coefficientCount : coefficients(order - 1), base = node * coefficientCount;
+            derivatives(dx, dy, dz, r2, coefficients(Math.min(order + 1, MAX_ORDER)), d);
+            double gx = 0, gy = 0, gz = 0;
+            for (int c = 0; c < terms; c++) {
+                double m = multipole[base + c];
+                gx += m * d[UPPER_X[c]];
+                gy += m * d[UPPER_Y[c]];
+                gz += m * d[UPPER_Z[c]];
+            }
+            store.ax[i] += Physics.G_INTERNAL * gx;
+            store.ay[i] += Physics.G_INTERNAL * gy;
+            store.az[i] += Physics.G_INTERNAL * gz;
+            return;
+        }
+
+        if (tree.childCount[node] == 0 || count <= particleDirectLimit) {
+            double[] bx = tree.bodyX, by = tree.bodyY, bz = tree.bodyZ, mass = tree.bodyMass;
+            double sx = 0, sy = 0, sz = 0;
+            for (int k = tree.firstBody[node]; k < tree.firstBody[node] + count; k++) {
+                double ex = bx[k] - x, ey = by[k] - y, ez = bz[k] - z;
+                double r2k = ex * ex + ey * ey + ez * ez;
+                if (r2k == 0)
+                    continue;
+                double e2 = r2k + softening2;
+                double s = Physics.G_INTERNAL * mass[k] / (e2 * Math.sqrt(e2));
+                sx += ex * s;
+                sy += ey * s;
+                sz += ez * s;
+            }
+            store.ax[i] += sx;
+            store.ay[i] += sy;
+            store.az[i] += sz;
+            return;
+        }
+
+        for (int child = tree.firstChild[node]; child < tree.firstChild[node] + tree.childCount[node]; child++) {
+            evaluateTestParticle(child, i, x, y, z, d);
+        }
+    }
+
+    /**
+     * Calculates the scaled monomials x^a * y^b * z^c / (a! * b! * c!) of a vector in the order of the coefficients.
+     *
+     * @param x      The x coordinate of the vector.
+     * @param y      The y coordinate of the vector.
+     * @param z      The z coordinate of the vector.
+     * @param count  The number of monomials to calculate.
+     * @param powers The array receiving the monomials.
+     */
+    private static void monomials(double x, double y, double z, int count, double[] powers) {
+        powers[0] = 1;
+        for (int c = 1; c < count; c++) {
+            int axis = MONOMIAL_AXIS[c];
+            powers[c] = powers[MONOMIAL_PARENT[c]] * (axis == 0 ? x : axis == 1 ? y : z) * MONOMIAL_SCALE[c];
+        }
+    }
+
+    /**
+     * Returns the number of coefficients of an expansion of the given order.
+     *
+     * @param order The order.
+     * @return (p + 1) * (p + 2) * (p + 3) / 6.
+     */
+    private static int coefficients(int order) {
+        return (order + 1) * (order + 2) * (order + 3) / 6;
+    }
+
+    /**
+     * Getter for the tree.
+     *
+     * @return The {@link BarnesHutTree} providing the nodes.
+     */
+    public BarnesHutTree getTree() {
+        return tree;
+    }
+
+    /**
+     * Getter for order.
+     *
+     * @return The order of the expansions.
+     */
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Setter for order.
+     *
+     * @param order The new order of the expansions.
+     * @throws IllegalArgumentException if order is less than 1 or greater than {@link #MAX_ORDER}.
+     */
+    public void setOrder(int order) {
+        if (order < 1 || order > MAX_ORDER)
+            throw new IllegalArgumentException("The order has to be between 1 and " + MAX_ORDER + ".");
+        this.order = order;
+        coefficientCount = coefficients(order);
+        int terms = 0;
+        for (int target = 0; target < coefficientCount; target++) {
+            // All sources up to the remaining degree except the three dipole terms.
+            int remaining = order - EXPONENT_X[target] - EXPONENT_Y[target] - EXPONENT_Z[target];
+            translationEnd[target] = TRANSLATION_START[target] + coefficients(remaining) - (remaining >= 1 ? 3 : 0);
+            terms += translationEnd[target] - TRANSLATION_START[target];
+        }
+        directLimit = (int) (DIRECT_FACTOR * terms);
+        // An evaluation at a test particle costs about one step of the recurrence of the derivatives per coefficient.
+        particleDirectLimit = (int) (DIRECT_FACTOR * coefficientCount);
+    }
+
+    /**
+     * Getter for theta.
+     *
+     * @return The ratio of the sum of the radii of two nodes to their distance below which their interaction is
+     * approximated.
+     */
+    public double getTheta() {
+        return theta;
+    }
+
+    /**
+     * Setter for theta.
+     *
+     * @param theta The new ratio of the sum of the radii of two nodes to their distance below which their interaction
+     *              is approximated.
+     * @throws IllegalArgumentException if theta is not between 0 and 1.
+     */
+    public void setTheta(double theta) {
+        if (!(theta > 0 && theta < 1))
+            throw new IllegalArgumentException("Theta has to be between 0 and 1.");
+        this.theta = theta;
+    }
+
+    @Override
+    public double getSoftening() {
+        return softening;
+    }
+
+    /**
+     * Sets the Plummer softening length of the pairs summed up directly and of the walks of the tree.
+     *
+     * @param softening The softening length in AU, zero for Newton's law.
+     * @throws IllegalArgumentException If softening is negative or not finite.
+     */
+    @Override
+    public void setSoftening(double softening) {
+        tree.setSoftening(softening);
+        this.softening = softening;
+        softening2 = softening * softening;
+    }
+}
@@ -0,0 +1,77 @@
+package gravitysandbox.physics;
+
+/**
+ * Collects the gravitational acceleration acting on one body while a force walk visits its interaction partners.
+ * <p>
+ * The kernels of {@link Physics} add to an accumulator instead of returning new objects, so one accumulator per
+ * thread can be reused for all bodies and the walks do not create any objects.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class ForceAccumulator {
+
+    /**
+     * The x coordinate of the accumulated acceleration.
+     */
+    double ax;
+
+    /**
+     * The y coordinate of the accumulated acceleration.
+     */
+    double ay;
+
+    /**
+     * The z coordinate of the accumulated acceleration.
+     */
+    double az;
+
+    /**
+     * The number of interactions added since the last reset.
+     */
+    int interactions;
+
+    /**
+     * Sets the accumulated acceleration and the number of interactions to zero.
+     */
+    public void reset() {
+        ax = ay = az = 0;
+        interactions = 0;
+    }
+
+    /**
+     * Getter for the x coordinate of the accumulated acceleration.
+     *
+     * @return The x coordinate in astronomical units per day squared.
+     */
+    public double getX() {
+        return ax;
+    }
+
+    /**
+     * Getter for the y coordinate of the accumulated acceleration.
+     *
+     * @return The y coordinate in astronomical units per day squared.
+     */
+    public double getY() {
+        return ay;
+    }
+
+    /**
+     * Getter for the z coordinate of the accumulated acceleration.
+     *
+     * @return The z coordinate in astronomical units per day squared.
+     */
+    public double getZ() {
+        return az;
+    }
+
+    /**
+     * Getter for interactions.
+     *
+     * @return The number of interactions added since the last reset.
+     */
+    public int getInteractions() {
+        return interactions;
+    }
+}
@@ -0,0 +1,53 @@
+package gravitysandbox.physics;
+
+/**
+ * A method for calculating the gravitational accelerations of all bodies of a {@link BodyStore}.
+ * <p>
+ * The {@link Simulation} clears the accelerations of the store and hands it to its solver once per step.
+ *
+ * @version 1.2
+ * @since 1.1
+ */
+public interface ForceSolver {
+
+    /**
+     * Adds the gravitational acceleration caused by all other bodies to the acceleration of every body of the store.
+     *
+     * @param store        The {@link BodyStore} containing the bodies.
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    void accumulateAccelerations(BodyStore store, ParallelLoop parallelLoop);
+
+    /**
+     * Adds the gravitational acceleration caused by all other bodies to the acceleration of the given bodies only.
+     * <p>
+     * All bodies act on the given ones with their current positions, but the accelerations of the other bodies are
+     * left unchanged. Integrators with individual time steps use this to update only the bodies at the end of their
+     * step.
+     *
+     * @param store        The {@link BodyStore} containing the bodies.
+     * @param bodies       The indices of the bodies whose accelerations are calculated, each at most once.
+     * @param count        The number of used entries of bodies.
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    void accumulateAccelerations(BodyStore store, int[] bodies, int count, ParallelLoop parallelLoop);
+
+    /**
+     * Returns the Plummer softening length of the force law.
+     *
+     * @return The softening length in AU, zero for Newton's law.
+     */
+    double getSoftening();
+
+    /**
+     * Sets the Plummer softening length of the force law.
+     * <p>
+     * The cubed distance of every pair is replaced by (r^2 + eps^2)^(3/2), which keeps the forces of close pairs
+     * finite. The multipole terms of far nodes are not softened, since eps is meant to be much smaller than the
+     * distance to any approximated node.
+     *
+     * @param softening The softening length in AU, zero for Newton's law.
+     * @throws IllegalArgumentException If softening is negative or not finite.
+     */
+    void setSoftening(double softening);
+}
@@ -0,0 +1,48 @@
+package gravitysandbox.physics;
+
+/**
+ * A method for advancing the velocities and positions of all bodies of a {@link BodyStore} by one time step.
+ * <p>
+ * The {@link Simulation} hands the store, its {@link ForceSolver} and its {@link ParallelLoop} to the integrator once
+ * per step. The integrator decides how often and at which positions the accelerations are calculated. The
+ * accelerations of the store are kept between steps, so an integrator ending its step with a force calculation does
+ * not have to repeat it at the beginning of the next one, see {@link BodyStore#isAccelerationsCurrent()}.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public interface Integrator {
+
+    /**
+     * Advances the velocities and positions of all bodies of the store by one time step.
+     *
+     * @param store        The {@link BodyStore} containing the bodies.
+     * @param solver       The {@link ForceSolver} calculating the accelerations.
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     * @param dt           The time step in days.
+     */
+    void step(BodyStore store, ForceSolver solver, ParallelLoop parallelLoop, double dt);
+
+    /**
+     * Returns the number of force calculations of a step, not counting the one at the very first step.
+     *
+     * @return The number of force calculations per step.
+     */
+    int getForceCalculations();
+
+    /**
+     * Calculates the accelerations of all bodies of the store at their current positions, unless they are current
+     * already.
+     *
+     * @param store        The {@link BodyStore} containing the bodies.
+     * @param solver       The {@link ForceSolver} calculating the accelerations.
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    static void updateAccelerations(BodyStore store, ForceSolver solver, ParallelLoop parallelLoop) {
+        if (store.isAccelerationsCurrent())
+            return;
+        store.clearAccelerations();
+        solver.accumulateAccelerations(store, parallelLoop);
+        store.markAccelerationsCurrent();
+    }
+}
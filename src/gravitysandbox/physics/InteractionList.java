@@ -0,0 +1,422 @@
+package gravitysandbox.physics;
+
+import gravitysandbox.util.DoubleDouble;
+
+import java.util.Arrays;
+
+/**
+ * The interaction partners shared by a group of bodies: nodes which are far enough away from the whole group to be
+ * approximated and bodies which have to be summed up directly.
+ * <p>
+ * The partners are stored as a structure of arrays, so evaluating the list for every body of the group is a tight loop
+ * over primitive arrays. The arrays only grow, so a list can be reused for every group.
+ * <p>
+ * The approximated nodes may also be evaluated in single precision. Their error is dominated by the opening angle
+ * anyway, so the rounding errors of float arithmetic hardly matter, while twice as many floats as doubles fit into a
+ * vector register. The coordinates are taken relative to a reference point within the group, so the floats only have
+ * to resolve distances of the size of the tree instead of absolute positions. A first loop over float arrays
+ * calculates the factor G * m / r^3 of every node, second loops multiply it by the components of the distance and sum
+ * the terms up in double precision, compensated by the rounding error of every addition. The first loop writes a single
+ * array only, so the JIT compiler can vectorize it.
+ *
+ * @version 1.3
+ * @since 1.1
+ */
+class InteractionList {
+
+    /**
+     * The number of partners a new list has room for.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * The squared Plummer softening length added to the squared distance of every partner.
+     */
+    double softening2;
+
+    /**
+     * The number of approximated nodes.
+     */
+    int nodeCount;
+
+    /**
+     * The indices of the approximated nodes.
+     */
+    int[] node;
+
+    /**
+     * The x coordinates of the centers of mass of the nodes.
+     */
+    double[] nodeX;
+
+    /**
+     * The y coordinates of the centers of mass of the nodes.
+     */
+    double[] nodeY;
+
+    /**
+     * The z coordinates of the centers of mass of the nodes.
+     */
+    double[] nodeZ;
+
+    /**
+     * The masses of the nodes.
+     */
+    double[] nodeMass;
+
+    /**
+     * The quadrupole tensors of the nodes, six consecutive components (xx, xy, xz, yy, yz and zz) per node.
+     */
+    double[] nodeQuadrupole;
+
+    /**
+     * The x coordinates of the centers of mass of the nodes relative to the reference point in single precision.
+     */
+    float[] nodeXSingle;
+
+    /**
+     * The y coordinates of the centers of mass of the nodes relative to the reference point in single precision.
+     */
+    float[] nodeYSingle;
+
+    /**
+     * The z coordinates of the centers of mass of the nodes relative to the reference point in single precision.
+     */
+    float[] nodeZSingle;
+
+    /**
+     * G times the masses of the nodes in single precision.
+     */
+    float[] nodeGmSingle;
+
+    /**
+     * The factors G * m / r^3 of the nodes for the current body in single precision.
+     */
+    float[] factorSingle;
+
+    /**
+     * The number of directly summed bodies.
+     */
+    int bodyCount;
+
+    /**
+     * The positions of the directly summed bodies within the sorted order of the tree.
+     */
+    int[] body;
+
+    /**
+     * The x coordinates of the directly summed bodies.
+     */
+    double[] bodyX;
+
+    /**
+     * The y coordinates of the directly summed bodies.
+     */
+    double[] bodyY;
+
+    /**
+     * The z coordinates of the directly summed bodies.
+     */
+    double[] bodyZ;
+
+    /**
+     * The masses of the directly summed bodies.
+     */
+    double[] bodyMass;
+
+    /**
+     * Creates a new empty list.
+     */
+    InteractionList() {
+        node = new int[INITIAL_CAPACITY];
+        nodeX = new double[INITIAL_CAPACITY];
+        nodeY = new double[INITIAL_CAPACITY];
+        nodeZ = new double[INITIAL_CAPACITY];
+        nodeMass = new double[INITIAL_CAPACITY];
+        nodeQuadrupole = new double[6 * INITIAL_CAPACITY];
+        nodeXSingle = new float[INITIAL_CAPACITY];
+        nodeYSingle = new float[INITIAL_CAPACITY];
+        nodeZSingle = new float[INITIAL_CAPACITY];
+        nodeGmSingle = new float[INITIAL_CAPACITY];
+        factorSingle = new float[INITIAL_CAPACITY];
+        body = new int[INITIAL_CAPACITY];
+        bodyX = new double[INITIAL_CAPACITY];
+        bodyY = new double[INITIAL_CAPACITY];
+        bodyZ = new double[INITIAL_CAPACITY];
+        bodyMass = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Removes all partners.
+     */
+    void clear() {
+        nodeCount = 0;
+        bodyCount = 0;
+    }
+
+    /**
+     * Appends an approximated node.
+     *
+     * @param index The index of the node.
+     * @param x     The x coordinate of the center of mass.
+     * @param y     The y coordinate of the center of mass.
+     * @param z     The z coordinate of the center of mass.
+     * @param mass  The mass of the node.
+     */
+    void addNode(int index, double x, double y, double z, double mass) {
+        if (nodeCount == node.length) {
+            int capacity = 2 * node.length;
+            node = Arrays.copyOf(node, capacity);
+            nodeX = Arrays.copyOf(nodeX, capacity);
+            nodeY = Arrays.copyOf(nodeY, capacity);
+            nodeZ = Arrays.copyOf(nodeZ, capacity);
+            nodeMass = Arrays.copyOf(nodeMass, capacity);
+            nodeQuadrupole = Arrays.copyOf(nodeQuadrupole, 6 * capacity);
+        }
+        node[nodeCount] = index;
+        nodeX[nodeCount] = x;
+        nodeY[nodeCount] = y;
+        nodeZ[nodeCount] = z;
+        nodeMass[nodeCount] = mass;
+        nodeCount++;
+    }
+
+    /**
+     * Sets the quadrupole tensor of the most recently appended node.
+     *
+     * @param xx The xx component of the tensor.
+     * @param xy The xy component of the tensor.
+     * @param xz The xz component of the tensor.
+     * @param yy The yy component of the tensor.
+     * @param yz The yz component of the tensor.
+     * @param zz The zz component of the tensor.
+     */
+    void setQuadrupole(double xx, double xy, double xz, double yy, double yz, double zz) {
+        int offset = 6 * (nodeCount - 1);
+        nodeQuadrupole[offset] = xx;
+        nodeQuadrupole[offset + 1] = xy;
+        nodeQuadrupole[offset + 2] = xz;
+        nodeQuadrupole[offset + 3] = yy;
+        nodeQuadrupole[offset + 4] = yz;
+        nodeQuadrupole[offset + 5] = zz;
+    }
+
+    /**
+     * Appends a directly summed body.
+     *
+     * @param index The position of the body within the sorted order of the tree.
+     * @param x     The x coordinate of the body.
+     * @param y     The y coordinate of the body.
+     * @param z     The z coordinate of the body.
+     * @param mass  The mass of the body.
+     */
+    void addBody(int index, double x, double y, double z, double mass) {
+        if (bodyCount == body.length) {
+            int capacity = 2 * body.length;
+            body = Arrays.copyOf(body, capacity);
+            bodyX = Arrays.copyOf(bodyX, capacity);
+            bodyY = Arrays.copyOf(bodyY, capacity);
+            bodyZ = Arrays.copyOf(bodyZ, capacity);
+            bodyMass = Arrays.copyOf(bodyMass, capacity);
+        }
+        body[bodyCount] = index;
+        bodyX[bodyCount] = x;
+        bodyY[bodyCount] = y;
+        bodyZ[bodyCount] = z;
+        bodyMass[bodyCount] = mass;
+        bodyCount++;
+    }
+
+    /**
+     * Adds the monopole acceleration of all partners on a body at the given position to the accumulator.
+     * <p>
+     * Partners at the position of the body itself, including the body, are skipped.
+     *
+     * @param accumulator The {@link ForceAccumulator} of the body.
+     * @param x           The x coordinate of the body.
+     * @param y           The y coordinate of the body.
+     * @param z           The z coordinate of the body.
+     */
+    void evaluate(ForceAccumulator accumulator, double x, double y, double z) {
+        double ax = 0, ay = 0, az = 0;
+        int interactions = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            double dx = nodeX[i] - x, dy = nodeY[i] - y, dz = nodeZ[i] - z;
+            double r2 = dx * dx + dy * dy + dz * dz;
+            if (r2 != 0) {
+                r2 += softening2;
+                double tmp = Physics.G_INTERNAL * nodeMass[i] / (r2 * Math.sqrt(r2));
+                ax += dx * tmp;
+                ay += dy * tmp;
+                az += dz * tmp;
+                interactions++;
+            }
+        }
+        accumulator.ax += ax;
+        accumulator.ay += ay;
+        accumulator.az += az;
+        accumulator.interactions += interactions;
+        evaluateBodies(accumulator, x, y, z);
+    }
+
+    /**
+     * Adds the acceleration of the directly summed bodies on a body at the given position to the accumulator.
+     * <p>
+     * Partners at the position of the body itself, including the body, are skipped.
+     *
+     * @param accumulator The {@link ForceAccumulator} of the body.
+     * @param x           The x coordinate of the body.
+     * @param y           The y coordinate of the body.
+     * @param z           The z coordinate of the body.
+     */
+    void evaluateBodies(ForceAccumulator accumulator, double x, double y, double z) {
+        double ax = 0, ay = 0, az = 0;
+        int interactions = 0;
+        for (int i = 0; i < bodyCount; i++) {
+            double dx = bodyX[i] - x, dy = bodyY[i] - y, dz = bodyZ[i] - z;
+            double r2 = dx * dx + dy * dy + dz * dz;
+            if (r2 != 0) {
+                r2 += softening2;
+                double tmp = Physics.G_INTERNAL * bodyMass[i] / (r2 * Math.sqrt(r2));
+                ax += dx * tmp;
+                ay += dy * tmp;
+                az += dz * tmp;
+                interactions++;
+            }
+        }
+        accumulator.ax += ax;
+        accumulator.ay += ay;
+        accumulator.az += az;
+        accumulator.interactions += interactions;
+    }
+
+    /**
+     * Converts the approximated nodes to single precision coordinates relative to the given reference point. Has to be
+     * called once after the list is complete and before {@link #evaluateNodesSingle(ForceAccumulator, double, double,
+     * double)}.
+     *
+     * @param referenceX The x coordinate of the reference point.
+     * @param referenceY The y coordinate of the reference point.
+     * @param referenceZ The z coordinate of the reference point.
+     */
+    void prepareSingle(double referenceX, double referenceY, double referenceZ) {
+        if (nodeXSingle.length < nodeCount) {
+            int capacity = node.length;
+            nodeXSingle = new float[capacity];
+            nodeYSingle = new float[capacity];
+            nodeZSingle = new float[capacity];
+            nodeGmSingle = new float[capacity];
+            factorSingle = new float[capacity];
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            nodeXSingle[i] = (float) (nodeX[i] - referenceX);
+            nodeYSingle[i] = (float) (nodeY[i] - referenceY);
+            nodeZSingle[i] = (float) (nodeZ[i] - referenceZ);
+            nodeGmSingle[i] = (float) (Physics.G_INTERNAL * nodeMass[i]);
+        }
+    }
+
+    /**
+     * Adds the monopole acceleration of all approximated nodes on a body to the accumulator, calculated in single
+     * precision and summed up in double precision.
+     * <p>
+     * The approximated nodes never contain the body, so their distance is never zero.
+     *
+     * @param accumulator The {@link ForceAccumulator} of the body.
+     * @param x           The x coordinate of the body relative to the reference point.
+     * @param y           The y coordinate of the body relative to the reference point.
+     * @param z           The z coordinate of the body relative to the reference point.
+     */
+    void evaluateNodesSingle(ForceAccumulator accumulator, double x, double y, double z) {
+        float bx = (float) x, by = (float) y, bz = (float) z;
+        // Local copies, so the compiler knows the arrays do not change within the loop.
+        float[] nx = nodeXSingle, ny = nodeYSingle, nz = nodeZSingle, gm = nodeGmSingle, factor = factorSingle;
+        float e2 = (float) softening2;
+        int n = nodeCount;
+        for (int i = 0; i < n; i++) {
+            float dx = nx[i] - bx, dy = ny[i] - by, dz = nz[i] - bz;
+            float r2 = dx * dx + dy * dy + dz * dz + e2;
+            factor[i] = gm[i] / (r2 * (float) Math.sqrt(r2));
+        }
+
+        accumulator.ax += sum(nx, bx, factor, n);
+        accumulator.ay += sum(ny, by, factor, n);
+        accumulator.az += sum(nz, bz, factor, n);
+        accumulator.interactions += n;
+    }
+
+    /**
+     * Sums up one component of the acceleration of all approximated nodes in compensated double precision.
+     * <p>
+     * Four independent partial sums are used, so the additions do not have to wait for each other. Every partial sum
+     * carries the rounding errors of its additions, calculated by TwoSum, which are added once at the end. The terms
+     * of close and distant nodes differ by orders of magnitude, so the compensation keeps the small ones from being
+     * rounded away.
+     *
+     * @param coordinate The coordinates of the nodes in single precision.
+     * @param body       The coordinate of the body in single precision.
+     * @param factor     The factors G * m / r^3 of the nodes.
+     * @param n          The number of nodes.
+     * @return The sum of the terms of all nodes.
+     */
+    private static double sum(float[] coordinate, float body, float[] factor, int n) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        double c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            double t0 = (coordinate[i] - body) * factor[i];
+            double t1 = (coordinate[i + 1] - body) * factor[i + 1];
+            double t2 = (coordinate[i + 2] - body) * factor[i + 2];
+            double t3 = (coordinate[i + 3] - body) * factor[i + 3];
+            double u0 = s0 + t0, u1 = s1 + t1, u2 = s2 + t2, u3 = s3 + t3;
+            c0 += DoubleDouble.sumError(s0, t0, u0);
+            c1 += DoubleDouble.sumError(s1, t1, u1);
+            c2 += DoubleDouble.sumError(s2, t2, u2);
+            c3 += DoubleDouble.sumError(s3, t3, u3);
+            s0 = u0;
+            s1 = u1;
+            s2 = u2;
+            s3 = u3;
+        }
+        for (; i < n; i++) {
+            double t0 = (coordinate[i] - body) * factor[i];
+            double u0 = s0 + t0;
+            c0 += DoubleDouble.sumError(s0, t0, u0);
+            s0 = u0;
+        }
+        return (s0 + s1) + (s2 + s3) + ((c0 + c1) + (c2 + c3));
+    }
+
+    /**
+     * Adds the quadrupole acceleration of all approximated nodes on a body at the given position to the accumulator.
+     * The tensors have to be set for every node.
+     *
+     * @param accumulator The {@link ForceAccumulator} of the body.
+     * @param x           The x coordinate of the body.
+     * @param y           The y coordinate of the body.
+     * @param z           The z coordinate of the body.
+     * @see Physics#accumulateQuadrupole(ForceAccumulator, double, double, double, double, double, double, double,
+     * double, double)
+     */
+    void evaluateQuadrupoles(ForceAccumulator accumulator, double x, double y, double z) {
+        double ax = 0, ay = 0, az = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            double dx = nodeX[i] - x, dy = nodeY[i] - y, dz = nodeZ[i] - z;
+            int offset = 6 * i;
+            double qx = nodeQuadrupole[offset] * dx + nodeQuadrupole[offset + 1] * dy + nodeQuadrupole[offset + 2] * dz;
+            double qy = nodeQuadrupole[offset + 1] * dx + nodeQuadrupole[offset + 3] * dy
+                    + nodeQuadrupole[offset + 4] * dz;
+            double qz = nodeQuadrupole[offset + 2] * dx + nodeQuadrupole[offset + 4] * dy
+                    + nodeQuadrupole[offset + 5] * dz;
+            double r2 = dx * dx + dy * dy + dz * dz;
+            double inverse5 = Physics.G_INTERNAL / (r2 * r2 * Math.sqrt(r2));
+            double radial = 2.5 * (dx * qx + dy * qy + dz * qz) / r2;
+            ax += (radial * dx - qx) * inverse5;
+            ay += (radial * dy - qy) * inverse5;
+            az += (radial * dz - qz) * inverse5;
+        }
+        accumulator.ax += ax;
+        accumulator.ay += ay;
+        accumulator.az += az;
+    }
+}
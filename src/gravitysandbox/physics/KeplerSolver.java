@@ -0,0 +1,179 @@
+package gravitysandbox.physics;
+
+/**
+ * Propagates a body along its Kepler orbit around a fixed central mass in universal variables.
+ * <p>
+ * The universal anomaly X covers elliptic, parabolic and hyperbolic orbits with the same equations, written with the
+ * Stumpff functions c_k(beta * X^2). Kepler's equation in X is solved by Newton's method, falling back to the method of
+ * Laguerre and Conway if Newton's method does not converge. The new state follows from the Gauss f and g functions, so
+ * a step costs a few evaluations of the Stumpff functions and no trigonometric function of an anomaly.
+ * <p>
+ * A solver keeps its temporary values in its own array, so every thread needs its own solver, but propagating does
+ * not create any objects.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class KeplerSolver {
+
+    /**
+     * The largest number of iterations of each method.
+     */
+    private static final int MAX_ITERATIONS = 50;
+
+    /**
+     * The relative change of the universal anomaly below which an iteration has converged.
+     */
+    private static final double TOLERANCE = 1e-15;
+
+    /**
+     * The order of the method of Laguerre and Conway.
+     */
+    private static final int LAGUERRE_ORDER = 5;
+
+    /**
+     * The argument of the Stumpff functions below which their series are used.
+     */
+    private static final double SERIES_LIMIT = 0.1;
+
+    /**
+     * The largest number of divisions of the argument of the Stumpff functions, which brings every finite double below
+     * SERIES_LIMIT.
+     */
+    private static final int MAX_QUARTERINGS = 520;
+
+    /**
+     * The Stumpff functions c0 to c3 of the current iteration.
+     */
+    private final double[] c = new double[4];
+
+    /**
+     * Moves a body along its Kepler orbit around a central mass at the origin.
+     * <p>
+     * The position and velocity are relative to the central mass and are replaced by those after the given time.
+     *
+     * @param mu    G times the central mass in AU^3 / d^2.
+     * @param dt    The time in days.
+     * @param x     The x coordinates of the positions.
+     * @param y     The y coordinates of the positions.
+     * @param z     The z coordinates of the positions.
+     * @param vx    The x coordinates of the velocities.
+     * @param vy    The y coordinates of the velocities.
+     * @param vz    The z coordinates of the velocities.
+     * @param index The index of the body within the arrays.
+     */
+    public void propagate(double mu, double dt, double[] x, double[] y, double[] z, double[] vx, double[] vy,
+                          double[] vz, int index) {
+        double x0 = x[index], y0 = y[index], z0 = z[index];
+        double vx0 = vx[index], vy0 = vy[index], vz0 = vz[index];
+        double r0 = Math.sqrt(x0 * x0 + y0 * y0 + z0 * z0);
+        if (mu == 0 || r0 == 0) {
+            x[index] = x0 + vx0 * dt;
+            y[index] = y0 + vy0 * dt;
+            z[index] = z0 + vz0 * dt;
+            return;
+        }
+        double v2 = vx0 * vx0 + vy0 * vy0 + vz0 * vz0;
+        double eta0 = x0 * vx0 + y0 * vy0 + z0 * vz0;
+        double beta = 2 * mu / r0 - v2;
+        double zeta0 = mu - beta * r0;
+
+        double anomaly = solve(mu, dt, r0, eta0, zeta0, beta);
+
+        stumpff(beta * anomaly * anomaly, c);
+        double g1 = anomaly * c[1], g2 = anomaly * anomaly * c[2], g3 = anomaly * anomaly * anomaly * c[3];
+        double r = r0 * c[0] + eta0 * g1 + mu * g2;
+
+        double f = 1 - mu * g2 / r0;
+        double g = dt - mu * g3;
+        double fDot = -mu * g1 / (r0 * r);
+        double gDot = 1 - mu * g2 / r;
+
+        x[index] = f * x0 + g * vx0;
+        y[index] = f * y0 + g * vy0;
+        z[index] = f * z0 + g * vz0;
+        vx[index] = fDot * x0 + gDot * vx0;
+        vy[index] = fDot * y0 + gDot * vy0;
+        vz[index] = fDot * z0 + gDot * vz0;
+    }
+
+    /**
+     * Solves Kepler's equation r0 * G1 + eta0 * G2 + mu * G3 = dt for the universal anomaly.
+     *
+     * @param mu    G times the central mass.
+     * @param dt    The time.
+     * @param r0    The initial distance.
+     * @param eta0  The scalar product of the initial position and velocity.
+     * @param zeta0 mu - beta * r0.
+     * @param beta  2 * mu / r0 - v0^2, i.e. mu divided by the semi-major axis.
+     * @return The universal anomaly.
+     */
+    private double solve(double mu, double dt, double r0, double eta0, double zeta0, double beta) {
+        // Starts with the anomaly of a straight line, which is exact for short steps.
+        double anomaly = dt / r0;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            stumpff(beta * anomaly * anomaly, c);
+            double g1 = anomaly * c[1], g2 = anomaly * anomaly * c[2], g3 = anomaly * anomaly * anomaly * c[3];
+            double residual = r0 * g1 + eta0 * g2 + mu * g3 - dt;
+            double r = r0 * c[0] + eta0 * g1 + mu * g2;
+            double next = anomaly - residual / r;
+            if (Math.abs(next - anomaly) <= TOLERANCE * Math.abs(next))
+                return next;
+            anomaly = next;
+        }
+
+        anomaly = dt / r0;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            stumpff(beta * anomaly * anomaly, c);
+            double g0 = c[0], g1 = anomaly * c[1], g2 = anomaly * anomaly * c[2];
+            double g3 = anomaly * anomaly * anomaly * c[3];
+            double residual = r0 * g1 + eta0 * g2 + mu * g3 - dt;
+            double derivative = r0 * g0 + eta0 * g1 + mu * g2;
+            double secondDerivative = eta0 * g0 + zeta0 * g1;
+            int n = LAGUERRE_ORDER;
+            double root = Math.sqrt(Math.abs((n - 1) * (n - 1) * derivative * derivative
+                    - n * (n - 1) * residual * secondDerivative));
+            double next = anomaly - n * residual / (derivative + Math.copySign(root, derivative));
+            if (Math.abs(next - anomaly) <= TOLERANCE * Math.abs(next))
+                return next;
+            anomaly = next;
+        }
+        return anomaly;
+    }
+
+    /**
+     * Calculates the Stumpff functions c0 to c3 of the given argument.
+     * <p>
+     * The argument is divided by 4 until it is small enough for the series, then the results are scaled back with the
+     * quadrupling formulas, which works for both signs.
+     *
+     * @param argument The argument beta * X^2.
+     * @param c        An array of four elements receiving c0, c1, c2 and c3.
+     */
+    static void stumpff(double argument, double[] c) {
+        int quarterings = 0;
+        while (Math.abs(argument) > SERIES_LIMIT && quarterings < MAX_QUARTERINGS) {
+            argument *= 0.25;
+            quarterings++;
+        }
+
+        // c_k(z) = sum over j of (-z)^j / (k + 2j)!
+        double c3 = 1.0 / 6 * (1 - argument / 20 * (1 - argument / 42 * (1 - argument / 72 * (1 - argument / 110
+                * (1 - argument / 156 * (1 - argument / 210))))));
+        double c2 = 1.0 / 2 * (1 - argument / 12 * (1 - argument / 30 * (1 - argument / 56 * (1 - argument / 90
+                * (1 - argument / 132 * (1 - argument / 182))))));
+        double c1 = 1 - argument * c3;
+        double c0 = 1 - argument * c2;
+
+        for (; quarterings > 0; quarterings--) {
+            c3 = (c2 + c0 * c3) * 0.25;
+            c2 = c1 * c1 * 0.5;
+            c1 = c0 * c1;
+            c0 = 2 * c0 * c0 - 1;
+        }
+        c[0] = c0;
+        c[1] = c1;
+        c[2] = c2;
+        c[3] = c3;
+    }
+}
@@ -0,0 +1,21 @@
+package gravitysandbox.physics;
+
+/**
+ * The kick-drift-kick leapfrog: half a kick, a full drift and another half kick with the accelerations of the new
+ * positions.
+ * <p>
+ * It is second order accurate and time reversible. The accelerations calculated for the second half kick are reused
+ * by the first half kick of the next step, so it needs one force calculation per step like the Euler method.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class LeapfrogIntegrator extends SplittingIntegrator {
+
+    /**
+     * Creates a new leapfrog integrator.
+     */
+    public LeapfrogIntegrator() {
+        super(new double[]{0.5, 0.5}, new double[]{1});
+    }
+}
@@ -3,21 +3,81 @@ package gravitysandbox.physics;
 import gravitysandbox.util.Vector3D;
 
 import java.math.BigDecimal;
+import java.math.MathContext;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The OcTree used by the Barnes-Hut-Algorithm.
+ * <p>
+ * The nodes are taken from a pool which is kept by the tree and reset by every build, so only the first builds create
+ * node objects. The {@link BigDecimal} values are immutable and still have to be created by every build and walk, but
+ * the walks neither wrap nodes into temporary bodies nor recalculate the size of a node on every visit.
+ * <p>
+ * A leaf holds up to leafCapacity bodies, which are summed up directly. Nodes at the maximum depth are never split,
+ * so bodies sharing the same position end up in a common leaf instead of splitting the node forever.
+ * <p>
+ * Without a {@link MathContext} additions and multiplications are exact and divisions use a fixed scale, so the
+ * number of digits grows with every step of a simulation. With a {@link MathContext} every operation is rounded to its
+ * precision, which keeps the costs of a build and a walk constant.
  *
  * @author Christoph Bruckner
- * @version 1.0
+ * @version 1.8
  * @since 1.0
  */
 public class OcTree {
 
     /**
-     * The Theta used by the Barnes-Hut-Algorithm
+     * The default Theta used by the Barnes-Hut-Algorithm
      */
-    private final BigDecimal THETA = BigDecimal.ONE;
+    public static final BigDecimal DEFAULT_THETA = BigDecimal.ONE;
+
+    /**
+     * The precision of the quadrupole terms, whose magnitudes are far from those of the positions.
+     */
+    private static final MathContext QUADRUPOLE_PRECISION = new MathContext(50, RoundingMode.HALF_UP);
+
+    /**
+     * Constant used for the quadrupole moments.
+     */
+    private static final BigDecimal BD3 = BigDecimal.valueOf(3);
+
+    /**
+     * Constant used for the quadrupole forces.
+     */
+    private static final BigDecimal BD2_5 = new BigDecimal("2.5");
+
+    /**
+     * The opening angle: a node is approximated if its diagonal divided by its distance is less than theta.
+     */
+    private BigDecimal theta = DEFAULT_THETA;
+
+    /**
+     * A flag showing whether the nodes carry quadrupole moments in addition to their mass and center of mass.
+     */
+    private boolean quadrupole;
+
+    /**
+     * The precision and rounding mode of all calculations, or null for exact additions and multiplications.
+     */
+    private MathContext mathContext;
+
+    /**
+     * The Plummer softening length in metres.
+     */
+    private BigDecimal softening = BigDecimal.ZERO;
+
+    /**
+     * The default maximum number of bodies in a leaf above the maximum depth.
+     */
+    public static final int DEFAULT_LEAF_CAPACITY = 8;
+
+    /**
+     * The maximum depth of the tree. Nodes at this depth hold all their bodies regardless of the leaf capacity.
+     */
+    private static final int MAX_DEPTH = 64;
 
     /**
      * Constant used for scaling {@link Vector3D} objects.
@@ -29,6 +89,21 @@ public class OcTree {
      */
     private OcTreeNode rootNode;
 
+    /**
+     * All nodes created so far, which are reused by the following builds.
+     */
+    private final List<OcTreeNode> nodePool = new ArrayList<>();
+
+    /**
+     * The number of nodes of nodePool used by the current tree.
+     */
+    private int usedNodes;
+
+    /**
+     * The maximum number of bodies in a leaf above the maximum depth.
+     */
+    private int leafCapacity = DEFAULT_LEAF_CAPACITY;
+
     /**
      * Generate the OcTree within the given boundary.
      *
@@ -36,13 +111,24 @@ public class OcTree {
      * @param backUpperRight The second corner point to specify the boundary.
      */
     public void buildTree(Vector3D frontLowerLeft, Vector3D backUpperRight) {
-        //if (rootNode != null)
-        //    resetTree();
-        rootNode = new OcTreeNode(frontLowerLeft, backUpperRight);
+        buildTree(BodyContainer.getInstance(), frontLowerLeft, backUpperRight);
+    }
 
-        for (Body body : BodyContainer.getInstance()) {
-            // Check if the body lies within the boundary.
-            if (body.getPosition().getX().compareTo(frontLowerLeft.getX()) >= 0
+    /**
+     * Generate the OcTree of the given bodies within the given boundary.
+     *
+     * @param bodies         The bodies to be inserted. Test particles and bodies outside the boundary are skipped.
+     * @param frontLowerLeft The first corner point to specify the boundary.
+     * @param backUpperRight The second corner point to specify the boundary.
+     */
+    public void buildTree(Iterable<Body> bodies, Vector3D frontLowerLeft, Vector3D backUpperRight) {
+        resetTree();
+        rootNode = obtainNode(frontLowerLeft, backUpperRight, 0);
+        rootNode.diagonal = length(frontLowerLeft.subtract(backUpperRight, arithmetic()));
+
+        for (Body body : bodies) {
+            // Test particles do not attract the others. Check if the body lies within the boundary.
+            if (!body.isTestParticle() && body.getPosition().getX().compareTo(frontLowerLeft.getX()) >= 0
                     && body.getPosition().getY().compareTo(frontLowerLeft.getY()) >= 0
                     && body.getPosition().getZ().compareTo(frontLowerLeft.getZ()) >= 0
                     && body.getPosition().getX().compareTo(backUpperRight.getX()) <= 0
@@ -53,10 +139,191 @@ public class OcTree {
     }
 
     /**
-     * Empties the tree.
+     * Empties the tree. All nodes are returned to the pool.
      */
     private void resetTree() {
-        rootNode.deleteNode();
+        usedNodes = 0;
+        rootNode = null;
+    }
+
+    /**
+     * Takes the next unused node from the pool and resets it to the given boundary. The pool grows if all nodes are
+     * in use.
+     *
+     * @param frontLowerLeft The first corner point to specify the boundary.
+     * @param backUpperRight The second corner point to specify the boundary.
+     * @param level          The depth of the node. The root node has the level 0.
+     * @return The empty node.
+     */
+    private OcTreeNode obtainNode(Vector3D frontLowerLeft, Vector3D backUpperRight, int level) {
+        if (usedNodes == nodePool.size())
+            nodePool.add(new OcTreeNode());
+        OcTreeNode node = nodePool.get(usedNodes++);
+        node.reset(frontLowerLeft, backUpperRight, level);
+        return node;
+    }
+
+    /**
+     * Getter for leafCapacity.
+     *
+     * @return The maximum number of bodies in a leaf above the maximum depth.
+     */
+    public int getLeafCapacity() {
+        return leafCapacity;
+    }
+
+    /**
+     * Getter for theta.
+     *
+     * @return The opening angle.
+     */
+    public BigDecimal getTheta() {
+        return theta;
+    }
+
+    /**
+     * Setter for theta.
+     *
+     * @param theta The new opening angle.
+     * @throws IllegalArgumentException if theta is not positive.
+     */
+    public void setTheta(BigDecimal theta) {
+        if (theta.signum() <= 0)
+            throw new IllegalArgumentException("Theta has to be positive.");
+        this.theta = theta;
+    }
+
+    /**
+     * Getter for quadrupole.
+     *
+     * @return true if the nodes carry quadrupole moments. false if only their mass and center of mass are used.
+     */
+    public boolean isQuadrupole() {
+        return quadrupole;
+    }
+
+    /**
+     * Setter for quadrupole. Takes effect with the next calculation of the mass distribution.
+     *
+     * @param quadrupole true to use quadrupole moments. false to use only the mass and center of mass of the nodes.
+     */
+    public void setQuadrupole(boolean quadrupole) {
+        this.quadrupole = quadrupole;
+    }
+
+    /**
+     * Getter for mathContext.
+     *
+     * @return The precision and rounding mode of all calculations, or null if additions and multiplications are
+     * exact.
+     */
+    public MathContext getMathContext() {
+        return mathContext;
+    }
+
+    /**
+     * Setter for mathContext. Takes effect with the next build.
+     *
+     * @param mathContext The precision and rounding mode of all calculations, or null for exact additions and
+     *                    multiplications.
+     * @throws IllegalArgumentException if the precision of mathContext is unlimited.
+     */
+    public void setMathContext(MathContext mathContext) {
+        if (mathContext != null && mathContext.getPrecision() == 0)
+            throw new IllegalArgumentException("The precision has to be limited.");
+        this.mathContext = mathContext;
+    }
+
+    /**
+     * Getter for softening.
+     *
+     * @return The Plummer softening length in metres.
+     */
+    public BigDecimal getSoftening() {
+        return softening;
+    }
+
+    /**
+     * Setter for softening.
+     * <p>
+     * The softened distance needs a square root, so the softening only applies while a {@link MathContext} is set.
+     *
+     * @param softening The Plummer softening length in metres, zero for Newton's law.
+     * @throws IllegalArgumentException if softening is negative.
+     */
+    public void setSoftening(BigDecimal softening) {
+        if (softening.signum() < 0)
+            throw new IllegalArgumentException("The softening length must not be negative.");
+        this.softening = softening;
+    }
+
+    /**
+     * Returns the {@link MathContext} of additions and multiplications.
+     *
+     * @return mathContext or {@link MathContext#UNLIMITED} if no {@link MathContext} is set.
+     */
+    private MathContext arithmetic() {
+        return mathContext != null ? mathContext : MathContext.UNLIMITED;
+    }
+
+    /**
+     * Scales a vector with the precision of the tree.
+     *
+     * @param vector The vector to be scaled.
+     * @param scalar The scalar used for scaling.
+     * @return The scaled vector.
+     */
+    private Vector3D scale(Vector3D vector, BigDecimal scalar) {
+        return mathContext != null ? vector.scale(scalar, mathContext) : vector.scale(scalar);
+    }
+
+    /**
+     * Calculates the length of a vector with the precision of the tree.
+     *
+     * @param vector The vector.
+     * @return The length of vector.
+     */
+    private BigDecimal length(Vector3D vector) {
+        return mathContext != null ? vector.length(mathContext) : vector.length();
+    }
+
+    /**
+     * Calculates the reciprocal of a mass with the precision of the tree.
+     *
+     * @param mass The mass. Must not be zero.
+     * @return 1 / mass.
+     */
+    private BigDecimal reciprocal(BigDecimal mass) {
+        return mathContext != null
+                ? BigDecimal.ONE.divide(mass, mathContext)
+                : BigDecimal.ONE.divide(mass, 50, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Calculates the gravitational force of a point mass on the target with the precision of the tree.
+     *
+     * @param targetMass The mass of the target.
+     * @param distance   The distance vector from the target to the point mass. Must not be zero.
+     * @param r          The length of distance.
+     * @param mass       The mass of the point mass.
+     * @return The gravity on the target.
+     */
+    private Vector3D pointMassForce(BigDecimal targetMass, Vector3D distance, BigDecimal r, BigDecimal mass) {
+        return mathContext != null
+                ? Physics.calculateGravitationalForce(distance, r, targetMass, mass, softening, mathContext)
+                : Physics.calculateGravitationalForce(distance, r, targetMass, mass);
+    }
+
+    /**
+     * Setter for leafCapacity. Takes effect with the next build.
+     *
+     * @param leafCapacity The new maximum number of bodies in a leaf above the maximum depth.
+     * @throws IllegalArgumentException if leafCapacity is less than 1.
+     */
+    public void setLeafCapacity(int leafCapacity) {
+        if (leafCapacity < 1)
+            throw new IllegalArgumentException("The leaf capacity has to be at least 1.");
+        this.leafCapacity = leafCapacity;
     }
 
     /**
@@ -73,7 +340,20 @@ public class OcTree {
      * @return The force on targetBody.
      */
     public Vector3D calculateGravitationalForce(Body targetBody) {
-        return rootNode.calculateGravitationalForce(targetBody);
+        return rootNode.calculateGravitationalForce(targetBody, targetBody.getMass());
+    }
+
+    /**
+     * Calculates the overall gravitational acceleration of a given {@link Body}.
+     * <p>
+     * The walk calculates the force on a unit mass at the position of the body instead of dividing the force by the
+     * mass of the body, so massless test particles are accelerated as well.
+     *
+     * @param targetBody The body on which the acceleration will be acting.
+     * @return The acceleration of targetBody in metres per second squared.
+     */
+    public Vector3D calculateGravitationalAcceleration(Body targetBody) {
+        return rootNode.calculateGravitationalForce(targetBody, BigDecimal.ONE);
     }
 
     /**
@@ -85,6 +365,11 @@ public class OcTree {
      */
     class OcTreeNode {
 
+        /**
+         * The number of body references a new leaf has room for.
+         */
+        private static final int INITIAL_BODIES = 4;
+
         /**
          * The possible sub nodes of this node.
          */
@@ -100,20 +385,40 @@ public class OcTree {
          */
         private Vector3D centerOfMass;
 
+        /**
+         * The components xx, xy, xz, yy, yz and zz of the traceless quadrupole tensor around the center of mass.
+         */
+        private final BigDecimal[] quadrupoleMoment = new BigDecimal[6];
+
         /**
          * The coordinates of the center point.
          */
         private Vector3D center;
 
+        /**
+         * The length of the diagonal of the boundary, calculated once per build.
+         */
+        private BigDecimal diagonal;
+
         /**
          * The number of bodies within this node and all his sub nodes.
          */
         private int numberOfBodies;
 
         /**
-         * If numberOfBodies is equal to 1 the reference of the {@link Body} will be stored here.
+         * If this node is a leaf the references of its bodies will be stored here.
+         */
+        private Body[] bodies;
+
+        /**
+         * A flag showing whether this node is a leaf, i.e. it has not been split yet.
          */
-        private Body existingParticle;
+        private boolean leaf;
+
+        /**
+         * The depth of this node. The root node has the level 0.
+         */
+        private int level;
 
         /**
          * The first corner point to specify the boundary.
@@ -126,13 +431,25 @@ public class OcTree {
         private Vector3D backUpperRight;
 
         /**
-         * Creates a new Node for the given boundary.
+         * Creates a new empty node, which has to be reset before it is used.
+         */
+        OcTreeNode() {
+            octants = new OcTreeNode[8];
+            bodies = new Body[INITIAL_BODIES];
+        }
+
+        /**
+         * Empties this node and sets it to the given boundary.
          *
          * @param frontLowerLeft The first corner point to specify the boundary.
          * @param backUpperRight The second corner point to specify the boundary.
+         * @param level          The depth of the node.
          */
-        OcTreeNode(Vector3D frontLowerLeft, Vector3D backUpperRight) {
-            octants = new OcTreeNode[8];
+        void reset(Vector3D frontLowerLeft, Vector3D backUpperRight, int level) {
+            Arrays.fill(octants, null);
+            Arrays.fill(bodies, null);
+            leaf = true;
+            this.level = level;
             numberOfBodies = 0;
 
             mass = BigDecimal.ZERO;
@@ -140,47 +457,50 @@ public class OcTree {
 
             this.frontLowerLeft = frontLowerLeft;
             this.backUpperRight = backUpperRight;
-            center = frontLowerLeft.add(backUpperRight.subtract(frontLowerLeft).scale(BD0_5));
+            center = frontLowerLeft.add(scale(backUpperRight.subtract(frontLowerLeft, arithmetic()), BD0_5),
+                    arithmetic());
+            diagonal = null;
         }
 
         /**
-         * Insert the given {@link Body} to this node. Split node if necessary until there is only one body per node.
+         * Insert the given {@link Body} to this node. Split the node if it holds more than leafCapacity bodies and is
+         * above the maximum depth.
          *
          * @param newBody The {@link Body} to be inserted.
          */
         void insert(Body newBody) {
-            Octant oct;
-            int index;
-            if (numberOfBodies > 1) {
-                oct = getOctant(newBody);
-                index = oct.ordinal();
-
-                if (octants[index] == null)
-                    octants[index] = createSubnode(oct);
-
-                octants[index].insert(newBody);
-            } else if (numberOfBodies == 1) {
-                oct = getOctant(existingParticle);
-                index = oct.ordinal();
-
-                if (octants[index] == null)
-                    octants[index] = createSubnode(oct);
-                octants[index].insert(existingParticle);
-
-                oct = getOctant(newBody);
-                index = oct.ordinal();
-
-                if (octants[index] == null)
-                    octants[index] = createSubnode(oct);
-                octants[index].insert(newBody);
+            if (leaf) {
+                if (numberOfBodies < leafCapacity || level == MAX_DEPTH) {
+                    if (numberOfBodies == bodies.length)
+                        bodies = Arrays.copyOf(bodies, 2 * bodies.length);
+                    bodies[numberOfBodies++] = newBody;
+                    return;
+                }
 
-                existingParticle = null;
-            } else {
-                existingParticle = newBody;
+                leaf = false;
+                for (int i = 0; i < numberOfBodies; i++) {
+                    insertIntoOctant(bodies[i]);
+                    bodies[i] = null;
+                }
             }
+            insertIntoOctant(newBody);
             numberOfBodies++;
         }
 
+        /**
+         * Insert the given {@link Body} into the sub node of its octant, creating the sub node if necessary.
+         *
+         * @param body The {@link Body} to be inserted.
+         */
+        private void insertIntoOctant(Body body) {
+            Octant oct = getOctant(body);
+            int index = oct.ordinal();
+
+            if (octants[index] == null)
+                octants[index] = createSubnode(oct);
+            octants[index].insert(body);
+        }
+
         /**
          * Create a OcTreeNode based on the current boundaries and the specified octant.
          *
@@ -191,87 +511,195 @@ public class OcTree {
             OcTreeNode returnNode = null;
             switch (oct) {
                 case LSW:
-                    returnNode = new OcTreeNode(frontLowerLeft, center);
+                    returnNode = obtainNode(frontLowerLeft, center, level + 1);
                     break;
                 case LNW:
-                    returnNode = new OcTreeNode(
+                    returnNode = obtainNode(
                             new Vector3D(frontLowerLeft.getX(), center.getY(), frontLowerLeft.getZ()),
-                            new Vector3D(center.getX(), backUpperRight.getY(), center.getZ()));
+                            new Vector3D(center.getX(), backUpperRight.getY(), center.getZ()), level + 1);
                     break;
                 case LNE:
-                    returnNode = new OcTreeNode(
+                    returnNode = obtainNode(
                             new Vector3D(center.getX(), center.getY(), frontLowerLeft.getZ()),
-                            new Vector3D(backUpperRight.getX(), backUpperRight.getY(), center.getZ()));
+                            new Vector3D(backUpperRight.getX(), backUpperRight.getY(), center.getZ()), level + 1);
                     break;
                 case LSE:
-                    returnNode = new OcTreeNode(
+                    returnNode = obtainNode(
                             new Vector3D(center.getX(), frontLowerLeft.getY(), frontLowerLeft.getZ()),
-                            new Vector3D(backUpperRight.getX(), center.getY(), center.getZ()));
+                            new Vector3D(backUpperRight.getX(), center.getY(), center.getZ()), level + 1);
                     break;
                 case USW:
-                    returnNode = new OcTreeNode(
+                    returnNode = obtainNode(
                             new Vector3D(frontLowerLeft.getX(), frontLowerLeft.getY(), center.getZ()),
-                            new Vector3D(center.getX(), center.getY(), backUpperRight.getZ()));
+                            new Vector3D(center.getX(), center.getY(), backUpperRight.getZ()), level + 1);
                     break;
                 case UNW:
-                    returnNode = new OcTreeNode(
+                    returnNode = obtainNode(
                             new Vector3D(frontLowerLeft.getX(), center.getY(), center.getZ()),
-                            new Vector3D(center.getX(), backUpperRight.getY(), backUpperRight.getZ()));
+                            new Vector3D(center.getX(), backUpperRight.getY(), backUpperRight.getZ()), level + 1);
                     break;
                 case UNE:
-                    returnNode = new OcTreeNode(center, backUpperRight);
+                    returnNode = obtainNode(center, backUpperRight, level + 1);
                     break;
                 case USE:
-                    returnNode = new OcTreeNode(
+                    returnNode = obtainNode(
                             new Vector3D(center.getX(), frontLowerLeft.getY(), center.getZ()),
-                            new Vector3D(backUpperRight.getX(), center.getY(), backUpperRight.getZ()));
+                            new Vector3D(backUpperRight.getX(), center.getY(), backUpperRight.getZ()), level + 1);
                     break;
             }
+            // The boundary is halved exactly, so the diagonal is as well.
+            returnNode.diagonal = diagonal.multiply(BD0_5, arithmetic());
             return returnNode;
         }
 
         /**
          * Calculates the mass distribution of this node.
+         * <p>
+         * Nodes without mass, like the root of a tree of test particles only, get their geometric center as center of
+         * mass.
          */
         void calculateMassDistribution() {
-            if (numberOfBodies == 1) {
-                centerOfMass = existingParticle.getPosition();
-                mass = existingParticle.getMass();
+            if (leaf && numberOfBodies == 1) {
+                centerOfMass = bodies[0].getPosition();
+                mass = bodies[0].getMass();
+            } else if (leaf) {
+                for (int i = 0; i < numberOfBodies; i++) {
+                    mass = mass.add(bodies[i].getMass(), arithmetic());
+                    centerOfMass = centerOfMass.add(scale(bodies[i].getPosition(), bodies[i].getMass()), arithmetic());
+                }
+                centerOfMass = mass.signum() != 0 ? scale(centerOfMass, reciprocal(mass)) : center;
             } else {
                 for (OcTreeNode oct : octants) {
                     if (oct != null) {
                         oct.calculateMassDistribution();
-                        mass = mass.add(oct.mass);
-                        centerOfMass = centerOfMass.add(oct.centerOfMass.scale(oct.mass));
+                        mass = mass.add(oct.mass, arithmetic());
+                        centerOfMass = centerOfMass.add(scale(oct.centerOfMass, oct.mass), arithmetic());
                     }
                 }
-                centerOfMass = centerOfMass.scale(BigDecimal.ONE.divide(mass, 50, RoundingMode.HALF_UP));
+                centerOfMass = mass.signum() != 0 ? scale(centerOfMass, reciprocal(mass)) : center;
             }
+            if (quadrupole)
+                calculateQuadrupole();
+        }
+
+        /**
+         * Calculates the traceless quadrupole tensor of this node around its center of mass.
+         * <p>
+         * The tensors of the sub nodes are shifted to the center of mass of this node by the parallel axis theorem.
+         */
+        private void calculateQuadrupole() {
+            Arrays.fill(quadrupoleMoment, BigDecimal.ZERO);
+            if (leaf) {
+                for (int i = 0; i < numberOfBodies; i++) {
+                    addMoment(bodies[i].getPosition(), bodies[i].getMass());
+                }
+            } else {
+                for (OcTreeNode oct : octants) {
+                    if (oct != null) {
+                        for (int i = 0; i < quadrupoleMoment.length; i++) {
+                            quadrupoleMoment[i] = quadrupoleMoment[i].add(oct.quadrupoleMoment[i], arithmetic());
+                        }
+                        addMoment(oct.centerOfMass, oct.mass);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the quadrupole moment of a point mass to the tensor of this node.
+         *
+         * @param position The position of the point mass.
+         * @param m        The mass of the point mass.
+         */
+        private void addMoment(Vector3D position, BigDecimal m) {
+            MathContext mc = arithmetic();
+            Vector3D r = position.subtract(centerOfMass, mc);
+            BigDecimal x = r.getX(), y = r.getY(), z = r.getZ();
+            BigDecimal r2 = x.multiply(x, mc).add(y.multiply(y, mc), mc).add(z.multiply(z, mc), mc);
+            BigDecimal m3 = m.multiply(BD3, mc), mr2 = m.multiply(r2, mc);
+            quadrupoleMoment[0] = quadrupoleMoment[0].add(m3.multiply(x, mc).multiply(x, mc).subtract(mr2, mc), mc);
+            quadrupoleMoment[1] = quadrupoleMoment[1].add(m3.multiply(x, mc).multiply(y, mc), mc);
+            quadrupoleMoment[2] = quadrupoleMoment[2].add(m3.multiply(x, mc).multiply(z, mc), mc);
+            quadrupoleMoment[3] = quadrupoleMoment[3].add(m3.multiply(y, mc).multiply(y, mc).subtract(mr2, mc), mc);
+            quadrupoleMoment[4] = quadrupoleMoment[4].add(m3.multiply(y, mc).multiply(z, mc), mc);
+            quadrupoleMoment[5] = quadrupoleMoment[5].add(m3.multiply(z, mc).multiply(z, mc).subtract(mr2, mc), mc);
+        }
+
+        /**
+         * Calculates the force caused by the quadrupole moment of this node on the target body.
+         * <p>
+         * With d pointing from the target to the center of mass, the force is
+         * G * m * (5/2 * (d^T Q d) * d / |d|^7 - Q d / |d|^5).
+         *
+         * @param targetMass The mass of the target.
+         * @param d          The distance vector from the target to the center of mass.
+         * @param r          The length of d.
+         * @return The quadrupole force on the target.
+         */
+        private Vector3D calculateQuadrupoleForce(BigDecimal targetMass, Vector3D d, BigDecimal r) {
+            BigDecimal[] q = quadrupoleMoment;
+            MathContext mc = arithmetic(), division = mathContext != null ? mathContext : QUADRUPOLE_PRECISION;
+            BigDecimal x = d.getX(), y = d.getY(), z = d.getZ();
+            BigDecimal qx = q[0].multiply(x, mc).add(q[1].multiply(y, mc), mc).add(q[2].multiply(z, mc), mc);
+            BigDecimal qy = q[1].multiply(x, mc).add(q[3].multiply(y, mc), mc).add(q[4].multiply(z, mc), mc);
+            BigDecimal qz = q[2].multiply(x, mc).add(q[4].multiply(y, mc), mc).add(q[5].multiply(z, mc), mc);
+            BigDecimal r2 = r.multiply(r, mc);
+            BigDecimal dQd = x.multiply(qx, mc).add(y.multiply(qy, mc), mc).add(z.multiply(qz, mc), mc);
+            BigDecimal radial = BD2_5.multiply(dQd, mc).divide(r2, division);
+            BigDecimal factor = Physics.G.multiply(targetMass, mc)
+                    .divide(r2.multiply(r2, mc).multiply(r, mc), division);
+            return new Vector3D(
+                    radial.multiply(x, mc).subtract(qx, mc).multiply(factor, mc),
+                    radial.multiply(y, mc).subtract(qy, mc).multiply(factor, mc),
+                    radial.multiply(z, mc).subtract(qz, mc).multiply(factor, mc));
+        }
+
+        /**
+         * Checks whether the given position lies within the boundary of this node.
+         *
+         * @param position The position to be checked.
+         * @return true if position lies within the boundary. false otherwise.
+         */
+        private boolean encloses(Vector3D position) {
+            return position.getX().compareTo(frontLowerLeft.getX()) >= 0
+                    && position.getY().compareTo(frontLowerLeft.getY()) >= 0
+                    && position.getZ().compareTo(frontLowerLeft.getZ()) >= 0
+                    && position.getX().compareTo(backUpperRight.getX()) <= 0
+                    && position.getY().compareTo(backUpperRight.getY()) <= 0
+                    && position.getZ().compareTo(backUpperRight.getZ()) <= 0;
         }
 
         /**
          * Calculate the gravitational force acting from this node on the target body.
          *
          * @param targetBody The targeted {@link Body}.
+         * @param targetMass The mass the force acts on, the mass of targetBody or 1 for its acceleration.
          * @return The gravity on targetBody.
          */
-        Vector3D calculateGravitationalForce(Body targetBody) {
+        Vector3D calculateGravitationalForce(Body targetBody, BigDecimal targetMass) {
             Vector3D force = new Vector3D();
 
 
-            if (numberOfBodies == 1) {
-                force = Physics.calculateGravitationalForce(targetBody, existingParticle);
+            if (leaf && (numberOfBodies == 1 || contains(targetBody))) {
+                force = calculateLeafForce(targetBody, targetMass);
             } else {
-                BigDecimal r = centerOfMass.subtract(targetBody.getPosition()).length();
-                BigDecimal d = frontLowerLeft.subtract(backUpperRight).length();
-
-                if (r.compareTo(BigDecimal.ZERO) != 0 && d.divide(r, 50, RoundingMode.HALF_UP).compareTo(THETA) < 0) {
-                    Body tmp = new Body("", centerOfMass, null, mass, false);
-                    force = Physics.calculateGravitationalForce(targetBody, tmp);
+                Vector3D distance = centerOfMass.subtract(targetBody.getPosition(), arithmetic());
+                BigDecimal r = length(distance);
+
+                // diagonal / r < theta, compared without a division.
+                // A node enclosing the target is always opened, as it might attract the target to itself.
+                if (r.compareTo(BigDecimal.ZERO) != 0
+                        && diagonal.compareTo(theta.multiply(r, arithmetic())) < 0
+                        && !encloses(targetBody.getPosition())) {
+                    force = pointMassForce(targetMass, distance, r, mass);
+                    if (quadrupole)
+                        force = force.add(calculateQuadrupoleForce(targetMass, distance, r), arithmetic());
+                } else if (leaf) {
+                    force = calculateLeafForce(targetBody, targetMass);
                 } else {
                     for (OcTreeNode oct : octants) {
                         if (oct != null) {
-                            force = force.add(oct.calculateGravitationalForce(targetBody));
+                            force = force.add(oct.calculateGravitationalForce(targetBody, targetMass), arithmetic());
                         }
                     }
                 }
@@ -279,6 +707,42 @@ public class OcTree {
             return force;
         }
 
+        /**
+         * Sums up the gravitational force of every body of this leaf on the target body directly.
+         * <p>
+         * The target itself and bodies sharing its position are skipped.
+         *
+         * @param targetBody The targeted {@link Body}.
+         * @param targetMass The mass the force acts on, the mass of targetBody or 1 for its acceleration.
+         * @return The gravity on targetBody.
+         */
+        private Vector3D calculateLeafForce(Body targetBody, BigDecimal targetMass) {
+            Vector3D force = new Vector3D();
+            for (int i = 0; i < numberOfBodies; i++) {
+                if (bodies[i] == targetBody)
+                    continue;
+                Vector3D distance = bodies[i].getPosition().subtract(targetBody.getPosition(), arithmetic());
+                BigDecimal r = length(distance);
+                if (r.signum() != 0)
+                    force = force.add(pointMassForce(targetMass, distance, r, bodies[i].getMass()), arithmetic());
+            }
+            return force;
+        }
+
+        /**
+         * Checks whether the given {@link Body} is one of the bodies of this leaf.
+         *
+         * @param body The {@link Body} to be searched.
+         * @return true if this leaf holds body. false otherwise.
+         */
+        private boolean contains(Body body) {
+            for (int i = 0; i < numberOfBodies; i++) {
+                if (bodies[i] == body)
+                    return true;
+            }
+            return false;
+        }
+
         /**
          * Calculate in which octant the given {@link Body} lies.
          *
@@ -314,20 +778,6 @@ public class OcTree {
             }
         }
 
-        /**
-         * Frees all the references of this node and all his sub nodes.
-         */
-        void deleteNode() {
-            for (OcTreeNode oct : octants) {
-                if (oct != null)
-                    oct.deleteNode();
-                octants = null;
-                existingParticle = null;
-                center = centerOfMass = frontLowerLeft = backUpperRight = null;
-                mass = null;
-            }
-        }
-
     }
 
     /**
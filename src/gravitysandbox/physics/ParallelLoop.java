@@ -0,0 +1,244 @@
+package gravitysandbox.physics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs loops over the bodies split into chunks on a {@link ForkJoinPool}.
+ * <p>
+ * A range is split in halves until it is not larger than the chunk size. With a parallelism of 1 every loop runs on
+ * the calling thread.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class ParallelLoop {
+
+    /**
+     * The default number of bodies handled by one task.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    /**
+     * The body of a loop over a range of indices.
+     */
+    public interface Range {
+
+        /**
+         * Executes the loop for the given indices.
+         *
+         * @param from The first index, inclusive.
+         * @param to   The last index, exclusive.
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * The body of a loop over independent items like the blocks of a reduction.
+     */
+    public interface Item {
+
+        /**
+         * Executes the loop for one item.
+         *
+         * @param index The index of the item.
+         */
+        void run(int index);
+    }
+
+    /**
+     * The pool executing the tasks or null if the parallelism is 1.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The number of threads.
+     */
+    private int parallelism;
+
+    /**
+     * The maximum number of indices handled by one task.
+     */
+    private int chunkSize;
+
+    /**
+     * Creates a new loop using all available processors.
+     */
+    public ParallelLoop() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new loop using the given number of threads.
+     *
+     * @param parallelism The number of threads.
+     * @throws IllegalArgumentException if parallelism is less than 1.
+     */
+    public ParallelLoop(int parallelism) {
+        setParallelism(parallelism);
+        chunkSize = DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Executes the given loop body for all indices between from and to.
+     *
+     * @param from The first index, inclusive.
+     * @param to   The last index, exclusive.
+     * @param body The loop body.
+     */
+    public void forRange(int from, int to, Range body) {
+        if (pool == null || to - from <= chunkSize)
+            body.run(from, to);
+        else
+            pool.invoke(new RangeTask(body, from, to));
+    }
+
+    /**
+     * Executes the given loop body for every item between 0 and count, each item being a task of its own.
+     *
+     * @param count The number of items.
+     * @param body  The loop body.
+     */
+    public void forEach(int count, Item body) {
+        if (pool == null || count <= 1) {
+            for (int i = 0; i < count; i++) {
+                body.run(i);
+            }
+        } else {
+            pool.invoke(new ItemTask(body, 0, count));
+        }
+    }
+
+    /**
+     * Getter for parallelism.
+     *
+     * @return The number of threads.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Setter for parallelism.
+     *
+     * @param parallelism The new number of threads.
+     * @throws IllegalArgumentException if parallelism is less than 1.
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("The parallelism has to be at least 1.");
+        if (pool != null)
+            pool.shutdown();
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Getter for chunkSize.
+     *
+     * @return The maximum number of indices handled by one task.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Setter for chunkSize.
+     *
+     * @param chunkSize The new maximum number of indices handled by one task.
+     * @throws IllegalArgumentException if chunkSize is less than 1.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("The chunk size has to be at least 1.");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * A task splitting its range in halves until it is small enough.
+     */
+    private class RangeTask extends RecursiveAction {
+
+        /**
+         * The loop body.
+         */
+        private final Range body;
+
+        /**
+         * The first index, inclusive.
+         */
+        private final int from;
+
+        /**
+         * The last index, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Creates a new task for the given range.
+         *
+         * @param body The loop body.
+         * @param from The first index, inclusive.
+         * @param to   The last index, exclusive.
+         */
+        RangeTask(Range body, int from, int to) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                body.run(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(body, from, middle), new RangeTask(body, middle, to));
+            }
+        }
+    }
+
+    /**
+     * A task splitting its items in halves until a single item is left.
+     */
+    private static class ItemTask extends RecursiveAction {
+
+        /**
+         * The loop body.
+         */
+        private final Item body;
+
+        /**
+         * The first item, inclusive.
+         */
+        private final int from;
+
+        /**
+         * The last item, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Creates a new task for the given items.
+         *
+         * @param body The loop body.
+         * @param from The first item, inclusive.
+         * @param to   The last item, exclusive.
+         */
+        ItemTask(Item body, int from, int to) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                body.run(from);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ItemTask(body, from, middle), new ItemTask(body, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,706 @@
+package gravitysandbox.physics;
+
+import gravitysandbox.util.FastFourierTransform;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ForceSolver} solving Poisson's equation on a mesh, optionally with a short range correction of the pairs
+ * of close bodies (particle-particle particle-mesh, P3M).
+ * <p>
+ * The masses of the bodies are deposited onto a cubic mesh around all bodies by cloud-in-cell weighting. The potential
+ * of the mesh is the convolution of the masses with the Green's function of the cells, which is calculated with fast
+ * Fourier transforms of a mesh of twice the edge length, so the bodies do not feel periodic images (Hockney's method
+ * for isolated systems). The accelerations of the cells follow from four point differences of the potential and are
+ * interpolated back to the bodies with the same weights as the masses. The costs grow with N plus M^3 * log(M) for a
+ * mesh of M cells per edge, however the bodies are distributed, but forces are only resolved down to a few cells.
+ * <p>
+ * With the short range correction, the mesh only carries the long range part erf(r / (2 * r_s)) / r of the potential,
+ * which is smooth on the scale of the cells, and is divided by the cloud-in-cell window of assignment and
+ * interpolation in Fourier space. The pairs closer than a cutoff of a few r_s are found by walking the nodes of the
+ * {@link BarnesHutTree} and add the remaining short range part of the softened force, so close bodies interact with
+ * the exact force law.
+ * <p>
+ * Test particles are interpolated like every other body but do not deposit their mass. The mesh and the transforms
+ * are kept and reused by every following calculation and the lines of the transforms, the differences and the
+ * interpolation are split over the threads of the {@link ParallelLoop}, while the deposition runs on the calling
+ * thread.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class ParticleMeshSolver implements ForceSolver {
+
+    /**
+     * The default number of cells per edge of the mesh.
+     */
+    public static final int DEFAULT_MESH_SIZE = 64;
+
+    /**
+     * The smallest number of cells per edge of the mesh.
+     */
+    public static final int MIN_MESH_SIZE = 8;
+
+    /**
+     * The default length r_s at which the potential is split into the long and short range part, in cells.
+     */
+    public static final double DEFAULT_SPLIT = 1.25;
+
+    /**
+     * The distance beyond which the short range part is neglected, in units of r_s. erfc(2.25) is about 1.5e-3.
+     */
+    private static final double CUTOFF = 4.5;
+
+    /**
+     * The number of cells kept free around the bodies, so both the weights and the differences stay within the mesh.
+     */
+    private static final int MARGIN = 2;
+
+    /**
+     * The potential of a unit mass spread over a unit cube at its center, used by the Green's function for the
+     * distance zero.
+     */
+    private static final double CUBE_POTENTIAL = 2.3800772;
+
+    /**
+     * The number of intervals of the table of the long range force within the cutoff.
+     */
+    private static final int TABLE_SIZE = 4096;
+
+    /**
+     * The long range part of the force, erf(t) - 2 * t / sqrt(pi) * exp(-t^2), at TABLE_SIZE + 1 equidistant values
+     * of t = r / (2 * r_s) between zero and the cutoff, so the close pairs interpolate it linearly instead of
+     * evaluating erf and exp.
+     */
+    private static final double[] LONG_RANGE = new double[TABLE_SIZE + 2];
+
+    static {
+        for (int k = 0; k < LONG_RANGE.length; k++) {
+            double t = k * CUTOFF / 2 / TABLE_SIZE;
+            LONG_RANGE[k] = 1 - erfc(t) - 2 / Math.sqrt(Math.PI) * t * Math.exp(-t * t);
+        }
+    }
+
+    /**
+     * The tree finding the close pairs.
+     */
+    private final BarnesHutTree tree;
+
+    /**
+     * The number of cells per edge of the mesh.
+     */
+    private int meshSize;
+
+    /**
+     * The number of cells per edge of the doubled mesh of the transforms.
+     */
+    private int paddedSize;
+
+    /**
+     * A flag showing whether the short range part is added by pairs.
+     */
+    private boolean shortRange;
+
+    /**
+     * The length at which the potential is split, in cells.
+     */
+    private double split;
+
+    /**
+     * The Plummer softening length in AU.
+     */
+    private double softening;
+
+    /**
+     * The squared softening length, added to the squared distance of every close pair.
+     */
+    private double softening2;
+
+    /**
+     * The transform of the lines of the doubled mesh.
+     */
+    private FastFourierTransform transform;
+
+    /**
+     * The real parts of the doubled mesh.
+     */
+    private double[] real;
+
+    /**
+     * The imaginary parts of the doubled mesh.
+     */
+    private double[] imaginary;
+
+    /**
+     * The transform of the Green's function for cells of unit size, which is real as the function is even.
+     */
+    private double[] green;
+
+    /**
+     * A flag showing whether green belongs to the current mesh size, split and short range flag.
+     */
+    private boolean greenValid;
+
+    /**
+     * The x coordinates of the accelerations of the cells.
+     */
+    private double[] fieldX;
+
+    /**
+     * The y coordinates of the accelerations of the cells.
+     */
+    private double[] fieldY;
+
+    /**
+     * The z coordinates of the accelerations of the cells.
+     */
+    private double[] fieldZ;
+
+    /**
+     * The real and imaginary parts of one line of a transform, one pair of arrays per thread.
+     */
+    private final ThreadLocal<double[][]> lines = ThreadLocal.withInitial(() -> new double[2][0]);
+
+    /**
+     * The x coordinate of the corner of the mesh.
+     */
+    private double originX;
+
+    /**
+     * The y coordinate of the corner of the mesh.
+     */
+    private double originY;
+
+    /**
+     * The z coordinate of the corner of the mesh.
+     */
+    private double originZ;
+
+    /**
+     * The edge length of a cell in AU.
+     */
+    private double cellSize;
+
+    /**
+     * The {@link BodyStore} of the current calculation.
+     */
+    private BodyStore store;
+
+    /**
+     * The indices of the bodies of the current calculation or null for all bodies.
+     */
+    private int[] targets;
+
+    /**
+     * The axis of the lines of the current pass of the transform: 0 for x, 1 for y and 2 for z.
+     */
+    private int passAxis;
+
+    /**
+     * A flag showing whether the current pass is an inverse transform.
+     */
+    private boolean passInverse;
+
+    /**
+     * The number of cells per edge of the first octant which contains the data of the current transform.
+     */
+    private int passFilled;
+
+    /**
+     * The accumulators of the short range parts, one per thread.
+     */
+    private final ThreadLocal<ForceAccumulator> shortRanges = ThreadLocal.withInitial(ForceAccumulator::new);
+
+    /**
+     * The loop body transforming a range of lines of the current pass.
+     */
+    private final ParallelLoop.Range lineTask = this::transformLines;
+
+    /**
+     * The loop body multiplying a range of the transformed mesh with the Green's function.
+     */
+    private final ParallelLoop.Range convolutionTask = this::convolve;
+
+    /**
+     * The loop body calculating the accelerations of a range of planes of cells.
+     */
+    private final ParallelLoop.Range differenceTask = this::differentiate;
+
+    /**
+     * The loop body interpolating the accelerations of a range of bodies.
+     */
+    private final ParallelLoop.Range interpolationTask = this::interpolate;
+
+    /**
+     * Creates a new solver with its own tree.
+     */
+    public ParticleMeshSolver() {
+        this(new BarnesHutTree());
+    }
+
+    /**
+     * Creates a new solver using the given tree for the close pairs.
+     * <p>
+     * The tree may be shared with other solvers, as every calculation with the short range correction brings it up to
+     * date with the store first.
+     *
+     * @param tree The {@link BarnesHutTree} finding the close pairs.
+     */
+    public ParticleMeshSolver(BarnesHutTree tree) {
+        this.tree = tree;
+        split = DEFAULT_SPLIT;
+        setMeshSize(DEFAULT_MESH_SIZE);
+    }
+
+    @Override
+    public void accumulateAccelerations(BodyStore store, ParallelLoop parallelLoop) {
+        accumulateAccelerations(store, null, store.size(), parallelLoop);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The mesh always contains all bodies, only the interpolation and the close pairs are restricted to the subset.
+     */
+    @Override
+    public void accumulateAccelerations(BodyStore store, int[] bodies, int count, ParallelLoop parallelLoop) {
+        if (store.size() - store.getTestParticleCount() == 0)
+            return;
+        this.store = store;
+        targets = count == store.size() ? null : bodies;
+        if (!greenValid)
+            calculateGreen(parallelLoop);
+        if (shortRange)
+            tree.updateTree(store, parallelLoop);
+
+        placeMesh();
+        Arrays.fill(real, 0);
+        Arrays.fill(imaginary, 0);
+        deposit();
+        transform(false, meshSize, parallelLoop);
+        parallelLoop.forRange(0, real.length, convolutionTask);
+        transform(true, meshSize, parallelLoop);
+        parallelLoop.forRange(MARGIN, meshSize - MARGIN, differenceTask);
+        parallelLoop.forRange(0, count, interpolationTask);
+        this.store = null;
+        targets = null;
+    }
+
+    /**
+     * Places the mesh around all bodies, keeping a margin of free cells on every side.
+     */
+    private void placeMesh() {
+        int n = store.size();
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, store.x[i]);
+            minY = Math.min(minY, store.y[i]);
+            minZ = Math.min(minZ, store.z[i]);
+            maxX = Math.max(maxX, store.x[i]);
+            maxY = Math.max(maxY, store.y[i]);
+            maxZ = Math.max(maxZ, store.z[i]);
+        }
+        double extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+        // The weights of the outermost bodies reach from the cell MARGIN to the cell meshSize - MARGIN - 1.
+        cellSize = extent > 0 ? extent / (meshSize - 2 * MARGIN - 2) : 1;
+        originX = minX - (MARGIN + 0.5) * cellSize;
+        originY = minY - (MARGIN + 0.5) * cellSize;
+        originZ = minZ - (MARGIN + 0.5) * cellSize;
+    }
+
+    /**
+     * Deposits the masses of all bodies except the test particles onto the first octant of the doubled mesh.
+     */
+    private void deposit() {
+        int m = paddedSize;
+        double scale = 1 / cellSize;
+        for (int i = 0; i < store.size(); i++) {
+            if (store.testParticle[i])
+                continue;
+            double u = (store.x[i] - originX) * scale - 0.5;
+            double v = (store.y[i] - originY) * scale - 0.5;
+            double w = (store.z[i] - originZ) * scale - 0.5;
+            int cx = (int) u, cy = (int) v, cz = (int) w;
+            double fx = u - cx, fy = v - cy, fz = w - cz;
+            double mass = store.mass[i];
+            for (int a = 0; a < 2; a++) {
+                double wx = a == 0 ? 1 - fx : fx;
+                for (int b = 0; b < 2; b++) {
+                    double wxy = wx * (b == 0 ? 1 - fy : fy);
+                    int base = ((cx + a) * m + cy + b) * m + cz;
+                    real[base] += mass * wxy * (1 - fz);
+                    real[base + 1] += mass * wxy * fz;
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms the doubled mesh in three passes of lines.
+     * <p>
+     * If only the first octant holds data and only the first octant of the result is needed, the forward transform
+     * skips the lines which are still zero and the inverse transform those which are not needed.
+     *
+     * @param inverse      true for the inverse transform. false for the forward transform.
+     * @param filled       The number of cells per edge of the first octant containing the data.
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    private void transform(boolean inverse, int filled, ParallelLoop parallelLoop) {
+        int n = filled, m = paddedSize;
+        passInverse = inverse;
+        passFilled = filled;
+        for (int pass = 0; pass < 3; pass++) {
+            passAxis = inverse ? pass : 2 - pass;
+            // z lines of the first quarter, y lines of the first half and all x lines.
+            int count = passAxis == 2 ? n * n : passAxis == 1 ? n * m : m * m;
+            parallelLoop.forRange(0, count, lineTask);
+        }
+    }
+
+    /**
+     * Transforms a range of lines of the current pass.
+     *
+     * @param from The index of the first line, inclusive.
+     * @param to   The index of the last line, exclusive.
+     */
+    private void transformLines(int from, int to) {
+        double[][] line = lines.get();
+        if (line[0].length != paddedSize) {
+            line[0] = new double[paddedSize];
+            line[1] = new double[paddedSize];
+        }
+        double[] lineReal = line[0], lineImaginary = line[1];
+        int n = passFilled, m = paddedSize;
+        for (int l = from; l < to; l++) {
+            int base, stride;
+            if (passAxis == 2) {
+                base = (l / n * m + l % n) * m;
+                stride = 1;
+            } else if (passAxis == 1) {
+                base = l / m * m * m + l % m;
+                stride = m;
+            } else {
+                base = l;
+                stride = m * m;
+            }
+            for (int k = 0; k < m; k++) {
+                lineReal[k] = real[base + k * stride];
+                lineImaginary[k] = imaginary[base + k * stride];
+            }
+            transform.transform(lineReal, lineImaginary, passInverse);
+            for (int k = 0; k < m; k++) {
+                real[base + k * stride] = lineReal[k];
+                imaginary[base + k * stride] = lineImaginary[k];
+            }
+        }
+    }
+
+    /**
+     * Multiplies a range of the transformed mesh with the transformed Green's function.
+     *
+     * @param from The index of the first cell, inclusive.
+     * @param to   The index of the last cell, exclusive.
+     */
+    private void convolve(int from, int to) {
+        for (int c = from; c < to; c++) {
+            real[c] *= green[c];
+            imaginary[c] *= green[c];
+        }
+    }
+
+    /**
+     * Calculates the accelerations of the cells of a range of planes from the potential by four point differences.
+     * <p>
+     * The potential is the unnormalized inverse transform, so it is scaled by G / (cellSize * paddedSize^3) here.
+     *
+     * @param from The x index of the first plane, inclusive.
+     * @param to   The x index of the last plane, exclusive.
+     */
+    private void differentiate(int from, int to) {
+        int n = meshSize, m = paddedSize;
+        double scale = Physics.G_INTERNAL / (cellSize * cellSize * m * m * (double) m);
+        double near = 2.0 / 3 * scale, far = 1.0 / 12 * scale;
+        for (int x = from; x < to; x++) {
+            for (int y = MARGIN; y < n - MARGIN; y++) {
+                int c = (x * m + y) * m;
+                for (int z = MARGIN; z < n - MARGIN; z++) {
+                    int f = (x * n + y) * n + z;
+                    fieldX[f] = near * (real[c + z + m * m] - real[c + z - m * m])
+                            - far * (real[c + z + 2 * m * m] - real[c + z - 2 * m * m]);
+                    fieldY[f] = near * (real[c + z + m] - real[c + z - m])
+                            - far * (real[c + z + 2 * m] - real[c + z - 2 * m]);
+                    fieldZ[f] = near * (real[c + z + 1] - real[c + z - 1])
+                            - far * (real[c + z + 2] - real[c + z - 2]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Interpolates the accelerations of the cells to a range of the bodies with the weights of the deposition and adds
+     * the short range part of their close pairs.
+     *
+     * @param from The position of the first body within the targets, inclusive.
+     * @param to   The position of the last body within the targets, exclusive.
+     */
+    private void interpolate(int from, int to) {
+        int n = meshSize;
+        double scale = 1 / cellSize;
+        double distance = CUTOFF * split * cellSize;
+        for (int position = from; position < to; position++) {
+            int i = targets == null ? position : targets[position];
+            double u = (store.x[i] - originX) * scale - 0.5;
+            double v = (store.y[i] - originY) * scale - 0.5;
+            double w = (store.z[i] - originZ) * scale - 0.5;
+            int cx = (int) u, cy = (int) v, cz = (int) w;
+            double fx = u - cx, fy = v - cy, fz = w - cz;
+            double ax = 0, ay = 0, az = 0;
+            for (int a = 0; a < 2; a++) {
+                double wx = a == 0 ? 1 - fx : fx;
+                for (int b = 0; b < 2; b++) {
+                    double wxy = wx * (b == 0 ? 1 - fy : fy);
+                    int f = ((cx + a) * n + cy + b) * n + cz;
+                    double w0 = wxy * (1 - fz), w1 = wxy * fz;
+                    ax += w0 * fieldX[f] + w1 * fieldX[f + 1];
+                    ay += w0 * fieldY[f] + w1 * fieldY[f + 1];
+                    az += w0 * fieldZ[f] + w1 * fieldZ[f + 1];
+                }
+            }
+            if (shortRange) {
+                ForceAccumulator sum = shortRanges.get();
+                sum.reset();
+                addShortRange(0, store.x[i], store.y[i], store.z[i], distance, sum);
+                ax += sum.ax;
+                ay += sum.ay;
+                az += sum.az;
+            }
+            store.ax[i] += ax;
+            store.ay[i] += ay;
+            store.az[i] += az;
+        }
+    }
+
+    /**
+     * Adds the short range part of the acceleration caused by the bodies below the given node closer than the cutoff:
+     * the softened force minus the long range part carried by the mesh.
+     * <p>
+     * Nodes whose loose cube is farther away than the cutoff are skipped. Bodies at the position of the accelerated
+     * body, including the body itself, are skipped as well.
+     *
+     * @param node     The index of the node.
+     * @param x        The x coordinate of the accelerated body.
+     * @param y        The y coordinate of the accelerated body.
+     * @param z        The z coordinate of the accelerated body.
+     * @param distance The cutoff in AU.
+     * @param sum      The {@link ForceAccumulator} of the accelerated body.
+     */
+    private void addShortRange(int node, double x, double y, double z, double distance, ForceAccumulator sum) {
+        double ex = Math.max(0, Math.abs(tree.centerX[node] - x) - tree.extent[node]);
+        double ey = Math.max(0, Math.abs(tree.centerY[node] - y) - tree.extent[node]);
+        double ez = Math.max(0, Math.abs(tree.centerZ[node] - z) - tree.extent[node]);
+        double distance2 = distance * distance;
+        if (ex * ex + ey * ey + ez * ez > distance2)
+            return;
+
+        if (tree.childCount[node] > 0) {
+            for (int child = tree.firstChild[node]; child < tree.firstChild[node] + tree.childCount[node]; child++) {
+                addShortRange(child, x, y, z, distance, sum);
+            }
+            return;
+        }
+        double[] bodyX = tree.bodyX, bodyY = tree.bodyY, bodyZ = tree.bodyZ, bodyMass = tree.bodyMass;
+        // The cutoff spans TABLE_SIZE intervals of the table.
+        double tableScale = TABLE_SIZE / distance;
+        for (int k = tree.firstBody[node]; k < tree.firstBody[node] + tree.numberOfBodies[node]; k++) {
+            double dx = bodyX[k] - x, dy = bodyY[k] - y, dz = bodyZ[k] - z;
+            double r2 = dx * dx + dy * dy + dz * dz;
+            if (r2 == 0 || r2 >= distance2)
+                continue;
+            double r = Math.sqrt(r2);
+            double e2 = r2 + softening2;
+            double position = r * tableScale;
+            int index = (int) position;
+            double fraction = position - index;
+            double longRange = LONG_RANGE[index] + fraction * (LONG_RANGE[index + 1] - LONG_RANGE[index]);
+            double s = Physics.G_INTERNAL * bodyMass[k] * (1 / (e2 * Math.sqrt(e2)) - longRange / (r2 * r));
+            sum.ax += dx * s;
+            sum.ay += dy * s;
+            sum.az += dz * s;
+        }
+    }
+
+    /**
+     * Calculates the transform of the Green's function of the doubled mesh for cells of unit size.
+     * <p>
+     * Without the short range correction it is 1 / r, with the potential of a cube at the distance zero. With the
+     * correction it is the long range part erf(r / (2 * r_s)) / r, divided by the squared window of the cloud-in-cell
+     * weights. The distances wrap around the doubled mesh, so the function is even.
+     *
+     * @param parallelLoop The {@link ParallelLoop} used to split the work.
+     */
+    private void calculateGreen(ParallelLoop parallelLoop) {
+        int m = paddedSize;
+        Arrays.fill(imaginary, 0);
+        for (int x = 0; x < m; x++) {
+            int dx = Math.min(x, m - x);
+            for (int y = 0; y < m; y++) {
+                int dy = Math.min(y, m - y);
+                for (int z = 0; z < m; z++) {
+                    int dz = Math.min(z, m - z);
+                    double r = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                    double g;
+                    if (shortRange)
+                        g = r > 0 ? (1 - erfc(r / (2 * split))) / r : 1 / (split * Math.sqrt(Math.PI));
+                    else
+                        g = r > 0 ? 1 / r : CUBE_POTENTIAL;
+                    real[(x * m + y) * m + z] = g;
+                }
+            }
+        }
+        transform(false, m, parallelLoop);
+
+        for (int x = 0; x < m; x++) {
+            double wx = shortRange ? window(x) : 1;
+            for (int y = 0; y < m; y++) {
+                double wxy = wx * (shortRange ? window(y) : 1);
+                for (int z = 0; z < m; z++) {
+                    int c = (x * m + y) * m + z;
+                    double wxyz = wxy * (shortRange ? window(z) : 1);
+                    green[c] = real[c] / (wxyz * wxyz);
+                }
+            }
+        }
+        greenValid = true;
+    }
+
+    /**
+     * Returns the cloud-in-cell window of one frequency of the doubled mesh, sinc^2(pi * k / paddedSize).
+     *
+     * @param k The index of the frequency.
+     * @return The window.
+     */
+    private double window(int k) {
+        int frequency = Math.min(k, paddedSize - k);
+        if (frequency == 0)
+            return 1;
+        double argument = Math.PI * frequency / paddedSize;
+        double sinc = Math.sin(argument) / argument;
+        return sinc * sinc;
+    }
+
+    /**
+     * Returns the complementary error function of a non-negative argument, with a relative error below 1.2e-7.
+     *
+     * @param x The argument.
+     * @return erfc(x).
+     */
+    private static double erfc(double x) {
+        double t = 1 / (1 + 0.5 * x);
+        return t * Math.exp(-x * x - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+    }
+
+    /**
+     * Getter for meshSize.
+     *
+     * @return The number of cells per edge of the mesh.
+     */
+    public int getMeshSize() {
+        return meshSize;
+    }
+
+    /**
+     * Setter for meshSize.
+     * <p>
+     * The transforms use a mesh of twice the size, which takes 24 * (2 * meshSize)^3 bytes.
+     *
+     * @param meshSize The new number of cells per edge of the mesh.
+     * @throws IllegalArgumentException if meshSize is not a power of two of at least {@link #MIN_MESH_SIZE}.
+     */
+    public void setMeshSize(int meshSize) {
+        if (meshSize < MIN_MESH_SIZE || (meshSize & (meshSize - 1)) != 0)
+            throw new IllegalArgumentException("The mesh size has to be a power of two of at least " + MIN_MESH_SIZE
+                    + ".");
+        if (meshSize == this.meshSize)
+            return;
+        this.meshSize = meshSize;
+        paddedSize = 2 * meshSize;
+        transform = new FastFourierTransform(paddedSize);
+        int cells = paddedSize * paddedSize * paddedSize;
+        real = new double[cells];
+        imaginary = new double[cells];
+        green = new double[cells];
+        fieldX = new double[meshSize * meshSize * meshSize];
+        fieldY = new double[fieldX.length];
+        fieldZ = new double[fieldX.length];
+        greenValid = false;
+    }
+
+    /**
+     * Getter for shortRange.
+     *
+     * @return true if the pairs of close bodies are corrected. false for the mesh alone.
+     */
+    public boolean isShortRange() {
+        return shortRange;
+    }
+
+    /**
+     * Setter for shortRange.
+     *
+     * @param shortRange true to correct the pairs of close bodies. false for the mesh alone.
+     */
+    public void setShortRange(boolean shortRange) {
+        if (shortRange != this.shortRange)
+            greenValid = false;
+        this.shortRange = shortRange;
+    }
+
+    /**
+     * Getter for split.
+     *
+     * @return The length at which the potential is split into the long and short range part, in cells.
+     */
+    public double getSplit() {
+        return split;
+    }
+
+    /**
+     * Setter for split.
+     * <p>
+     * Larger values make the long range part smoother and the mesh force more accurate, but the cutoff of the close
+     * pairs grows with them.
+     *
+     * @param split The new length at which the potential is split into the long and short range part, in cells.
+     * @throws IllegalArgumentException if split is not positive.
+     */
+    public void setSplit(double split) {
+        if (!(split > 0) || Double.isInfinite(split))
+            throw new IllegalArgumentException("The split has to be positive.");
+        if (split != this.split)
+            greenValid = false;
+        this.split = split;
+    }
+
+    @Override
+    public double getSoftening() {
+        return softening;
+    }
+
+    /**
+     * Sets the Plummer softening length of the close pairs. The mesh is not softened, as it does not resolve distances
+     * below a few cells anyway.
+     *
+     * @param softening The softening length in AU, zero for Newton's law.
+     * @throws IllegalArgumentException If softening is negative or not finite.
+     */
+    @Override
+    public void setSoftening(double softening) {
+        if (!(softening >= 0) || Double.isInfinite(softening))
+            throw new IllegalArgumentException("The softening length has to be finite and not negative.");
+        this.softening = softening;
+        softening2 = softening * softening;
+    }
+}
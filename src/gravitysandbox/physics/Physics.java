@@ -1,8 +1,11 @@
 package gravitysandbox.physics;
 
+import gravitysandbox.util.BigDecimalMath;
+import gravitysandbox.util.DoubleDouble;
 import gravitysandbox.util.Vector3D;
 
 import java.math.BigDecimal;
+import java.math.MathContext;
 
 import static java.math.RoundingMode.HALF_UP;
 
@@ -10,7 +13,7 @@ import static java.math.RoundingMode.HALF_UP;
  * Contains constants and functions for calculating physical formulas.
  *
  * @author Christoph Bruckner
- * @version 1.2
+ * @version 1.8
  * @since 0.1
  */
 public class Physics {
@@ -32,6 +35,53 @@ public class Physics {
      */
     public static final BigDecimal AU = new BigDecimal(149_597_870_700L);
 
+    /**
+     * One day
+     * <p>
+     * The representation of one day (86,400 s) as {@link BigDecimal}.
+     */
+    public static final BigDecimal DAY = new BigDecimal(86_400);
+
+    /**
+     * One solar mass
+     * <p>
+     * The representation of the mass of the sun (1.9885 * 10^30 kg) as {@link BigDecimal}.<br/>
+     * Source for value: https://nssdc.gsfc.nasa.gov/planetary/factsheet/sunfact.html (accessed 2026-10-18)
+     */
+    public static final BigDecimal SOLAR_MASS = new BigDecimal("1.9885E30");
+
+    /**
+     * The length of one astronomical unit in metres as double.
+     */
+    static final double AU_IN_METRES = AU.doubleValue();
+
+    /**
+     * The length of one day in seconds as double.
+     */
+    private static final double DAY_IN_SECONDS = DAY.doubleValue();
+
+    /**
+     * The mass of one solar mass in kilograms as double.
+     */
+    private static final double SOLAR_MASS_IN_KILOGRAMS = SOLAR_MASS.doubleValue();
+
+    /**
+     * The universal gravitational constant in internal units.
+     * <p>
+     * The double precision engine works in astronomical units, days and solar masses, so that the values of
+     * a planetary system stay close to 1. Converted from {@link #G} this yields roughly 2.959 * 10^-4 AU^3 M_sun^-1 d^-2.
+     */
+    public static final double G_INTERNAL = G.doubleValue() * SOLAR_MASS_IN_KILOGRAMS * DAY_IN_SECONDS * DAY_IN_SECONDS
+            / (AU_IN_METRES * AU_IN_METRES * AU_IN_METRES);
+
+    /**
+     * The rounding error of {@link #G_INTERNAL}, so that G_INTERNAL + G_INTERNAL_LO gives the gravitational constant in
+     * internal units with double-double precision.
+     */
+    public static final double G_INTERNAL_LO = G.multiply(SOLAR_MASS).multiply(DAY.pow(2))
+            .divide(AU.pow(3), DoubleDouble.DECIMAL_PRECISION)
+            .subtract(new BigDecimal(G_INTERNAL)).doubleValue();
+
     /**
      * Calculates the gravitational acceleration for one Body.
      * <p>
@@ -46,13 +96,320 @@ public class Physics {
      */
     public static Vector3D calculateGravitationalForce(Body body1, Body body2) {
 
-        BigDecimal tmp, cubedDistance;
-        cubedDistance = ((body2.getPosition().subtract(body1.getPosition())).length()).pow(3);
-        if (!body1.equals(body2) && cubedDistance.compareTo(BigDecimal.ZERO)!=0) {
-            tmp = G.multiply(body1.getMass()).multiply(body2.getMass());
-            tmp = tmp.divide(cubedDistance, cubedDistance.scale() - tmp.scale(), HALF_UP);
-            return (body2.getPosition().subtract(body1.getPosition())).scale(tmp);
-        } else
+        Vector3D distance = body2.getPosition().subtract(body1.getPosition());
+        BigDecimal length = distance.length();
+        if (!body1.equals(body2) && length.compareTo(BigDecimal.ZERO) != 0)
+            return calculateGravitationalForce(distance, length, body1.getMass(), body2.getMass());
+        else
             return new Vector3D();
     }
-}
\ No newline at end of file
+
+    /**
+     * Calculates the gravitational force acting on a point mass caused by another point mass.
+     * <p>
+     * The distance vector and its length are passed in, so callers like the {@link OcTree} which already know them do
+     * not have to calculate them again or wrap the second point mass into a {@link Body}.
+     *
+     * @param distance The distance vector from the first to the second point mass. Must not be zero.
+     * @param length   The length of distance.
+     * @param mass1    The mass of the point mass on which the force is acting.
+     * @param mass2    The mass of the point mass causing the force.
+     * @return The gravitational force represented as a {@link Vector3D}.
+     */
+    public static Vector3D calculateGravitationalForce(Vector3D distance, BigDecimal length, BigDecimal mass1,
+                                                       BigDecimal mass2) {
+        BigDecimal cubedDistance = length.pow(3);
+        BigDecimal tmp = G.multiply(mass1).multiply(mass2);
+        tmp = tmp.divide(cubedDistance, cubedDistance.scale() - tmp.scale(), HALF_UP);
+        return distance.scale(tmp);
+    }
+
+    /**
+     * Calculates the gravitational force acting on a point mass caused by another point mass, rounding every
+     * intermediate result to the given {@link MathContext}.
+     * <p>
+     * In contrast to {@link #calculateGravitationalForce(Vector3D, BigDecimal, BigDecimal, BigDecimal)} the number of
+     * digits of the result does not depend on the scales of the arguments, so it does not grow from step to step.
+     *
+     * @param distance    The distance vector from the first to the second point mass. Must not be zero.
+     * @param length      The length of distance.
+     * @param mass1       The mass of the point mass on which the force is acting.
+     * @param mass2       The mass of the point mass causing the force.
+     * @param mathContext The precision and rounding mode of the calculation.
+     * @return The gravitational force represented as a {@link Vector3D}.
+     */
+    public static Vector3D calculateGravitationalForce(Vector3D distance, BigDecimal length, BigDecimal mass1,
+                                                       BigDecimal mass2, MathContext mathContext) {
+        BigDecimal cubedDistance = length.pow(3, mathContext);
+        BigDecimal tmp = G.multiply(mass1, mathContext).multiply(mass2, mathContext);
+        tmp = tmp.divide(cubedDistance, mathContext);
+        return distance.scale(tmp, mathContext);
+    }
+
+    /**
+     * Calculates the Plummer softened gravitational force acting on a point mass caused by another point mass,
+     * rounding every intermediate result to the given {@link MathContext}.
+     * <p>
+     * The cubed distance is replaced by (r^2 + eps^2)^(3/2), see
+     * {@link #accumulatePointMass(ForceAccumulator, double, double, double, double, double)}.
+     *
+     * @param distance    The distance vector from the first to the second point mass. Must not be zero.
+     * @param length      The length of distance.
+     * @param mass1       The mass of the point mass on which the force is acting.
+     * @param mass2       The mass of the point mass causing the force.
+     * @param softening   The softening length eps in metres.
+     * @param mathContext The precision and rounding mode of the calculation.
+     * @return The gravitational force represented as a {@link Vector3D}.
+     */
+    public static Vector3D calculateGravitationalForce(Vector3D distance, BigDecimal length, BigDecimal mass1,
+                                                       BigDecimal mass2, BigDecimal softening,
+                                                       MathContext mathContext) {
+        if (softening.signum() == 0)
+            return calculateGravitationalForce(distance, length, mass1, mass2, mathContext);
+        BigDecimal softened2 = length.multiply(length, mathContext).add(softening.multiply(softening, mathContext),
+                mathContext);
+        BigDecimal cubedDistance = softened2.multiply(BigDecimalMath.sqrt(softened2, mathContext), mathContext);
+        BigDecimal tmp = G.multiply(mass1, mathContext).multiply(mass2, mathContext);
+        tmp = tmp.divide(cubedDistance, mathContext);
+        return distance.scale(tmp, mathContext);
+    }
+
+    /**
+     * Adds the gravitational acceleration caused by a point mass to the given accumulator.
+     * <p>
+     * All values are in internal units. Nothing is added if the distance is zero.
+     *
+     * @param accumulator The {@link ForceAccumulator} of the targeted body.
+     * @param dx          The x coordinate of the distance vector from the targeted body to the point mass.
+     * @param dy          The y coordinate of the distance vector from the targeted body to the point mass.
+     * @param dz          The z coordinate of the distance vector from the targeted body to the point mass.
+     * @param mass        The mass of the point mass.
+     */
+    public static void accumulatePointMass(ForceAccumulator accumulator, double dx, double dy, double dz,
+                                           double mass) {
+        accumulatePointMass(accumulator, dx, dy, dz, mass, 0);
+    }
+
+    /**
+     * Adds the Plummer softened gravitational acceleration caused by a point mass to the given accumulator.
+     * <p>
+     * The cubed distance is replaced by (r^2 + eps^2)^(3/2), which limits the acceleration of close pairs to about
+     * G * m / eps^2. All values are in internal units. Nothing is added if the distance is zero.
+     *
+     * @param accumulator The {@link ForceAccumulator} of the targeted body.
+     * @param dx          The x coordinate of the distance vector from the targeted body to the point mass.
+     * @param dy          The y coordinate of the distance vector from the targeted body to the point mass.
+     * @param dz          The z coordinate of the distance vector from the targeted body to the point mass.
+     * @param mass        The mass of the point mass.
+     * @param softening2  The squared softening length eps^2, zero for Newton's law.
+     */
+    public static void accumulatePointMass(ForceAccumulator accumulator, double dx, double dy, double dz,
+                                           double mass, double softening2) {
+        double r2 = dx * dx + dy * dy + dz * dz;
+        if (r2 != 0) {
+            r2 += softening2;
+            double tmp = G_INTERNAL * mass / (r2 * Math.sqrt(r2));
+            accumulator.ax += dx * tmp;
+            accumulator.ay += dy * tmp;
+            accumulator.az += dz * tmp;
+            accumulator.interactions++;
+        }
+    }
+
+    /**
+     * Adds the gravitational acceleration caused by the traceless quadrupole tensor Q of a mass distribution to the
+     * given accumulator.
+     * <p>
+     * With d pointing from the targeted body to the center of mass, the acceleration is
+     * G * (5/2 * (d^T Q d) * d / |d|^7 - Q d / |d|^5). All values are in internal units.
+     *
+     * @param accumulator The {@link ForceAccumulator} of the targeted body.
+     * @param dx          The x coordinate of the distance vector from the targeted body to the center of mass.
+     * @param dy          The y coordinate of the distance vector from the targeted body to the center of mass.
+     * @param dz          The z coordinate of the distance vector from the targeted body to the center of mass.
+     * @param xx          The xx component of the tensor.
+     * @param xy          The xy component of the tensor.
+     * @param xz          The xz component of the tensor.
+     * @param yy          The yy component of the tensor.
+     * @param yz          The yz component of the tensor.
+     * @param zz          The zz component of the tensor.
+     */
+    public static void accumulateQuadrupole(ForceAccumulator accumulator, double dx, double dy, double dz,
+                                            double xx, double xy, double xz, double yy, double yz, double zz) {
+        double qx = xx * dx + xy * dy + xz * dz;
+        double qy = xy * dx + yy * dy + yz * dz;
+        double qz = xz * dx + yz * dy + zz * dz;
+        double r2 = dx * dx + dy * dy + dz * dz;
+        double inverse5 = G_INTERNAL / (r2 * r2 * Math.sqrt(r2));
+        double radial = 2.5 * (dx * qx + dy * qy + dz * qz) / r2;
+        accumulator.ax += (radial * dx - qx) * inverse5;
+        accumulator.ay += (radial * dy - qy) * inverse5;
+        accumulator.az += (radial * dz - qz) * inverse5;
+    }
+
+    /**
+     * Converts a length in metres to astronomical units.
+     *
+     * @param metres The length in metres.
+     * @return The length in astronomical units.
+     */
+    public static double toInternalLength(BigDecimal metres) {
+        return metres.doubleValue() / AU_IN_METRES;
+    }
+
+    /**
+     * Converts a length in astronomical units to metres.
+     *
+     * @param length The length in astronomical units.
+     * @return The length in metres.
+     */
+    public static BigDecimal toMetres(double length) {
+        return BigDecimal.valueOf(length * AU_IN_METRES);
+    }
+
+    /**
+     * Converts a length in metres to astronomical units with double-double precision.
+     *
+     * @param metres The length in metres.
+     * @return The length in astronomical units.
+     */
+    public static DoubleDouble toExtendedLength(BigDecimal metres) {
+        return DoubleDouble.valueOf(metres.divide(AU, DoubleDouble.DECIMAL_PRECISION));
+    }
+
+    /**
+     * Converts a length in astronomical units given as double-double to metres.
+     *
+     * @param length   The high part of the length in astronomical units.
+     * @param lengthLo The low part of the length. If zero, the result equals {@link #toMetres(double)}.
+     * @return The length in metres.
+     */
+    public static BigDecimal toMetres(double length, double lengthLo) {
+        if (lengthLo == 0)
+            return toMetres(length);
+        return new BigDecimal(length).add(new BigDecimal(lengthLo))
+                .multiply(AU, DoubleDouble.DECIMAL_PRECISION);
+    }
+
+    /**
+     * Converts a velocity in metres per second to astronomical units per day.
+     *
+     * @param metresPerSecond The velocity in metres per second.
+     * @return The velocity in astronomical units per day.
+     */
+    public static double toInternalVelocity(BigDecimal metresPerSecond) {
+        return metresPerSecond.doubleValue() * DAY_IN_SECONDS / AU_IN_METRES;
+    }
+
+    /**
+     * Converts a velocity in astronomical units per day to metres per second.
+     *
+     * @param velocity The velocity in astronomical units per day.
+     * @return The velocity in metres per second.
+     */
+    public static BigDecimal toMetresPerSecond(double velocity) {
+        return BigDecimal.valueOf(velocity * AU_IN_METRES / DAY_IN_SECONDS);
+    }
+
+    /**
+     * Converts a velocity in metres per second to astronomical units per day with double-double precision.
+     *
+     * @param metresPerSecond The velocity in metres per second.
+     * @return The velocity in astronomical units per day.
+     */
+    public static DoubleDouble toExtendedVelocity(BigDecimal metresPerSecond) {
+        return DoubleDouble.valueOf(metresPerSecond.multiply(DAY).divide(AU, DoubleDouble.DECIMAL_PRECISION));
+    }
+
+    /**
+     * Converts a velocity in astronomical units per day given as double-double to metres per second.
+     *
+     * @param velocity   The high part of the velocity in astronomical units per day.
+     * @param velocityLo The low part of the velocity. If zero, the result equals {@link #toMetresPerSecond(double)}.
+     * @return The velocity in metres per second.
+     */
+    public static BigDecimal toMetresPerSecond(double velocity, double velocityLo) {
+        if (velocityLo == 0)
+            return toMetresPerSecond(velocity);
+        return new BigDecimal(velocity).add(new BigDecimal(velocityLo)).multiply(AU)
+                .divide(DAY, DoubleDouble.DECIMAL_PRECISION);
+    }
+
+    /**
+     * Converts an acceleration in metres per second squared to astronomical units per day squared.
+     *
+     * @param metresPerSecondSquared The acceleration in metres per second squared.
+     * @return The acceleration in astronomical units per day squared.
+     */
+    public static double toInternalAcceleration(BigDecimal metresPerSecondSquared) {
+        return metresPerSecondSquared.doubleValue() * DAY_IN_SECONDS * DAY_IN_SECONDS / AU_IN_METRES;
+    }
+
+    /**
+     * Converts an acceleration in astronomical units per day squared to metres per second squared.
+     *
+     * @param acceleration The acceleration in astronomical units per day squared.
+     * @return The acceleration in metres per second squared.
+     */
+    public static BigDecimal toMetresPerSecondSquared(double acceleration) {
+        return BigDecimal.valueOf(acceleration * AU_IN_METRES / (DAY_IN_SECONDS * DAY_IN_SECONDS));
+    }
+
+    /**
+     * Converts an acceleration in metres per second squared to astronomical units per day squared with double-double
+     * precision.
+     *
+     * @param metresPerSecondSquared The acceleration in metres per second squared.
+     * @return The acceleration in astronomical units per day squared.
+     */
+    public static DoubleDouble toExtendedAcceleration(BigDecimal metresPerSecondSquared) {
+        return DoubleDouble.valueOf(metresPerSecondSquared.multiply(DAY.pow(2))
+                .divide(AU, DoubleDouble.DECIMAL_PRECISION));
+    }
+
+    /**
+     * Converts an acceleration in astronomical units per day squared given as double-double to metres per second
+     * squared.
+     *
+     * @param acceleration   The high part of the acceleration in astronomical units per day squared.
+     * @param accelerationLo The low part of the acceleration. If zero, the result equals
+     *                       {@link #toMetresPerSecondSquared(double)}.
+     * @return The acceleration in metres per second squared.
+     */
+    public static BigDecimal toMetresPerSecondSquared(double acceleration, double accelerationLo) {
+        if (accelerationLo == 0)
+            return toMetresPerSecondSquared(acceleration);
+        return new BigDecimal(acceleration).add(new BigDecimal(accelerationLo)).multiply(AU)
+                .divide(DAY.pow(2), DoubleDouble.DECIMAL_PRECISION);
+    }
+
+    /**
+     * Converts a mass in kilograms to solar masses.
+     *
+     * @param kilograms The mass in kilograms.
+     * @return The mass in solar masses.
+     */
+    public static double toInternalMass(BigDecimal kilograms) {
+        return kilograms.doubleValue() / SOLAR_MASS_IN_KILOGRAMS;
+    }
+
+    /**
+     * Converts a mass in kilograms to solar masses with double-double precision.
+     *
+     * @param kilograms The mass in kilograms.
+     * @return The mass in solar masses.
+     */
+    public static DoubleDouble toExtendedMass(BigDecimal kilograms) {
+        return DoubleDouble.valueOf(kilograms.divide(SOLAR_MASS, DoubleDouble.DECIMAL_PRECISION));
+    }
+
+    /**
+     * Converts a duration in seconds to days.
+     *
+     * @param seconds The duration in seconds.
+     * @return The duration in days.
+     */
+    public static double toInternalTime(BigDecimal seconds) {
+        return seconds.doubleValue() / DAY_IN_SECONDS;
+    }
+}
@@ -0,0 +1,1025 @@
+package gravitysandbox.physics;
+
+import gravitysandbox.util.Vector3D;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The simulation engine which advances the bodies of a {@link BodyContainer}.
+ * <p>
+ * The engine owns the step loop, the time step and the {@link ForceSolver}, which uses either direct summation or the
+ * {@link BarnesHutTree}, whichever is faster for the current number of bodies, or the {@link FastMultipoleSolver} or
+ * the {@link ParticleMeshSolver} if selected. It can either be stepped directly or run on its own thread, independent
+ * of any window. Readers get consistent positions through {@link #getSnapshot()}.
+ * <p>
+ * The force calculation and the following update of velocities and positions are split over several threads by a
+ * {@link ParallelLoop}, sharing the tree read-only.
+ * <p>
+ * The {@link Precision} of the arithmetic is selected per run. In double-double precision the step loop uses the low
+ * columns of the store as well. With {@link BigDecimal} the bodies are advanced with their own values and the
+ * {@link OcTree} instead, where every operation is rounded to one {@link MathContext}, so the costs of a step stay the
+ * same however long the simulation runs. With fixed-point positions the step loop is exact apart from the rounding of
+ * forces and displacements, and independent of the number of threads.
+ * <p>
+ * In double precision the velocities and positions are advanced by an exchangeable {@link Integrator}. The other
+ * precisions use the Euler method.
+ * <p>
+ * A Plummer softening length keeps the forces of close pairs finite in every precision.
+ *
+ * @version 1.11
+ * @since 1.1
+ */
+public class Simulation {
+
+    /**
+     * The arithmetic used by the step loop.
+     */
+    public enum Precision {
+
+        /**
+         * Double precision with the {@link ForceSolver} choosing between the tree and direct summation.
+         */
+        DOUBLE,
+
+        /**
+         * Double-double precision of about 106 bits with {@link DoubleDoubleSummation}.
+         */
+        DOUBLE_DOUBLE,
+
+        /**
+         * {@link BigDecimal} values rounded to the {@link MathContext} of the simulation with the {@link OcTree}.
+         */
+        BIG_DECIMAL,
+
+        /**
+         * Positions as 128 bit fixed-point numbers with double precision velocities and forces.
+         * <p>
+         * The forces are always calculated by the tree, whose results do not depend on the number of threads, instead
+         * of choosing a method by measured times. So a run gives the same positions on every machine with the same
+         * settings.
+         */
+        FIXED_POINT
+    }
+
+    /**
+     * The minimal time between two published snapshots in nanoseconds.
+     */
+    private static final long SNAPSHOT_INTERVAL = 1_000_000_000L / 60;
+
+    /**
+     * The {@link BodyContainer} holding the simulated bodies.
+     */
+    private final BodyContainer bodyContainer;
+
+    /**
+     * The {@link BodyStore} of bodyContainer. Every access to it is synchronized on the store itself.
+     */
+    private final BodyStore store;
+
+    /**
+     * The OcTree used by the Barnes-Hut-Algorithm.
+     */
+    private final BarnesHutTree ocTree;
+
+    /**
+     * The {@link ForceSolver} choosing between ocTree and direct summation.
+     */
+    private final AdaptiveSolver solver;
+
+    /**
+     * The {@link ParallelLoop} splitting the work on the bodies over several threads.
+     */
+    private final ParallelLoop parallelLoop;
+
+    /**
+     * The loop body updating the velocities and positions in double-double precision.
+     */
+    private final ParallelLoop.Range extendedIntegrationTask = this::integrateExtended;
+
+    /**
+     * The loop body updating the velocities and fixed-point positions.
+     */
+    private final ParallelLoop.Range fixedPointIntegrationTask = this::integrateFixedPoint;
+
+    /**
+     * The {@link ForceSolver} of double-double precision.
+     */
+    private final DoubleDoubleSummation extendedSolver;
+
+    /**
+     * The OcTree of {@link Precision#BIG_DECIMAL}.
+     */
+    private final OcTree exactTree;
+
+    /**
+     * The arithmetic used by the step loop.
+     */
+    private volatile Precision precision;
+
+    /**
+     * The {@link Integrator} of {@link Precision#DOUBLE}.
+     */
+    private volatile Integrator integrator;
+
+    /**
+     * The precision and rounding mode of {@link Precision#BIG_DECIMAL}.
+     */
+    private volatile MathContext mathContext;
+
+    /**
+     * The accelerations calculated by the current step with {@link BigDecimal}.
+     */
+    private Vector3D[] exactAccelerations = new Vector3D[0];
+
+    /**
+     * The loop body calculating the accelerations with {@link BigDecimal}.
+     */
+    private final ParallelLoop.Range exactForceTask = this::calculateExactAccelerations;
+
+    /**
+     * The time step of the current step in days.
+     */
+    private double stepTimeStep;
+
+    /**
+     * The time step in days.
+     */
+    private volatile double timeStep;
+
+    /**
+     * The maximum number of steps per second. If zero, the simulation runs as fast as possible.
+     */
+    private volatile double stepRate;
+
+    /**
+     * The number of steps performed so far.
+     */
+    private long stepCount;
+
+    /**
+     * The simulated time in days.
+     */
+    private double time;
+
+    /**
+     * The most recently published snapshot.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * The thread running the step loop, if started.
+     */
+    private Thread thread;
+
+    /**
+     * A flag showing whether the step loop shall keep running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Creates a new simulation for the bodies of the given container with a time step of one day in double precision,
+     * walking the tree once per group of bodies.
+     *
+     * @param bodyContainer The {@link BodyContainer} holding the bodies.
+     */
+    public Simulation(BodyContainer bodyContainer) {
+        this.bodyContainer = bodyContainer;
+        store = bodyContainer.getStore();
+        ocTree = new BarnesHutTree();
+        ocTree.setGroupWalk(true);
+        solver = new AdaptiveSolver(ocTree);
+        extendedSolver = new DoubleDoubleSummation();
+        exactTree = new OcTree();
+        precision = Precision.DOUBLE;
+        integrator = new EulerIntegrator();
+        mathContext = MathContext.DECIMAL128;
+        parallelLoop = new ParallelLoop();
+        timeStep = Physics.toInternalTime(new BigDecimal("86400"));
+        publishSnapshot();
+    }
+
+    /**
+     * Advances all bodies by one time step.
+     * <p>
+     * The loop bodies are created once and the tree reuses its arrays, so with a parallelism of 1 a step does not
+     * create any objects once the arrays are large enough. This can be checked with
+     * {@link gravitysandbox.util.AllocationMeter}.
+     */
+    public void step() {
+        synchronized (store) {
+            stepTimeStep = timeStep;
+
+            switch (precision) {
+                case DOUBLE_DOUBLE:
+                    store.clearAccelerations();
+                    extendedSolver.accumulateAccelerations(store, parallelLoop);
+                    parallelLoop.forRange(0, store.size(), extendedIntegrationTask);
+                    store.advanceGeneration();
+                    break;
+                case BIG_DECIMAL:
+                    stepExact(mathContext);
+                    break;
+                case FIXED_POINT:
+                    if (!store.isFixedPointCurrent())
+                        store.updateFixedPoint();
+                    store.clearAccelerations();
+                    ocTree.accumulateAccelerations(store, parallelLoop);
+                    parallelLoop.forRange(0, store.size(), fixedPointIntegrationTask);
+                    store.advanceGeneration();
+                    break;
+                default:
+                    integrator.step(store, solver, parallelLoop, stepTimeStep);
+                    store.advanceGeneration();
+            }
+
+            stepCount++;
+            time += stepTimeStep;
+        }
+    }
+
+    /**
+     * Updates the velocities and positions of the bodies within the given range of indices in double-double precision.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void integrateExtended(int from, int to) {
+        store.kickExtended(from, to, stepTimeStep);
+        store.driftExtended(from, to, stepTimeStep);
+    }
+
+    /**
+     * Updates the velocities and fixed-point positions of the bodies within the given range of indices.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void integrateFixedPoint(int from, int to) {
+        store.kick(from, to, stepTimeStep);
+        store.driftFixedPoint(from, to, stepTimeStep);
+    }
+
+    /**
+     * Advances all bodies by one time step with {@link BigDecimal}.
+     * <p>
+     * The {@link BigDecimal} values of the bodies are updated in place, so they keep their precision from step to step
+     * while the store receives the rounded values for snapshots and the double precision mode.
+     *
+     * @param mc The precision and rounding mode of all calculations.
+     */
+    private void stepExact(MathContext mc) {
+        int n = bodyContainer.size();
+        if (n == 0)
+            return;
+
+        BigDecimal minX = null, minY = null, minZ = null, maxX = null, maxY = null, maxZ = null;
+        for (Body body : bodyContainer) {
+            Vector3D position = body.getPosition();
+            if (minX == null) {
+                minX = maxX = position.getX();
+                minY = maxY = position.getY();
+                minZ = maxZ = position.getZ();
+            } else {
+                minX = minX.min(position.getX());
+                minY = minY.min(position.getY());
+                minZ = minZ.min(position.getZ());
+                maxX = maxX.max(position.getX());
+                maxY = maxY.max(position.getY());
+                maxZ = maxZ.max(position.getZ());
+            }
+        }
+
+        exactTree.setMathContext(mc);
+        exactTree.setTheta(new BigDecimal(ocTree.getTheta(), mc));
+        exactTree.setSoftening(new BigDecimal(solver.getSoftening()).multiply(Physics.AU, mc));
+        exactTree.setQuadrupole(ocTree.isQuadrupole());
+        exactTree.setLeafCapacity(ocTree.getLeafCapacity());
+        exactTree.buildTree(bodyContainer, new Vector3D(minX, minY, minZ), new Vector3D(maxX, maxY, maxZ));
+        exactTree.calculateMassDistribution();
+
+        if (exactAccelerations.length < n)
+            exactAccelerations = new Vector3D[n];
+        parallelLoop.forRange(0, n, exactForceTask);
+
+        BigDecimal dt = Physics.DAY.multiply(new BigDecimal(stepTimeStep, mc), mc);
+        for (int i = 0; i < n; i++) {
+            Body body = bodyContainer.get(i);
+            Vector3D acceleration = exactAccelerations[i];
+            Vector3D velocity = body.getVelocity().add(acceleration.scale(dt, mc), mc);
+            Vector3D position = body.getPosition().add(velocity.scale(dt, mc), mc);
+            body.writeState(position, velocity, acceleration);
+            exactAccelerations[i] = null;
+        }
+    }
+
+    /**
+     * Calculates the accelerations of the bodies within the given range of indices with {@link BigDecimal}.
+     * <p>
+     * The tree sums up the accelerations directly instead of dividing forces by the masses, so massless test particles
+     * are accelerated as well.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void calculateExactAccelerations(int from, int to) {
+        for (int i = from; i < to; i++) {
+            exactAccelerations[i] = exactTree.calculateGravitationalAcceleration(bodyContainer.get(i));
+        }
+    }
+
+    /**
+     * Advances all bodies by the given number of time steps on the calling thread.
+     *
+     * @param steps The number of steps.
+     */
+    public void step(int steps) {
+        for (int i = 0; i < steps; i++) {
+            step();
+        }
+        publishSnapshot();
+    }
+
+    /**
+     * Starts the step loop on its own thread. Does nothing if it is already running.
+     */
+    public synchronized void start() {
+        if (running)
+            return;
+        running = true;
+        thread = new Thread(this::runLoop, "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the step loop and waits until the current step is finished.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * Getter for the running flag.
+     *
+     * @return true if the step loop is running. false otherwise
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Copies the current positions into a new snapshot.
+     * <p>
+     * Has to be called after bodies were added, removed or edited while the step loop was stopped.
+     */
+    public void publishSnapshot() {
+        synchronized (store) {
+            snapshot = new Snapshot(store, stepCount, time);
+        }
+    }
+
+    /**
+     * Returns the most recently published snapshot.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Records the current positions in every {@link Body} and notifies their observers.
+     */
+    public void updateBodies() {
+        synchronized (store) {
+            bodyContainer.updateBodies();
+        }
+    }
+
+    /**
+     * Getter for timeStep.
+     *
+     * @return The time step in days.
+     */
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    /**
+     * Setter for timeStep.
+     *
+     * @param timeStep The new time step in days.
+     */
+    public void setTimeStep(double timeStep) {
+        this.timeStep = timeStep;
+    }
+
+    /**
+     * Getter for stepRate.
+     *
+     * @return The maximum number of steps per second, or zero if unlimited.
+     */
+    public double getStepRate() {
+        return stepRate;
+    }
+
+    /**
+     * Setter for stepRate.
+     *
+     * @param stepRate The maximum number of steps per second, or zero to run as fast as possible.
+     */
+    public void setStepRate(double stepRate) {
+        this.stepRate = stepRate;
+    }
+
+    /**
+     * Getter for the number of threads used by the step loop.
+     *
+     * @return The number of threads.
+     */
+    public int getParallelism() {
+        return parallelLoop.getParallelism();
+    }
+
+    /**
+     * Setter for the number of threads used by the step loop.
+     *
+     * @param parallelism The new number of threads.
+     * @throws IllegalArgumentException if parallelism is less than 1.
+     */
+    public void setParallelism(int parallelism) {
+        synchronized (store) {
+            parallelLoop.setParallelism(parallelism);
+        }
+    }
+
+    /**
+     * Getter for the number of bodies handled by one task of the step loop.
+     *
+     * @return The chunk size.
+     */
+    public int getChunkSize() {
+        return parallelLoop.getChunkSize();
+    }
+
+    /**
+     * Setter for the number of bodies handled by one task of the step loop.
+     *
+     * @param chunkSize The new chunk size.
+     * @throws IllegalArgumentException if chunkSize is less than 1.
+     */
+    public void setChunkSize(int chunkSize) {
+        parallelLoop.setChunkSize(chunkSize);
+    }
+
+    /**
+     * Getter for the methods the force calculation is restricted to.
+     *
+     * @return The mode of the solver.
+     */
+    public AdaptiveSolver.Mode getSolverMode() {
+        return solver.getMode();
+    }
+
+    /**
+     * Setter for the methods the force calculation is restricted to.
+     *
+     * @param mode The new mode of the solver.
+     */
+    public void setSolverMode(AdaptiveSolver.Mode mode) {
+        solver.setMode(mode);
+    }
+
+    /**
+     * Returns the number of bodies above which the tree is expected to be faster than direct summation.
+     *
+     * @return The crossover measured so far.
+     */
+    public int getCrossover() {
+        synchronized (store) {
+            return solver.getCrossover();
+        }
+    }
+
+    /**
+     * Getter for precision.
+     *
+     * @return The arithmetic used by the step loop.
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Setter for precision. Takes effect with the next step.
+     *
+     * @param precision The arithmetic to be used by the step loop.
+     */
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Getter for integrator.
+     *
+     * @return The {@link Integrator} of {@link Precision#DOUBLE}.
+     */
+    public Integrator getIntegrator() {
+        return integrator;
+    }
+
+    /**
+     * Setter for integrator. Takes effect with the next step.
+     * <p>
+     * The default {@link EulerIntegrator} is only first order accurate. The {@link LeapfrogIntegrator} has the same
+     * costs per step and is second order accurate, the {@link YoshidaIntegrator} costs three force calculations per
+     * step and is fourth order accurate, so both allow much larger time steps at the same accuracy.
+     *
+     * @param integrator The new {@link Integrator} of {@link Precision#DOUBLE}.
+     */
+    public void setIntegrator(Integrator integrator) {
+        synchronized (store) {
+            this.integrator = integrator;
+        }
+    }
+
+    /**
+     * Getter for mathContext.
+     *
+     * @return The precision and rounding mode of {@link Precision#BIG_DECIMAL}.
+     */
+    public MathContext getMathContext() {
+        return mathContext;
+    }
+
+    /**
+     * Setter for mathContext. Used with {@link Precision#BIG_DECIMAL}.
+     * <p>
+     * The default {@link MathContext#DECIMAL128} gives 34 significant digits, about twice as many as double precision.
+     *
+     * @param mathContext The new precision and rounding mode of {@link Precision#BIG_DECIMAL}.
+     * @throws IllegalArgumentException if the precision of mathContext is unlimited.
+     */
+    public void setMathContext(MathContext mathContext) {
+        if (mathContext.getPrecision() == 0)
+            throw new IllegalArgumentException("The precision has to be limited.");
+        this.mathContext = mathContext;
+    }
+
+    /**
+     * Getter for the opening angle of the tree.
+     *
+     * @return The opening angle.
+     */
+    public double getTheta() {
+        return ocTree.getTheta();
+    }
+
+    /**
+     * Setter for the opening angle of the tree.
+     *
+     * @param theta The new opening angle.
+     * @throws IllegalArgumentException if theta is not positive.
+     */
+    public void setTheta(double theta) {
+        synchronized (store) {
+            ocTree.setTheta(theta);
+        }
+    }
+
+    /**
+     * Getter for the Plummer softening length.
+     *
+     * @return The softening length in AU.
+     */
+    public double getSoftening() {
+        return solver.getSoftening();
+    }
+
+    /**
+     * Setter for the Plummer softening length of all precisions.
+     *
+     * @param softening The softening length in AU, zero for Newton's law.
+     * @throws IllegalArgumentException if softening is negative or not finite.
+     */
+    public void setSoftening(double softening) {
+        synchronized (store) {
+            solver.setSoftening(softening);
+            extendedSolver.setSoftening(softening);
+            store.invalidateAccelerations();
+        }
+    }
+
+    /**
+     * Getter for the quadrupole flag of the tree.
+     *
+     * @return true if the nodes carry quadrupole moments. false otherwise.
+     */
+    public boolean isQuadrupole() {
+        return ocTree.isQuadrupole();
+    }
+
+    /**
+     * Setter for the quadrupole flag of the tree.
+     *
+     * @param quadrupole true to use quadrupole moments. false to use only the mass and center of mass of the nodes.
+     */
+    public void setQuadrupole(boolean quadrupole) {
+        synchronized (store) {
+            ocTree.setQuadrupole(quadrupole);
+        }
+    }
+
+    /**
+     * Getter for the group walk flag of the tree.
+     *
+     * @return true if the tree is walked once per group of bodies. false if it is walked once per body.
+     */
+    public boolean isGroupWalk() {
+        return ocTree.isGroupWalk();
+    }
+
+    /**
+     * Setter for the group walk flag of the tree.
+     *
+     * @param groupWalk true to walk the tree once per group of bodies. false to walk it once per body.
+     */
+    public void setGroupWalk(boolean groupWalk) {
+        synchronized (store) {
+            ocTree.setGroupWalk(groupWalk);
+        }
+    }
+
+    /**
+     * Getter for the interaction list reuse flag of the tree.
+     *
+     * @return true if the group walk reuses the interaction lists across steps. false if it collects them every step.
+     */
+    public boolean isReuseLists() {
+        return ocTree.isReuseLists();
+    }
+
+    /**
+     * Setter for the interaction list reuse flag of the tree.
+     *
+     * @param reuseLists true to reuse the interaction lists of the group walk across steps. false to collect them every
+     *                   step.
+     */
+    public void setReuseLists(boolean reuseLists) {
+        synchronized (store) {
+            ocTree.setReuseLists(reuseLists);
+        }
+    }
+
+    /**
+     * Getter for the margin of the reused interaction lists.
+     *
+     * @return The fraction by which the opening radius is enlarged when collecting a reused interaction list.
+     */
+    public double getReuseMargin() {
+        return ocTree.getReuseMargin();
+    }
+
+    /**
+     * Setter for the margin of the reused interaction lists.
+     *
+     * @param reuseMargin The new fraction by which the opening radius is enlarged when collecting a reused interaction
+     *                    list.
+     * @throws IllegalArgumentException if reuseMargin is negative or not finite.
+     */
+    public void setReuseMargin(double reuseMargin) {
+        synchronized (store) {
+            ocTree.setReuseMargin(reuseMargin);
+        }
+    }
+
+    /**
+     * Getter for the cost zone flag of the tree.
+     *
+     * @return true if the walks are split into cost zones of equal predicted work. false for chunks of equal size.
+     */
+    public boolean isCostZones() {
+        return ocTree.isCostZones();
+    }
+
+    /**
+     * Setter for the cost zone flag of the tree.
+     *
+     * @param costZones true to split the walks into cost zones of equal predicted work. false for chunks of equal
+     *                  size.
+     */
+    public void setCostZones(boolean costZones) {
+        synchronized (store) {
+            ocTree.setCostZones(costZones);
+        }
+    }
+
+    /**
+     * Getter for the mixed precision flag of the tree.
+     *
+     * @return true if the group walk evaluates the approximated nodes in single precision. false otherwise.
+     */
+    public boolean isMixedPrecision() {
+        return ocTree.isMixedPrecision();
+    }
+
+    /**
+     * Setter for the mixed precision flag of the tree.
+     *
+     * @param mixedPrecision true to evaluate the approximated nodes of the group walk in single precision. false to
+     *                       evaluate everything in double precision.
+     * @see #measureMixedPrecision()
+     */
+    public void setMixedPrecision(boolean mixedPrecision) {
+        synchronized (store) {
+            ocTree.setMixedPrecision(mixedPrecision);
+        }
+    }
+
+    /**
+     * Measures the error of the mixed precision group walk against the double precision group walk for the current
+     * positions.
+     * <p>
+     * Both walks use the same tree, so the report only contains the rounding errors of single precision and not the
+     * error of the approximation itself. The accelerations of the store are overwritten.
+     *
+     * @return The error of the mixed precision accelerations.
+     */
+    public AccuracyReport measureMixedPrecision() {
+        synchronized (store) {
+            int n = store.size();
+            boolean mixedPrecision = ocTree.isMixedPrecision();
+            boolean groupWalk = ocTree.isGroupWalk();
+            ocTree.setGroupWalk(true);
+
+            ocTree.setMixedPrecision(false);
+            store.clearAccelerations();
+            ocTree.accumulateAccelerations(store, parallelLoop);
+            double[] referenceX = Arrays.copyOf(store.ax, n);
+            double[] referenceY = Arrays.copyOf(store.ay, n);
+            double[] referenceZ = Arrays.copyOf(store.az, n);
+
+            ocTree.setMixedPrecision(true);
+            store.clearAccelerations();
+            ocTree.accumulateAccelerations(store, parallelLoop);
+            AccuracyReport report = AccuracyReport.compare(referenceX, referenceY, referenceZ, store);
+
+            ocTree.setMixedPrecision(mixedPrecision);
+            ocTree.setGroupWalk(groupWalk);
+            return report;
+        }
+    }
+
+    /**
+     * Getter for the order of the expansions of the fast multipole method.
+     *
+     * @return The order of the expansions.
+     */
+    public int getMultipoleOrder() {
+        return solver.getMultipoleSolver().getOrder();
+    }
+
+    /**
+     * Setter for the order of the expansions of the fast multipole method, which is used in
+     * {@link AdaptiveSolver.Mode#MULTIPOLE}.
+     *
+     * @param order The new order of the expansions.
+     * @throws IllegalArgumentException if order is less than 1 or greater than {@link FastMultipoleSolver#MAX_ORDER}.
+     * @see #measureMultipole()
+     */
+    public void setMultipoleOrder(int order) {
+        synchronized (store) {
+            solver.getMultipoleSolver().setOrder(order);
+        }
+    }
+
+    /**
+     * Getter for the opening angle of the fast multipole method.
+     *
+     * @return The ratio of the sum of the radii of two nodes to their distance below which their interaction is
+     * approximated.
+     */
+    public double getMultipoleTheta() {
+        return solver.getMultipoleSolver().getTheta();
+    }
+
+    /**
+     * Setter for the opening angle of the fast multipole method.
+     *
+     * @param theta The new ratio of the sum of the radii of two nodes to their distance below which their interaction
+     *              is approximated.
+     * @throws IllegalArgumentException if theta is not between 0 and 1.
+     */
+    public void setMultipoleTheta(double theta) {
+        synchronized (store) {
+            solver.getMultipoleSolver().setTheta(theta);
+        }
+    }
+
+    /**
+     * Measures the error of the fast multipole method against direct summation for the current positions.
+     * <p>
+     * Both use the current softening length. The accelerations of the store are overwritten.
+     *
+     * @return The error of the fast multipole accelerations.
+     */
+    public AccuracyReport measureMultipole() {
+        return measure(solver.getMultipoleSolver());
+    }
+
+    /**
+     * Getter for the number of cells per edge of the mesh of the particle-mesh method.
+     *
+     * @return The mesh size.
+     */
+    public int getMeshSize() {
+        return solver.getParticleMeshSolver().getMeshSize();
+    }
+
+    /**
+     * Setter for the number of cells per edge of the mesh of the particle-mesh method, which is used in
+     * {@link AdaptiveSolver.Mode#PARTICLE_MESH}.
+     *
+     * @param meshSize The new mesh size.
+     * @throws IllegalArgumentException if meshSize is not a power of two of at least
+     *                                  {@link ParticleMeshSolver#MIN_MESH_SIZE}.
+     * @see #measureParticleMesh()
+     */
+    public void setMeshSize(int meshSize) {
+        synchronized (store) {
+            solver.getParticleMeshSolver().setMeshSize(meshSize);
+        }
+    }
+
+    /**
+     * Returns whether the particle-mesh method corrects the forces between close bodies.
+     *
+     * @return true for P3M. false for the mesh alone.
+     */
+    public boolean isShortRangeCorrection() {
+        return solver.getParticleMeshSolver().isShortRange();
+    }
+
+    /**
+     * Sets whether the particle-mesh method corrects the forces between close bodies by summing them up directly.
+     *
+     * @param shortRangeCorrection true for P3M. false for the mesh alone.
+     */
+    public void setShortRangeCorrection(boolean shortRangeCorrection) {
+        synchronized (store) {
+            solver.getParticleMeshSolver().setShortRange(shortRangeCorrection);
+        }
+    }
+
+    /**
+     * Measures the error of the particle-mesh method against direct summation for the current positions.
+     * <p>
+     * Both use the current softening length. The accelerations of the store are overwritten.
+     *
+     * @return The error of the particle-mesh accelerations.
+     */
+    public AccuracyReport measureParticleMesh() {
+        return measure(solver.getParticleMeshSolver());
+    }
+
+    /**
+     * Measures the error of the given {@link ForceSolver} against direct summation for the current positions.
+     *
+     * @param method The measured solver.
+     * @return The error of its accelerations.
+     */
+    private AccuracyReport measure(ForceSolver method) {
+        synchronized (store) {
+            int n = store.size();
+            DirectSummation directSummation = new DirectSummation();
+            directSummation.setSoftening(solver.getSoftening());
+            store.clearAccelerations();
+            directSummation.accumulateAccelerations(store, parallelLoop);
+            double[] referenceX = Arrays.copyOf(store.ax, n);
+            double[] referenceY = Arrays.copyOf(store.ay, n);
+            double[] referenceZ = Arrays.copyOf(store.az, n);
+
+            store.clearAccelerations();
+            method.accumulateAccelerations(store, parallelLoop);
+            return AccuracyReport.compare(referenceX, referenceY, referenceZ, store);
+        }
+    }
+
+    /**
+     * Getter for the maximum number of bodies in a leaf of the tree.
+     *
+     * @return The leaf capacity.
+     */
+    public int getLeafCapacity() {
+        return ocTree.getLeafCapacity();
+    }
+
+    /**
+     * Setter for the maximum number of bodies in a leaf of the tree.
+     *
+     * @param leafCapacity The new leaf capacity.
+     * @throws IllegalArgumentException if leafCapacity is less than 1.
+     */
+    public void setLeafCapacity(int leafCapacity) {
+        synchronized (store) {
+            ocTree.setLeafCapacity(leafCapacity);
+        }
+    }
+
+    /**
+     * Getter for the incremental flag of the tree.
+     *
+     * @return true if the tree is refitted between steps where possible. false if it is rebuilt every step.
+     */
+    public boolean isIncrementalTree() {
+        return ocTree.isIncremental();
+    }
+
+    /**
+     * Setter for the incremental flag of the tree.
+     *
+     * @param incremental true to refit the tree between steps where possible. false to rebuild it every step.
+     */
+    public void setIncrementalTree(boolean incremental) {
+        synchronized (store) {
+            ocTree.setIncremental(incremental);
+        }
+    }
+
+    /**
+     * Setter for the fraction of bodies crossing the loose bounds of their leaf above which the tree is rebuilt.
+     *
+     * @param rebuildThreshold The new fraction of crossed bodies.
+     * @throws IllegalArgumentException if rebuildThreshold is negative.
+     */
+    public void setRebuildThreshold(double rebuildThreshold) {
+        synchronized (store) {
+            ocTree.setRebuildThreshold(rebuildThreshold);
+        }
+    }
+
+    /**
+     * Getter for stepCount.
+     *
+     * @return The number of steps performed so far.
+     */
+    public long getStepCount() {
+        synchronized (store) {
+            return stepCount;
+        }
+    }
+
+    /**
+     * Getter for time.
+     *
+     * @return The simulated time in days.
+     */
+    public double getTime() {
+        synchronized (store) {
+            return time;
+        }
+    }
+
+    /**
+     * The step loop executed by the simulation thread.
+     */
+    private void runLoop() {
+        long lastSnapshot = System.nanoTime();
+        long nextStep = lastSnapshot;
+        try {
+            while (running) {
+                step();
+
+                long now = System.nanoTime();
+                if (now - lastSnapshot >= SNAPSHOT_INTERVAL) {
+                    publishSnapshot();
+                    lastSnapshot = now;
+                }
+
+                double rate = stepRate;
+                if (rate > 0) {
+                    nextStep += (long) (1_000_000_000L / rate);
+                    long wait = nextStep - System.nanoTime();
+                    if (wait > 0)
+                        LockSupport.parkNanos(wait);
+                    else
+                        nextStep = System.nanoTime();
+                }
+            }
+        } finally {
+            running = false;
+            publishSnapshot();
+        }
+    }
+}
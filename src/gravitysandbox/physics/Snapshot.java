@@ -0,0 +1,111 @@
+package gravitysandbox.physics;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the positions of all bodies after one step of a {@link Simulation}.
+ * <p>
+ * Snapshots are handed from the simulation thread to readers like the GUI, so they never see a half finished step.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class Snapshot {
+
+    /**
+     * The x coordinates of the positions.
+     */
+    private final double[] x;
+
+    /**
+     * The y coordinates of the positions.
+     */
+    private final double[] y;
+
+    /**
+     * The z coordinates of the positions.
+     */
+    private final double[] z;
+
+    /**
+     * The number of steps performed before the snapshot was taken.
+     */
+    private final long step;
+
+    /**
+     * The simulated time in days when the snapshot was taken.
+     */
+    private final double time;
+
+    /**
+     * Copies the positions of all bodies of the given store.
+     *
+     * @param store The {@link BodyStore} to be copied.
+     * @param step  The number of steps performed so far.
+     * @param time  The simulated time in days.
+     */
+    Snapshot(BodyStore store, long step, double time) {
+        x = Arrays.copyOf(store.x, store.size());
+        y = Arrays.copyOf(store.y, store.size());
+        z = Arrays.copyOf(store.z, store.size());
+        this.step = step;
+        this.time = time;
+    }
+
+    /**
+     * Returns the number of bodies in the snapshot.
+     *
+     * @return The number of bodies.
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * Getter for the x coordinate of a position.
+     *
+     * @param index The index of the body.
+     * @return The x coordinate in astronomical units.
+     */
+    public double getX(int index) {
+        return x[index];
+    }
+
+    /**
+     * Getter for the y coordinate of a position.
+     *
+     * @param index The index of the body.
+     * @return The y coordinate in astronomical units.
+     */
+    public double getY(int index) {
+        return y[index];
+    }
+
+    /**
+     * Getter for the z coordinate of a position.
+     *
+     * @param index The index of the body.
+     * @return The z coordinate in astronomical units.
+     */
+    public double getZ(int index) {
+        return z[index];
+    }
+
+    /**
+     * Getter for step.
+     *
+     * @return The number of steps performed before the snapshot was taken.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Getter for time.
+     *
+     * @return The simulated time in days.
+     */
+    public double getTime() {
+        return time;
+    }
+}
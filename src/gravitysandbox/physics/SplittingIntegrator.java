@@ -0,0 +1,100 @@
+package gravitysandbox.physics;
+
+/**
+ * An {@link Integrator} composing a step of alternating kicks, which change the velocities by the accelerations, and
+ * drifts, which move the bodies along their velocities.
+ * <p>
+ * Every kick and drift covers a fixed fraction of the time step. The accelerations are calculated before a kick if the
+ * bodies were moved since the last calculation, so a step ending with a kick leaves the accelerations of the new
+ * positions for the first kick of the next step. Such compositions of exact partial flows are symplectic: the error of
+ * the energy stays bounded instead of growing with the simulated time.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public abstract class SplittingIntegrator implements Integrator {
+
+    /**
+     * The fractions of the time step covered by the kicks. The kick with index i precedes the drift with index i.
+     */
+    private final double[] kicks;
+
+    /**
+     * The fractions of the time step covered by the drifts.
+     */
+    private final double[] drifts;
+
+    /**
+     * The number of force calculations per step.
+     */
+    private final int forceCalculations;
+
+    /**
+     * The {@link BodyStore} of the current step.
+     */
+    private BodyStore store;
+
+    /**
+     * The time of the current kick or drift in days.
+     */
+    private double partialTimeStep;
+
+    /**
+     * The loop body changing the velocities of a range of bodies.
+     */
+    private final ParallelLoop.Range kickTask = (from, to) -> store.kick(from, to, partialTimeStep);
+
+    /**
+     * The loop body moving a range of bodies.
+     */
+    private final ParallelLoop.Range driftTask = (from, to) -> store.drift(from, to, partialTimeStep);
+
+    /**
+     * Creates a new integrator from the fractions of its kicks and drifts.
+     *
+     * @param kicks  The fractions of the time step covered by the kicks, as many as drifts or one more.
+     * @param drifts The fractions of the time step covered by the drifts, summing up to 1.
+     * @throws IllegalArgumentException if the number of kicks does not fit the number of drifts.
+     */
+    protected SplittingIntegrator(double[] kicks, double[] drifts) {
+        if (kicks.length != drifts.length && kicks.length != drifts.length + 1)
+            throw new IllegalArgumentException("There have to be as many kicks as drifts or one more.");
+        this.kicks = kicks.clone();
+        this.drifts = drifts.clone();
+
+        int calculations = 0;
+        boolean moved = false;
+        for (int i = 0; i < kicks.length; i++) {
+            if (kicks[i] != 0 && moved) {
+                calculations++;
+                moved = false;
+            }
+            if (i < drifts.length && drifts[i] != 0)
+                moved = true;
+        }
+        // A step ending with a drift has to calculate the accelerations at the beginning of the next one.
+        forceCalculations = moved ? calculations + 1 : calculations;
+    }
+
+    @Override
+    public void step(BodyStore store, ForceSolver solver, ParallelLoop parallelLoop, double dt) {
+        this.store = store;
+        int n = store.size();
+        for (int i = 0; i < kicks.length; i++) {
+            if (kicks[i] != 0) {
+                Integrator.updateAccelerations(store, solver, parallelLoop);
+                partialTimeStep = kicks[i] * dt;
+                parallelLoop.forRange(0, n, kickTask);
+            }
+            if (i < drifts.length && drifts[i] != 0) {
+                partialTimeStep = drifts[i] * dt;
+                parallelLoop.forRange(0, n, driftTask);
+            }
+        }
+    }
+
+    @Override
+    public int getForceCalculations() {
+        return forceCalculations;
+    }
+}
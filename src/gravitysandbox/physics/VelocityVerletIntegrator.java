@@ -0,0 +1,115 @@
+package gravitysandbox.physics;
+
+import java.util.Arrays;
+
+/**
+ * The velocity Verlet method: the bodies move along the parabola of their velocity and acceleration, then the
+ * velocities change by the mean of the accelerations at the old and the new positions.
+ * <p>
+ * In exact arithmetic it gives the same positions and velocities as the kick-drift-kick {@link LeapfrogIntegrator},
+ * so it is second order accurate, symplectic and needs one force calculation per step. The velocities are only
+ * changed once per step, which rounds differently and keeps the velocities at the end of the step free of a half
+ * kick, at the costs of a copy of the old accelerations.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class VelocityVerletIntegrator implements Integrator {
+
+    /**
+     * The x coordinates of the accelerations at the beginning of the step.
+     */
+    private double[] oldAx;
+
+    /**
+     * The y coordinates of the accelerations at the beginning of the step.
+     */
+    private double[] oldAy;
+
+    /**
+     * The z coordinates of the accelerations at the beginning of the step.
+     */
+    private double[] oldAz;
+
+    /**
+     * The {@link BodyStore} of the current step.
+     */
+    private BodyStore store;
+
+    /**
+     * The time step of the current step in days.
+     */
+    private double stepTimeStep;
+
+    /**
+     * The loop body moving a range of bodies and keeping their accelerations.
+     */
+    private final ParallelLoop.Range driftTask = this::drift;
+
+    /**
+     * The loop body changing the velocities of a range of bodies.
+     */
+    private final ParallelLoop.Range kickTask = this::kick;
+
+    /**
+     * Creates a new velocity Verlet integrator.
+     */
+    public VelocityVerletIntegrator() {
+        oldAx = new double[0];
+        oldAy = new double[0];
+        oldAz = new double[0];
+    }
+
+    @Override
+    public void step(BodyStore store, ForceSolver solver, ParallelLoop parallelLoop, double dt) {
+        this.store = store;
+        stepTimeStep = dt;
+        int n = store.size();
+        if (oldAx.length < n) {
+            oldAx = Arrays.copyOf(oldAx, n);
+            oldAy = Arrays.copyOf(oldAy, n);
+            oldAz = Arrays.copyOf(oldAz, n);
+        }
+
+        Integrator.updateAccelerations(store, solver, parallelLoop);
+        parallelLoop.forRange(0, n, driftTask);
+        Integrator.updateAccelerations(store, solver, parallelLoop);
+        parallelLoop.forRange(0, n, kickTask);
+    }
+
+    @Override
+    public int getForceCalculations() {
+        return 1;
+    }
+
+    /**
+     * Moves the bodies within the given range of indices and keeps their accelerations for the kick.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void drift(int from, int to) {
+        store.driftAccelerated(from, to, stepTimeStep);
+        System.arraycopy(store.ax, from, oldAx, from, to - from);
+        System.arraycopy(store.ay, from, oldAy, from, to - from);
+        System.arraycopy(store.az, from, oldAz, from, to - from);
+    }
+
+    /**
+     * Changes the velocities of the bodies within the given range of indices by the mean of the old and the new
+     * accelerations.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void kick(int from, int to) {
+        double halfDt = 0.5 * stepTimeStep;
+        double[] vx = store.vx, vy = store.vy, vz = store.vz;
+        for (int i = from; i < to; i++) {
+            vx[i] += (oldAx[i] + store.ax[i]) * halfDt;
+            vy[i] += (oldAy[i] + store.ay[i]) * halfDt;
+            vz[i] += (oldAz[i] + store.az[i]) * halfDt;
+            store.vxLo[i] = store.vyLo[i] = store.vzLo[i] = 0;
+        }
+    }
+}
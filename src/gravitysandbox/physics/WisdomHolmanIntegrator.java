@@ -0,0 +1,294 @@
+package gravitysandbox.physics;
+
+/**
+ * The mixed variable symplectic integrator of Wisdom and Holman for systems dominated by one central body, in
+ * democratic heliocentric coordinates.
+ * <p>
+ * The central body is the most massive one, i.e. the star of a planetary system. The other bodies are described by
+ * their positions relative to the central body and their velocities relative to the center of mass. Their motion is
+ * split into the Kepler orbit around the central body, which is propagated exactly by a {@link KeplerSolver}, the
+ * interactions between the bodies other than the central one, which are applied as kicks, and the motion of the
+ * central body caused by the total momentum of the others, which is applied as a jump of their relative positions:
+ * <pre>
+ * kick(dt / 2) jump(dt / 2) kepler(dt) jump(dt / 2) kick(dt / 2)
+ * </pre>
+ * The error of a step is the product of the mass ratio of the bodies to the central body and dt^2, so the time step
+ * may be a good fraction of the innermost orbital period instead of a small fraction of it.
+ * <p>
+ * The interactions are calculated by the {@link ForceSolver} while the mass of the central body is set to zero. The
+ * acceleration by the central body is added afterwards, so the store holds the complete accelerations at the end of
+ * the step and the next step only has to remove it again instead of calculating the interactions anew.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class WisdomHolmanIntegrator implements Integrator {
+
+    /**
+     * The x coordinates of the positions relative to the central body.
+     */
+    private double[] qx;
+
+    /**
+     * The y coordinates of the positions relative to the central body.
+     */
+    private double[] qy;
+
+    /**
+     * The z coordinates of the positions relative to the central body.
+     */
+    private double[] qz;
+
+    /**
+     * The x coordinates of the velocities relative to the center of mass.
+     */
+    private double[] ux;
+
+    /**
+     * The y coordinates of the velocities relative to the center of mass.
+     */
+    private double[] uy;
+
+    /**
+     * The z coordinates of the velocities relative to the center of mass.
+     */
+    private double[] uz;
+
+    /**
+     * The solvers of Kepler's equation, one per thread.
+     */
+    private final ThreadLocal<KeplerSolver> keplerSolvers = ThreadLocal.withInitial(KeplerSolver::new);
+
+    /**
+     * The {@link BodyStore} of the current step.
+     */
+    private BodyStore store;
+
+    /**
+     * The index of the central body within the store.
+     */
+    private int central;
+
+    /**
+     * G times the mass of the central body.
+     */
+    private double mu;
+
+    /**
+     * The time step of the current step in days.
+     */
+    private double stepTimeStep;
+
+    /**
+     * The loop body propagating the Kepler orbits of a range of bodies.
+     */
+    private final ParallelLoop.Range keplerTask = this::propagate;
+
+    /**
+     * Creates a new Wisdom-Holman integrator.
+     */
+    public WisdomHolmanIntegrator() {
+        qx = new double[0];
+        qy = new double[0];
+        qz = new double[0];
+        ux = new double[0];
+        uy = new double[0];
+        uz = new double[0];
+    }
+
+    @Override
+    public void step(BodyStore store, ForceSolver solver, ParallelLoop parallelLoop, double dt) {
+        int n = store.size();
+        if (n == 0)
+            return;
+        this.store = store;
+        stepTimeStep = dt;
+        if (qx.length < n) {
+            int capacity = Math.max(n, 2 * qx.length);
+            qx = new double[capacity];
+            qy = new double[capacity];
+            qz = new double[capacity];
+            ux = new double[capacity];
+            uy = new double[capacity];
+            uz = new double[capacity];
+        }
+
+        central = 0;
+        double totalMass = 0;
+        for (int i = 0; i < n; i++) {
+            totalMass += store.mass[i];
+            if (store.mass[i] > store.mass[central])
+                central = i;
+        }
+        double centralMass = store.mass[central];
+        if (centralMass <= 0) {
+            // Without masses every body moves along a straight line.
+            store.drift(0, n, dt);
+            return;
+        }
+        mu = Physics.G_INTERNAL * centralMass;
+
+        Integrator.updateAccelerations(store, solver, parallelLoop);
+        double comX = 0, comY = 0, comZ = 0, comVx = 0, comVy = 0, comVz = 0;
+        for (int i = 0; i < n; i++) {
+            double m = store.mass[i];
+            comX += m * store.x[i];
+            comY += m * store.y[i];
+            comZ += m * store.z[i];
+            comVx += m * store.vx[i];
+            comVy += m * store.vy[i];
+            comVz += m * store.vz[i];
+        }
+        comX /= totalMass;
+        comY /= totalMass;
+        comZ /= totalMass;
+        comVx /= totalMass;
+        comVy /= totalMass;
+        comVz /= totalMass;
+
+        double halfDt = 0.5 * dt;
+        double cx = store.x[central], cy = store.y[central], cz = store.z[central];
+        for (int i = 0; i < n; i++) {
+            if (i == central)
+                continue;
+            qx[i] = store.x[i] - cx;
+            qy[i] = store.y[i] - cy;
+            qz[i] = store.z[i] - cz;
+            ux[i] = store.vx[i] - comVx;
+            uy[i] = store.vy[i] - comVy;
+            uz[i] = store.vz[i] - comVz;
+            // The complete acceleration minus the one caused by the central body.
+            double centralAcceleration = centralAcceleration(i);
+            ux[i] += (store.ax[i] + qx[i] * centralAcceleration) * halfDt;
+            uy[i] += (store.ay[i] + qy[i] * centralAcceleration) * halfDt;
+            uz[i] += (store.az[i] + qz[i] * centralAcceleration) * halfDt;
+        }
+
+        jump(n, halfDt, centralMass);
+        parallelLoop.forRange(0, n, keplerTask);
+        jump(n, halfDt, centralMass);
+
+        // The center of mass moves uniformly, the central body balances the others.
+        comX += comVx * dt;
+        comY += comVy * dt;
+        comZ += comVz * dt;
+        double sumX = 0, sumY = 0, sumZ = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == central)
+                continue;
+            double m = store.mass[i];
+            sumX += m * qx[i];
+            sumY += m * qy[i];
+            sumZ += m * qz[i];
+        }
+        cx = comX - sumX / totalMass;
+        cy = comY - sumY / totalMass;
+        cz = comZ - sumZ / totalMass;
+        for (int i = 0; i < n; i++) {
+            if (i == central) {
+                store.x[i] = cx;
+                store.y[i] = cy;
+                store.z[i] = cz;
+            } else {
+                store.x[i] = qx[i] + cx;
+                store.y[i] = qy[i] + cy;
+                store.z[i] = qz[i] + cz;
+            }
+            store.xLo[i] = store.yLo[i] = store.zLo[i] = 0;
+        }
+        store.markPositionsChanged();
+
+        store.clearAccelerations();
+        store.mass[central] = 0;
+        try {
+            solver.accumulateAccelerations(store, parallelLoop);
+        } finally {
+            store.mass[central] = centralMass;
+        }
+
+        double momentumX = 0, momentumY = 0, momentumZ = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == central)
+                continue;
+            ux[i] += store.ax[i] * halfDt;
+            uy[i] += store.ay[i] * halfDt;
+            uz[i] += store.az[i] * halfDt;
+            double m = store.mass[i];
+            momentumX += m * ux[i];
+            momentumY += m * uy[i];
+            momentumZ += m * uz[i];
+            store.vx[i] = ux[i] + comVx;
+            store.vy[i] = uy[i] + comVy;
+            store.vz[i] = uz[i] + comVz;
+            store.vxLo[i] = store.vyLo[i] = store.vzLo[i] = 0;
+
+            double centralAcceleration = centralAcceleration(i);
+            store.ax[i] -= qx[i] * centralAcceleration;
+            store.ay[i] -= qy[i] * centralAcceleration;
+            store.az[i] -= qz[i] * centralAcceleration;
+        }
+        store.vx[central] = comVx - momentumX / centralMass;
+        store.vy[central] = comVy - momentumY / centralMass;
+        store.vz[central] = comVz - momentumZ / centralMass;
+        store.vxLo[central] = store.vyLo[central] = store.vzLo[central] = 0;
+        store.markAccelerationsCurrent();
+    }
+
+    /**
+     * Returns the factor G * M / r^3 of the acceleration of a body towards the central body, with r taken from the
+     * relative position of the body.
+     *
+     * @param i The index of the body.
+     * @return The factor, which is zero for a body at the position of the central body.
+     */
+    private double centralAcceleration(int i) {
+        double r2 = qx[i] * qx[i] + qy[i] * qy[i] + qz[i] * qz[i];
+        return r2 > 0 ? mu / (r2 * Math.sqrt(r2)) : 0;
+    }
+
+    /**
+     * Moves the relative positions by the velocity of the central body caused by the momentum of the others.
+     *
+     * @param n           The number of bodies.
+     * @param dt          The time in days.
+     * @param centralMass The mass of the central body.
+     */
+    private void jump(int n, double dt, double centralMass) {
+        double momentumX = 0, momentumY = 0, momentumZ = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == central)
+                continue;
+            double m = store.mass[i];
+            momentumX += m * ux[i];
+            momentumY += m * uy[i];
+            momentumZ += m * uz[i];
+        }
+        double scale = dt / centralMass;
+        for (int i = 0; i < n; i++) {
+            if (i == central)
+                continue;
+            qx[i] += momentumX * scale;
+            qy[i] += momentumY * scale;
+            qz[i] += momentumZ * scale;
+        }
+    }
+
+    /**
+     * Propagates the Kepler orbits of the bodies within the given range of indices around the central body.
+     *
+     * @param from The index of the first body, inclusive.
+     * @param to   The index of the last body, exclusive.
+     */
+    private void propagate(int from, int to) {
+        KeplerSolver solver = keplerSolvers.get();
+        for (int i = from; i < to; i++) {
+            if (i != central)
+                solver.propagate(mu, stepTimeStep, qx, qy, qz, ux, uy, uz, i);
+        }
+    }
+
+    @Override
+    public int getForceCalculations() {
+        return 1;
+    }
+}
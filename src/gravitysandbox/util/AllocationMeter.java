@@ -0,0 +1,75 @@
+package gravitysandbox.util;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the number of bytes allocated on the heap by the calling thread.
+ * <p>
+ * The measurement uses the allocation counters of {@link com.sun.management.ThreadMXBean}, which are available on
+ * HotSpot based virtual machines. It is meant to check that code like a simulation step does not create any objects
+ * in steady state. Allocations on other threads, e.g. the workers of a parallel loop, are not counted.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class AllocationMeter {
+
+    /**
+     * The bean providing the allocation counters or null if they are not supported.
+     */
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = findThreadBean();
+
+    /**
+     * Returns whether the virtual machine supports measuring allocations.
+     *
+     * @return true if allocations can be measured. false otherwise.
+     */
+    public static boolean isSupported() {
+        return THREAD_BEAN != null;
+    }
+
+    /**
+     * Returns the total number of bytes allocated by the calling thread so far.
+     *
+     * @return The number of allocated bytes.
+     * @throws UnsupportedOperationException if allocations can not be measured.
+     */
+    public static long getAllocatedBytes() {
+        if (THREAD_BEAN == null)
+            throw new UnsupportedOperationException("Measuring allocations is not supported by this virtual machine.");
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Runs the given code on the calling thread and returns the number of bytes it allocated.
+     * <p>
+     * The counters are read with an accuracy of a few bytes, so the code should be run for several iterations and
+     * warmed up before, so the JIT compiler had the chance to remove temporary objects.
+     *
+     * @param code The code to be measured.
+     * @return The number of allocated bytes.
+     * @throws UnsupportedOperationException if allocations can not be measured.
+     */
+    public static long measure(Runnable code) {
+        long before = getAllocatedBytes();
+        code.run();
+        return getAllocatedBytes() - before;
+    }
+
+    /**
+     * Looks up the bean providing the allocation counters and enables them.
+     *
+     * @return The bean or null if allocation counters are not supported.
+     */
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        if (!threadBean.isThreadAllocatedMemorySupported())
+            return null;
+        if (!threadBean.isThreadAllocatedMemoryEnabled())
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+        return threadBean;
+    }
+}
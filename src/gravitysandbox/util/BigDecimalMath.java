@@ -10,13 +10,21 @@ import static java.math.RoundingMode.HALF_UP;
  * This class contains mathematical functions for {@link BigDecimal}.
  *
  * @author Christoph Bruckner
- * @version 1.1
+ * @version 1.2
  * @since 0.2
  */
 public class BigDecimalMath {
 
+    /**
+     * Constant used by the Newton iteration of the square root.
+     */
+    private static final BigDecimal BD0_5 = new BigDecimal("0.5");
+
     /**
      * Calculate the approximate square root of a {@link BigDecimal}.
+     * <p>
+     * The square root is calculated in double precision, so the result has about 16 correct digits.
+     * Use {@link #sqrt(BigDecimal, MathContext)} for more.
      * @param number The {@link BigDecimal} from which the square root shall be calculated.
      * @return The approximate square root of number.
      */
@@ -24,6 +32,38 @@ public class BigDecimalMath {
         return new BigDecimal(Math.sqrt(number.doubleValue()));
     }
 
+    /**
+     * Calculate the square root of a {@link BigDecimal} with the precision of the given {@link MathContext}.
+     * <p>
+     * Starting from the double precision square root, every Newton iteration doubles the number of correct digits.
+     * The iterations use two guard digits, so the result is correctly rounded in almost all cases.
+     * @param number The {@link BigDecimal} from which the square root shall be calculated.
+     * @param mathContext The precision and rounding mode of the result. The precision must not be unlimited.
+     * @return The square root of number.
+     * @throws ArithmeticException if number is negative or the precision of mathContext is unlimited.
+     */
+    public static BigDecimal sqrt(BigDecimal number, MathContext mathContext) {
+        if (number.signum() < 0)
+            throw new ArithmeticException("Square root of a negative number.");
+        if (mathContext.getPrecision() == 0)
+            throw new ArithmeticException("The square root needs a limited precision.");
+        if (number.signum() == 0)
+            return BigDecimal.ZERO;
+
+        // Shift number by an even power of ten into the range of double, so the start value is always finite.
+        int exponent = number.precision() - number.scale() - 1;
+        int shift = exponent - exponent % 2;
+        BigDecimal mantissa = number.movePointLeft(shift);
+        MathContext working = new MathContext(mathContext.getPrecision() + 2, HALF_EVEN);
+
+        BigDecimal root = new BigDecimal(Math.sqrt(mantissa.doubleValue()), working);
+        for (int digits = 16; digits < working.getPrecision(); digits *= 2) {
+            root = root.add(mantissa.divide(root, working), working).multiply(BD0_5, working);
+        }
+        root = root.add(mantissa.divide(root, working), working).multiply(BD0_5, working);
+        return root.movePointRight(shift / 2).round(mathContext);
+    }
+
     /**
      * Determine the maximum of a given array of {@link BigDecimal}.
      * @param elems The array of {@link BigDecimal}.
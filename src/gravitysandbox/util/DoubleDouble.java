@@ -0,0 +1,311 @@
+package gravitysandbox.util;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * A mutable number of about 106 bits precision, represented as the unevaluated sum of two doubles.
+ * <p>
+ * The high part holds the value rounded to double precision, the low part the rounding error, whose magnitude is at
+ * most half a unit in the last place of the high part. The operations follow the algorithms of Dekker and of Bailey's
+ * QD library, which calculate the rounding error of a sum or product exactly with a few additional operations on
+ * doubles. So they cost a small multiple of the double operations and nothing has to be allocated.
+ * <p>
+ * Like the accumulators of the step loop the operations change this object and return it, so a few objects can be
+ * reused for a whole calculation.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public final class DoubleDouble {
+
+    /**
+     * The precision of the {@link BigDecimal} values created from a double-double. About 32 digits are significant, the
+     * guard digits let a value converted into other units and back end up at the same double-double.
+     */
+    public static final MathContext DECIMAL_PRECISION = new MathContext(38);
+
+    /**
+     * Constant used to split a double into two halves of 26 bits: 2^27 + 1.
+     */
+    private static final double SPLITTER = 134217729.0;
+
+    /**
+     * The high part, i.e. the value rounded to double precision.
+     */
+    private double hi;
+
+    /**
+     * The low part, i.e. the rounding error of the high part.
+     */
+    private double lo;
+
+    /**
+     * Creates a new double-double with the value 0.
+     */
+    public DoubleDouble() {
+    }
+
+    /**
+     * Creates a new double-double from its two parts.
+     *
+     * @param hi The high part.
+     * @param lo The low part.
+     */
+    public DoubleDouble(double hi, double lo) {
+        set(hi, lo);
+    }
+
+    /**
+     * Converts a {@link BigDecimal} into the nearest double-double.
+     *
+     * @param value The value to be converted.
+     * @return The new double-double.
+     */
+    public static DoubleDouble valueOf(BigDecimal value) {
+        double hi = value.doubleValue();
+        double lo = value.subtract(new BigDecimal(hi)).doubleValue();
+        return new DoubleDouble(hi, lo);
+    }
+
+    /**
+     * Converts the two parts of a double-double into a {@link BigDecimal} with {@link #DECIMAL_PRECISION}.
+     *
+     * @param hi The high part.
+     * @param lo The low part.
+     * @return The value as {@link BigDecimal}.
+     */
+    public static BigDecimal toBigDecimal(double hi, double lo) {
+        return new BigDecimal(hi).add(new BigDecimal(lo), DECIMAL_PRECISION);
+    }
+
+    /**
+     * Converts this double-double into a {@link BigDecimal} with {@link #DECIMAL_PRECISION}.
+     *
+     * @return The value as {@link BigDecimal}.
+     */
+    public BigDecimal toBigDecimal() {
+        return toBigDecimal(hi, lo);
+    }
+
+    /**
+     * Getter for hi.
+     *
+     * @return The high part, i.e. the value rounded to double precision.
+     */
+    public double getHi() {
+        return hi;
+    }
+
+    /**
+     * Getter for lo.
+     *
+     * @return The low part, i.e. the rounding error of the high part.
+     */
+    public double getLo() {
+        return lo;
+    }
+
+    /**
+     * Sets this double-double to the given parts.
+     *
+     * @param hi The high part.
+     * @param lo The low part.
+     * @return This double-double.
+     */
+    public DoubleDouble set(double hi, double lo) {
+        this.hi = hi;
+        this.lo = lo;
+        return this;
+    }
+
+    /**
+     * Sets this double-double to the value of another one.
+     *
+     * @param value The value.
+     * @return This double-double.
+     */
+    public DoubleDouble set(DoubleDouble value) {
+        return set(value.hi, value.lo);
+    }
+
+    /**
+     * Adds a double-double given by its parts to this one.
+     *
+     * @param bHi The high part of the summand.
+     * @param bLo The low part of the summand.
+     * @return This double-double.
+     */
+    public DoubleDouble add(double bHi, double bLo) {
+        double s = hi + bHi;
+        double e = sumError(hi, bHi, s);
+        double t = lo + bLo;
+        double f = sumError(lo, bLo, t);
+        e += t;
+        double u = s + e;
+        e -= u - s;
+        e += f;
+        hi = u + e;
+        lo = e - (hi - u);
+        return this;
+    }
+
+    /**
+     * Adds another double-double to this one.
+     *
+     * @param value The summand.
+     * @return This double-double.
+     */
+    public DoubleDouble add(DoubleDouble value) {
+        return add(value.hi, value.lo);
+    }
+
+    /**
+     * Subtracts a double-double given by its parts from this one.
+     *
+     * @param bHi The high part of the subtrahend.
+     * @param bLo The low part of the subtrahend.
+     * @return This double-double.
+     */
+    public DoubleDouble subtract(double bHi, double bLo) {
+        return add(-bHi, -bLo);
+    }
+
+    /**
+     * Subtracts another double-double from this one.
+     *
+     * @param value The subtrahend.
+     * @return This double-double.
+     */
+    public DoubleDouble subtract(DoubleDouble value) {
+        return add(-value.hi, -value.lo);
+    }
+
+    /**
+     * Multiplies this double-double by another one given by its parts.
+     *
+     * @param bHi The high part of the factor.
+     * @param bLo The low part of the factor.
+     * @return This double-double.
+     */
+    public DoubleDouble multiply(double bHi, double bLo) {
+        double p = hi * bHi;
+        double e = productError(hi, bHi, p) + (hi * bLo + lo * bHi);
+        hi = p + e;
+        lo = e - (hi - p);
+        return this;
+    }
+
+    /**
+     * Multiplies this double-double by another one.
+     *
+     * @param value The factor.
+     * @return This double-double.
+     */
+    public DoubleDouble multiply(DoubleDouble value) {
+        return multiply(value.hi, value.lo);
+    }
+
+    /**
+     * Divides this double-double by another one given by its parts.
+     * <p>
+     * The quotient of the high parts is corrected once by the remainder, which gives a relative error of about 2^-104.
+     *
+     * @param bHi The high part of the divisor.
+     * @param bLo The low part of the divisor.
+     * @return This double-double.
+     */
+    public DoubleDouble divide(double bHi, double bLo) {
+        double q1 = hi / bHi;
+        // The remainder this - q1 * b.
+        double p = q1 * bHi;
+        double pError = productError(q1, bHi, p) + q1 * bLo;
+        double s = hi - p;
+        double e = sumError(hi, -p, s) - pError + lo;
+        double q2 = (s + e) / bHi;
+        hi = q1 + q2;
+        lo = q2 - (hi - q1);
+        return this;
+    }
+
+    /**
+     * Divides this double-double by another one.
+     *
+     * @param value The divisor.
+     * @return This double-double.
+     */
+    public DoubleDouble divide(DoubleDouble value) {
+        return divide(value.hi, value.lo);
+    }
+
+    /**
+     * Replaces this double-double by its square root.
+     * <p>
+     * The double precision square root is corrected by one Newton step.
+     *
+     * @return This double-double.
+     * @throws ArithmeticException if this double-double is negative.
+     */
+    public DoubleDouble sqrt() {
+        if (hi <= 0) {
+            if (hi < 0)
+                throw new ArithmeticException("Square root of a negative number.");
+            return set(0, 0);
+        }
+        double inverse = 1 / Math.sqrt(hi);
+        double root = hi * inverse;
+        double square = root * root;
+        double remainder = (hi - square) - productError(root, root, square) + lo;
+        double correction = remainder * inverse * 0.5;
+        double sum = root + correction;
+        return set(sum, sumError(root, correction, sum));
+    }
+
+    /**
+     * Returns the value rounded to double precision.
+     *
+     * @return The high part.
+     */
+    public double doubleValue() {
+        return hi;
+    }
+
+    /**
+     * Calculates the rounding error of a sum of two doubles exactly (Knuth's TwoSum).
+     *
+     * @param a   The first summand.
+     * @param b   The second summand.
+     * @param sum The rounded sum a + b.
+     * @return The error, so that a + b == sum + error exactly.
+     */
+    public static double sumError(double a, double b, double sum) {
+        double bb = sum - a;
+        return (a - (sum - bb)) + (b - bb);
+    }
+
+    /**
+     * Calculates the rounding error of a product of two doubles exactly (Dekker's TwoProduct).
+     *
+     * @param a       The first factor.
+     * @param b       The second factor.
+     * @param product The rounded product a * b.
+     * @return The error, so that a * b == product + error exactly.
+     */
+    public static double productError(double a, double b, double product) {
+        double t = SPLITTER * a;
+        double aHi = t - (t - a), aLo = a - aHi;
+        t = SPLITTER * b;
+        double bHi = t - (t - b), bLo = b - bHi;
+        return ((aHi * bHi - product) + aHi * bLo + aLo * bHi) + aLo * bLo;
+    }
+
+    /**
+     * Returns a {@link String} representation of the value.
+     *
+     * @return The value as a {@link String}.
+     */
+    @Override
+    public String toString() {
+        return toBigDecimal().toString();
+    }
+}
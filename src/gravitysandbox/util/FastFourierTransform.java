@@ -0,0 +1,107 @@
+package gravitysandbox.util;
+
+/**
+ * This class contains an iterative radix-2 fast Fourier transform of complex sequences of one fixed length.
+ * <p>
+ * The twiddle factors and the bit reversal permutation are calculated once by the constructor and only read
+ * afterwards, so one instance may transform different arrays on several threads at the same time. The caller supplies
+ * the arrays, so transforming does not create any objects.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class FastFourierTransform {
+
+    /**
+     * The length of the sequences.
+     */
+    private final int length;
+
+    /**
+     * The index every element is swapped with before the butterflies.
+     */
+    private final int[] reversed;
+
+    /**
+     * The cosines of 2 * pi * k / length for the first half of the indices.
+     */
+    private final double[] cosine;
+
+    /**
+     * The sines of 2 * pi * k / length for the first half of the indices.
+     */
+    private final double[] sine;
+
+    /**
+     * Creates a new transform for sequences of the given length.
+     *
+     * @param length The length of the sequences.
+     * @throws IllegalArgumentException if length is not a power of two.
+     */
+    public FastFourierTransform(int length) {
+        if (length < 1 || (length & (length - 1)) != 0)
+            throw new IllegalArgumentException("The length has to be a power of two.");
+        this.length = length;
+        reversed = new int[length];
+        int bits = Integer.numberOfTrailingZeros(length);
+        for (int i = 0; i < length; i++) {
+            reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (Integer.SIZE - bits);
+        }
+        cosine = new double[Math.max(1, length / 2)];
+        sine = new double[cosine.length];
+        for (int k = 0; k < length / 2; k++) {
+            cosine[k] = Math.cos(2 * Math.PI * k / length);
+            sine[k] = Math.sin(2 * Math.PI * k / length);
+        }
+    }
+
+    /**
+     * Transforms the first length elements of the given arrays in place.
+     * <p>
+     * The forward transform uses exp(-2 * pi * i * j * k / length). The inverse transform uses the opposite sign and is
+     * not normalized, so transforming forward and back multiplies every element by the length.
+     *
+     * @param real      The real parts.
+     * @param imaginary The imaginary parts.
+     * @param inverse   true for the inverse transform. false for the forward transform.
+     */
+    public void transform(double[] real, double[] imaginary, boolean inverse) {
+        for (int i = 0; i < length; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double t = real[i];
+                real[i] = real[j];
+                real[j] = t;
+                t = imaginary[i];
+                imaginary[i] = imaginary[j];
+                imaginary[j] = t;
+            }
+        }
+
+        double sign = inverse ? 1 : -1;
+        for (int half = 1; half < length; half *= 2) {
+            int step = length / (2 * half);
+            for (int start = 0; start < length; start += 2 * half) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cosine[k * step], wi = sign * sine[k * step];
+                    int a = start + k, b = a + half;
+                    double tr = wr * real[b] - wi * imaginary[b];
+                    double ti = wr * imaginary[b] + wi * real[b];
+                    real[b] = real[a] - tr;
+                    imaginary[b] = imaginary[a] - ti;
+                    real[a] += tr;
+                    imaginary[a] += ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * Getter for length.
+     *
+     * @return The length of the sequences.
+     */
+    public int getLength() {
+        return length;
+    }
+}
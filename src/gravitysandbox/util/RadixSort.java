@@ -0,0 +1,93 @@
+package gravitysandbox.util;
+
+import java.util.Arrays;
+
+/**
+ * This class contains a least significant digit radix sort for non-negative long keys with int values.
+ * <p>
+ * The caller supplies the buffers, so sorting does not create any objects.
+ *
+ * @version 1.0
+ * @since 1.1
+ */
+public class RadixSort {
+
+    /**
+     * The number of bits sorted by one pass.
+     */
+    private static final int BITS_PER_PASS = 8;
+
+    /**
+     * The number of buckets of one pass.
+     */
+    private static final int BUCKETS = 1 << BITS_PER_PASS;
+
+    /**
+     * Sorts the first length keys in ascending order and applies the same permutation to the values.
+     * <p>
+     * Passes in which all keys share the same digit are skipped. The sorted data always ends up in keys and values.
+     *
+     * @param keys        The keys to be sorted. Must not be negative.
+     * @param values      The values belonging to the keys.
+     * @param length      The number of keys to be sorted.
+     * @param keyBuffer   A buffer for keys with at least length entries.
+     * @param valueBuffer A buffer for values with at least length entries.
+     * @param counts      A buffer for the bucket counts with at least 256 entries.
+     */
+    public static void sort(long[] keys, int[] values, int length, long[] keyBuffer, int[] valueBuffer, int[] counts) {
+        sort(keys, values, 0, length, keyBuffer, valueBuffer, counts);
+    }
+
+    /**
+     * Sorts the keys between from and to in ascending order and applies the same permutation to the values.
+     * <p>
+     * Passes in which all keys share the same digit are skipped. The sorted data always ends up in keys and values.
+     * Only the same range of the buffers is used, so disjoint ranges of the same arrays may be sorted concurrently.
+     *
+     * @param keys        The keys to be sorted. Must not be negative.
+     * @param values      The values belonging to the keys.
+     * @param from        The first index to be sorted, inclusive.
+     * @param to          The last index to be sorted, exclusive.
+     * @param keyBuffer   A buffer for keys with at least to entries.
+     * @param valueBuffer A buffer for values with at least to entries.
+     * @param counts      A buffer for the bucket counts with at least 256 entries.
+     */
+    public static void sort(long[] keys, int[] values, int from, int to, long[] keyBuffer, int[] valueBuffer,
+                            int[] counts) {
+        long[] sourceKeys = keys, targetKeys = keyBuffer;
+        int[] sourceValues = values, targetValues = valueBuffer;
+
+        for (int shift = 0; shift < Long.SIZE - 1; shift += BITS_PER_PASS) {
+            Arrays.fill(counts, 0, BUCKETS, 0);
+            for (int i = from; i < to; i++) {
+                counts[(int) (sourceKeys[i] >>> shift) & (BUCKETS - 1)]++;
+            }
+            if (from == to || counts[(int) (sourceKeys[from] >>> shift) & (BUCKETS - 1)] == to - from)
+                continue;
+
+            int sum = from;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                int count = counts[bucket];
+                counts[bucket] = sum;
+                sum += count;
+            }
+            for (int i = from; i < to; i++) {
+                int position = counts[(int) (sourceKeys[i] >>> shift) & (BUCKETS - 1)]++;
+                targetKeys[position] = sourceKeys[i];
+                targetValues[position] = sourceValues[i];
+            }
+
+            long[] tmpKeys = sourceKeys;
+            sourceKeys = targetKeys;
+            targetKeys = tmpKeys;
+            int[] tmpValues = sourceValues;
+            sourceValues = targetValues;
+            targetValues = tmpValues;
+        }
+
+        if (sourceKeys != keys) {
+            System.arraycopy(sourceKeys, from, keys, from, to - from);
+            System.arraycopy(sourceValues, from, values, from, to - from);
+        }
+    }
+}
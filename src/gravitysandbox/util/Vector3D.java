@@ -1,6 +1,7 @@
 package gravitysandbox.util;
 
 import java.math.BigDecimal;
+import java.math.MathContext;
 
 import static java.math.RoundingMode.HALF_UP;
 
@@ -8,7 +9,7 @@ import static java.math.RoundingMode.HALF_UP;
  * A three dimensional vector using {@link BigDecimal} for arbitrary precision values with support for the most common vector operations.
  *
  * @author Christoph Bruckner
- * @version 1.0
+ * @version 1.1
  * @since 0.1
  */
 public class Vector3D {
@@ -111,6 +112,61 @@ public class Vector3D {
         );
     }
 
+    /**
+     * Adds the given vector to this one, rounding every coordinate to the given {@link MathContext}.
+     *
+     * @param vector      The vector to be added.
+     * @param mathContext The precision and rounding mode of the result.
+     */
+    public Vector3D add(Vector3D vector, MathContext mathContext) {
+        return new Vector3D(
+                x.add(vector.getX(), mathContext),
+                y.add(vector.getY(), mathContext),
+                z.add(vector.getZ(), mathContext));
+    }
+
+    /**
+     * Subtracts the given vector from this one, rounding every coordinate to the given {@link MathContext}.
+     *
+     * @param vector      The vector to be subtracted.
+     * @param mathContext The precision and rounding mode of the result.
+     */
+    public Vector3D subtract(Vector3D vector, MathContext mathContext) {
+        return new Vector3D(
+                x.subtract(vector.getX(), mathContext),
+                y.subtract(vector.getY(), mathContext),
+                z.subtract(vector.getZ(), mathContext));
+    }
+
+    /**
+     * Calculates the length of the vector with the precision of the given {@link MathContext}.
+     *
+     * @param mathContext The precision and rounding mode of the result.
+     * @return The length of the vector.
+     */
+    public BigDecimal length(MathContext mathContext) {
+        return BigDecimalMath.sqrt(
+                x.multiply(x, mathContext).add(y.multiply(y, mathContext), mathContext)
+                        .add(z.multiply(z, mathContext), mathContext),
+                mathContext);
+    }
+
+    /**
+     * Scales the vector by given scalar, rounding every coordinate to the given {@link MathContext}.
+     * <p>
+     * In contrast to {@link #scale(BigDecimal)} the number of significant digits is kept, regardless of the scale of
+     * the scalar.
+     *
+     * @param scalar      The scalar used for scaling.
+     * @param mathContext The precision and rounding mode of the result.
+     */
+    public Vector3D scale(BigDecimal scalar, MathContext mathContext) {
+        return new Vector3D(
+                x.multiply(scalar, mathContext),
+                y.multiply(scalar, mathContext),
+                z.multiply(scalar, mathContext));
+    }
+
     /**
      * Setter for x.
      *
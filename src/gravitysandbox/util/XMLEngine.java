@@ -16,9 +16,15 @@ import java.math.BigDecimal;
 
 /**
  * This class handles the saving and loading of a body system in XML files.
+ * <p>
+ * All numbers are written and read as {@link BigDecimal} strings, so the values of the bodies keep all their digits,
+ * including those of the {@link DoubleDouble} columns of the step loop.
+ * <p>
+ * Test particles carry the attribute testParticle="true". Bodies without the attribute are sources of gravity, so
+ * older files load unchanged.
  *
  * @author Christoph Bruckner
- * @version 1.0
+ * @version 1.2
  * @since 1.0
  */
 public class XMLEngine {
@@ -39,6 +45,8 @@ public class XMLEngine {
                 bodyElem.setAttribute("name", body.getName());
                 bodyElem.setAttribute("mass", body.getMass().toEngineeringString());
                 bodyElem.setAttribute("isStar", body.isStar() ? "true" : "false");
+                if (body.isTestParticle())
+                    bodyElem.setAttribute("testParticle", "true");
 
                 Element positionElem = new Element("position");
 
@@ -111,7 +119,8 @@ public class XMLEngine {
                         position,
                         velocity,
                         new BigDecimal(bodies.getAttributeValue("mass")),
-                        bodies.getAttributeValue("isStar").equals("true")
+                        bodies.getAttributeValue("isStar").equals("true"),
+                        "true".equals(bodies.getAttributeValue("testParticle"))
                 ));
             }
         } catch (JDOMException e) {